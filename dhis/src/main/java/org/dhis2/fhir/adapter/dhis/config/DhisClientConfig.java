@@ -0,0 +1,224 @@
+package org.dhis2.fhir.adapter.dhis.config;
+
+/*
+ * Copyright (c) 2004-2018, University of Oslo
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * Redistributions of source code must retain the above copyright notice, this
+ * list of conditions and the following disclaimer.
+ *
+ * Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation
+ * and/or other materials provided with the distribution.
+ * Neither the name of the HISP project nor the names of its contributors may
+ * be used to endorse or promote products derived from this software without
+ * specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.apache.http.client.config.RequestConfig;
+import org.apache.http.impl.client.CloseableHttpClient;
+import org.apache.http.impl.client.DefaultConnectionKeepAliveStrategy;
+import org.apache.http.impl.client.HttpClientBuilder;
+import org.apache.http.impl.conn.PoolingHttpClientConnectionManager;
+import org.apache.http.pool.PoolStats;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.validation.annotation.Validated;
+
+import javax.annotation.Nonnull;
+import javax.validation.constraints.Min;
+import java.io.Serializable;
+import java.util.concurrent.TimeUnit;
+import java.util.function.ToDoubleFunction;
+
+/**
+ * Contains the configuration of the HTTP client that is used by the REST templates
+ * that access DHIS2. Connections are pooled and kept alive, since the processing of
+ * a single resource requires several subsequent requests to DHIS2.
+ *
+ * @author volsch
+ */
+@Configuration
+@ConfigurationProperties( "dhis2.fhir-adapter.dhis-client" )
+@Validated
+public class DhisClientConfig implements Serializable
+{
+    private static final long serialVersionUID = -2372480364926212519L;
+
+    @Min( 1 )
+    private int maxPoolSize = 50;
+
+    @Min( 1 )
+    private int maxPoolSizePerRoute = 50;
+
+    @Min( 0 )
+    private int connectTimeoutMillis = 10000;
+
+    @Min( 0 )
+    private int socketTimeoutMillis = 60000;
+
+    @Min( 0 )
+    private int connectionRequestTimeoutMillis = 30000;
+
+    @Min( 1 )
+    private int keepAliveSeconds = 60;
+
+    @Min( 1 )
+    private int maxIdleSeconds = 30;
+
+    private boolean compression = true;
+
+    /**
+     * @return the maximum number of pooled connections to DHIS2.
+     */
+    public int getMaxPoolSize()
+    {
+        return maxPoolSize;
+    }
+
+    public void setMaxPoolSize( int maxPoolSize )
+    {
+        this.maxPoolSize = maxPoolSize;
+    }
+
+    /**
+     * @return the maximum number of pooled connections to a single host of DHIS2.
+     */
+    public int getMaxPoolSizePerRoute()
+    {
+        return maxPoolSizePerRoute;
+    }
+
+    public void setMaxPoolSizePerRoute( int maxPoolSizePerRoute )
+    {
+        this.maxPoolSizePerRoute = maxPoolSizePerRoute;
+    }
+
+    /**
+     * @return the timeout in milliseconds for establishing a connection to DHIS2.
+     */
+    public int getConnectTimeoutMillis()
+    {
+        return connectTimeoutMillis;
+    }
+
+    public void setConnectTimeoutMillis( int connectTimeoutMillis )
+    {
+        this.connectTimeoutMillis = connectTimeoutMillis;
+    }
+
+    /**
+     * @return the timeout in milliseconds for waiting for data from DHIS2.
+     */
+    public int getSocketTimeoutMillis()
+    {
+        return socketTimeoutMillis;
+    }
+
+    public void setSocketTimeoutMillis( int socketTimeoutMillis )
+    {
+        this.socketTimeoutMillis = socketTimeoutMillis;
+    }
+
+    /**
+     * @return the timeout in milliseconds for waiting for a pooled connection if all connections are in use.
+     */
+    public int getConnectionRequestTimeoutMillis()
+    {
+        return connectionRequestTimeoutMillis;
+    }
+
+    public void setConnectionRequestTimeoutMillis( int connectionRequestTimeoutMillis )
+    {
+        this.connectionRequestTimeoutMillis = connectionRequestTimeoutMillis;
+    }
+
+    /**
+     * @return the number of seconds a connection is kept alive if DHIS2 does not specify a keep-alive timeout.
+     */
+    public int getKeepAliveSeconds()
+    {
+        return keepAliveSeconds;
+    }
+
+    public void setKeepAliveSeconds( int keepAliveSeconds )
+    {
+        this.keepAliveSeconds = keepAliveSeconds;
+    }
+
+    /**
+     * @return the number of seconds after which idle connections are evicted from the pool.
+     */
+    public int getMaxIdleSeconds()
+    {
+        return maxIdleSeconds;
+    }
+
+    public void setMaxIdleSeconds( int maxIdleSeconds )
+    {
+        this.maxIdleSeconds = maxIdleSeconds;
+    }
+
+    /**
+     * @return <code>true</code> if compressed responses should be requested from DHIS2.
+     */
+    public boolean isCompression()
+    {
+        return compression;
+    }
+
+    public void setCompression( boolean compression )
+    {
+        this.compression = compression;
+    }
+
+    @Bean( destroyMethod = "close" )
+    protected CloseableHttpClient dhisHttpClient( @Nonnull MeterRegistry meterRegistry )
+    {
+        final PoolingHttpClientConnectionManager connectionManager = new PoolingHttpClientConnectionManager();
+        connectionManager.setMaxTotal( getMaxPoolSize() );
+        connectionManager.setDefaultMaxPerRoute( getMaxPoolSizePerRoute() );
+        registerPoolGauge( meterRegistry, connectionManager, "leased", PoolStats::getLeased );
+        registerPoolGauge( meterRegistry, connectionManager, "available", PoolStats::getAvailable );
+        registerPoolGauge( meterRegistry, connectionManager, "pending", PoolStats::getPending );
+        registerPoolGauge( meterRegistry, connectionManager, "max", PoolStats::getMax );
+
+        // the client is shared by all users and the system user, session cookies of DHIS2 must not be reused
+        final HttpClientBuilder builder = HttpClientBuilder.create().useSystemProperties().setConnectionManager( connectionManager ).disableCookieManagement()
+            .setDefaultRequestConfig( RequestConfig.custom().setConnectTimeout( getConnectTimeoutMillis() ).setSocketTimeout( getSocketTimeoutMillis() )
+                .setConnectionRequestTimeout( getConnectionRequestTimeoutMillis() ).build() )
+            .setKeepAliveStrategy( ( response, context ) -> {
+                final long duration = DefaultConnectionKeepAliveStrategy.INSTANCE.getKeepAliveDuration( response, context );
+                return (duration > 0) ? duration : TimeUnit.SECONDS.toMillis( getKeepAliveSeconds() );
+            } )
+            .evictExpiredConnections().evictIdleConnections( getMaxIdleSeconds(), TimeUnit.SECONDS );
+        if ( !isCompression() )
+        {
+            builder.disableContentCompression();
+        }
+        return builder.build();
+    }
+
+    private static void registerPoolGauge( @Nonnull MeterRegistry meterRegistry, @Nonnull PoolingHttpClientConnectionManager connectionManager,
+        @Nonnull String state, @Nonnull ToDoubleFunction<PoolStats> function )
+    {
+        Gauge.builder( "dhis2.http.client.connections", connectionManager, cm -> function.applyAsDouble( cm.getTotalStats() ) )
+            .description( "Number of pooled HTTP connections to DHIS2." ).tag( "state", state ).register( meterRegistry );
+    }
+}
@@ -28,11 +28,14 @@ package org.dhis2.fhir.adapter.dhis.config;
  * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
  */
 
+import org.apache.http.client.HttpClient;
 import org.dhis2.fhir.adapter.auth.AuthorizationContext;
 import org.dhis2.fhir.adapter.auth.AuthorizedRestTemplate;
+import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.boot.web.client.RestTemplateBuilder;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.http.client.HttpComponentsClientHttpRequestFactory;
 import org.springframework.web.client.RestTemplate;
 
 import javax.annotation.Nonnull;
@@ -52,13 +55,16 @@ public class DhisConfig
      * @param builder              the rest template builder to be used.
      * @param endpointConfig       the endpoint configuration of the DHIS2 endpoint.
      * @param authorizationContext the authorization context from which the REST template gets its authorization information dynamically.
+     * @param httpClient           the pooled HTTP client that is used to connect to DHIS2.
      * @return the generated user rest template that uses the specified authorization context for authorization.
      */
     @Bean
     @Nonnull
-    public RestTemplate userDhis2RestTemplate( @Nonnull RestTemplateBuilder builder, @Nonnull DhisEndpointConfig endpointConfig, @Nonnull AuthorizationContext authorizationContext )
+    public RestTemplate userDhis2RestTemplate( @Nonnull RestTemplateBuilder builder, @Nonnull DhisEndpointConfig endpointConfig, @Nonnull AuthorizationContext authorizationContext,
+        @Nonnull @Qualifier( "dhisHttpClient" ) HttpClient httpClient )
     {
-        return builder.rootUri( getRootUri( endpointConfig ) ).configure( new AuthorizedRestTemplate( authorizationContext ) );
+        return builder.rootUri( getRootUri( endpointConfig ) ).requestFactory( () -> new HttpComponentsClientHttpRequestFactory( httpClient ) )
+            .configure( new AuthorizedRestTemplate( authorizationContext ) );
     }
 
     /**
@@ -66,13 +72,15 @@ public class DhisConfig
      *
      * @param builder        the rest template builder to be used.
      * @param endpointConfig the endpoint configuration of the DHIS2 endpoint.
+     * @param httpClient     the pooled HTTP client that is used to connect to DHIS2.
      * @return the generated system rest template that uses the authorization that is included in the specified endpoint configuration
      */
     @Bean
     @Nonnull
-    public RestTemplate systemDhis2RestTemplate( @Nonnull RestTemplateBuilder builder, @Nonnull DhisEndpointConfig endpointConfig )
+    public RestTemplate systemDhis2RestTemplate( @Nonnull RestTemplateBuilder builder, @Nonnull DhisEndpointConfig endpointConfig,
+        @Nonnull @Qualifier( "dhisHttpClient" ) HttpClient httpClient )
     {
-        return builder.rootUri( getRootUri( endpointConfig ) ).basicAuthorization(
+        return builder.rootUri( getRootUri( endpointConfig ) ).requestFactory( () -> new HttpComponentsClientHttpRequestFactory( httpClient ) ).basicAuthorization(
             endpointConfig.getSystemAuthentication().getUsername(), endpointConfig.getSystemAuthentication().getPassword() ).build();
     }
 
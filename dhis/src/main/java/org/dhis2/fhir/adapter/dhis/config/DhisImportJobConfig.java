@@ -0,0 +1,98 @@
+package org.dhis2.fhir.adapter.dhis.config;
+
+/*
+ * Copyright (c) 2004-2018, University of Oslo
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * Redistributions of source code must retain the above copyright notice, this
+ * list of conditions and the following disclaimer.
+ *
+ * Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation
+ * and/or other materials provided with the distribution.
+ * Neither the name of the HISP project nor the names of its contributors may
+ * be used to endorse or promote products derived from this software without
+ * specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.validation.annotation.Validated;
+
+import javax.validation.constraints.Min;
+import java.io.Serializable;
+
+/**
+ * Contains the configuration of asynchronous imports of DHIS2. The status of the
+ * initiated import jobs is polled periodically until the jobs have been completed.
+ *
+ * @author volsch
+ */
+@Configuration
+@ConfigurationProperties( "dhis2.fhir-adapter.dhis-import-job" )
+@Validated
+public class DhisImportJobConfig implements Serializable
+{
+    private static final long serialVersionUID = -4838759950740949612L;
+
+    @Min( 1 )
+    private int pollerPoolSize = 2;
+
+    @Min( 1 )
+    private int pollIntervalMillis = 1000;
+
+    @Min( 1 )
+    private int timeoutSeconds = 3600;
+
+    /**
+     * @return the number of threads that poll the status of import jobs and that continue the processing of completed import jobs.
+     */
+    public int getPollerPoolSize()
+    {
+        return pollerPoolSize;
+    }
+
+    public void setPollerPoolSize( int pollerPoolSize )
+    {
+        this.pollerPoolSize = pollerPoolSize;
+    }
+
+    /**
+     * @return the interval in milliseconds in which the status of a single import job is polled.
+     */
+    public int getPollIntervalMillis()
+    {
+        return pollIntervalMillis;
+    }
+
+    public void setPollIntervalMillis( int pollIntervalMillis )
+    {
+        this.pollIntervalMillis = pollIntervalMillis;
+    }
+
+    /**
+     * @return the maximum time in seconds after which an import job that has not been completed is regarded as failed.
+     */
+    public int getTimeoutSeconds()
+    {
+        return timeoutSeconds;
+    }
+
+    public void setTimeoutSeconds( int timeoutSeconds )
+    {
+        this.timeoutSeconds = timeoutSeconds;
+    }
+}
@@ -0,0 +1,62 @@
+package org.dhis2.fhir.adapter.dhis.job;
+
+/*
+ * Copyright (c) 2004-2018, University of Oslo
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * Redistributions of source code must retain the above copyright notice, this
+ * list of conditions and the following disclaimer.
+ *
+ * Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation
+ * and/or other materials provided with the distribution.
+ * Neither the name of the HISP project nor the names of its contributors may
+ * be used to endorse or promote products derived from this software without
+ * specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+import org.dhis2.fhir.adapter.dhis.DhisConflictException;
+import org.dhis2.fhir.adapter.dhis.model.ImportSummaries;
+
+import javax.annotation.Nonnull;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Service that initiates asynchronous imports of DHIS2 resources. DHIS2 executes
+ * such imports as background jobs. The status of the jobs is polled in the background,
+ * so that the calling thread is not blocked while DHIS2 imports the resources.
+ *
+ * @author volsch
+ */
+public interface ImportJobService
+{
+    /**
+     * Posts the specified payload that contains several DHIS2 resources for an asynchronous
+     * import. The posting itself is performed by the calling thread and with the authorization
+     * of the current scope. The same authorization is used when polling the status of the
+     * resulting job.
+     *
+     * @param uri          the URI to which the payload is posted (must include the parameter for an asynchronous import).
+     * @param payload      the payload that contains the DHIS2 resources.
+     * @param resourceName the name of the resources that is used in log and error messages.
+     * @return the completion that returns the import summaries of the job when it has been completed by DHIS2.
+     * The import summaries may be <code>null</code> if DHIS2 did not store any import summaries for the job
+     * (e.g. if the import failed completely).
+     * @throws DhisConflictException thrown if DHIS2 rejected the import.
+     */
+    @Nonnull
+    CompletableFuture<ImportSummaries> submit( @Nonnull String uri, @Nonnull Object payload, @Nonnull String resourceName ) throws DhisConflictException;
+}
@@ -0,0 +1,254 @@
+package org.dhis2.fhir.adapter.dhis.job.impl;
+
+/*
+ * Copyright (c) 2004-2018, University of Oslo
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * Redistributions of source code must retain the above copyright notice, this
+ * list of conditions and the following disclaimer.
+ *
+ * Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation
+ * and/or other materials provided with the distribution.
+ * Neither the name of the HISP project nor the names of its contributors may
+ * be used to endorse or promote products derived from this software without
+ * specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+import org.dhis2.fhir.adapter.auth.Authorization;
+import org.dhis2.fhir.adapter.auth.AuthorizationContext;
+import org.dhis2.fhir.adapter.dhis.DhisConflictException;
+import org.dhis2.fhir.adapter.dhis.DhisImportTimeoutException;
+import org.dhis2.fhir.adapter.dhis.DhisImportUnsuccessfulException;
+import org.dhis2.fhir.adapter.dhis.config.DhisImportJobConfig;
+import org.dhis2.fhir.adapter.dhis.job.ImportJobService;
+import org.dhis2.fhir.adapter.dhis.model.ImportSummaries;
+import org.dhis2.fhir.adapter.dhis.model.JobConfiguration;
+import org.dhis2.fhir.adapter.dhis.model.JobConfigurationWebMessage;
+import org.dhis2.fhir.adapter.dhis.model.JobNotification;
+import org.dhis2.fhir.adapter.dhis.model.Status;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+import org.springframework.stereotype.Service;
+import org.springframework.web.client.HttpClientErrorException;
+import org.springframework.web.client.RestTemplate;
+
+import javax.annotation.Nonnull;
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.util.Arrays;
+import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Implementation of {@link ImportJobService}. The notifications of each job are polled
+ * periodically by a small pool of poller threads. When a notification indicates that
+ * the job has been completed, the import summaries of the job are fetched and the
+ * completion of the job is completed by the poller thread. Failures when polling the
+ * notifications are tolerated until the job times out, since the job continues
+ * independently on DHIS2. A timed out job is completed with a
+ * {@link DhisImportTimeoutException} since its outcome is unknown.
+ *
+ * @author volsch
+ */
+@Service
+public class ImportJobServiceImpl implements ImportJobService
+{
+    protected static final String TASKS_URI = "/system/tasks/{jobType}/{id}";
+
+    protected static final String TASK_SUMMARIES_URI = "/system/taskSummaries/{jobType}/{id}";
+
+    private final Logger logger = LoggerFactory.getLogger( getClass() );
+
+    private final RestTemplate restTemplate;
+
+    private final AuthorizationContext authorizationContext;
+
+    private final DhisImportJobConfig config;
+
+    private ScheduledExecutorService pollerService;
+
+    @Autowired
+    public ImportJobServiceImpl( @Nonnull @Qualifier( "userDhis2RestTemplate" ) RestTemplate restTemplate, @Nonnull AuthorizationContext authorizationContext,
+        @Nonnull DhisImportJobConfig config )
+    {
+        this.restTemplate = restTemplate;
+        this.authorizationContext = authorizationContext;
+        this.config = config;
+    }
+
+    @PostConstruct
+    public void postConstruct()
+    {
+        final CustomizableThreadFactory threadFactory = new CustomizableThreadFactory( "DHIS2 Import Job Poller Thread " );
+        threadFactory.setDaemon( true );
+        pollerService = Executors.newScheduledThreadPool( config.getPollerPoolSize(), threadFactory );
+    }
+
+    @PreDestroy
+    public void preDestroy()
+    {
+        pollerService.shutdownNow();
+    }
+
+    @Nonnull
+    @Override
+    public CompletableFuture<ImportSummaries> submit( @Nonnull String uri, @Nonnull Object payload, @Nonnull String resourceName ) throws DhisConflictException
+    {
+        final ResponseEntity<JobConfigurationWebMessage> response;
+        try
+        {
+            response = restTemplate.postForEntity( uri, payload, JobConfigurationWebMessage.class );
+        }
+        catch ( HttpClientErrorException e )
+        {
+            if ( HttpStatus.CONFLICT.equals( e.getStatusCode() ) )
+            {
+                throw new DhisConflictException( resourceName + " could not be imported: " + e.getResponseBodyAsString(), e );
+            }
+            throw e;
+        }
+        final JobConfigurationWebMessage result = Objects.requireNonNull( response.getBody() );
+        if ( (result.getStatus() != Status.OK) || (result.getResponse() == null) ||
+            (result.getResponse().getId() == null) || (result.getResponse().getJobType() == null) )
+        {
+            throw new DhisImportUnsuccessfulException( "Response indicates an unsuccessful initiation of the import of " + resourceName + "." );
+        }
+
+        final ImportJob job = new ImportJob( result.getResponse(), resourceName, authorizationContext.getAuthorization(),
+            System.nanoTime() + TimeUnit.SECONDS.toNanos( config.getTimeoutSeconds() ) );
+        logger.info( "Initiated import job {} for {}.", job.getJobConfiguration().getId(), resourceName );
+        schedule( job );
+        return job.getCompletion();
+    }
+
+    protected void schedule( @Nonnull ImportJob job )
+    {
+        pollerService.schedule( () -> poll( job ), config.getPollIntervalMillis(), TimeUnit.MILLISECONDS );
+    }
+
+    protected void poll( @Nonnull ImportJob job )
+    {
+        final JobConfiguration jobConfiguration = job.getJobConfiguration();
+        boolean completed = false;
+        ImportSummaries importSummaries = null;
+        try
+        {
+            authorizationContext.setAuthorization( job.getAuthorization() );
+            try
+            {
+                final JobNotification[] notifications = restTemplate.getForObject( TASKS_URI, JobNotification[].class,
+                    jobConfiguration.getJobType(), jobConfiguration.getId() );
+                if ( (notifications != null) && Arrays.stream( notifications ).anyMatch( JobNotification::isCompleted ) )
+                {
+                    importSummaries = restTemplate.getForObject( TASK_SUMMARIES_URI, ImportSummaries.class,
+                        jobConfiguration.getJobType(), jobConfiguration.getId() );
+                    completed = true;
+                }
+            }
+            finally
+            {
+                authorizationContext.resetAuthorization();
+            }
+        }
+        catch ( HttpClientErrorException e )
+        {
+            logger.error( "Status of import job " + jobConfiguration.getId() + " for " + job.getResourceName() + " could not be retrieved.", e );
+            job.getCompletion().completeExceptionally( e );
+            return;
+        }
+        catch ( RuntimeException e )
+        {
+            logger.warn( "Polling status of import job " + jobConfiguration.getId() + " for " + job.getResourceName() + " failed. Retrying.", e );
+        }
+
+        if ( completed )
+        {
+            logger.info( "Import job {} for {} has been completed.", jobConfiguration.getId(), job.getResourceName() );
+            job.getCompletion().complete( importSummaries );
+        }
+        else if ( System.nanoTime() - job.getTimeoutNanos() >= 0 )
+        {
+            job.getCompletion().completeExceptionally( new DhisImportTimeoutException( "Import job " + jobConfiguration.getId() + " for " +
+                job.getResourceName() + " has not been completed within " + config.getTimeoutSeconds() + " seconds." ) );
+        }
+        else
+        {
+            schedule( job );
+        }
+    }
+
+    /**
+     * An import job that has been initiated on DHIS2 and that has not yet been completed.
+     */
+    protected static class ImportJob
+    {
+        private final JobConfiguration jobConfiguration;
+
+        private final String resourceName;
+
+        private final Authorization authorization;
+
+        private final long timeoutNanos;
+
+        private final CompletableFuture<ImportSummaries> completion = new CompletableFuture<>();
+
+        public ImportJob( @Nonnull JobConfiguration jobConfiguration, @Nonnull String resourceName, @Nonnull Authorization authorization, long timeoutNanos )
+        {
+            this.jobConfiguration = jobConfiguration;
+            this.resourceName = resourceName;
+            this.authorization = authorization;
+            this.timeoutNanos = timeoutNanos;
+        }
+
+        @Nonnull
+        public JobConfiguration getJobConfiguration()
+        {
+            return jobConfiguration;
+        }
+
+        @Nonnull
+        public String getResourceName()
+        {
+            return resourceName;
+        }
+
+        @Nonnull
+        public Authorization getAuthorization()
+        {
+            return authorization;
+        }
+
+        public long getTimeoutNanos()
+        {
+            return timeoutNanos;
+        }
+
+        @Nonnull
+        public CompletableFuture<ImportSummaries> getCompletion()
+        {
+            return completion;
+        }
+    }
+}
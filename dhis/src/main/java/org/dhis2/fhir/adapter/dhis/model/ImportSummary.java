@@ -29,6 +29,7 @@ package org.dhis2.fhir.adapter.dhis.model;
  */
 
 import java.io.Serializable;
+import java.util.List;
 
 /**
  * The import summary that are returned by DHIS2 resources when creating and
@@ -46,6 +47,10 @@ public class ImportSummary implements Serializable
 
     private ImportSummaries events;
 
+    private String description;
+
+    private List<ImportConflict> conflicts;
+
     public ImportStatus getStatus()
     {
         return status;
@@ -75,4 +80,24 @@ public class ImportSummary implements Serializable
     {
         this.events = events;
     }
+
+    public String getDescription()
+    {
+        return description;
+    }
+
+    public void setDescription( String description )
+    {
+        this.description = description;
+    }
+
+    public List<ImportConflict> getConflicts()
+    {
+        return conflicts;
+    }
+
+    public void setConflicts( List<ImportConflict> conflicts )
+    {
+        this.conflicts = conflicts;
+    }
 }
@@ -82,6 +82,9 @@ public class Enrollment implements DhisResource, Serializable
 
     private Location coordinate;
 
+    @JsonInclude( JsonInclude.Include.NON_NULL )
+    private ZonedDateTime lastUpdated;
+
     private List<Event> events;
 
     public Enrollment()
@@ -201,6 +204,16 @@ public class Enrollment implements DhisResource, Serializable
         this.coordinate = coordinate;
     }
 
+    public ZonedDateTime getLastUpdated()
+    {
+        return lastUpdated;
+    }
+
+    public void setLastUpdated( ZonedDateTime lastUpdated )
+    {
+        this.lastUpdated = lastUpdated;
+    }
+
     public List<Event> getEvents()
     {
         return events;
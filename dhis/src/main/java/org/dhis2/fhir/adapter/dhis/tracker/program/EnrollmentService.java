@@ -28,7 +28,11 @@ package org.dhis2.fhir.adapter.dhis.tracker.program;
  * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
  */
 
+import org.dhis2.fhir.adapter.dhis.model.ImportSummary;
+
 import javax.annotation.Nonnull;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
 import java.util.Optional;
 
 /**
@@ -39,12 +43,46 @@ import java.util.Optional;
  */
 public interface EnrollmentService
 {
+    /**
+     * Returns the latest active enrollment of the specified tracked entity instance
+     * in the specified program together with its events of the specified program stage.
+     * Only the events of the resulting enrollment and program stage are read.
+     *
+     * @param programId               the ID of the program of the enrollment.
+     * @param programStageId          the ID of the program stage of the included events.
+     * @param trackedEntityInstanceId the ID of the tracked entity instance of the enrollment.
+     * @return the latest active enrollment that includes only the events of the specified program stage.
+     */
     @Nonnull
-    Optional<Enrollment> getLatestActive( @Nonnull String programId, @Nonnull String trackedEntityInstanceId );
+    Optional<Enrollment> getLatestActiveWithEvents( @Nonnull String programId, @Nonnull String programStageId, @Nonnull String trackedEntityInstanceId );
 
     @Nonnull
     Enrollment create( @Nonnull Enrollment enrollment );
 
     @Nonnull
     Enrollment update( @Nonnull Enrollment enrollment );
+
+    /**
+     * Creates or updates the specified enrollments with a single request. All enrollments
+     * must have an ID (also new enrollments). Events that are included in new enrollments
+     * are created together with the enrollment. Included events of existing enrollments
+     * are not updated.
+     *
+     * @param enrollments the enrollments that should be created or updated.
+     * @return the import summaries in the order of the specified enrollments.
+     */
+    @Nonnull
+    List<ImportSummary> createOrUpdateAll( @Nonnull List<Enrollment> enrollments );
+
+    /**
+     * Creates or updates the specified enrollments with an asynchronous import of DHIS2.
+     * The calling thread is not blocked while DHIS2 imports the enrollments. All enrollments
+     * must have an ID (also new enrollments).
+     *
+     * @param enrollments the enrollments that should be created or updated.
+     * @return the completion that returns the import summaries in the order of the specified enrollments
+     * when the import has been completed by DHIS2.
+     */
+    @Nonnull
+    CompletableFuture<List<ImportSummary>> createOrUpdateAllAsync( @Nonnull List<Enrollment> enrollments );
 }
@@ -28,8 +28,11 @@ package org.dhis2.fhir.adapter.dhis.tracker.program;
  * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
  */
 
+import org.dhis2.fhir.adapter.dhis.model.ImportSummary;
+
 import javax.annotation.Nonnull;
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
 
 /**
  * Service to create, update and read DHIS2 Program Stage Instances (aka events)
@@ -40,9 +43,27 @@ import java.util.List;
 public interface EventService
 {
     @Nonnull
-    List<Event> find( @Nonnull String programId, @Nonnull String programStageId,
-        @Nonnull String enrollmentId, @Nonnull String trackedEntityInstanceId );
+    Event createOrMinimalUpdate( @Nonnull Event event );
 
+    /**
+     * Creates or updates the specified events with a single request. All events must
+     * have an ID (also new events). Existing events are updated completely.
+     *
+     * @param events the events that should be created or updated.
+     * @return the import summaries in the order of the specified events.
+     */
     @Nonnull
-    Event createOrMinimalUpdate( @Nonnull Event event );
+    List<ImportSummary> createOrUpdateAll( @Nonnull List<Event> events );
+
+    /**
+     * Creates or updates the specified events with an asynchronous import of DHIS2.
+     * The calling thread is not blocked while DHIS2 imports the events. All events
+     * must have an ID (also new events).
+     *
+     * @param events the events that should be created or updated.
+     * @return the completion that returns the import summaries in the order of the specified events
+     * when the import has been completed by DHIS2.
+     */
+    @Nonnull
+    CompletableFuture<List<ImportSummary>> createOrUpdateAllAsync( @Nonnull List<Event> events );
 }
@@ -34,12 +34,15 @@ import com.netflix.hystrix.contrib.javanica.cache.annotation.CacheKey;
 import com.netflix.hystrix.contrib.javanica.cache.annotation.CacheResult;
 import org.dhis2.fhir.adapter.dhis.DhisConflictException;
 import org.dhis2.fhir.adapter.dhis.DhisImportUnsuccessfulException;
+import org.dhis2.fhir.adapter.dhis.job.ImportJobService;
 import org.dhis2.fhir.adapter.dhis.model.ImportStatus;
 import org.dhis2.fhir.adapter.dhis.model.ImportSummaries;
+import org.dhis2.fhir.adapter.dhis.model.ImportSummary;
 import org.dhis2.fhir.adapter.dhis.model.ImportSummaryWebMessage;
 import org.dhis2.fhir.adapter.dhis.model.Status;
 import org.dhis2.fhir.adapter.dhis.tracker.program.Enrollment;
 import org.dhis2.fhir.adapter.dhis.tracker.program.EnrollmentService;
+import org.dhis2.fhir.adapter.dhis.util.BulkImportUtils;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.http.HttpEntity;
@@ -52,8 +55,11 @@ import org.springframework.web.client.RestTemplate;
 
 import javax.annotation.Nonnull;
 import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
 import java.util.Objects;
 import java.util.Optional;
+import java.util.stream.Collectors;
 
 /**
  * Implementation of {@link EnrollmentService}.
@@ -67,33 +73,55 @@ public class EnrollmentServiceImpl implements EnrollmentService
 
     protected static final String ENROLLMENT_UPDATE_URI = "/enrollments/{id}.json?mergeMode=MERGE";
 
-    protected static final String LATEST_ACTIVE_URI = "/enrollments.json?" +
-        "program={programId}&programStatus=ACTIVE&trackedEntityInstance={trackedEntityInstanceId}&" +
-        "ouMode=ACCESSIBLE&fields=:all&order=lastUpdated:desc&pageSize=1";
+    protected static final String CREATE_OR_UPDATE_ALL_URI = "/enrollments.json?strategy=CREATE_AND_UPDATE&mergeMode=MERGE";
+
+    protected static final String CREATE_OR_UPDATE_ALL_ASYNC_URI = "/enrollments.json?strategy=CREATE_AND_UPDATE&mergeMode=MERGE&async=true";
+
+    protected static final String LATEST_ACTIVE_ID_URI = "/enrollments.json?" +
+        "program={programId}&programStatus=ACTIVE&trackedEntityInstance={trackedEntityInstanceId}&ouMode=ACCESSIBLE&" +
+        "fields=enrollment,orgUnit,program,trackedEntityInstance,status,enrollmentDate,incidentDate,coordinate,lastUpdated&order=lastUpdated:desc&pageSize=1";
+
+    protected static final String ENROLLMENT_EVENTS_URI = "/events.json?" +
+        "program={programId}&programStage={programStageId}&enrollment={enrollmentId}&trackedEntityInstance={trackedEntityInstanceId}&ouMode=ACCESSIBLE&" +
+        "fields=event,orgUnit,program,enrollment,trackedEntityInstance,programStage,status,eventDate,dueDate,coordinate,lastUpdated," +
+        "dataValues[dataElement,value,providedElsewhere,lastUpdated,storedBy]&skipPaging=true";
 
     private final RestTemplate restTemplate;
 
+    private final ImportJobService importJobService;
+
     @Autowired
-    public EnrollmentServiceImpl( @Nonnull @Qualifier( "userDhis2RestTemplate" ) RestTemplate restTemplate )
+    public EnrollmentServiceImpl( @Nonnull @Qualifier( "userDhis2RestTemplate" ) RestTemplate restTemplate, @Nonnull ImportJobService importJobService )
     {
         this.restTemplate = restTemplate;
+        this.importJobService = importJobService;
     }
 
-    @CacheResult( cacheKeyMethod = "getLatestActiveCacheKey" )
+    @CacheResult( cacheKeyMethod = "getLatestActiveWithEventsCacheKey" )
     @HystrixCommand( commandProperties = @HystrixProperty( name = "requestCache.enabled", value = "true" ) )
     @Nonnull
     @Override
-    public Optional<Enrollment> getLatestActive( @CacheKey @Nonnull String programId, @CacheKey @Nonnull String trackedEntityInstanceId )
+    public Optional<Enrollment> getLatestActiveWithEvents( @CacheKey @Nonnull String programId, @CacheKey @Nonnull String programStageId, @CacheKey @Nonnull String trackedEntityInstanceId )
     {
-        final ResponseEntity<DhisEnrollments> result = restTemplate.getForEntity(
-            LATEST_ACTIVE_URI, DhisEnrollments.class, programId, trackedEntityInstanceId );
-        return Objects.requireNonNull( result.getBody() ).getEnrollments().stream().findFirst();
+        // the enrollments resource of DHIS2 does not include events, only the events of the resulting enrollment and program stage are read afterwards
+        final ResponseEntity<DhisEnrollments> enrollments = restTemplate.getForEntity(
+            LATEST_ACTIVE_ID_URI, DhisEnrollments.class, programId, trackedEntityInstanceId );
+        final Optional<Enrollment> enrollment = Objects.requireNonNull( enrollments.getBody() ).getEnrollments().stream().findFirst();
+        if ( enrollment.isPresent() )
+        {
+            final ResponseEntity<DhisEvents> events = restTemplate.getForEntity( ENROLLMENT_EVENTS_URI, DhisEvents.class,
+                programId, programStageId, enrollment.get().getId(), trackedEntityInstanceId );
+            enrollment.get().setEvents( Objects.requireNonNull( events.getBody() ).getEvents().stream()
+                .filter( e -> enrollment.get().getId().equals( e.getEnrollmentId() ) && programStageId.equals( e.getProgramStageId() ) )
+                .collect( Collectors.toList() ) );
+        }
+        return enrollment;
     }
 
     @Nonnull
-    public String getLatestActiveCacheKey( @Nonnull String programId, @Nonnull String trackedEntityInstanceId )
+    public String getLatestActiveWithEventsCacheKey( @Nonnull String programId, @Nonnull String programStageId, @Nonnull String trackedEntityInstanceId )
     {
-        return "EnrollmentService.getLatestActive|" + programId + "|" + trackedEntityInstanceId;
+        return "EnrollmentService.getLatestActiveWithEvents|" + programId + "|" + programStageId + "|" + trackedEntityInstanceId;
     }
 
     @HystrixCommand( ignoreExceptions = { DhisConflictException.class } )
@@ -140,6 +168,33 @@ public class EnrollmentServiceImpl implements EnrollmentService
         return enrollment;
     }
 
+    @HystrixCommand( ignoreExceptions = { DhisConflictException.class } )
+    @Nonnull
+    @Override
+    public List<ImportSummary> createOrUpdateAll( @Nonnull List<Enrollment> enrollments )
+    {
+        // update of included events is not supported
+        enrollments.stream().filter( e -> !e.isNewResource() ).forEach( e -> e.setEvents( new ArrayList<>() ) );
+
+        final DhisEnrollments payload = new DhisEnrollments();
+        payload.setEnrollments( enrollments );
+        return BulkImportUtils.getImportSummaries(
+            BulkImportUtils.post( restTemplate, CREATE_OR_UPDATE_ALL_URI, payload, "Enrollments" ).getResponse(), enrollments );
+    }
+
+    @Nonnull
+    @Override
+    public CompletableFuture<List<ImportSummary>> createOrUpdateAllAsync( @Nonnull List<Enrollment> enrollments )
+    {
+        // update of included events is not supported
+        enrollments.stream().filter( e -> !e.isNewResource() ).forEach( e -> e.setEvents( new ArrayList<>() ) );
+
+        final DhisEnrollments payload = new DhisEnrollments();
+        payload.setEnrollments( enrollments );
+        return importJobService.submit( CREATE_OR_UPDATE_ALL_ASYNC_URI, payload, "Enrollments" )
+            .thenApply( importSummaries -> BulkImportUtils.getImportSummaries( importSummaries, enrollments ) );
+    }
+
     @HystrixCommand( ignoreExceptions = { DhisConflictException.class } )
     @Nonnull
     @Override
@@ -31,12 +31,15 @@ package org.dhis2.fhir.adapter.dhis.tracker.program.impl;
 import com.netflix.hystrix.contrib.javanica.annotation.HystrixCommand;
 import org.dhis2.fhir.adapter.dhis.DhisConflictException;
 import org.dhis2.fhir.adapter.dhis.DhisImportUnsuccessfulException;
+import org.dhis2.fhir.adapter.dhis.job.ImportJobService;
 import org.dhis2.fhir.adapter.dhis.model.DataValue;
 import org.dhis2.fhir.adapter.dhis.model.ImportStatus;
+import org.dhis2.fhir.adapter.dhis.model.ImportSummary;
 import org.dhis2.fhir.adapter.dhis.model.ImportSummaryWebMessage;
 import org.dhis2.fhir.adapter.dhis.model.Status;
 import org.dhis2.fhir.adapter.dhis.tracker.program.Event;
 import org.dhis2.fhir.adapter.dhis.tracker.program.EventService;
+import org.dhis2.fhir.adapter.dhis.util.BulkImportUtils;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.http.HttpEntity;
@@ -49,8 +52,8 @@ import org.springframework.web.client.RestTemplate;
 
 import javax.annotation.Nonnull;
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
 import java.util.Objects;
-import java.util.stream.Collectors;
 
 /**
  * Implementation of {@link EventService}.
@@ -68,17 +71,19 @@ public class EventServiceImpl implements EventService
 
     protected static final String UPDATE_DATA_VALUE_URI = "/events/{id}/{dataElementId}.json?mergeMode=MERGE";
 
-    protected static final String FIND_URI = "/events.json?" +
-        "program={programId}&trackedEntityInstance={trackedEntityInstanceId}&ouMode=ACCESSIBLE&" +
-        "fields=event,orgUnit,program,enrollment,trackedEntityInstance,programStage,status,eventDate,dueDate,coordinate,lastUpdated," +
-        "dataValues[dataElement,value,providedElsewhere,lastUpdated,storedBy]&skipPaging=true";
+    protected static final String CREATE_OR_UPDATE_ALL_URI = "/events.json?strategy=CREATE_AND_UPDATE&mergeMode=MERGE";
+
+    protected static final String CREATE_OR_UPDATE_ALL_ASYNC_URI = "/events.json?strategy=CREATE_AND_UPDATE&mergeMode=MERGE&async=true";
 
     private final RestTemplate restTemplate;
 
+    private final ImportJobService importJobService;
+
     @Autowired
-    public EventServiceImpl( @Nonnull @Qualifier( "userDhis2RestTemplate" ) RestTemplate restTemplate )
+    public EventServiceImpl( @Nonnull @Qualifier( "userDhis2RestTemplate" ) RestTemplate restTemplate, @Nonnull ImportJobService importJobService )
     {
         this.restTemplate = restTemplate;
+        this.importJobService = importJobService;
     }
 
     @HystrixCommand( ignoreExceptions = { DhisConflictException.class } )
@@ -89,15 +94,25 @@ public class EventServiceImpl implements EventService
         return event.isNewResource() ? create( event ) : minimalUpdate( event );
     }
 
-    @HystrixCommand
+    @HystrixCommand( ignoreExceptions = { DhisConflictException.class } )
+    @Nonnull
+    @Override
+    public List<ImportSummary> createOrUpdateAll( @Nonnull List<Event> events )
+    {
+        final DhisEvents payload = new DhisEvents();
+        payload.setEvents( events );
+        return BulkImportUtils.getImportSummaries(
+            BulkImportUtils.post( restTemplate, CREATE_OR_UPDATE_ALL_URI, payload, "Events" ).getResponse(), events );
+    }
+
     @Nonnull
     @Override
-    public List<Event> find( @Nonnull String programId, @Nonnull String programStageId,
-        @Nonnull String enrollmentId, @Nonnull String trackedEntityInstanceId )
+    public CompletableFuture<List<ImportSummary>> createOrUpdateAllAsync( @Nonnull List<Event> events )
     {
-        final ResponseEntity<DhisEvents> result = restTemplate.getForEntity( FIND_URI, DhisEvents.class, programId, trackedEntityInstanceId );
-        return Objects.requireNonNull( result.getBody() ).getEvents().stream().filter( e -> enrollmentId.equals( e.getEnrollmentId() ) &&
-            programStageId.equals( e.getProgramStageId() ) ).collect( Collectors.toList() );
+        final DhisEvents payload = new DhisEvents();
+        payload.setEvents( events );
+        return importJobService.submit( CREATE_OR_UPDATE_ALL_ASYNC_URI, payload, "Events" )
+            .thenApply( importSummaries -> BulkImportUtils.getImportSummaries( importSummaries, events ) );
     }
 
     @Nonnull
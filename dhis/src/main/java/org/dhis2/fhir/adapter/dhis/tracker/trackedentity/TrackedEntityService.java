@@ -28,8 +28,12 @@ package org.dhis2.fhir.adapter.dhis.tracker.trackedentity;
  * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
  */
 
+import org.dhis2.fhir.adapter.dhis.model.ImportSummary;
+
 import javax.annotation.Nonnull;
 import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
 import java.util.Map;
 import java.util.Optional;
 
@@ -47,4 +51,26 @@ public interface TrackedEntityService
 
     @Nonnull
     TrackedEntityInstance createOrUpdate( @Nonnull TrackedEntityInstance trackedEntityInstance );
+
+    /**
+     * Creates or updates the specified tracked entity instances with a single request.
+     * All tracked entity instances must have an ID (also new tracked entity instances).
+     *
+     * @param trackedEntityInstances the tracked entity instances that should be created or updated.
+     * @return the import summaries in the order of the specified tracked entity instances.
+     */
+    @Nonnull
+    List<ImportSummary> createOrUpdateAll( @Nonnull List<TrackedEntityInstance> trackedEntityInstances );
+
+    /**
+     * Creates or updates the specified tracked entity instances with an asynchronous import of DHIS2.
+     * The calling thread is not blocked while DHIS2 imports the tracked entity instances. All tracked entity instances
+     * must have an ID (also new tracked entity instances).
+     *
+     * @param trackedEntityInstances the tracked entity instances that should be created or updated.
+     * @return the completion that returns the import summaries in the order of the specified tracked entity instances
+     * when the import has been completed by DHIS2.
+     */
+    @Nonnull
+    CompletableFuture<List<ImportSummary>> createOrUpdateAllAsync( @Nonnull List<TrackedEntityInstance> trackedEntityInstances );
 }
@@ -34,7 +34,9 @@ import com.netflix.hystrix.contrib.javanica.cache.annotation.CacheKey;
 import com.netflix.hystrix.contrib.javanica.cache.annotation.CacheResult;
 import org.dhis2.fhir.adapter.dhis.DhisConflictException;
 import org.dhis2.fhir.adapter.dhis.DhisImportUnsuccessfulException;
+import org.dhis2.fhir.adapter.dhis.job.ImportJobService;
 import org.dhis2.fhir.adapter.dhis.model.ImportStatus;
+import org.dhis2.fhir.adapter.dhis.model.ImportSummary;
 import org.dhis2.fhir.adapter.dhis.model.ImportSummaryWebMessage;
 import org.dhis2.fhir.adapter.dhis.model.Status;
 import org.dhis2.fhir.adapter.dhis.tracker.trackedentity.RequiredValueType;
@@ -42,6 +44,7 @@ import org.dhis2.fhir.adapter.dhis.tracker.trackedentity.TrackedEntityInstance;
 import org.dhis2.fhir.adapter.dhis.tracker.trackedentity.TrackedEntityMetadataService;
 import org.dhis2.fhir.adapter.dhis.tracker.trackedentity.TrackedEntityService;
 import org.dhis2.fhir.adapter.dhis.tracker.trackedentity.TrackedEntityType;
+import org.dhis2.fhir.adapter.dhis.util.BulkImportUtils;
 import org.dhis2.fhir.adapter.rest.RestTemplateUtils;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Qualifier;
@@ -59,6 +62,8 @@ import org.springframework.web.util.UriComponentsBuilder;
 import javax.annotation.Nonnull;
 import java.util.Collection;
 import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
 import java.util.Map;
 import java.util.Objects;
 import java.util.Optional;
@@ -77,6 +82,10 @@ public class TrackedEntityServiceImpl implements TrackedEntityService
 
     protected static final String UPDATE_URI = ID_URI + "?mergeMode=MERGE";
 
+    protected static final String CREATE_OR_UPDATE_ALL_URI = "/trackedEntityInstances.json?strategy=CREATE_AND_UPDATE&mergeMode=MERGE";
+
+    protected static final String CREATE_OR_UPDATE_ALL_ASYNC_URI = "/trackedEntityInstances.json?strategy=CREATE_AND_UPDATE&mergeMode=MERGE&async=true";
+
     protected static final String FIND_BY_ATTR_VALUE_URI = "/trackedEntityInstances.json?" +
         "trackedEntityType={typeId}&ouMode=ACCESSIBLE&filter={attrId}:EQ:{attrValue}&pageSize={maxResult}";
 
@@ -84,12 +93,16 @@ public class TrackedEntityServiceImpl implements TrackedEntityService
 
     private final RestTemplate restTemplate;
 
+    private final ImportJobService importJobService;
+
     private final TrackedEntityMetadataService metadataService;
 
     @Autowired
-    public TrackedEntityServiceImpl( @Nonnull @Qualifier( "userDhis2RestTemplate" ) RestTemplate restTemplate, @Nonnull TrackedEntityMetadataService metadataService )
+    public TrackedEntityServiceImpl( @Nonnull @Qualifier( "userDhis2RestTemplate" ) RestTemplate restTemplate, @Nonnull TrackedEntityMetadataService metadataService,
+        @Nonnull ImportJobService importJobService )
     {
         this.restTemplate = restTemplate;
+        this.importJobService = importJobService;
         this.metadataService = metadataService;
     }
 
@@ -174,6 +187,40 @@ public class TrackedEntityServiceImpl implements TrackedEntityService
         return trackedEntityInstance.isNewResource() ? create( trackedEntityInstance ) : update( trackedEntityInstance );
     }
 
+    @HystrixCommand( ignoreExceptions = { DhisConflictException.class } )
+    @Nonnull
+    @Override
+    public List<ImportSummary> createOrUpdateAll( @Nonnull List<TrackedEntityInstance> trackedEntityInstances )
+    {
+        final TrackedEntityInstances payload = new TrackedEntityInstances();
+        payload.setTrackedEntityInstances( trackedEntityInstances );
+        return updateNewResources( trackedEntityInstances, BulkImportUtils.getImportSummaries(
+            BulkImportUtils.post( restTemplate, CREATE_OR_UPDATE_ALL_URI, payload, "Tracked entity instances" ).getResponse(), trackedEntityInstances ) );
+    }
+
+    @Nonnull
+    @Override
+    public CompletableFuture<List<ImportSummary>> createOrUpdateAllAsync( @Nonnull List<TrackedEntityInstance> trackedEntityInstances )
+    {
+        final TrackedEntityInstances payload = new TrackedEntityInstances();
+        payload.setTrackedEntityInstances( trackedEntityInstances );
+        return importJobService.submit( CREATE_OR_UPDATE_ALL_ASYNC_URI, payload, "Tracked entity instances" )
+            .thenApply( importSummaries -> updateNewResources( trackedEntityInstances, BulkImportUtils.getImportSummaries( importSummaries, trackedEntityInstances ) ) );
+    }
+
+    @Nonnull
+    private List<ImportSummary> updateNewResources( @Nonnull List<TrackedEntityInstance> trackedEntityInstances, @Nonnull List<ImportSummary> importSummaries )
+    {
+        for ( int i = 0; i < importSummaries.size(); i++ )
+        {
+            if ( importSummaries.get( i ).getStatus() == ImportStatus.SUCCESS )
+            {
+                trackedEntityInstances.get( i ).setNewResource( false );
+            }
+        }
+        return importSummaries;
+    }
+
     @Nonnull
     protected TrackedEntityInstance create( @Nonnull TrackedEntityInstance trackedEntityInstance )
     {
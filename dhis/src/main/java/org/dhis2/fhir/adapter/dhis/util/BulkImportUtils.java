@@ -0,0 +1,138 @@
+package org.dhis2.fhir.adapter.dhis.util;
+
+/*
+ * Copyright (c) 2004-2018, University of Oslo
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * Redistributions of source code must retain the above copyright notice, this
+ * list of conditions and the following disclaimer.
+ *
+ * Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation
+ * and/or other materials provided with the distribution.
+ * Neither the name of the HISP project nor the names of its contributors may
+ * be used to endorse or promote products derived from this software without
+ * specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.dhis2.fhir.adapter.dhis.DhisConflictException;
+import org.dhis2.fhir.adapter.dhis.model.DhisResource;
+import org.dhis2.fhir.adapter.dhis.model.ImportStatus;
+import org.dhis2.fhir.adapter.dhis.model.ImportSummaries;
+import org.dhis2.fhir.adapter.dhis.model.ImportSummary;
+import org.dhis2.fhir.adapter.dhis.model.ImportSummaryWebMessage;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+import org.springframework.web.client.HttpClientErrorException;
+import org.springframework.web.client.RestTemplate;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.stream.Collectors;
+
+/**
+ * Utility methods for importing several DHIS2 resources with a single request.
+ *
+ * @author volsch
+ */
+public abstract class BulkImportUtils
+{
+    private static final ObjectMapper objectMapper = Jackson2ObjectMapperBuilder.json().build();
+
+    /**
+     * Posts the specified payload that contains several DHIS2 resources. DHIS2 responds
+     * with a conflict if at least one of the resources could not be imported. Also in
+     * this case the import summaries of all resources are returned.
+     *
+     * @param restTemplate the REST template that is used to post the payload.
+     * @param uri          the URI to which the payload is posted.
+     * @param payload      the payload that contains the DHIS2 resources.
+     * @param resourceName the name of the resources that is used in error messages.
+     * @return the resulting web message that contains the import summaries.
+     * @throws DhisConflictException thrown if DHIS2 reported a conflict without import summaries.
+     */
+    @Nonnull
+    public static ImportSummaryWebMessage post( @Nonnull RestTemplate restTemplate, @Nonnull String uri, @Nonnull Object payload, @Nonnull String resourceName )
+        throws DhisConflictException
+    {
+        try
+        {
+            return Objects.requireNonNull( restTemplate.postForEntity( uri, payload, ImportSummaryWebMessage.class ).getBody() );
+        }
+        catch ( HttpClientErrorException e )
+        {
+            if ( !HttpStatus.CONFLICT.equals( e.getStatusCode() ) )
+            {
+                throw e;
+            }
+            final ImportSummaryWebMessage result;
+            try
+            {
+                result = objectMapper.readValue( e.getResponseBodyAsByteArray(), ImportSummaryWebMessage.class );
+            }
+            catch ( IOException | RuntimeException readException )
+            {
+                throw new DhisConflictException( resourceName + " could not be imported: " + e.getResponseBodyAsString(), e );
+            }
+            if ( result.getResponse() == null )
+            {
+                throw new DhisConflictException( resourceName + " could not be imported: " + e.getResponseBodyAsString(), e );
+            }
+            return result;
+        }
+    }
+
+    /**
+     * Returns the import summaries of the specified resources. The import summaries are
+     * assigned to the resources by their IDs. Therefore all resources must have an ID
+     * (also new resources). If no import summary has been returned for a resource, an
+     * import summary with error status is returned for it.
+     *
+     * @param importSummaries the import summaries that have been returned by DHIS2.
+     * @param resources       the resources for which the import summaries should be returned.
+     * @return the import summaries in the order of the specified resources.
+     */
+    @Nonnull
+    public static List<ImportSummary> getImportSummaries( @Nullable ImportSummaries importSummaries, @Nonnull List<? extends DhisResource> resources )
+    {
+        final Map<String, ImportSummary> importSummariesByReference = new HashMap<>();
+        if ( (importSummaries != null) && (importSummaries.getImportSummaries() != null) )
+        {
+            importSummaries.getImportSummaries().stream().filter( is -> is.getReference() != null )
+                .forEach( is -> importSummariesByReference.put( is.getReference(), is ) );
+        }
+        return resources.stream().map( r -> {
+            final ImportSummary importSummary = importSummariesByReference.get( r.getId() );
+            return (importSummary == null) ? createMissingImportSummary( r ) : importSummary;
+        } ).collect( Collectors.toList() );
+    }
+
+    @Nonnull
+    private static ImportSummary createMissingImportSummary( @Nonnull DhisResource resource )
+    {
+        final ImportSummary importSummary = new ImportSummary();
+        importSummary.setStatus( ImportStatus.ERROR );
+        importSummary.setReference( resource.getId() );
+        importSummary.setDescription( "No import summary has been returned for " + resource.getResourceType() + " " + resource.getId() + "." );
+        return importSummary;
+    }
+}
@@ -0,0 +1,76 @@
+package org.dhis2.fhir.adapter.dhis.util;
+
+/*
+ * Copyright (c) 2004-2018, University of Oslo
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * Redistributions of source code must retain the above copyright notice, this
+ * list of conditions and the following disclaimer.
+ *
+ * Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation
+ * and/or other materials provided with the distribution.
+ * Neither the name of the HISP project nor the names of its contributors may
+ * be used to endorse or promote products derived from this software without
+ * specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+import javax.annotation.Nonnull;
+import java.security.SecureRandom;
+import java.util.Random;
+
+/**
+ * Generates IDs for DHIS2 resources. The generated IDs have the same format as the
+ * IDs that are generated by DHIS2 itself (11 alphanumeric characters that start with
+ * a letter). Assigning IDs to new resources before they are imported allows to refer
+ * to them before they have been imported.
+ *
+ * @author volsch
+ */
+public abstract class CodeGenerator
+{
+    public static final int ID_LENGTH = 11;
+
+    private static final String LETTERS = "abcdefghijklmnopqrstuvwxyzABCDEFGHIJKLMNOPQRSTUVWXYZ";
+
+    private static final String ALPHANUMERIC_CHARS = "0123456789" + LETTERS;
+
+    private static final Random random = new SecureRandom();
+
+    /**
+     * @return a new random ID of a DHIS2 resource.
+     */
+    @Nonnull
+    public static String generateId()
+    {
+        final char[] id = new char[ID_LENGTH];
+        id[0] = LETTERS.charAt( random.nextInt( LETTERS.length() ) );
+        for ( int i = 1; i < ID_LENGTH; i++ )
+        {
+            id[i] = ALPHANUMERIC_CHARS.charAt( random.nextInt( ALPHANUMERIC_CHARS.length() ) );
+        }
+        return new String( id );
+    }
+
+    /**
+     * @param id the ID that should be checked.
+     * @return <code>true</code> if the specified ID has the format of an ID of a DHIS2 resource.
+     */
+    public static boolean isValidId( String id )
+    {
+        return (id != null) && id.matches( "[a-zA-Z][a-zA-Z0-9]{" + (ID_LENGTH - 1) + "}" );
+    }
+}
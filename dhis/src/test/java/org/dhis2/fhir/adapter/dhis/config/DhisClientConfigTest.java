@@ -0,0 +1,98 @@
+package org.dhis2.fhir.adapter.dhis.config;
+
+/*
+ * Copyright (c) 2004-2018, University of Oslo
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * Redistributions of source code must retain the above copyright notice, this
+ * list of conditions and the following disclaimer.
+ *
+ * Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation
+ * and/or other materials provided with the distribution.
+ * Neither the name of the HISP project nor the names of its contributors may
+ * be used to endorse or promote products derived from this software without
+ * specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+import com.sun.net.httpserver.HttpServer;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.apache.http.client.methods.CloseableHttpResponse;
+import org.apache.http.client.methods.HttpGet;
+import org.apache.http.impl.client.CloseableHttpClient;
+import org.apache.http.util.EntityUtils;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * Unit tests of {@link DhisClientConfig}.
+ *
+ * @author volsch
+ */
+public class DhisClientConfigTest
+{
+    private HttpServer server;
+
+    private final List<String> cookieHeaders = new CopyOnWriteArrayList<>();
+
+    @Before
+    public void setUp() throws IOException
+    {
+        server = HttpServer.create( new InetSocketAddress( "127.0.0.1", 0 ), 0 );
+        server.createContext( "/api/me", exchange -> {
+            final List<String> cookies = exchange.getRequestHeaders().get( "Cookie" );
+            if ( cookies != null )
+            {
+                cookieHeaders.addAll( cookies );
+            }
+            exchange.getResponseHeaders().add( "Set-Cookie", "JSESSIONID=1A2B3C4D; Path=/" );
+            exchange.sendResponseHeaders( 200, -1 );
+            exchange.close();
+        } );
+        server.start();
+    }
+
+    @After
+    public void tearDown()
+    {
+        server.stop( 0 );
+    }
+
+    @Test
+    public void sessionCookieNotReused() throws IOException
+    {
+        final String uri = "http://127.0.0.1:" + server.getAddress().getPort() + "/api/me";
+        try ( final CloseableHttpClient httpClient = new DhisClientConfig().dhisHttpClient( new SimpleMeterRegistry() ) )
+        {
+            for ( int i = 0; i < 2; i++ )
+            {
+                try ( final CloseableHttpResponse response = httpClient.execute( new HttpGet( uri ) ) )
+                {
+                    Assert.assertEquals( 200, response.getStatusLine().getStatusCode() );
+                    EntityUtils.consume( response.getEntity() );
+                }
+            }
+        }
+        Assert.assertEquals( 0, cookieHeaders.size() );
+    }
+}
@@ -30,6 +30,9 @@ package org.dhis2.fhir.adapter.dhis.tracker.program.impl;
 
 import com.fasterxml.jackson.databind.module.SimpleModule;
 import org.apache.commons.io.IOUtils;
+import org.dhis2.fhir.adapter.auth.ThreadLocalAuthorizationContext;
+import org.dhis2.fhir.adapter.dhis.config.DhisImportJobConfig;
+import org.dhis2.fhir.adapter.dhis.job.impl.ImportJobServiceImpl;
 import org.dhis2.fhir.adapter.dhis.model.WritableDataValue;
 import org.dhis2.fhir.adapter.dhis.tracker.program.Enrollment;
 import org.dhis2.fhir.adapter.dhis.tracker.program.EnrollmentService;
@@ -83,26 +86,43 @@ public class EnrollmentServiceImplTest
 
         restTemplate = new RestTemplateBuilder().rootUri( "http://localhost:8080/api" ).messageConverters( messageConverter ).build();
         mockServer = MockRestServiceServer.createServer( restTemplate );
-        service = new EnrollmentServiceImpl( restTemplate );
+        service = new EnrollmentServiceImpl( restTemplate, new ImportJobServiceImpl( restTemplate, new ThreadLocalAuthorizationContext(), new DhisImportJobConfig() ) );
     }
 
     @Test
-    public void getLatestActive() throws IOException
+    public void getLatestActiveWithEvents() throws IOException
     {
-        mockServer.expect( requestTo( "http://localhost:8080/api/enrollments.json?program=93783&programStatus=ACTIVE&trackedEntityInstance=88737&ouMode=ACCESSIBLE&fields=:all&order=lastUpdated:desc&pageSize=1" ) )
-            .andExpect( method( HttpMethod.GET ) ).andRespond( withSuccess( IOUtils.resourceToByteArray( "/org/dhis2/fhir/adapter/dhis/tracker/program/impl/enrollments.json" ), MediaType.APPLICATION_JSON ) );
-
-        Optional<? extends Enrollment> ou = service.getLatestActive( "93783", "88737" );
+        mockServer.expect( requestTo( "http://localhost:8080/api/enrollments.json?program=ur1Edk5Oe2n&programStatus=ACTIVE&trackedEntityInstance=88737&ouMode=ACCESSIBLE&" +
+            "fields=enrollment,orgUnit,program,trackedEntityInstance,status,enrollmentDate,incidentDate,coordinate,lastUpdated&order=lastUpdated:desc&pageSize=1" ) )
+            .andExpect( method( HttpMethod.GET ) ).andRespond( withSuccess( IOUtils.resourceToByteArray( "/org/dhis2/fhir/adapter/dhis/tracker/program/impl/latestActiveEnrollments.json" ), MediaType.APPLICATION_JSON ) );
+        mockServer.expect( requestTo( "http://localhost:8080/api/events.json?program=ur1Edk5Oe2n&programStage=ZzYYXq4fJie&enrollment=N4cVHaUjfJO&trackedEntityInstance=88737&ouMode=ACCESSIBLE&" +
+            "fields=event,orgUnit,program,enrollment,trackedEntityInstance,programStage,status,eventDate,dueDate,coordinate,lastUpdated," +
+            "dataValues%5BdataElement,value,providedElsewhere,lastUpdated,storedBy%5D&skipPaging=true" ) )
+            .andExpect( method( HttpMethod.GET ) ).andRespond( withSuccess( IOUtils.resourceToByteArray( "/org/dhis2/fhir/adapter/dhis/tracker/program/impl/enrollmentEvents.json" ), MediaType.APPLICATION_JSON ) );
+
+        Optional<? extends Enrollment> ou = service.getLatestActiveWithEvents( "ur1Edk5Oe2n", "ZzYYXq4fJie", "88737" );
+        mockServer.verify();
         Assert.assertTrue( ou.isPresent() );
 
         Assert.assertEquals( "N4cVHaUjfJO", ou.get().getId() );
-        Assert.assertEquals( "pMEnu7BjqMz", ou.get().getOrgUnitId() );
-        Assert.assertEquals( "ur1Edk5Oe2n", ou.get().getProgramId() );
         Assert.assertEquals( "tPeQKGUIowE", ou.get().getTrackedEntityInstanceId() );
-        Assert.assertEquals( EnrollmentStatus.COMPLETED, ou.get().getStatus() );
-        Assert.assertEquals( ZonedDateTime.of( 2016, 10, 27, 12, 43, 46, 663000000, ZoneId.systemDefault() ), ou.get().getIncidentDate() );
-        Assert.assertEquals( ZonedDateTime.of( 2016, 10, 30, 12, 42, 46, 663000000, ZoneId.systemDefault() ), ou.get().getEnrollmentDate() );
-        Assert.assertEquals( new Location( -70.2433, 30.34323 ), ou.get().getCoordinate() );
+        Assert.assertEquals( ZonedDateTime.of( 2017, 3, 28, 12, 43, 46, 684000000, ZoneId.systemDefault() ), ou.get().getLastUpdated() );
+        Assert.assertEquals( EnrollmentStatus.ACTIVE, ou.get().getStatus() );
+        Assert.assertEquals( 1, ou.get().getEvents().size() );
+        Assert.assertEquals( "ZcOaBfVDmAm", ou.get().getEvents().get( 0 ).getId() );
+        Assert.assertEquals( "ZzYYXq4fJie", ou.get().getEvents().get( 0 ).getProgramStageId() );
+        Assert.assertEquals( 1, ou.get().getEvents().get( 0 ).getDataValues().size() );
+    }
+
+    @Test
+    public void getLatestActiveWithEventsNotFound()
+    {
+        mockServer.expect( requestTo( "http://localhost:8080/api/enrollments.json?program=ur1Edk5Oe2n&programStatus=ACTIVE&trackedEntityInstance=88737&ouMode=ACCESSIBLE&" +
+            "fields=enrollment,orgUnit,program,trackedEntityInstance,status,enrollmentDate,incidentDate,coordinate,lastUpdated&order=lastUpdated:desc&pageSize=1" ) )
+            .andExpect( method( HttpMethod.GET ) ).andRespond( withSuccess( "{\"enrollments\":[]}", MediaType.APPLICATION_JSON ) );
+
+        Assert.assertFalse( service.getLatestActiveWithEvents( "ur1Edk5Oe2n", "ZzYYXq4fJie", "88737" ).isPresent() );
+        mockServer.verify();
     }
 
     public void create()
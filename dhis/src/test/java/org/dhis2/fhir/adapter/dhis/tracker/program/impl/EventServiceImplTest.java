@@ -28,7 +28,154 @@ package org.dhis2.fhir.adapter.dhis.tracker.program.impl;
  * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
  */
 
+import com.fasterxml.jackson.databind.module.SimpleModule;
+import org.apache.commons.io.IOUtils;
+import org.dhis2.fhir.adapter.auth.ThreadLocalAuthorizationContext;
+import org.dhis2.fhir.adapter.dhis.config.DhisImportJobConfig;
+import org.dhis2.fhir.adapter.dhis.job.impl.ImportJobServiceImpl;
+import org.dhis2.fhir.adapter.dhis.model.ImportStatus;
+import org.dhis2.fhir.adapter.dhis.model.ImportSummary;
+import org.dhis2.fhir.adapter.dhis.tracker.program.Event;
+import org.dhis2.fhir.adapter.dhis.tracker.program.EventService;
+import org.dhis2.fhir.adapter.dhis.tracker.program.EventStatus;
+import org.dhis2.fhir.adapter.jackson.ZonedDateTimeDeserializer;
+import org.dhis2.fhir.adapter.jackson.ZonedDateTimeSerializer;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.boot.web.client.RestTemplateBuilder;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.converter.json.MappingJackson2HttpMessageConverter;
+import org.springframework.test.web.client.MockRestServiceServer;
+import org.springframework.web.client.RestTemplate;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.time.ZoneId;
+import java.time.ZonedDateTime;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import static org.springframework.test.web.client.match.MockRestRequestMatchers.jsonPath;
+import static org.springframework.test.web.client.match.MockRestRequestMatchers.method;
+import static org.springframework.test.web.client.match.MockRestRequestMatchers.requestTo;
+import static org.springframework.test.web.client.response.MockRestResponseCreators.withStatus;
+import static org.springframework.test.web.client.response.MockRestResponseCreators.withSuccess;
+
+/**
+ * Unit tests of {@link EventServiceImpl}.
+ *
+ * @author volsch
+ */
 public class EventServiceImplTest
 {
+    private RestTemplate restTemplate;
+
+    private MockRestServiceServer mockServer;
+
+    private ImportJobServiceImpl importJobService;
+
+    private EventService service;
+
+    @Before
+    public void setUp()
+    {
+        final MappingJackson2HttpMessageConverter messageConverter = new MappingJackson2HttpMessageConverter();
+        final SimpleModule testModule = new SimpleModule( "TestModule" );
+        testModule.addSerializer( new ZonedDateTimeSerializer() );
+        testModule.addDeserializer( ZonedDateTime.class, new ZonedDateTimeDeserializer() );
+        messageConverter.getObjectMapper().registerModule( testModule );
+
+        restTemplate = new RestTemplateBuilder().rootUri( "http://localhost:8080/api" ).messageConverters( messageConverter ).build();
+        mockServer = MockRestServiceServer.createServer( restTemplate );
+
+        final DhisImportJobConfig importJobConfig = new DhisImportJobConfig();
+        importJobConfig.setPollIntervalMillis( 1 );
+        importJobService = new ImportJobServiceImpl( restTemplate, new ThreadLocalAuthorizationContext(), importJobConfig );
+        importJobService.postConstruct();
+        service = new EventServiceImpl( restTemplate, importJobService );
+    }
+
+    @After
+    public void tearDown()
+    {
+        importJobService.preDestroy();
+    }
+
+    @Test
+    public void createOrUpdateAll() throws IOException
+    {
+        mockServer.expect( requestTo( "http://localhost:8080/api/events.json?strategy=CREATE_AND_UPDATE&mergeMode=MERGE" ) ).andExpect( method( HttpMethod.POST ) )
+            .andExpect( jsonPath( "$.events[0].event" ).value( "Jskdsjeua1s" ) ).andExpect( jsonPath( "$.events[1].event" ).value( "Ytr4Hdsk2ls" ) )
+            .andRespond( withSuccess( IOUtils.resourceToByteArray( "/org/dhis2/fhir/adapter/dhis/tracker/program/impl/eventImportSummaries.json" ), MediaType.APPLICATION_JSON ) );
+
+        final List<ImportSummary> importSummaries = service.createOrUpdateAll( Arrays.asList( createEvent( "Jskdsjeua1s" ), createEvent( "Ytr4Hdsk2ls" ) ) );
+        mockServer.verify();
+        Assert.assertEquals( 2, importSummaries.size() );
+        Assert.assertEquals( ImportStatus.SUCCESS, importSummaries.get( 0 ).getStatus() );
+        Assert.assertEquals( "Jskdsjeua1s", importSummaries.get( 0 ).getReference() );
+        Assert.assertEquals( ImportStatus.SUCCESS, importSummaries.get( 1 ).getStatus() );
+        Assert.assertEquals( "Ytr4Hdsk2ls", importSummaries.get( 1 ).getReference() );
+    }
+
+    @Test
+    public void createOrUpdateAllConflict() throws IOException
+    {
+        mockServer.expect( requestTo( "http://localhost:8080/api/events.json?strategy=CREATE_AND_UPDATE&mergeMode=MERGE" ) ).andExpect( method( HttpMethod.POST ) )
+            .andRespond( withStatus( HttpStatus.CONFLICT ).contentType( MediaType.APPLICATION_JSON )
+                .body( IOUtils.resourceToByteArray( "/org/dhis2/fhir/adapter/dhis/tracker/program/impl/eventImportSummariesConflict.json" ) ) );
+
+        final List<ImportSummary> importSummaries = service.createOrUpdateAll( Arrays.asList( createEvent( "Jskdsjeua1s" ), createEvent( "Ytr4Hdsk2ls" ), createEvent( "Ud7sjHsk2ls" ) ) );
+        mockServer.verify();
+        Assert.assertEquals( 3, importSummaries.size() );
+        Assert.assertEquals( ImportStatus.SUCCESS, importSummaries.get( 0 ).getStatus() );
+        Assert.assertEquals( ImportStatus.ERROR, importSummaries.get( 1 ).getStatus() );
+        Assert.assertEquals( 1, importSummaries.get( 1 ).getConflicts().size() );
+        Assert.assertEquals( "jhgtJgrygffg", importSummaries.get( 1 ).getConflicts().get( 0 ).getObject() );
+        Assert.assertEquals( ImportStatus.ERROR, importSummaries.get( 2 ).getStatus() );
+        Assert.assertEquals( "Ud7sjHsk2ls", importSummaries.get( 2 ).getReference() );
+    }
+
+    @Test
+    public void createOrUpdateAllAsync() throws IOException, InterruptedException, ExecutionException, TimeoutException
+    {
+        mockServer.expect( requestTo( "http://localhost:8080/api/events.json?strategy=CREATE_AND_UPDATE&mergeMode=MERGE&async=true" ) ).andExpect( method( HttpMethod.POST ) )
+            .andExpect( jsonPath( "$.events[0].event" ).value( "Jskdsjeua1s" ) ).andExpect( jsonPath( "$.events[1].event" ).value( "Ytr4Hdsk2ls" ) )
+            .andRespond( withSuccess( IOUtils.resourceToByteArray( "/org/dhis2/fhir/adapter/dhis/tracker/program/impl/eventImportJob.json" ), MediaType.APPLICATION_JSON ) );
+        mockServer.expect( requestTo( "http://localhost:8080/api/system/tasks/EVENT_IMPORT/Ku8Hdsbd7sL" ) ).andExpect( method( HttpMethod.GET ) )
+            .andRespond( withSuccess( IOUtils.resourceToString( "/org/dhis2/fhir/adapter/dhis/tracker/program/impl/eventImportTasksRunning.json", StandardCharsets.UTF_8 ), MediaType.APPLICATION_JSON ) );
+        mockServer.expect( requestTo( "http://localhost:8080/api/system/tasks/EVENT_IMPORT/Ku8Hdsbd7sL" ) ).andExpect( method( HttpMethod.GET ) )
+            .andRespond( withSuccess( IOUtils.resourceToString( "/org/dhis2/fhir/adapter/dhis/tracker/program/impl/eventImportTasks.json", StandardCharsets.UTF_8 ), MediaType.APPLICATION_JSON ) );
+        mockServer.expect( requestTo( "http://localhost:8080/api/system/taskSummaries/EVENT_IMPORT/Ku8Hdsbd7sL" ) ).andExpect( method( HttpMethod.GET ) )
+            .andRespond( withSuccess( IOUtils.resourceToByteArray( "/org/dhis2/fhir/adapter/dhis/tracker/program/impl/eventImportTaskSummaries.json" ), MediaType.APPLICATION_JSON ) );
+
+        final List<ImportSummary> importSummaries = service.createOrUpdateAllAsync( Arrays.asList( createEvent( "Jskdsjeua1s" ), createEvent( "Ytr4Hdsk2ls" ) ) )
+            .get( 10, TimeUnit.SECONDS );
+        mockServer.verify();
+        Assert.assertEquals( 2, importSummaries.size() );
+        Assert.assertEquals( ImportStatus.SUCCESS, importSummaries.get( 0 ).getStatus() );
+        Assert.assertEquals( "Jskdsjeua1s", importSummaries.get( 0 ).getReference() );
+        Assert.assertEquals( ImportStatus.SUCCESS, importSummaries.get( 1 ).getStatus() );
+        Assert.assertEquals( "Ytr4Hdsk2ls", importSummaries.get( 1 ).getReference() );
+    }
 
-}
\ No newline at end of file
+    private static Event createEvent( String id )
+    {
+        final Event event = new Event( true );
+        event.setId( id );
+        event.setEventDate( ZonedDateTime.of( 2018, 10, 5, 22, 12, 34, 998000000, ZoneId.systemDefault() ) );
+        event.setStatus( EventStatus.ACTIVE );
+        event.setTrackedEntityInstanceId( "jdhshdfj" );
+        event.setProgramId( "kgdyunhUgg" );
+        event.setProgramStageId( "gjddShhdfgh" );
+        event.setOrgUnitId( "jhgtJgrygffg" );
+        event.setEnrollmentId( "jghhffJgfjjhfg" );
+        return event;
+    }
+}
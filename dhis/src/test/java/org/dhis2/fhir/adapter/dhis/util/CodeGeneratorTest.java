@@ -0,0 +1,66 @@
+package org.dhis2.fhir.adapter.dhis.util;
+
+/*
+ * Copyright (c) 2004-2018, University of Oslo
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * Redistributions of source code must retain the above copyright notice, this
+ * list of conditions and the following disclaimer.
+ *
+ * Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation
+ * and/or other materials provided with the distribution.
+ * Neither the name of the HISP project nor the names of its contributors may
+ * be used to endorse or promote products derived from this software without
+ * specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * Unit tests of {@link CodeGenerator}.
+ *
+ * @author volsch
+ */
+public class CodeGeneratorTest
+{
+    @Test
+    public void generateId()
+    {
+        final Set<String> ids = new HashSet<>();
+        for ( int i = 0; i < 1000; i++ )
+        {
+            final String id = CodeGenerator.generateId();
+            Assert.assertTrue( id, CodeGenerator.isValidId( id ) );
+            ids.add( id );
+        }
+        Assert.assertEquals( 1000, ids.size() );
+    }
+
+    @Test
+    public void isValidId()
+    {
+        Assert.assertTrue( CodeGenerator.isValidId( "Jskdsjeua1s" ) );
+        Assert.assertFalse( CodeGenerator.isValidId( "1skdsjeua1s" ) );
+        Assert.assertFalse( CodeGenerator.isValidId( "Jskdsjeua1" ) );
+        Assert.assertFalse( CodeGenerator.isValidId( "Jskdsj-ua1s" ) );
+        Assert.assertFalse( CodeGenerator.isValidId( null ) );
+    }
+}
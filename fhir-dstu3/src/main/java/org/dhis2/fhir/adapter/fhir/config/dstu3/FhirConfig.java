@@ -29,15 +29,21 @@ package org.dhis2.fhir.adapter.fhir.config.dstu3;
  */
 
 import ca.uhn.fhir.context.FhirContext;
+import org.apache.http.impl.client.CloseableHttpClient;
+import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 
+import javax.annotation.Nonnull;
+
 @Configuration
 public class FhirConfig
 {
     @Bean
-    protected FhirContext fhirContextDstu3()
+    protected FhirContext fhirContextDstu3( @Nonnull @Qualifier( "remoteFhirHttpClient" ) CloseableHttpClient remoteFhirHttpClient )
     {
-        return FhirContext.forDstu3();
+        final FhirContext fhirContext = FhirContext.forDstu3();
+        fhirContext.getRestfulClientFactory().setHttpClient( remoteFhirHttpClient );
+        return fhirContext;
     }
 }
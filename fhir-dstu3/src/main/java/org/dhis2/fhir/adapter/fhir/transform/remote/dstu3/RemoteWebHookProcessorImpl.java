@@ -34,15 +34,34 @@ import ca.uhn.fhir.rest.api.CacheControlDirective;
 import ca.uhn.fhir.rest.client.api.IGenericClient;
 import ca.uhn.fhir.rest.gclient.IQuery;
 import ca.uhn.fhir.rest.param.DateRangeParam;
+import ca.uhn.fhir.rest.server.exceptions.ResourceGoneException;
+import ca.uhn.fhir.rest.server.exceptions.ResourceNotFoundException;
+import org.apache.commons.lang3.StringUtils;
+import org.dhis2.fhir.adapter.dhis.DhisConflictException;
+import org.dhis2.fhir.adapter.dhis.DhisImportTimeoutException;
+import org.dhis2.fhir.adapter.dhis.DhisImportUnsuccessfulException;
 import org.dhis2.fhir.adapter.fhir.metadata.model.RemoteSubscriptionResource;
+import org.dhis2.fhir.adapter.fhir.remote.AdaptivePageSizeController;
+import org.dhis2.fhir.adapter.fhir.remote.ProcessedRemoteResource;
+import org.dhis2.fhir.adapter.fhir.remote.ProcessedRemoteResourceRepository;
 import org.dhis2.fhir.adapter.fhir.remote.RemoteWebHookProcessor;
-import org.dhis2.fhir.adapter.fhir.repository.FhirClientUtils;
+import org.dhis2.fhir.adapter.fhir.remote.RemoteWebHookWorkerPool;
+import org.dhis2.fhir.adapter.fhir.remote.config.RemoteWebHookConfig;
+import org.dhis2.fhir.adapter.fhir.repository.FhirClientRegistry;
 import org.dhis2.fhir.adapter.fhir.repository.FhirRepository;
+import org.dhis2.fhir.adapter.fhir.repository.FhirRepositoryBatch;
+import org.dhis2.fhir.adapter.fhir.repository.ResponseSizeInterceptor;
+import org.dhis2.fhir.adapter.fhir.repository.config.DhisWriteBatchConfig;
+import org.dhis2.fhir.adapter.fhir.script.ScriptException;
+import org.dhis2.fhir.adapter.fhir.transform.TransformerException;
+import org.dhis2.fhir.adapter.util.ExceptionUtils;
 import org.hl7.fhir.dstu3.model.Bundle;
+import org.hl7.fhir.dstu3.model.IdType;
 import org.hl7.fhir.dstu3.model.Immunization;
 import org.hl7.fhir.dstu3.model.MedicationRequest;
 import org.hl7.fhir.dstu3.model.Observation;
 import org.hl7.fhir.dstu3.model.Patient;
+import org.hl7.fhir.dstu3.model.Resource;
 import org.hl7.fhir.dstu3.model.ResourceType;
 import org.hl7.fhir.dstu3.model.codesystems.ResourceTypes;
 import org.hl7.fhir.exceptions.FHIRException;
@@ -52,22 +71,39 @@ import org.hl7.fhir.instance.model.api.IIdType;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.http.HttpStatus;
 import org.springframework.stereotype.Component;
+import org.springframework.web.client.HttpClientErrorException;
 
 import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
 import java.time.LocalDateTime;
 import java.time.ZoneId;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.Date;
-import java.util.HashSet;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
 import java.util.Map;
-import java.util.Objects;
 import java.util.Set;
-import java.util.UUID;
-import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReferenceArray;
 import java.util.function.BiFunction;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.function.Supplier;
 import java.util.stream.Collectors;
 
 /**
@@ -81,20 +117,66 @@ public class RemoteWebHookProcessorImpl implements RemoteWebHookProcessor
 
     private final FhirRepository fhirRepository;
 
-    private final Map<UUID, Set<ProcessedResource>> processedResourcesByResourceId = new ConcurrentHashMap<>();
+    private final FhirClientRegistry fhirClientRegistry;
+
+    private final ProcessedRemoteResourceRepository processedRemoteResourceRepository;
+
+    private final AdaptivePageSizeController pageSizeController;
+
+    private final RemoteWebHookConfig remoteWebHookConfig;
+
+    private final DhisWriteBatchConfig dhisWriteBatchConfig;
 
     private final FhirContext fhirContext;
 
-    public RemoteWebHookProcessorImpl( @Nonnull FhirRepository fhirRepository, @Nonnull @Qualifier( "fhirContextDstu3" ) FhirContext fhirContext )
+    private ExecutorService prefetchExecutor;
+
+    private ExecutorService transformationExecutor;
+
+    public RemoteWebHookProcessorImpl( @Nonnull FhirRepository fhirRepository, @Nonnull FhirClientRegistry fhirClientRegistry,
+        @Nonnull ProcessedRemoteResourceRepository processedRemoteResourceRepository, @Nonnull AdaptivePageSizeController pageSizeController,
+        @Nonnull RemoteWebHookConfig remoteWebHookConfig, @Nonnull DhisWriteBatchConfig dhisWriteBatchConfig, @Nonnull @Qualifier( "fhirContextDstu3" ) FhirContext fhirContext )
     {
         this.fhirRepository = fhirRepository;
+        this.fhirClientRegistry = fhirClientRegistry;
+        this.processedRemoteResourceRepository = processedRemoteResourceRepository;
+        this.pageSizeController = pageSizeController;
+        this.remoteWebHookConfig = remoteWebHookConfig;
+        this.dhisWriteBatchConfig = dhisWriteBatchConfig;
         this.fhirContext = fhirContext;
     }
 
+    @PostConstruct
+    public void postConstruct()
+    {
+        if ( remoteWebHookConfig.isPipelined() )
+        {
+            // each worker thread prefetches at most one page at a time
+            prefetchExecutor = Executors.newFixedThreadPool( remoteWebHookConfig.getPoolSize(),
+                new RemoteWebHookWorkerPool.WorkerThreadFactory( "Remote Web Hook Prefetch Thread " ) );
+            transformationExecutor = Executors.newFixedThreadPool( remoteWebHookConfig.getTransformationPoolSize(),
+                new RemoteWebHookWorkerPool.WorkerThreadFactory( "Remote Web Hook Transformation Thread " ) );
+        }
+    }
+
+    @PreDestroy
+    public void preDestroy()
+    {
+        if ( prefetchExecutor != null )
+        {
+            prefetchExecutor.shutdownNow();
+        }
+        if ( transformationExecutor != null )
+        {
+            transformationExecutor.shutdownNow();
+        }
+    }
+
     @Nonnull
     public LocalDateTime processPatients( @Nonnull RemoteSubscriptionResource subscriptionResource )
     {
-        return processResource( subscriptionResource, Patient.class, ResourceType.Patient, Collections.singletonList( Patient.INCLUDE_ORGANIZATION ), ( p, resourcesById ) -> {
+        return processResource( subscriptionResource, Patient.class, ResourceType.Patient, Collections.singletonList( Patient.INCLUDE_ORGANIZATION ),
+            Patient::getIdElement, ( p, resourcesById ) -> {
             if ( p.hasManagingOrganization() && (p.getManagingOrganization().getResource() == null) )
             {
                 p.getManagingOrganization().setResource(
@@ -107,7 +189,8 @@ public class RemoteWebHookProcessorImpl implements RemoteWebHookProcessor
     @Nonnull
     public LocalDateTime processImmunizations( @Nonnull RemoteSubscriptionResource subscriptionResource )
     {
-        return processResource( subscriptionResource, Immunization.class, ResourceType.Immunization, Arrays.asList( Immunization.INCLUDE_PATIENT, Immunization.INCLUDE_LOCATION, Immunization.INCLUDE_PRACTITIONER ), ( i, resourcesById ) -> {
+        return processResource( subscriptionResource, Immunization.class, ResourceType.Immunization, Arrays.asList( Immunization.INCLUDE_PATIENT, Immunization.INCLUDE_LOCATION, Immunization.INCLUDE_PRACTITIONER ),
+            i -> i.hasPatient() ? i.getPatient().getReferenceElement() : null, ( i, resourcesById ) -> {
             if ( i.hasPatient() && (i.getPatient().getResource() == null) )
             {
                 i.getPatient().setResource(
@@ -130,7 +213,8 @@ public class RemoteWebHookProcessorImpl implements RemoteWebHookProcessor
     @Nonnull
     public LocalDateTime processObservations( @Nonnull RemoteSubscriptionResource subscriptionResource )
     {
-        return processResource( subscriptionResource, Observation.class, ResourceType.Observation, Arrays.asList( Observation.INCLUDE_SUBJECT, Observation.INCLUDE_PERFORMER ), ( i, resourcesById ) -> {
+        return processResource( subscriptionResource, Observation.class, ResourceType.Observation, Arrays.asList( Observation.INCLUDE_SUBJECT, Observation.INCLUDE_PERFORMER ),
+            i -> i.hasSubject() ? i.getSubject().getReferenceElement() : null, ( i, resourcesById ) -> {
             if ( i.hasSubject() && (i.getSubject().getResource() == null) )
             {
                 if ( !ResourceTypes.PATIENT.toCode().equals( i.getSubject().getReferenceElement().getResourceType() ) )
@@ -154,7 +238,7 @@ public class RemoteWebHookProcessorImpl implements RemoteWebHookProcessor
     {
         return processResource( subscriptionResource, MedicationRequest.class, ResourceType.MedicationRequest, Arrays.asList(
             MedicationRequest.INCLUDE_SUBJECT, MedicationRequest.INCLUDE_MEDICATION, MedicationRequest.INCLUDE_REQUESTER ),
-            ( i,
+            i -> i.hasSubject() ? i.getSubject().getReferenceElement() : null, ( i,
                 resourcesById ) -> {
                 if ( i.hasSubject() && (i.getSubject().getResource() == null) )
                 {
@@ -196,71 +280,482 @@ public class RemoteWebHookProcessorImpl implements RemoteWebHookProcessor
             } );
     }
 
-    @SuppressWarnings( "unchecked" )
+    /**
+     * Processes all resources of the specified remote subscription resource that have
+     * been updated since the last processing. The resources are queried page by page
+     * in ascending order of their last updated timestamp. If processing is pipelined,
+     * the next page is fetched while the current page is transformed, and the resources
+     * of a page are transformed concurrently. Resources that reference the same patient
+     * are assigned to the same partition. The partitions of a page are transformed
+     * concurrently, whereas the resources of a partition are transformed in the order
+     * they have been returned. In any case the resources of a page are completed in
+     * the order they have been returned. If fetching a subsequent page
+     * fails, the last updated timestamp of the last completed resource is returned, so
+     * that processing can continue from there.
+     * <p>
+     * The cursor is advanced only until the first resource that could not be completed.
+     * Subsequent resources are still processed and are recorded as processed, so that
+     * they are skipped when they are queried again from the cursor. The failed attempts
+     * to process a resource version that will not succeed when they are retried are
+     * counted. When the configured maximum number of these failures has been reached,
+     * the cursor advances past the resource version and it is parked. Parked resources
+     * are replayed before the resources are queried.
+     * <p>
+     * The resources are queried from the cursor of the subscription resource. The cursor
+     * contains the last updated timestamp of the last completed resource and the IDs of
+     * all completed resources with exactly this timestamp. These resources are skipped
+     * when the query is repeated. The tolerance of the remote subscription is applied
+     * only if no cursor is available yet. The cursor is updated on the subscription
+     * resource after every page, but it is persisted only when the caller updates the
+     * processing state of the subscription resource after all pages have been processed.
+     */
     protected <T extends IBaseResource> LocalDateTime processResource( @Nonnull RemoteSubscriptionResource subscriptionResource,
-        @Nonnull Class<T> resourceClass, @Nonnull ResourceType resourceType, @Nonnull Collection<Include> includes, @Nonnull BiFunction<T, Map<IIdType, IBaseResource>, Boolean> function )
+        @Nonnull Class<T> resourceClass, @Nonnull ResourceType resourceType, @Nonnull Collection<Include> includes,
+        @Nonnull Function<T, IIdType> patientReferenceFunction, @Nonnull BiFunction<T, Map<IIdType, IBaseResource>, Boolean> function )
     {
-        final Date fromLastUpdated = Date.from( subscriptionResource.getRemoteLastUpdate().minusMinutes(
-            subscriptionResource.getRemoteSubscription().getToleranceMinutes() ).atZone( ZoneId.systemDefault() ).toInstant() );
-        final IGenericClient client = FhirClientUtils.createClient( fhirContext, subscriptionResource.getRemoteSubscription() );
+        final ResourceCursor initialCursor = ResourceCursor.create( subscriptionResource );
+        final ResourceCursor cursor = ResourceCursor.create( subscriptionResource );
+        final Date fromLastUpdated = (initialCursor.getLastUpdated() == null) ? Date.from( subscriptionResource.getRemoteLastUpdate().minusMinutes(
+            subscriptionResource.getRemoteSubscription().getToleranceMinutes() ).atZone( ZoneId.systemDefault() ).toInstant() ) : initialCursor.getLastUpdated();
+        final IGenericClient client = fhirClientRegistry.getClient( fhirContext, subscriptionResource.getRemoteSubscription() );
+        replayParked( subscriptionResource, client, resourceClass, function );
 
-        final Set<ProcessedResource> currentProcessedResources = new HashSet<>();
         final LocalDateTime lastUpdated = LocalDateTime.now();
+        final FhirRepositoryBatch batch = dhisWriteBatchConfig.isEnabled() ? fhirRepository.createBatch( subscriptionResource ) : null;
+        Date completedLastUpdated = null;
+        boolean advancing = true;
         logger.info( "Querying for resource type {} of subscription resource {}.", resourceType, subscriptionResource.getId() );
-        IQuery<IBaseBundle> query = addAllIncludes( client.search().forResource( resourceClass ), includes );
-        Bundle result = (Bundle) query.cacheControl( new CacheControlDirective().setNoCache( true ) ).count( 1000 )
-            .lastUpdated( new DateRangeParam( fromLastUpdated, null ) ).sort().ascending( "_lastUpdated" ).execute();
+        final IQuery<IBaseBundle> query = addAllIncludes( client.search().forResource( resourceClass ), includes );
+        final int pageSize = pageSizeController.getPageSize( subscriptionResource.getRemoteSubscription() );
+        Bundle result = call( createPageLoader( () -> (Bundle) query.cacheControl( new CacheControlDirective().setNoCache( true ) ).count( pageSize )
+            .lastUpdated( new DateRangeParam( fromLastUpdated, null ) ).sort().ascending( "_lastUpdated" ).execute(), resourceType, subscriptionResource ) );
         do
         {
             logger.info( "Queried {} entries for resource type {} of subscription resource {}.", result.getEntry().size(), resourceType, subscriptionResource.getId() );
+            final Future<Bundle> nextResult = ((prefetchExecutor == null) || (result.getLink( Bundle.LINK_NEXT ) == null)) ? null :
+                prefetchExecutor.submit( createNextPageLoader( client, result, resourceType, subscriptionResource ) );
 
-            final Set<ProcessedResource> lastProcessedResources = processedResourcesByResourceId.getOrDefault(
-                subscriptionResource.getId(), new HashSet<>() );
-            final Map<IIdType, IBaseResource> resourcesById = result.getEntry().stream().map( Bundle.BundleEntryComponent::getResource )
-                .collect( Collectors.toMap( r -> r.getIdElement().toUnqualifiedVersionless(), r -> r ) );
+            try
+            {
+                final Map<IIdType, IBaseResource> resourcesById = result.getEntry().stream().map( Bundle.BundleEntryComponent::getResource )
+                    .collect( Collectors.toMap( r -> r.getIdElement().toUnqualifiedVersionless(), r -> r ) );
+                final Map<IBaseResource, ProcessedRemoteResource> processedResourcesByResource = new HashMap<>();
+                result.getEntry().stream().map( Bundle.BundleEntryComponent::getResource ).filter( r -> r.getResourceType() == resourceType ).forEach( r -> {
+                    final ProcessedRemoteResource pr = ProcessedRemoteResource.create( r.getIdElement().toUnqualifiedVersionless().getValue(),
+                        r.getMeta().getVersionId(), r.getMeta().getLastUpdated() );
+                    if ( pr != null )
+                    {
+                        processedResourcesByResource.put( r, pr );
+                    }
+                } );
+                final Set<ProcessedRemoteResource> lastProcessedResources = processedRemoteResourceRepository.findProcessed(
+                    subscriptionResource.getId(), processedResourcesByResource.values() );
+                final List<ProcessedRemoteResource> currentProcessedResources = new ArrayList<>();
 
-            result.getEntry().stream().map( Bundle.BundleEntryComponent::getResource )
-                .filter( r -> r.getResourceType() == resourceType ).forEach( r -> {
-                final ProcessedResource pr = new ProcessedResource(
-                    r.getIdElement().toUnqualifiedVersionless().asStringValue(), r.getMeta().getLastUpdated() );
-                if ( !lastProcessedResources.contains( pr ) )
+                final List<Resource> resources = result.getEntry().stream().map( Bundle.BundleEntryComponent::getResource )
+                    .filter( r -> r.getResourceType() == resourceType ).filter( r -> !initialCursor.isCompleted( r ) ).collect( Collectors.toList() );
+                final List<Callable<Boolean>> transformations = new ArrayList<>();
+                final AtomicReferenceArray<CompletableFuture<Boolean>> writeCompletions = new AtomicReferenceArray<>( resources.size() );
+                for ( int i = 0; i < resources.size(); i++ )
                 {
-                    logger.info( "Processing {} of subscription resource {}.", r.getIdElement().toUnqualifiedVersionless().getValue(), subscriptionResource.getId() );
-                    try
+                    final Resource r = resources.get( i );
+                    final int index = i;
+                    final Consumer<IBaseResource> saver = (batch == null) ? sr -> fhirRepository.save( subscriptionResource, sr ) :
+                        sr -> writeCompletions.set( index, batch.save( sr, getPartition( resources, index, patientReferenceFunction ) ) );
+                    final ProcessedRemoteResource pr = processedResourcesByResource.get( r );
+                    transformations.add( ((pr == null) || !lastProcessedResources.contains( pr )) ?
+                        () -> processEntry( subscriptionResource, r, resourcesById, function, saver ) : () -> Boolean.TRUE );
+                }
+                final List<? extends Future<Boolean>> completions = (transformationExecutor == null) ?
+                    transformations.stream().map( RemoteWebHookProcessorImpl::complete ).collect( Collectors.toList() ) :
+                    submitPartitioned( resources, transformations, patientReferenceFunction );
+                if ( batch != null )
+                {
+                    // pending writes of the page are flushed when all resources of the page have been transformed
+                    completions.forEach( RemoteWebHookProcessorImpl::getFailure );
+                    batch.flush();
+                }
+                // sequencer: resources are completed in the order they have been returned by the query
+                for ( int i = 0; i < resources.size(); i++ )
+                {
+                    final Resource r = resources.get( i );
+                    final ProcessedRemoteResource pr = processedResourcesByResource.get( r );
+                    final CompletableFuture<Boolean> writeCompletion = writeCompletions.get( i );
+                    final boolean alreadyProcessed = (pr != null) && lastProcessedResources.contains( pr );
+                    Throwable failure = getFailure( completions.get( i ) );
+                    if ( (failure == null) && (writeCompletion != null) )
                     {
-                        if ( Boolean.TRUE.equals( function.apply( (T) r, resourcesById ) ) )
-                        {
-                            fhirRepository.save( subscriptionResource, r );
-                            logger.info( "Processed {} of subscription resource {}.", r.getIdElement().toUnqualifiedVersionless().getValue(), subscriptionResource.getId() );
-                        }
-                        else
-                        {
-                            logger.info( "Skipped {} of subscription resource {}.", r.getIdElement().toUnqualifiedVersionless().getValue(), subscriptionResource.getId() );
-                        }
+                        failure = getFailure( writeCompletion );
+                    }
+                    boolean completed = (failure == null);
+                    if ( completed && !alreadyProcessed && (pr != null) )
+                    {
+                        currentProcessedResources.add( pr );
+                    }
+                    if ( !completed && !alreadyProcessed && isFailureLimitReached( subscriptionResource, r, pr, failure ) )
+                    {
+                        // the cursor must not be blocked forever by a resource that always fails
+                        completed = true;
+                    }
+                    if ( advancing && !completed && !alreadyProcessed )
+                    {
+                        logger.info( "Cursor of subscription resource {} stops before {} that could not be completed.",
+                            subscriptionResource.getId(), r.getIdElement().toUnqualifiedVersionless().getValue() );
+                        advancing = false;
                     }
-                    catch ( Throwable e )
+                    if ( advancing )
                     {
-                        logger.error( "Processing {} of subscription resource {} caused an error.", r.getIdElement().toUnqualifiedVersionless().getValue(), subscriptionResource.getId(), e );
+                        if ( r.getMeta().getLastUpdated() != null )
+                        {
+                            completedLastUpdated = r.getMeta().getLastUpdated();
+                        }
+                        cursor.advance( r );
                     }
                 }
-                currentProcessedResources.add( pr );
-            } );
+                processedRemoteResourceRepository.saveAll( subscriptionResource.getId(), currentProcessedResources );
+                cursor.update( subscriptionResource );
+            }
+            catch ( RuntimeException | Error e )
+            {
+                if ( nextResult != null )
+                {
+                    nextResult.cancel( true );
+                }
+                throw e;
+            }
 
-            if ( result.getLink( Bundle.LINK_NEXT ) == null )
+            try
             {
-                result = null;
+                if ( nextResult != null )
+                {
+                    result = getResult( nextResult );
+                }
+                else if ( result.getLink( Bundle.LINK_NEXT ) == null )
+                {
+                    result = null;
+                }
+                else
+                {
+                    result = call( createNextPageLoader( client, result, resourceType, subscriptionResource ) );
+                }
             }
-            else
+            catch ( RuntimeException e )
             {
-                logger.info( "Querying next for resource type {} of subscription resource {}.", resourceType, subscriptionResource.getId() );
-                // load next page
-                result = client.loadPage().next( result ).execute();
+                if ( completedLastUpdated == null )
+                {
+                    throw e;
+                }
+                logger.error( "Querying next for resource type {} of subscription resource {} caused an error. Resources have been completed until {}.",
+                    resourceType, subscriptionResource.getId(), completedLastUpdated, e );
+                return getCompletedLastUpdate( subscriptionResource, completedLastUpdated );
             }
         }
         while ( result != null );
-        processedResourcesByResourceId.put( subscriptionResource.getId(), currentProcessedResources );
+        processedRemoteResourceRepository.deleteExpired( subscriptionResource.getId(), remoteWebHookConfig.getProcessedResourceRetentionMinutes() );
+
+        // resources that could not be completed must be queried again when the subscription resource is processed the next time
+        return advancing ? lastUpdated : getCompletedLastUpdate( subscriptionResource, completedLastUpdated );
+    }
+
+    /**
+     * Records a failed attempt to process the specified resource. Failures that may not occur
+     * again when processing is retried (e.g. unavailable servers and timeouts) are not counted.
+     * When the maximum number of other failures of the resource version has been reached, the
+     * resource version is parked, so that it can be replayed later.
+     *
+     * @return <code>true</code> if the resource version has been parked, <code>false</code> if
+     * processing should be retried.
+     */
+    protected boolean isFailureLimitReached( @Nonnull RemoteSubscriptionResource subscriptionResource, @Nonnull Resource r,
+        @Nullable ProcessedRemoteResource pr, @Nonnull Throwable failure )
+    {
+        final String resourceId = r.getIdElement().toUnqualifiedVersionless().getValue();
+        if ( isRetryable( failure ) )
+        {
+            logger.info( "Processing {} of subscription resource {} failed and will be retried.", resourceId, subscriptionResource.getId() );
+            return false;
+        }
+        // a resource without version is counted as a single version
+        final ProcessedRemoteResource failedResource = (pr == null) ? ProcessedRemoteResource.createUnversioned( resourceId ) : pr;
+        final int failedCount = processedRemoteResourceRepository.recordFailure( subscriptionResource.getId(), failedResource, resourceId );
+        if ( failedCount < remoteWebHookConfig.getMaxResourceFailures() )
+        {
+            return false;
+        }
+        processedRemoteResourceRepository.park( subscriptionResource.getId(), failedResource );
+        logger.error( "Processing {} of subscription resource {} failed {} times. Resource version has been parked.",
+            resourceId, subscriptionResource.getId(), failedCount );
+        return true;
+    }
+
+    /**
+     * @return <code>true</code> if the specified failure may not occur again when processing is retried,
+     * <code>false</code> if the failure is caused by the processed data (e.g. conflicts and transformation errors).
+     */
+    protected boolean isRetryable( @Nonnull Throwable failure )
+    {
+        if ( ExceptionUtils.findCause( failure, DhisImportTimeoutException.class ) != null )
+        {
+            return true;
+        }
+        if ( ExceptionUtils.findCause( failure, TransformerException.class, ScriptException.class, DhisConflictException.class, DhisImportUnsuccessfulException.class ) != null )
+        {
+            return false;
+        }
+        final HttpClientErrorException clientErrorException = (HttpClientErrorException) ExceptionUtils.findCause( failure, HttpClientErrorException.class );
+        return (clientErrorException == null) || !HttpStatus.CONFLICT.equals( clientErrorException.getStatusCode() );
+    }
+
+    /**
+     * Replays the parked resources of the specified subscription resource whose last failed
+     * attempt has been recorded before the configured number of minutes. The current version of
+     * a parked resource is read and saved individually. If it fails again, the failed attempt is
+     * recorded, so that it is replayed again after the configured number of minutes.
+     */
+    protected <T extends IBaseResource> void replayParked( @Nonnull RemoteSubscriptionResource subscriptionResource, @Nonnull IGenericClient client,
+        @Nonnull Class<T> resourceClass, @Nonnull BiFunction<T, Map<IIdType, IBaseResource>, Boolean> function )
+    {
+        for ( final String resourceId : processedRemoteResourceRepository.findParked( subscriptionResource.getId(), remoteWebHookConfig.getParkedResourceReplayMinutes() ) )
+        {
+            logger.info( "Replaying parked {} of subscription resource {}.", resourceId, subscriptionResource.getId() );
+            final T resource;
+            try
+            {
+                resource = client.read().resource( resourceClass ).withId( new IdType( resourceId ) ).execute();
+            }
+            catch ( ResourceNotFoundException | ResourceGoneException e )
+            {
+                logger.info( "Parked {} of subscription resource {} does no longer exist.", resourceId, subscriptionResource.getId() );
+                processedRemoteResourceRepository.deleteParked( subscriptionResource.getId(), resourceId );
+                continue;
+            }
+
+            final ProcessedRemoteResource pr = ProcessedRemoteResource.create( resourceId, resource.getMeta().getVersionId(), resource.getMeta().getLastUpdated() );
+            try
+            {
+                processEntry( subscriptionResource, resource, Collections.emptyMap(), function, sr -> fhirRepository.save( subscriptionResource, sr ) );
+            }
+            catch ( RuntimeException e )
+            {
+                processedRemoteResourceRepository.recordFailure( subscriptionResource.getId(),
+                    (pr == null) ? ProcessedRemoteResource.createUnversioned( resourceId ) : pr, resourceId );
+                continue;
+            }
+            if ( pr == null )
+            {
+                processedRemoteResourceRepository.deleteParked( subscriptionResource.getId(), resourceId );
+            }
+            else
+            {
+                processedRemoteResourceRepository.saveAll( subscriptionResource.getId(), Collections.singletonList( pr ) );
+            }
+        }
+    }
 
-        return lastUpdated;
+    /**
+     * @return the last updated timestamp of the last completed resource, or the current last update of the
+     * subscription resource if no resource has been completed or if it is more recent.
+     */
+    @Nonnull
+    protected LocalDateTime getCompletedLastUpdate( @Nonnull RemoteSubscriptionResource subscriptionResource, @Nullable Date completedLastUpdated )
+    {
+        if ( completedLastUpdated == null )
+        {
+            return subscriptionResource.getRemoteLastUpdate();
+        }
+        final LocalDateTime completedLocalLastUpdated = LocalDateTime.ofInstant( completedLastUpdated.toInstant(), ZoneId.systemDefault() );
+        return completedLocalLastUpdated.isAfter( subscriptionResource.getRemoteLastUpdate() ) ? completedLocalLastUpdated : subscriptionResource.getRemoteLastUpdate();
+    }
+
+    /**
+     * Submits the transformations of the specified resources to the transformation
+     * executor. The resources are partitioned by the patient they reference. Each
+     * partition is transformed by a single task in the order of the resources, so that
+     * resources of the same patient are never transformed concurrently. Resources that
+     * do not reference a patient are assigned to a partition of their own.
+     *
+     * @return the completions of the transformations in the order of the specified resources.
+     */
+    @Nonnull
+    protected <T extends IBaseResource> List<CompletableFuture<Boolean>> submitPartitioned( @Nonnull List<Resource> resources,
+        @Nonnull List<Callable<Boolean>> transformations, @Nonnull Function<T, IIdType> patientReferenceFunction )
+    {
+        final List<CompletableFuture<Boolean>> completions = new ArrayList<>();
+        final Map<String, List<Integer>> indexesByPartition = new LinkedHashMap<>();
+        for ( int i = 0; i < resources.size(); i++ )
+        {
+            completions.add( new CompletableFuture<>() );
+            indexesByPartition.computeIfAbsent( getPartition( resources, i, patientReferenceFunction ), k -> new ArrayList<>() ).add( i );
+        }
+        indexesByPartition.values().forEach( indexes -> transformationExecutor.execute( () -> {
+            for ( final int i : indexes )
+            {
+                try
+                {
+                    completions.get( i ).complete( transformations.get( i ).call() );
+                }
+                catch ( Throwable e )
+                {
+                    completions.get( i ).completeExceptionally( e );
+                }
+            }
+        } ) );
+        return completions;
+    }
+
+    /**
+     * @return the partition of the resource with the specified index, which is the patient
+     * the resource references or a partition of its own if it does not reference a patient.
+     */
+    @Nonnull
+    @SuppressWarnings( "unchecked" )
+    protected <T extends IBaseResource> String getPartition( @Nonnull List<Resource> resources, int index, @Nonnull Function<T, IIdType> patientReferenceFunction )
+    {
+        final IIdType patientReference = patientReferenceFunction.apply( (T) resources.get( index ) );
+        return ((patientReference == null) || !patientReference.hasIdPart()) ? ("#" + index) :
+            patientReference.toUnqualifiedVersionless().getValue();
+    }
+
+    /**
+     * Transforms and saves a single resource. The resource is saved by the specified saver,
+     * which may only queue the writes of the resulting DHIS2 resources.
+     *
+     * @return <code>true</code> if the resource has been processed or skipped.
+     * @throws RuntimeException if processing caused an error.
+     * @throws Error            if processing caused an error.
+     */
+    @SuppressWarnings( "unchecked" )
+    protected <T extends IBaseResource> boolean processEntry( @Nonnull RemoteSubscriptionResource subscriptionResource, @Nonnull IBaseResource r,
+        @Nonnull Map<IIdType, IBaseResource> resourcesById, @Nonnull BiFunction<T, Map<IIdType, IBaseResource>, Boolean> function,
+        @Nonnull Consumer<IBaseResource> saver )
+    {
+        logger.info( "Processing {} of subscription resource {}.", r.getIdElement().toUnqualifiedVersionless().getValue(), subscriptionResource.getId() );
+        try
+        {
+            if ( Boolean.TRUE.equals( function.apply( (T) r, resourcesById ) ) )
+            {
+                saver.accept( r );
+                logger.info( "Processed {} of subscription resource {}.", r.getIdElement().toUnqualifiedVersionless().getValue(), subscriptionResource.getId() );
+            }
+            else
+            {
+                logger.info( "Skipped {} of subscription resource {}.", r.getIdElement().toUnqualifiedVersionless().getValue(), subscriptionResource.getId() );
+            }
+            return true;
+        }
+        catch ( Throwable e )
+        {
+            logger.error( "Processing {} of subscription resource {} caused an error.", r.getIdElement().toUnqualifiedVersionless().getValue(), subscriptionResource.getId(), e );
+            throw e;
+        }
+    }
+
+    @Nonnull
+    protected Callable<Bundle> createNextPageLoader( @Nonnull IGenericClient client, @Nonnull Bundle result, @Nonnull ResourceType resourceType,
+        @Nonnull RemoteSubscriptionResource subscriptionResource )
+    {
+        return createPageLoader( () -> {
+            logger.info( "Querying next for resource type {} of subscription resource {}.", resourceType, subscriptionResource.getId() );
+            // load next page
+            return client.loadPage().next( result ).execute();
+        }, resourceType, subscriptionResource );
+    }
+
+    /**
+     * Creates a page loader that records the latency and size of the loaded page
+     * for adaptive paging.
+     */
+    @Nonnull
+    protected Callable<Bundle> createPageLoader( @Nonnull Supplier<Bundle> loader, @Nonnull ResourceType resourceType, @Nonnull RemoteSubscriptionResource subscriptionResource )
+    {
+        return () -> {
+            final long startNanos = System.nanoTime();
+            final Bundle bundle = loader.get();
+            pageSizeController.recordPage( subscriptionResource.getRemoteSubscription(),
+                (int) bundle.getEntry().stream().filter( e -> e.getResource().getResourceType() == resourceType ).count(),
+                TimeUnit.NANOSECONDS.toMillis( System.nanoTime() - startNanos ), ResponseSizeInterceptor.getLastContentLength() );
+            return bundle;
+        };
+    }
+
+    private static <V> V call( @Nonnull Callable<V> callable )
+    {
+        try
+        {
+            return callable.call();
+        }
+        catch ( RuntimeException e )
+        {
+            throw e;
+        }
+        catch ( Exception e )
+        {
+            throw new IllegalStateException( "Unexpected checked exception.", e );
+        }
+    }
+
+    @Nonnull
+    private static <V> CompletableFuture<V> complete( @Nonnull Callable<V> callable )
+    {
+        final CompletableFuture<V> completion = new CompletableFuture<>();
+        try
+        {
+            completion.complete( callable.call() );
+        }
+        catch ( Throwable e )
+        {
+            completion.completeExceptionally( e );
+        }
+        return completion;
+    }
+
+    /**
+     * Waits for the specified future.
+     *
+     * @return the failure with which the future has been completed or <code>null</code> if it has been completed successfully.
+     */
+    @Nullable
+    private static Throwable getFailure( @Nonnull Future<?> future )
+    {
+        try
+        {
+            future.get();
+            return null;
+        }
+        catch ( InterruptedException e )
+        {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException( "Processing of remote resources has been interrupted.", e );
+        }
+        catch ( ExecutionException e )
+        {
+            return e.getCause();
+        }
+    }
+
+    private static <V> V getResult( @Nonnull Future<V> future )
+    {
+        try
+        {
+            return future.get();
+        }
+        catch ( InterruptedException e )
+        {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException( "Processing of remote resources has been interrupted.", e );
+        }
+        catch ( ExecutionException e )
+        {
+            if ( e.getCause() instanceof RuntimeException )
+            {
+                throw (RuntimeException) e.getCause();
+            }
+            if ( e.getCause() instanceof Error )
+            {
+                throw (Error) e.getCause();
+            }
+            throw new IllegalStateException( "Unexpected checked exception.", e.getCause() );
+        }
     }
 
     @Nonnull
@@ -274,32 +769,98 @@ public class RemoteWebHookProcessorImpl implements RemoteWebHookProcessor
         return modifiedQuery;
     }
 
-    protected static class ProcessedResource
+    /**
+     * Cursor of the processing of a subscription resource. The cursor contains the
+     * last updated timestamp of the last completed resource and the IDs of all
+     * completed resources that have been updated at exactly this timestamp. Since
+     * the remote resources are queried in ascending order of their last updated
+     * timestamp, the query can be continued at the timestamp of the cursor without
+     * any gap and without applying a tolerance.
+     */
+    protected static class ResourceCursor
     {
-        private final String id;
+        private Date lastUpdated;
+
+        private final Set<String> resourceIds = new LinkedHashSet<>();
+
+        @Nonnull
+        public static ResourceCursor create( @Nonnull RemoteSubscriptionResource subscriptionResource )
+        {
+            final ResourceCursor cursor = new ResourceCursor();
+            if ( subscriptionResource.getCursorLastUpdated() != null )
+            {
+                cursor.lastUpdated = Date.from( subscriptionResource.getCursorLastUpdated().atZone( ZoneId.systemDefault() ).toInstant() );
+                if ( StringUtils.isNotBlank( subscriptionResource.getCursorResourceIds() ) )
+                {
+                    cursor.resourceIds.addAll( Arrays.asList( StringUtils.split( subscriptionResource.getCursorResourceIds(), ' ' ) ) );
+                }
+            }
+            return cursor;
+        }
+
+        @Nullable
+        public Date getLastUpdated()
+        {
+            return lastUpdated;
+        }
 
-        private final Date lastUpdated;
+        /**
+         * @param resource the resource that should be checked.
+         * @return <code>true</code> if the specified resource has already been completed according to this cursor.
+         */
+        public boolean isCompleted( @Nonnull Resource resource )
+        {
+            final Date resourceLastUpdated = resource.getMeta().getLastUpdated();
+            if ( (lastUpdated == null) || (resourceLastUpdated == null) )
+            {
+                return false;
+            }
+            return resourceLastUpdated.before( lastUpdated ) ||
+                (resourceLastUpdated.equals( lastUpdated ) && resourceIds.contains( getCursorId( resource ) ));
+        }
 
-        public ProcessedResource( @Nonnull String id, @Nonnull Date lastUpdated )
+        /**
+         * Advances the cursor to the specified completed resource.
+         *
+         * @param resource the resource that has been completed.
+         */
+        public void advance( @Nonnull Resource resource )
         {
-            this.id = id;
-            this.lastUpdated = lastUpdated;
+            final Date resourceLastUpdated = resource.getMeta().getLastUpdated();
+            if ( resourceLastUpdated == null )
+            {
+                return;
+            }
+            if ( (lastUpdated == null) || resourceLastUpdated.after( lastUpdated ) )
+            {
+                lastUpdated = resourceLastUpdated;
+                resourceIds.clear();
+            }
+            if ( resourceLastUpdated.equals( lastUpdated ) )
+            {
+                resourceIds.add( getCursorId( resource ) );
+            }
         }
 
-        @Override
-        public boolean equals( Object o )
+        /**
+         * Stores the cursor on the specified subscription resource. The cursor must be
+         * persisted by the caller.
+         *
+         * @param subscriptionResource the subscription resource on which the cursor should be stored.
+         */
+        public void update( @Nonnull RemoteSubscriptionResource subscriptionResource )
         {
-            if ( this == o ) return true;
-            if ( o == null || getClass() != o.getClass() ) return false;
-            ProcessedResource that = (ProcessedResource) o;
-            return Objects.equals( id, that.id ) &&
-                Objects.equals( lastUpdated, that.lastUpdated );
+            if ( lastUpdated != null )
+            {
+                subscriptionResource.setCursorLastUpdated( LocalDateTime.ofInstant( lastUpdated.toInstant(), ZoneId.systemDefault() ) );
+                subscriptionResource.setCursorResourceIds( StringUtils.join( resourceIds, ' ' ) );
+            }
         }
 
-        @Override
-        public int hashCode()
+        @Nonnull
+        protected static String getCursorId( @Nonnull Resource resource )
         {
-            return Objects.hash( id, lastUpdated );
+            return resource.getIdElement().getIdPart();
         }
     }
 }
@@ -30,9 +30,9 @@ package org.dhis2.fhir.adapter.fhir.transform.scripted.util.dstu3;
 
 import ca.uhn.fhir.context.FhirContext;
 import org.dhis2.fhir.adapter.Scriptable;
-import org.dhis2.fhir.adapter.fhir.metadata.repository.RemoteSubscriptionResourceRepository;
 import org.dhis2.fhir.adapter.fhir.metadata.repository.SystemCodeRepository;
 import org.dhis2.fhir.adapter.fhir.model.FhirVersion;
+import org.dhis2.fhir.adapter.fhir.repository.FhirClientRegistry;
 import org.dhis2.fhir.adapter.fhir.script.ScriptExecutionContext;
 import org.dhis2.fhir.adapter.fhir.transform.scripted.util.AbstractFhirClientTransformUtils;
 import org.hl7.fhir.dstu3.model.Bundle;
@@ -55,9 +55,9 @@ import java.util.Set;
 public class FhirClientTransformUtils extends AbstractFhirClientTransformUtils
 {
     public FhirClientTransformUtils( @Nonnull ScriptExecutionContext scriptExecutionContext, @Nonnull @Qualifier( "fhirContextDstu3" ) FhirContext fhirContext,
-        @Nonnull RemoteSubscriptionResourceRepository subscriptionResourceRepository, @Nonnull SystemCodeRepository systemCodeRepository )
+        @Nonnull FhirClientRegistry fhirClientRegistry, @Nonnull SystemCodeRepository systemCodeRepository )
     {
-        super( scriptExecutionContext, fhirContext, subscriptionResourceRepository, systemCodeRepository );
+        super( scriptExecutionContext, fhirContext, fhirClientRegistry, systemCodeRepository );
     }
 
     @Nonnull
@@ -78,6 +78,9 @@ public class RemoteSubscription implements Serializable
     private FhirVersion fhirVersion;
     private boolean supportIncludes;
     private int toleranceMinutes;
+    private int pageSize = 1000;
+    private int maxPageSize = 5000;
+    private boolean adaptivePaging;
     private boolean logging;
     private boolean verboseLogging;
     private Set<RequestHeader> remoteHeaders;
@@ -275,6 +278,42 @@ public class RemoteSubscription implements Serializable
         this.toleranceMinutes = toleranceMinutes;
     }
 
+    @Basic
+    @Column( name = "page_size", nullable = false )
+    public int getPageSize()
+    {
+        return pageSize;
+    }
+
+    public void setPageSize( int pageSize )
+    {
+        this.pageSize = pageSize;
+    }
+
+    @Basic
+    @Column( name = "max_page_size", nullable = false )
+    public int getMaxPageSize()
+    {
+        return maxPageSize;
+    }
+
+    public void setMaxPageSize( int maxPageSize )
+    {
+        this.maxPageSize = maxPageSize;
+    }
+
+    @Basic
+    @Column( name = "adaptive_paging", nullable = false )
+    public boolean isAdaptivePaging()
+    {
+        return adaptivePaging;
+    }
+
+    public void setAdaptivePaging( boolean adaptivePaging )
+    {
+        this.adaptivePaging = adaptivePaging;
+    }
+
     @ElementCollection( fetch = FetchType.EAGER )
     @CollectionTable( name = "fhir_remote_subscription_header", joinColumns = @JoinColumn( name = "remote_subscription_id" ) )
     public Set<RequestHeader> getRemoteHeaders()
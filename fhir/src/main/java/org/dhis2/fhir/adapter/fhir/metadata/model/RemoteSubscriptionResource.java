@@ -62,6 +62,8 @@ public class RemoteSubscriptionResource implements Serializable
     private String fhirCriteriaParameters;
     private String description;
     private LocalDateTime remoteLastUpdate;
+    private LocalDateTime cursorLastUpdated;
+    private String cursorResourceIds;
     private RemoteSubscription remoteSubscription;
 
     @Id
@@ -173,6 +175,30 @@ public class RemoteSubscriptionResource implements Serializable
         this.remoteLastUpdate = remoteLastUpdate;
     }
 
+    @Basic
+    @Column( name = "cursor_last_updated" )
+    public LocalDateTime getCursorLastUpdated()
+    {
+        return cursorLastUpdated;
+    }
+
+    public void setCursorLastUpdated( LocalDateTime cursorLastUpdated )
+    {
+        this.cursorLastUpdated = cursorLastUpdated;
+    }
+
+    @Basic
+    @Column( name = "cursor_resource_ids", length = -1 )
+    public String getCursorResourceIds()
+    {
+        return cursorResourceIds;
+    }
+
+    public void setCursorResourceIds( String cursorResourceIds )
+    {
+        this.cursorResourceIds = cursorResourceIds;
+    }
+
     @ManyToOne( optional = false )
     @JoinColumn( name = "remote_subscription_id", referencedColumnName = "id", nullable = false )
     public RemoteSubscription getRemoteSubscription()
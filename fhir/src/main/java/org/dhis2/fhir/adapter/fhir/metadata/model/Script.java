@@ -76,6 +76,7 @@ public class Script implements Serializable
     private DataType returnType;
     private TransformDataType inputType;
     private TransformDataType outputType;
+    private Integer timeoutMillis;
     private Collection<ScriptArg> arguments;
     private Set<ScriptVariable> variables;
     private Collection<ScriptSource> sources;
@@ -230,6 +231,18 @@ public class Script implements Serializable
         this.outputType = outputType;
     }
 
+    @Basic
+    @Column( name = "timeout_millis" )
+    public Integer getTimeoutMillis()
+    {
+        return timeoutMillis;
+    }
+
+    public void setTimeoutMillis( Integer timeoutMillis )
+    {
+        this.timeoutMillis = timeoutMillis;
+    }
+
     @OneToMany( mappedBy = "script" )
     public Collection<ScriptArg> getArguments()
     {
@@ -30,10 +30,13 @@ package org.dhis2.fhir.adapter.fhir.metadata.model;
 
 /**
  * Defines the script source type. It is required to select the appropriate script engine to execute the script.
+ * If the script source type is {@link #JAVA_BEAN}, the source text contains the name of the Spring bean
+ * that implements the script.
  *
  * @author volsch
  */
 public enum ScriptSourceType
 {
-    JAVASCRIPT
+    JAVASCRIPT,
+    JAVA_BEAN
 }
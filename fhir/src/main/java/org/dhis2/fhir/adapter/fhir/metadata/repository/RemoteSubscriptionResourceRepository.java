@@ -32,10 +32,14 @@ import org.dhis2.fhir.adapter.fhir.metadata.model.FhirResourceType;
 import org.dhis2.fhir.adapter.fhir.metadata.model.RemoteSubscription;
 import org.dhis2.fhir.adapter.fhir.metadata.model.RemoteSubscriptionResource;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.query.Param;
+import org.springframework.transaction.annotation.Transactional;
 
 import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.time.LocalDateTime;
 import java.util.Collection;
 import java.util.Optional;
 import java.util.UUID;
@@ -59,4 +63,25 @@ public interface RemoteSubscriptionResourceRepository extends JpaRepository<Remo
     @Nonnull
     Collection<RemoteSubscriptionResource> findForWebHookEvaluation(
         @Param( "subscription" ) @Nonnull RemoteSubscription remoteSubscription, @Param( "fhirResourceType" ) @Nonnull FhirResourceType fhirResourceType );
+
+    /**
+     * Updates the timestamp until which the resources have been processed and the processing
+     * cursor of the specified remote subscription resource. The update is skipped if the remote
+     * subscription resource has been changed since the specified version has been read (e.g. by
+     * an adapter node that took over the processing after the lease of this adapter node expired).
+     * The resources are then processed again from the previous cursor.
+     *
+     * @param resourceId        the ID of the remote subscription resource that should be updated.
+     * @param version           the version of the remote subscription resource that has been processed.
+     * @param remoteLastUpdate  the timestamp until which the resources have been processed.
+     * @param cursorLastUpdated the last updated timestamp of the processing cursor.
+     * @param cursorResourceIds the resource IDs of the processing cursor.
+     * @return the number of updated remote subscription resources (zero if the remote subscription resource has been changed or deleted).
+     */
+    @Modifying( clearAutomatically = true )
+    @Transactional
+    @Query( "UPDATE #{#entityName} r SET r.remoteLastUpdate=:remoteLastUpdate, r.cursorLastUpdated=:cursorLastUpdated, r.cursorResourceIds=:cursorResourceIds, " +
+        "r.version=r.version+1 WHERE r.id=:resourceId AND r.version=:version" )
+    int updateProcessed( @Param( "resourceId" ) @Nonnull UUID resourceId, @Param( "version" ) @Nonnull Long version, @Param( "remoteLastUpdate" ) @Nonnull LocalDateTime remoteLastUpdate,
+        @Param( "cursorLastUpdated" ) @Nullable LocalDateTime cursorLastUpdated, @Param( "cursorResourceIds" ) @Nullable String cursorResourceIds );
 }
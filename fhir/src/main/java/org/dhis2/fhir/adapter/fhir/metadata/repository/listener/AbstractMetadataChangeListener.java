@@ -0,0 +1,126 @@
+package org.dhis2.fhir.adapter.fhir.metadata.repository.listener;
+
+/*
+ * Copyright (c) 2004-2018, University of Oslo
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * Redistributions of source code must retain the above copyright notice, this
+ * list of conditions and the following disclaimer.
+ *
+ * Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation
+ * and/or other materials provided with the distribution.
+ * Neither the name of the HISP project nor the names of its contributors may
+ * be used to endorse or promote products derived from this software without
+ * specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+import org.hibernate.engine.spi.SessionFactoryImplementor;
+import org.hibernate.event.service.spi.EventListenerRegistry;
+import org.hibernate.event.spi.EventType;
+import org.hibernate.event.spi.PostDeleteEvent;
+import org.hibernate.event.spi.PostDeleteEventListener;
+import org.hibernate.event.spi.PostInsertEvent;
+import org.hibernate.event.spi.PostInsertEventListener;
+import org.hibernate.event.spi.PostUpdateEvent;
+import org.hibernate.event.spi.PostUpdateEventListener;
+import org.hibernate.persister.entity.EntityPersister;
+
+import javax.annotation.Nonnull;
+import javax.annotation.PostConstruct;
+import javax.persistence.EntityManagerFactory;
+import java.util.Collection;
+
+/**
+ * Base class of listeners that are notified when metadata entities have been
+ * inserted, updated or deleted with JPA by this adapter node. The listener is
+ * notified after the transaction has been committed, so that caches that are
+ * invalidated by the listener cannot be populated with the previous state again.
+ *
+ * @author volsch
+ */
+public abstract class AbstractMetadataChangeListener implements PostInsertEventListener, PostUpdateEventListener, PostDeleteEventListener
+{
+    private static final long serialVersionUID = 2967347093874630851L;
+
+    private final transient EntityManagerFactory entityManagerFactory;
+
+    protected AbstractMetadataChangeListener( @Nonnull EntityManagerFactory entityManagerFactory )
+    {
+        this.entityManagerFactory = entityManagerFactory;
+    }
+
+    @PostConstruct
+    protected void register()
+    {
+        final EventListenerRegistry registry = entityManagerFactory.unwrap( SessionFactoryImplementor.class )
+            .getServiceRegistry().getService( EventListenerRegistry.class );
+        registry.appendListeners( EventType.POST_COMMIT_INSERT, this );
+        registry.appendListeners( EventType.POST_COMMIT_UPDATE, this );
+        registry.appendListeners( EventType.POST_COMMIT_DELETE, this );
+    }
+
+    /**
+     * @return the metadata entity classes whose changes are handled by this listener.
+     */
+    @Nonnull
+    protected abstract Collection<Class<?>> getEntityClasses();
+
+    /**
+     * Handles the change of a metadata entity after the transaction has been committed.
+     *
+     * @param entity the metadata entity that has been inserted, updated or deleted.
+     */
+    protected abstract void onChange( @Nonnull Object entity );
+
+    @Override
+    public void onPostInsert( PostInsertEvent event )
+    {
+        if ( isHandled( event.getPersister() ) )
+        {
+            onChange( event.getEntity() );
+        }
+    }
+
+    @Override
+    public void onPostUpdate( PostUpdateEvent event )
+    {
+        if ( isHandled( event.getPersister() ) )
+        {
+            onChange( event.getEntity() );
+        }
+    }
+
+    @Override
+    public void onPostDelete( PostDeleteEvent event )
+    {
+        if ( isHandled( event.getPersister() ) )
+        {
+            onChange( event.getEntity() );
+        }
+    }
+
+    @Override
+    public boolean requiresPostCommitHanding( EntityPersister persister )
+    {
+        return isHandled( persister );
+    }
+
+    protected boolean isHandled( @Nonnull EntityPersister persister )
+    {
+        return getEntityClasses().stream().anyMatch( c -> c.isAssignableFrom( persister.getMappedClass() ) );
+    }
+}
@@ -0,0 +1,163 @@
+package org.dhis2.fhir.adapter.fhir.remote;
+
+/*
+ * Copyright (c) 2004-2018, University of Oslo
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * Redistributions of source code must retain the above copyright notice, this
+ * list of conditions and the following disclaimer.
+ *
+ * Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation
+ * and/or other materials provided with the distribution.
+ * Neither the name of the HISP project nor the names of its contributors may
+ * be used to endorse or promote products derived from this software without
+ * specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+import org.dhis2.fhir.adapter.fhir.metadata.model.RemoteSubscription;
+import org.dhis2.fhir.adapter.fhir.remote.config.RemoteWebHookConfig;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.Nonnull;
+import java.util.Map;
+import java.util.Objects;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Controls the page size that is used when searching for resources on the remote
+ * FHIR service of a remote subscription. If adaptive paging has not been enabled
+ * for the remote subscription, the configured page size is used. Otherwise the
+ * page size starts with the configured page size. It is halved whenever a response
+ * exceeds the target latency or the maximum bundle size. It is increased by half
+ * whenever a full page has been returned within half of both limits. Since the
+ * page size of subsequent pages is defined by the next links of the remote FHIR
+ * service, an adjusted page size is used by the next search.
+ *
+ * @author volsch
+ */
+@Component
+public class AdaptivePageSizeController
+{
+    private final Logger logger = LoggerFactory.getLogger( getClass() );
+
+    private final RemoteWebHookConfig config;
+
+    private final Map<UUID, PageSizeState> statesBySubscriptionId = new ConcurrentHashMap<>();
+
+    public AdaptivePageSizeController( @Nonnull RemoteWebHookConfig config )
+    {
+        this.config = config;
+    }
+
+    /**
+     * @param remoteSubscription the remote subscription for which the page size should be returned.
+     * @return the page size that should be used for the next search.
+     */
+    public int getPageSize( @Nonnull RemoteSubscription remoteSubscription )
+    {
+        if ( !remoteSubscription.isAdaptivePaging() )
+        {
+            return remoteSubscription.getPageSize();
+        }
+        return getState( remoteSubscription ).getPageSize();
+    }
+
+    /**
+     * Records the observed response of a search and adjusts the page size of the
+     * remote subscription if adaptive paging has been enabled.
+     *
+     * @param remoteSubscription the remote subscription on which the search has been performed.
+     * @param entryCount         the number of returned resources (without included resources).
+     * @param latencyMillis      the response latency in milliseconds.
+     * @param contentLength      the size of the response in bytes or <code>-1</code> if unknown.
+     */
+    public void recordPage( @Nonnull RemoteSubscription remoteSubscription, int entryCount, long latencyMillis, long contentLength )
+    {
+        if ( !remoteSubscription.isAdaptivePaging() )
+        {
+            return;
+        }
+
+        final PageSizeState state = getState( remoteSubscription );
+        final int minPageSize = Math.min( config.getAdaptivePagingMinPageSize(), remoteSubscription.getPageSize() );
+        synchronized ( state )
+        {
+            final int pageSize = state.getPageSize();
+            final int newPageSize;
+            if ( (latencyMillis > config.getAdaptivePagingTargetLatencyMillis()) ||
+                (contentLength > config.getAdaptivePagingMaxBundleBytes()) )
+            {
+                newPageSize = Math.max( minPageSize, pageSize / 2 );
+            }
+            else if ( (entryCount >= pageSize) && (latencyMillis < config.getAdaptivePagingTargetLatencyMillis() / 2) &&
+                (contentLength < config.getAdaptivePagingMaxBundleBytes() / 2) )
+            {
+                newPageSize = Math.min( remoteSubscription.getMaxPageSize(), pageSize + Math.max( 1, pageSize / 2 ) );
+            }
+            else
+            {
+                newPageSize = pageSize;
+            }
+
+            if ( newPageSize != pageSize )
+            {
+                logger.info( "Adjusted page size of remote subscription {} from {} to {} (latency {} ms, content length {}).",
+                    remoteSubscription.getCode(), pageSize, newPageSize, latencyMillis, contentLength );
+                state.setPageSize( newPageSize );
+            }
+        }
+    }
+
+    @Nonnull
+    private PageSizeState getState( @Nonnull RemoteSubscription remoteSubscription )
+    {
+        return statesBySubscriptionId.compute( remoteSubscription.getId(), ( id, state ) ->
+            ((state == null) || !Objects.equals( state.getVersion(), remoteSubscription.getVersion() )) ?
+                new PageSizeState( remoteSubscription.getVersion(), remoteSubscription.getPageSize() ) : state );
+    }
+
+    protected static class PageSizeState
+    {
+        private final Long version;
+
+        private volatile int pageSize;
+
+        public PageSizeState( Long version, int pageSize )
+        {
+            this.version = version;
+            this.pageSize = pageSize;
+        }
+
+        public Long getVersion()
+        {
+            return version;
+        }
+
+        public int getPageSize()
+        {
+            return pageSize;
+        }
+
+        public void setPageSize( int pageSize )
+        {
+            this.pageSize = pageSize;
+        }
+    }
+}
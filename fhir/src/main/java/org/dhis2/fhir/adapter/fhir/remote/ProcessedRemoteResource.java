@@ -0,0 +1,134 @@
+package org.dhis2.fhir.adapter.fhir.remote;
+
+/*
+ * Copyright (c) 2004-2018, University of Oslo
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * Redistributions of source code must retain the above copyright notice, this
+ * list of conditions and the following disclaimer.
+ *
+ * Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation
+ * and/or other materials provided with the distribution.
+ * Neither the name of the HISP project nor the names of its contributors may
+ * be used to endorse or promote products derived from this software without
+ * specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+import com.google.common.hash.Hashing;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.io.Serializable;
+import java.nio.charset.StandardCharsets;
+import java.util.Date;
+import java.util.Objects;
+
+/**
+ * A compact entry of the ledger of processed FHIR resource versions. The entry
+ * contains a 64 bit hash of the versionless ID of the FHIR resource and its
+ * version ID or its last updated timestamp.
+ *
+ * @author volsch
+ */
+public class ProcessedRemoteResource implements Serializable
+{
+    private static final long serialVersionUID = -4373447290380451374L;
+
+    private final long idHash;
+
+    private final String versionKey;
+
+    public ProcessedRemoteResource( long idHash, @Nonnull String versionKey )
+    {
+        this.idHash = idHash;
+        this.versionKey = versionKey;
+    }
+
+    /**
+     * Creates the ledger entry for the specified FHIR resource version.
+     *
+     * @param versionlessId the unqualified versionless ID of the FHIR resource.
+     * @param versionId     the version ID of the FHIR resource if available.
+     * @param lastUpdated   the last updated timestamp of the FHIR resource if available.
+     * @return the ledger entry or <code>null</code> if neither a version ID nor a last
+     * updated timestamp is available and the version cannot be identified.
+     */
+    @Nullable
+    public static ProcessedRemoteResource create( @Nonnull String versionlessId, @Nullable String versionId, @Nullable Date lastUpdated )
+    {
+        final String versionKey;
+        if ( versionId != null )
+        {
+            versionKey = "v" + versionId;
+        }
+        else if ( lastUpdated != null )
+        {
+            versionKey = "t" + lastUpdated.getTime();
+        }
+        else
+        {
+            return null;
+        }
+        return new ProcessedRemoteResource( hash( versionlessId ), versionKey );
+    }
+
+    /**
+     * Creates the entry for a FHIR resource whose version cannot be identified. Since
+     * the entry matches every version of the FHIR resource, it must only be used to
+     * count failed attempts and never to record the FHIR resource as processed.
+     *
+     * @param versionlessId the unqualified versionless ID of the FHIR resource.
+     * @return the entry of the FHIR resource.
+     */
+    @Nonnull
+    public static ProcessedRemoteResource createUnversioned( @Nonnull String versionlessId )
+    {
+        return new ProcessedRemoteResource( hash( versionlessId ), "u" );
+    }
+
+    private static long hash( @Nonnull String versionlessId )
+    {
+        return Hashing.murmur3_128().hashString( versionlessId, StandardCharsets.UTF_8 ).asLong();
+    }
+
+    public long getIdHash()
+    {
+        return idHash;
+    }
+
+    @Nonnull
+    public String getVersionKey()
+    {
+        return versionKey;
+    }
+
+    @Override
+    public boolean equals( Object o )
+    {
+        if ( this == o ) return true;
+        if ( o == null || getClass() != o.getClass() ) return false;
+        ProcessedRemoteResource that = (ProcessedRemoteResource) o;
+        return idHash == that.idHash &&
+            Objects.equals( versionKey, that.versionKey );
+    }
+
+    @Override
+    public int hashCode()
+    {
+        return Objects.hash( idHash, versionKey );
+    }
+}
@@ -0,0 +1,120 @@
+package org.dhis2.fhir.adapter.fhir.remote;
+
+/*
+ * Copyright (c) 2004-2018, University of Oslo
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * Redistributions of source code must retain the above copyright notice, this
+ * list of conditions and the following disclaimer.
+ *
+ * Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation
+ * and/or other materials provided with the distribution.
+ * Neither the name of the HISP project nor the names of its contributors may
+ * be used to endorse or promote products derived from this software without
+ * specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+import javax.annotation.Nonnull;
+import java.util.Collection;
+import java.util.List;
+import java.util.Set;
+import java.util.UUID;
+
+/**
+ * Persistent ledger of FHIR resource versions that have been processed for a
+ * remote subscription resource. Since remote subscription resources are queried
+ * with a tolerance, subsequent queries overlap. The ledger prevents that the same
+ * version of a FHIR resource is processed again, also after a restart and when the
+ * remote subscription resource is processed by a different adapter node. The ledger
+ * also counts the failed attempts to process a FHIR resource version, so that a
+ * version that always fails does not block the processing of subsequent resources.
+ * Such a version is parked, so that it can be replayed later.
+ *
+ * @author volsch
+ */
+public interface ProcessedRemoteResourceRepository
+{
+    /**
+     * Returns the entries of the specified entries that have already been processed.
+     *
+     * @param subscriptionResourceId the ID of the remote subscription resource.
+     * @param processedResources     the entries that should be checked.
+     * @return the entries that have already been processed.
+     */
+    @Nonnull
+    Set<ProcessedRemoteResource> findProcessed( @Nonnull UUID subscriptionResourceId, @Nonnull Collection<ProcessedRemoteResource> processedResources );
+
+    /**
+     * Stores the specified entries as processed. Entries of previously processed
+     * versions of the same FHIR resources are replaced and recorded failed attempts
+     * of the same FHIR resources are discarded.
+     *
+     * @param subscriptionResourceId the ID of the remote subscription resource.
+     * @param processedResources     the entries that have been processed.
+     */
+    void saveAll( @Nonnull UUID subscriptionResourceId, @Nonnull Collection<ProcessedRemoteResource> processedResources );
+
+    /**
+     * Records a failed attempt to process the specified FHIR resource version. The
+     * failed attempts of previous versions of the same FHIR resource are discarded
+     * and a previous version is no longer parked.
+     *
+     * @param subscriptionResourceId the ID of the remote subscription resource.
+     * @param failedResource         the entry of the version that could not be processed.
+     * @param resourceId             the unqualified versionless ID of the FHIR resource.
+     * @return the number of failed attempts to process this version including this attempt.
+     */
+    int recordFailure( @Nonnull UUID subscriptionResourceId, @Nonnull ProcessedRemoteResource failedResource, @Nonnull String resourceId );
+
+    /**
+     * Parks the specified FHIR resource version for which failed attempts have been
+     * recorded. A parked version is not removed after the retention period.
+     *
+     * @param subscriptionResourceId the ID of the remote subscription resource.
+     * @param failedResource         the entry of the version that should be parked.
+     */
+    void park( @Nonnull UUID subscriptionResourceId, @Nonnull ProcessedRemoteResource failedResource );
+
+    /**
+     * Returns the IDs of the parked FHIR resources whose last failed attempt has been
+     * recorded before the specified number of minutes.
+     *
+     * @param subscriptionResourceId the ID of the remote subscription resource.
+     * @param replayMinutes          the number of minutes after the last failed attempt until a parked FHIR resource is replayed.
+     * @return the unqualified versionless IDs of the parked FHIR resources that should be replayed.
+     */
+    @Nonnull
+    List<String> findParked( @Nonnull UUID subscriptionResourceId, int replayMinutes );
+
+    /**
+     * Deletes the recorded failed attempts of the specified parked FHIR resource.
+     *
+     * @param subscriptionResourceId the ID of the remote subscription resource.
+     * @param resourceId             the unqualified versionless ID of the FHIR resource.
+     */
+    void deleteParked( @Nonnull UUID subscriptionResourceId, @Nonnull String resourceId );
+
+    /**
+     * Deletes the entries that have been processed and the failed attempts of versions
+     * that have not been parked that have been recorded before the retention period.
+     *
+     * @param subscriptionResourceId the ID of the remote subscription resource.
+     * @param retentionMinutes       the number of minutes the entries are retained.
+     * @return the number of deleted entries.
+     */
+    int deleteExpired( @Nonnull UUID subscriptionResourceId, int retentionMinutes );
+}
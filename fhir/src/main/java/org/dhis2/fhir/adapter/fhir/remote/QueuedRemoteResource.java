@@ -0,0 +1,109 @@
+package org.dhis2.fhir.adapter.fhir.remote;
+
+/*
+ * Copyright (c) 2004-2018, University of Oslo
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * Redistributions of source code must retain the above copyright notice, this
+ * list of conditions and the following disclaimer.
+ *
+ * Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation
+ * and/or other materials provided with the distribution.
+ * Neither the name of the HISP project nor the names of its contributors may
+ * be used to endorse or promote products derived from this software without
+ * specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+import org.dhis2.fhir.adapter.fhir.metadata.model.FhirResourceType;
+
+import javax.annotation.Nonnull;
+import java.io.Serializable;
+import java.util.UUID;
+
+/**
+ * A web hook request for a remote subscription resource that has been claimed
+ * from the persistent queue for processing.
+ *
+ * @author volsch
+ */
+public class QueuedRemoteResource implements Serializable
+{
+    private static final long serialVersionUID = 2384601174338590468L;
+
+    private final UUID resourceId;
+
+    private final FhirResourceType fhirResourceType;
+
+    private final UUID subscriptionId;
+
+    private final String subscriptionCode;
+
+    private final int coalescedCount;
+
+    private final long queuedMillis;
+
+    public QueuedRemoteResource( @Nonnull UUID resourceId, @Nonnull FhirResourceType fhirResourceType, @Nonnull UUID subscriptionId, @Nonnull String subscriptionCode,
+        int coalescedCount, long queuedMillis )
+    {
+        this.resourceId = resourceId;
+        this.fhirResourceType = fhirResourceType;
+        this.subscriptionId = subscriptionId;
+        this.subscriptionCode = subscriptionCode;
+        this.coalescedCount = coalescedCount;
+        this.queuedMillis = queuedMillis;
+    }
+
+    @Nonnull
+    public UUID getResourceId()
+    {
+        return resourceId;
+    }
+
+    @Nonnull
+    public FhirResourceType getFhirResourceType()
+    {
+        return fhirResourceType;
+    }
+
+    @Nonnull
+    public UUID getSubscriptionId()
+    {
+        return subscriptionId;
+    }
+
+    @Nonnull
+    public String getSubscriptionCode()
+    {
+        return subscriptionCode;
+    }
+
+    /**
+     * @return the number of web hook requests that have been coalesced into this request.
+     */
+    public int getCoalescedCount()
+    {
+        return coalescedCount;
+    }
+
+    /**
+     * @return the number of milliseconds the request has been queued when it has been claimed.
+     */
+    public long getQueuedMillis()
+    {
+        return queuedMillis;
+    }
+}
@@ -0,0 +1,101 @@
+package org.dhis2.fhir.adapter.fhir.remote;
+
+/*
+ * Copyright (c) 2004-2018, University of Oslo
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * Redistributions of source code must retain the above copyright notice, this
+ * list of conditions and the following disclaimer.
+ *
+ * Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation
+ * and/or other materials provided with the distribution.
+ * Neither the name of the HISP project nor the names of its contributors may
+ * be used to endorse or promote products derived from this software without
+ * specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+import javax.annotation.Nonnull;
+import java.util.List;
+import java.util.UUID;
+
+/**
+ * Persistent queue of web hook requests for remote subscription resources. There is
+ * at most one queued request for each remote subscription resource. Requests that
+ * are received while a request is queued are coalesced into the queued request.
+ * Requests are claimed by an adapter node for processing and remain in the queue
+ * until processing has been completed. A claim is a lease that must be renewed
+ * periodically by the claiming node. Claims of nodes that do no longer renew their
+ * leases (e.g. due to a crash of the node) expire and the requests can be claimed
+ * by any other node. Requests for resources other than patients are not claimed
+ * as long as a patient request of the same remote subscription that has been queued
+ * before is waiting or is claimed by another node.
+ *
+ * @author volsch
+ */
+public interface QueuedRemoteResourceRepository
+{
+    /**
+     * Enqueues a web hook request for the specified remote subscription resource.
+     *
+     * @param resourceId the ID of the remote subscription resource.
+     * @return <code>true</code> if the request has been coalesced into a request that
+     * waits for processing, <code>false</code> if a new request will be processed.
+     */
+    boolean enqueue( @Nonnull UUID resourceId );
+
+    /**
+     * Claims the oldest requests that are neither processed nor claimed. Requests
+     * that are claimed concurrently by other transactions are skipped.
+     *
+     * @param nodeId               the ID of the node that claims the requests.
+     * @param maxCount             the maximum number of requests that should be claimed.
+     * @param leaseDurationSeconds the number of seconds after which the claim expires if it is not renewed.
+     * @return the claimed requests in the order they have been queued.
+     */
+    @Nonnull
+    List<QueuedRemoteResource> claim( @Nonnull String nodeId, int maxCount, int leaseDurationSeconds );
+
+    /**
+     * Renews the leases of all requests that have been claimed by the specified node.
+     *
+     * @param nodeId               the ID of the node that has claimed the requests.
+     * @param leaseDurationSeconds the number of seconds after which the claim expires if it is not renewed again.
+     * @return the number of requests for which the lease has been renewed.
+     */
+    int renewLeases( @Nonnull String nodeId, int leaseDurationSeconds );
+
+    /**
+     * Releases all requests that have been claimed by the specified node, so that
+     * they can be claimed by other nodes immediately.
+     *
+     * @param nodeId the ID of the node that has claimed the requests.
+     * @return the number of released requests.
+     */
+    int releaseAll( @Nonnull String nodeId );
+
+    /**
+     * Completes the processing of the specified claimed request. If further requests
+     * have been received while processing, the request is released and can be
+     * claimed again. The released request is queued again at the current time and
+     * none of the further requests is regarded as coalesced into it yet.
+     *
+     * @param queuedRemoteResource the claimed request that has been processed.
+     * @return <code>true</code> if the request has been released and waits for
+     * processing again, <code>false</code> if it has been removed from the queue.
+     */
+    boolean complete( @Nonnull String nodeId, @Nonnull QueuedRemoteResource queuedRemoteResource );
+}
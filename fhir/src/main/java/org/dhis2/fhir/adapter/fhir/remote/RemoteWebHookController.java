@@ -44,12 +44,7 @@ import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RestController;
 
 import javax.annotation.Nonnull;
-import javax.annotation.PostConstruct;
-import javax.annotation.PreDestroy;
-import java.time.LocalDateTime;
 import java.util.UUID;
-import java.util.concurrent.ArrayBlockingQueue;
-import java.util.concurrent.BlockingQueue;
 
 /**
  * Important Note: This class will be split into several components that allow distributed message processing
@@ -63,32 +58,12 @@ public class RemoteWebHookController
 
     private final RemoteSubscriptionResourceRepository resourceRepository;
 
-    private final RemoteWebHookProcessor processor;
+    private final RemoteWebHookWorkerPool workerPool;
 
-    private final ProcessingThread processingThread;
-
-    private final BlockingQueue<UUID> requestQueue = new ArrayBlockingQueue<>( 1000, true );
-
-    public RemoteWebHookController( @Nonnull RemoteSubscriptionResourceRepository resourceRepository, @Nonnull RemoteWebHookProcessor processor )
+    public RemoteWebHookController( @Nonnull RemoteSubscriptionResourceRepository resourceRepository, @Nonnull RemoteWebHookWorkerPool workerPool )
     {
         this.resourceRepository = resourceRepository;
-        this.processor = processor;
-        this.processingThread = new ProcessingThread();
-        this.processingThread.setDaemon( true );
-    }
-
-    @PostConstruct
-    public void postConstruct()
-    {
-        this.processingThread.start();
-    }
-
-    @PreDestroy
-    public void preDestroy() throws InterruptedException
-    {
-        this.processingThread.setStop();
-        this.processingThread.interrupt();
-        this.processingThread.join();
+        this.workerPool = workerPool;
     }
 
     @PutMapping( path = "/{subscriptionId}/{subscriptionResourceId}/**" )
@@ -127,85 +102,16 @@ public class RemoteWebHookController
 
     private void offerResource( RemoteSubscriptionResource subscriptionResource )
     {
-        if ( requestQueue.offer( subscriptionResource.getId() ) )
-        {
-            logger.info( "Web hook processing request for {} has been added to the request queue.", subscriptionResource.getId() );
-        }
-        else
-        {
-            logger.warn( "The processing queue is full. Web hook processing request for {} cannot be added.", subscriptionResource.getId() );
-        }
-    }
-
-    protected class ProcessingThread extends Thread
-    {
-        private volatile boolean stop;
-
-        public ProcessingThread()
-        {
-            super( "Remote Web Hook Processing Thread" );
-        }
-
-        public void setStop()
-        {
-            stop = true;
-        }
-
-        public void run()
+        switch ( workerPool.offer( subscriptionResource ) )
         {
-            while ( !stop )
-            {
-                try
-                {
-                    final UUID resourceId = requestQueue.take();
-                    final RemoteSubscriptionResource subscriptionResource = resourceRepository.findOneForSubscriptionProcessing( resourceId ).orElse( null );
-                    if ( subscriptionResource == null )
-                    {
-                        logger.warn( "Remote subscription resource {} does no longer exist. Ignoring web hook processing request.", resourceId );
-                        continue;
-                    }
-
-                    final LocalDateTime remoteLastUpdate;
-                    switch ( subscriptionResource.getFhirResourceType() )
-                    {
-                        case PATIENT:
-                            remoteLastUpdate = processor.processPatients( subscriptionResource );
-                            break;
-                        case IMMUNIZATION:
-                            remoteLastUpdate = processor.processImmunizations( subscriptionResource );
-                            break;
-                        case OBSERVATION:
-                            remoteLastUpdate = processor.processObservations( subscriptionResource );
-                            break;
-                        case MEDICATION_REQUEST:
-                            remoteLastUpdate = processor.processObservations( subscriptionResource );
-                            break;
-                        default:
-                            throw new AssertionError( "Unhandled FHIR resource type: " + subscriptionResource.getFhirResourceType() );
-                    }
-
-                    // for demo purpose there is no need to refresh, lock and update entity instance
-                    subscriptionResource.setRemoteLastUpdate( remoteLastUpdate );
-                    resourceRepository.saveAndFlush( subscriptionResource );
-                }
-                catch ( InterruptedException e )
-                {
-                    // can be ignored
-                }
-                catch ( Throwable e )
-                {
-                    logger.error( "Error while executing remote web hook processing thread.", e );
-                    try
-                    {
-                        Thread.sleep( 1000L );
-                    }
-                    catch ( InterruptedException e2 )
-                    {
-                        // can be ignored
-                    }
-                }
-            }
-            logger.info( "Remote web hook processing thread has been requested to stop." );
+            case QUEUED:
+                logger.info( "Web hook processing request for {} has been added to the request queue.", subscriptionResource.getId() );
+                break;
+            case COALESCED:
+                logger.info( "Web hook processing request for {} has been coalesced with a waiting request.", subscriptionResource.getId() );
+                break;
+            default:
+                throw new AssertionError( "Unhandled offer result." );
         }
     }
 }
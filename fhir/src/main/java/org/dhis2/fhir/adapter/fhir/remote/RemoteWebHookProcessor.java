@@ -47,4 +47,7 @@ public interface RemoteWebHookProcessor
 
     @Nonnull
     LocalDateTime processObservations( @Nonnull RemoteSubscriptionResource subscriptionResource );
+
+    @Nonnull
+    LocalDateTime processMedicationRequests( @Nonnull RemoteSubscriptionResource subscriptionResource );
 }
@@ -0,0 +1,503 @@
+package org.dhis2.fhir.adapter.fhir.remote;
+
+/*
+ * Copyright (c) 2004-2018, University of Oslo
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * Redistributions of source code must retain the above copyright notice, this
+ * list of conditions and the following disclaimer.
+ *
+ * Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation
+ * and/or other materials provided with the distribution.
+ * Neither the name of the HISP project nor the names of its contributors may
+ * be used to endorse or promote products derived from this software without
+ * specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.apache.commons.lang3.StringUtils;
+import org.dhis2.fhir.adapter.fhir.metadata.model.FhirResourceType;
+import org.dhis2.fhir.adapter.fhir.metadata.model.RemoteSubscriptionResource;
+import org.dhis2.fhir.adapter.fhir.metadata.repository.RemoteSubscriptionResourceRepository;
+import org.dhis2.fhir.adapter.fhir.remote.config.RemoteWebHookConfig;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.Nonnull;
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Processes remote web hook requests with a pool of worker threads. Requests are
+ * stored in a {@linkplain QueuedRemoteResourceRepository persistent queue} and are
+ * claimed in batches by a single poller thread. The queue is polled periodically
+ * and whenever a request has been received or processed. Requests that have been
+ * queued before a restart are therefore processed when the application starts.
+ * Claims are leases of this adapter node that are renewed periodically by a separate
+ * thread, so that a slow claim does not delay the renewal. If several
+ * adapter nodes share the same database, requests are processed by exactly one of
+ * them. Requests of a node that fails are claimed by other nodes as soon as the
+ * leases of the failed node have expired. Requests that have not yet been processed
+ * are released when the application is shut down.
+ * <p>
+ * Requests of different remote subscriptions are processed concurrently. Requests
+ * of the same {@linkplain RemoteSubscriptionResource remote subscription resource}
+ * are processed in the order they have been received and are never processed
+ * concurrently. Resources of other types than {@linkplain FhirResourceType#PATIENT patient}
+ * are not processed as long as a patient resource of the same remote subscription is
+ * queued ahead or is being processed, since all resources depend on patients.
+ * There is at most one waiting and one running request for each remote subscription
+ * resource. Further requests for a resource that is already waiting are coalesced
+ * into the waiting request, since processing polls all changes incrementally.
+ *
+ * @author volsch
+ */
+@Component
+public class RemoteWebHookWorkerPool
+{
+    public static final String QUEUE_WAIT_METER_NAME = "dhis2.fhir.remote.webhook.queue.wait";
+
+    public static final String PROCESSING_METER_NAME = "dhis2.fhir.remote.webhook.processing";
+
+    public static final String COALESCED_METER_NAME = "dhis2.fhir.remote.webhook.coalesced";
+
+    private final Logger logger = LoggerFactory.getLogger( getClass() );
+
+    private final RemoteWebHookConfig config;
+
+    private final RemoteSubscriptionResourceRepository resourceRepository;
+
+    private final QueuedRemoteResourceRepository queuedRemoteResourceRepository;
+
+    private final RemoteWebHookProcessor processor;
+
+    private final MeterRegistry meterRegistry;
+
+    private final Map<UUID, SubscriptionLane> lanesBySubscriptionId = new HashMap<>();
+
+    private final AtomicBoolean pollRequested = new AtomicBoolean();
+
+    private final String nodeId;
+
+    private int queuedRequests;
+
+    private ExecutorService executorService;
+
+    private ScheduledExecutorService pollerService;
+
+    private ScheduledExecutorService leaseRenewalService;
+
+    public RemoteWebHookWorkerPool( @Nonnull RemoteWebHookConfig config, @Nonnull RemoteSubscriptionResourceRepository resourceRepository,
+        @Nonnull QueuedRemoteResourceRepository queuedRemoteResourceRepository, @Nonnull RemoteWebHookProcessor processor, @Nonnull MeterRegistry meterRegistry )
+    {
+        this.config = config;
+        this.resourceRepository = resourceRepository;
+        this.queuedRemoteResourceRepository = queuedRemoteResourceRepository;
+        this.processor = processor;
+        this.meterRegistry = meterRegistry;
+        this.nodeId = createNodeId();
+    }
+
+    @Nonnull
+    protected static String createNodeId()
+    {
+        String hostName;
+        try
+        {
+            hostName = InetAddress.getLocalHost().getHostName();
+        }
+        catch ( UnknownHostException e )
+        {
+            hostName = "unknown";
+        }
+        return StringUtils.left( hostName, 160 ) + "/" + UUID.randomUUID();
+    }
+
+    @PostConstruct
+    public void postConstruct()
+    {
+        executorService = new ThreadPoolExecutor( config.getPoolSize(), config.getPoolSize(), 0L, TimeUnit.MILLISECONDS,
+            new LinkedBlockingQueue<>(), new WorkerThreadFactory( "Remote Web Hook Worker Thread " ) );
+        pollerService = Executors.newSingleThreadScheduledExecutor( new WorkerThreadFactory( "Remote Web Hook Poller Thread " ) );
+        // leases must be renewed in time even if claiming requests is slow
+        leaseRenewalService = Executors.newSingleThreadScheduledExecutor( new WorkerThreadFactory( "Remote Web Hook Lease Renewal Thread " ) );
+        leaseRenewalService.scheduleWithFixedDelay( this::renewLeases, config.getLeaseDurationSeconds() / 3, config.getLeaseDurationSeconds() / 3, TimeUnit.SECONDS );
+        pollerService.scheduleWithFixedDelay( this::poll, 0, config.getPollIntervalSeconds(), TimeUnit.SECONDS );
+        logger.info( "Processing remote web hook requests as adapter node {}.", nodeId );
+    }
+
+    @PreDestroy
+    public void preDestroy() throws InterruptedException
+    {
+        pollerService.shutdownNow();
+        executorService.shutdownNow();
+        if ( !executorService.awaitTermination( 30, TimeUnit.SECONDS ) )
+        {
+            logger.warn( "Remote web hook worker threads did not terminate in time." );
+        }
+        // leases of requests that are still being processed must not expire before they have been released
+        leaseRenewalService.shutdownNow();
+        try
+        {
+            logger.info( "Released {} remote web hook requests of adapter node {}.", queuedRemoteResourceRepository.releaseAll( nodeId ), nodeId );
+        }
+        catch ( Throwable e )
+        {
+            logger.error( "Error while releasing remote web hook requests of adapter node " + nodeId + ".", e );
+        }
+    }
+
+    /**
+     * @return the unique ID of this adapter node that is used for claiming requests.
+     */
+    @Nonnull
+    public String getNodeId()
+    {
+        return nodeId;
+    }
+
+    /**
+     * Offers the specified remote subscription resource for processing.
+     *
+     * @param subscriptionResource the remote subscription resource that should be processed.
+     * @return the result of offering the request.
+     */
+    @Nonnull
+    public RemoteWebHookOfferResult offer( @Nonnull RemoteSubscriptionResource subscriptionResource )
+    {
+        if ( queuedRemoteResourceRepository.enqueue( subscriptionResource.getId() ) )
+        {
+            Counter.builder( COALESCED_METER_NAME ).description( "Number of remote web hook requests that have been coalesced with a waiting request." )
+                .tag( "subscription", subscriptionResource.getRemoteSubscription().getCode() ).tag( "resourceType", subscriptionResource.getFhirResourceType().name() )
+                .register( meterRegistry ).increment();
+            return RemoteWebHookOfferResult.COALESCED;
+        }
+        requestPoll();
+        return RemoteWebHookOfferResult.QUEUED;
+    }
+
+    /**
+     * @return the number of claimed requests that wait for processing.
+     */
+    public synchronized int getQueuedRequests()
+    {
+        return queuedRequests;
+    }
+
+    protected void requestPoll()
+    {
+        if ( pollRequested.compareAndSet( false, true ) && !pollerService.isShutdown() )
+        {
+            pollerService.execute( this::poll );
+        }
+    }
+
+    protected void poll()
+    {
+        pollRequested.set( false );
+        try
+        {
+            int maxCount;
+            List<QueuedRemoteResource> claimedResources;
+            do
+            {
+                synchronized ( this )
+                {
+                    maxCount = Math.min( config.getClaimBatchSize(), config.getMaxQueuedRequests() - queuedRequests );
+                }
+                if ( maxCount <= 0 )
+                {
+                    return;
+                }
+
+                claimedResources = queuedRemoteResourceRepository.claim( nodeId, maxCount, config.getLeaseDurationSeconds() );
+                claimedResources.forEach( this::add );
+            }
+            while ( claimedResources.size() == maxCount );
+        }
+        catch ( Throwable e )
+        {
+            logger.error( "Error while claiming remote web hook requests.", e );
+        }
+    }
+
+    protected void renewLeases()
+    {
+        try
+        {
+            queuedRemoteResourceRepository.renewLeases( nodeId, config.getLeaseDurationSeconds() );
+        }
+        catch ( Throwable e )
+        {
+            logger.error( "Error while renewing leases of remote web hook requests. Requests may be processed by other adapter nodes.", e );
+        }
+    }
+
+    private synchronized void add( @Nonnull QueuedRemoteResource queuedRemoteResource )
+    {
+        final SubscriptionLane lane = lanesBySubscriptionId.computeIfAbsent( queuedRemoteResource.getSubscriptionId(),
+            id -> new SubscriptionLane( id, queuedRemoteResource.getSubscriptionCode() ) );
+        if ( lane.getPendingRequests().putIfAbsent( queuedRemoteResource.getResourceId(), new QueuedRequest( queuedRemoteResource ) ) == null )
+        {
+            queuedRequests++;
+            dispatch( lane );
+        }
+    }
+
+    private void dispatch( @Nonnull SubscriptionLane lane )
+    {
+        boolean patientAhead = lane.getRunningRequests().containsValue( FhirResourceType.PATIENT );
+        final Iterator<QueuedRequest> iterator = lane.getPendingRequests().values().iterator();
+        while ( iterator.hasNext() && (lane.getRunningRequests().size() < config.getMaxSubscriptionConcurrency()) )
+        {
+            final QueuedRequest request = iterator.next();
+            final boolean patient = (request.getFhirResourceType() == FhirResourceType.PATIENT);
+            if ( !lane.getRunningRequests().containsKey( request.getResourceId() ) && (patient || !patientAhead) )
+            {
+                iterator.remove();
+                queuedRequests--;
+                lane.getRunningRequests().put( request.getResourceId(), request.getFhirResourceType() );
+                executorService.execute( () -> run( lane, request ) );
+            }
+            patientAhead |= patient;
+        }
+    }
+
+    private void run( @Nonnull SubscriptionLane lane, @Nonnull QueuedRequest request )
+    {
+        try
+        {
+            if ( request.getCoalescedCount() > 0 )
+            {
+                logger.info( "Processing web hook request for {} that includes {} coalesced notifications.",
+                    request.getResourceId(), request.getCoalescedCount() );
+            }
+            createTimer( QUEUE_WAIT_METER_NAME, "Time a remote web hook request waits for processing.", lane, request )
+                .record( System.nanoTime() - request.getQueuedNanos(), TimeUnit.NANOSECONDS );
+            createTimer( PROCESSING_METER_NAME, "Time required for processing a remote web hook request.", lane, request )
+                .record( () -> process( request.getResourceId() ) );
+        }
+        catch ( Throwable e )
+        {
+            logger.error( "Error while processing remote web hook request for " + request.getResourceId() + ".", e );
+        }
+        finally
+        {
+            try
+            {
+                queuedRemoteResourceRepository.complete( nodeId, request.getQueuedRemoteResource() );
+            }
+            catch ( Throwable e )
+            {
+                logger.error( "Error while completing remote web hook request for " + request.getResourceId() + ". Request will be processed again.", e );
+            }
+
+            synchronized ( this )
+            {
+                lane.getRunningRequests().remove( request.getResourceId() );
+                if ( lane.isIdle() )
+                {
+                    lanesBySubscriptionId.remove( lane.getSubscriptionId() );
+                }
+                else if ( !executorService.isShutdown() )
+                {
+                    dispatch( lane );
+                }
+            }
+            requestPoll();
+        }
+    }
+
+    @Nonnull
+    private Timer createTimer( @Nonnull String name, @Nonnull String description, @Nonnull SubscriptionLane lane, @Nonnull QueuedRequest request )
+    {
+        return Timer.builder( name ).description( description )
+            .tag( "subscription", lane.getCode() ).tag( "resourceType", request.getFhirResourceType().name() )
+            .publishPercentileHistogram( config.isTimerPercentileHistogram() )
+            .publishPercentiles( config.getTimerPercentiles().stream().mapToDouble( Double::doubleValue ).toArray() )
+            .sla( config.getTimerSlaSeconds().stream().map( Duration::ofSeconds ).toArray( Duration[]::new ) )
+            .register( meterRegistry );
+    }
+
+    protected void process( @Nonnull UUID resourceId )
+    {
+        final RemoteSubscriptionResource subscriptionResource = resourceRepository.findOneForSubscriptionProcessing( resourceId ).orElse( null );
+        if ( subscriptionResource == null )
+        {
+            logger.warn( "Remote subscription resource {} does no longer exist. Ignoring web hook processing request.", resourceId );
+            return;
+        }
+
+        final LocalDateTime remoteLastUpdate;
+        switch ( subscriptionResource.getFhirResourceType() )
+        {
+            case PATIENT:
+                remoteLastUpdate = processor.processPatients( subscriptionResource );
+                break;
+            case IMMUNIZATION:
+                remoteLastUpdate = processor.processImmunizations( subscriptionResource );
+                break;
+            case OBSERVATION:
+                remoteLastUpdate = processor.processObservations( subscriptionResource );
+                break;
+            case MEDICATION_REQUEST:
+                remoteLastUpdate = processor.processMedicationRequests( subscriptionResource );
+                break;
+            default:
+                throw new AssertionError( "Unhandled FHIR resource type: " + subscriptionResource.getFhirResourceType() );
+        }
+
+        // the remote subscription resource may have been changed or processed by another adapter node in the meantime
+        if ( resourceRepository.updateProcessed( resourceId, subscriptionResource.getVersion(), remoteLastUpdate,
+            subscriptionResource.getCursorLastUpdated(), subscriptionResource.getCursorResourceIds() ) == 0 )
+        {
+            logger.warn( "Remote subscription resource {} has been changed while it has been processed. Processing state is not updated.", resourceId );
+        }
+    }
+
+    protected static class SubscriptionLane
+    {
+        private final UUID subscriptionId;
+
+        private final String code;
+
+        private final Map<UUID, QueuedRequest> pendingRequests = new LinkedHashMap<>();
+
+        private final Map<UUID, FhirResourceType> runningRequests = new HashMap<>();
+
+        public SubscriptionLane( @Nonnull UUID subscriptionId, @Nonnull String code )
+        {
+            this.subscriptionId = subscriptionId;
+            this.code = code;
+        }
+
+        @Nonnull
+        public UUID getSubscriptionId()
+        {
+            return subscriptionId;
+        }
+
+        @Nonnull
+        public String getCode()
+        {
+            return code;
+        }
+
+        @Nonnull
+        public Map<UUID, QueuedRequest> getPendingRequests()
+        {
+            return pendingRequests;
+        }
+
+        @Nonnull
+        public Map<UUID, FhirResourceType> getRunningRequests()
+        {
+            return runningRequests;
+        }
+
+        public boolean isIdle()
+        {
+            return pendingRequests.isEmpty() && runningRequests.isEmpty();
+        }
+    }
+
+    protected static class QueuedRequest
+    {
+        private final QueuedRemoteResource queuedRemoteResource;
+
+        private final long queuedNanos;
+
+        public QueuedRequest( @Nonnull QueuedRemoteResource queuedRemoteResource )
+        {
+            this.queuedRemoteResource = queuedRemoteResource;
+            this.queuedNanos = System.nanoTime() - TimeUnit.MILLISECONDS.toNanos( queuedRemoteResource.getQueuedMillis() );
+        }
+
+        @Nonnull
+        public QueuedRemoteResource getQueuedRemoteResource()
+        {
+            return queuedRemoteResource;
+        }
+
+        @Nonnull
+        public UUID getResourceId()
+        {
+            return queuedRemoteResource.getResourceId();
+        }
+
+        @Nonnull
+        public FhirResourceType getFhirResourceType()
+        {
+            return queuedRemoteResource.getFhirResourceType();
+        }
+
+        public long getQueuedNanos()
+        {
+            return queuedNanos;
+        }
+
+        public int getCoalescedCount()
+        {
+            return queuedRemoteResource.getCoalescedCount();
+        }
+    }
+
+    /**
+     * Creates daemon threads with the specified name prefix.
+     */
+    public static class WorkerThreadFactory implements ThreadFactory
+    {
+        private final AtomicInteger threadNumber = new AtomicInteger();
+
+        private final String namePrefix;
+
+        public WorkerThreadFactory( @Nonnull String namePrefix )
+        {
+            this.namePrefix = namePrefix;
+        }
+
+        @Override
+        public Thread newThread( @Nonnull Runnable r )
+        {
+            final Thread thread = new Thread( r, namePrefix + threadNumber.incrementAndGet() );
+            thread.setDaemon( true );
+            return thread;
+        }
+    }
+}
@@ -0,0 +1,338 @@
+package org.dhis2.fhir.adapter.fhir.remote.config;
+
+/*
+ * Copyright (c) 2004-2018, University of Oslo
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * Redistributions of source code must retain the above copyright notice, this
+ * list of conditions and the following disclaimer.
+ *
+ * Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation
+ * and/or other materials provided with the distribution.
+ * Neither the name of the HISP project nor the names of its contributors may
+ * be used to endorse or promote products derived from this software without
+ * specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.validation.annotation.Validated;
+
+import javax.validation.constraints.Min;
+import javax.validation.constraints.NotNull;
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Contains the configuration of the processing of remote web hook requests. Web
+ * hook requests of different remote subscriptions are processed concurrently by
+ * a pool of worker threads. Requests of the same remote subscription resource
+ * are always processed in the order they have been received. Requests are stored
+ * in a persistent queue and are claimed in batches for processing. Claims are
+ * leases of an adapter node, so that requests are shared between all nodes of a
+ * cluster and requests of failed nodes are taken over by other nodes.
+ *
+ * @author volsch
+ */
+@Configuration
+@ConfigurationProperties( "dhis2.fhir-adapter.remote-web-hook" )
+@Validated
+public class RemoteWebHookConfig implements Serializable
+{
+    private static final long serialVersionUID = -1960453427460474519L;
+
+    @Min( 1 )
+    private int poolSize = 4;
+
+    @Min( 1 )
+    private int maxSubscriptionConcurrency = 1;
+
+    @Min( 1 )
+    private int maxQueuedRequests = 1000;
+
+    @Min( 1 )
+    private int claimBatchSize = 100;
+
+    @Min( 1 )
+    private int pollIntervalSeconds = 30;
+
+    @Min( 3 )
+    private int leaseDurationSeconds = 120;
+
+    @Min( 1 )
+    private int processedResourceRetentionMinutes = 1440;
+
+    @Min( 1 )
+    private int maxResourceFailures = 5;
+
+    @Min( 1 )
+    private int parkedResourceReplayMinutes = 60;
+
+    private boolean pipelined;
+
+    @Min( 1 )
+    private int transformationPoolSize = 4;
+
+    @Min( 1 )
+    private int adaptivePagingMinPageSize = 10;
+
+    @Min( 1 )
+    private int adaptivePagingTargetLatencyMillis = 5000;
+
+    @Min( 1 )
+    private long adaptivePagingMaxBundleBytes = 10485760;
+
+    private boolean timerPercentileHistogram = true;
+
+    @NotNull
+    private List<Double> timerPercentiles = new ArrayList<>( Arrays.asList( 0.5, 0.95, 0.99 ) );
+
+    @NotNull
+    private List<Long> timerSlaSeconds = new ArrayList<>( Arrays.asList( 1L, 5L, 30L, 60L, 300L, 900L ) );
+
+    /**
+     * @return the number of worker threads that process web hook requests of all remote subscriptions.
+     */
+    public int getPoolSize()
+    {
+        return poolSize;
+    }
+
+    public void setPoolSize( int poolSize )
+    {
+        this.poolSize = poolSize;
+    }
+
+    /**
+     * @return the maximum number of resources of a single remote subscription that may be processed concurrently.
+     */
+    public int getMaxSubscriptionConcurrency()
+    {
+        return maxSubscriptionConcurrency;
+    }
+
+    public void setMaxSubscriptionConcurrency( int maxSubscriptionConcurrency )
+    {
+        this.maxSubscriptionConcurrency = maxSubscriptionConcurrency;
+    }
+
+    /**
+     * @return the maximum number of claimed web hook requests that may wait for processing by the worker threads.
+     */
+    public int getMaxQueuedRequests()
+    {
+        return maxQueuedRequests;
+    }
+
+    public void setMaxQueuedRequests( int maxQueuedRequests )
+    {
+        this.maxQueuedRequests = maxQueuedRequests;
+    }
+
+    /**
+     * @return the maximum number of web hook requests that are claimed from the persistent queue at once.
+     */
+    public int getClaimBatchSize()
+    {
+        return claimBatchSize;
+    }
+
+    public void setClaimBatchSize( int claimBatchSize )
+    {
+        this.claimBatchSize = claimBatchSize;
+    }
+
+    /**
+     * @return the interval in seconds in which the persistent queue is polled for web hook requests.
+     */
+    public int getPollIntervalSeconds()
+    {
+        return pollIntervalSeconds;
+    }
+
+    public void setPollIntervalSeconds( int pollIntervalSeconds )
+    {
+        this.pollIntervalSeconds = pollIntervalSeconds;
+    }
+
+    /**
+     * @return the number of seconds after which the claim of a web hook request by an adapter node expires when the node does not renew it.
+     * Leases are renewed three times within this duration.
+     */
+    public int getLeaseDurationSeconds()
+    {
+        return leaseDurationSeconds;
+    }
+
+    public void setLeaseDurationSeconds( int leaseDurationSeconds )
+    {
+        this.leaseDurationSeconds = leaseDurationSeconds;
+    }
+
+    /**
+     * @return the number of minutes processed FHIR resource versions are retained in order to avoid that they are processed again.
+     * This must be greater than the tolerance of all remote subscriptions.
+     */
+    public int getProcessedResourceRetentionMinutes()
+    {
+        return processedResourceRetentionMinutes;
+    }
+
+    public void setProcessedResourceRetentionMinutes( int processedResourceRetentionMinutes )
+    {
+        this.processedResourceRetentionMinutes = processedResourceRetentionMinutes;
+    }
+
+    /**
+     * @return the number of times processing of the same FHIR resource version may fail with an error that will not
+     * be resolved by retrying (e.g. a conflict or a transformation error) before the cursor of the remote subscription
+     * resource advances past it and the version is parked. Other errors (e.g. unavailable servers) are not counted.
+     */
+    public int getMaxResourceFailures()
+    {
+        return maxResourceFailures;
+    }
+
+    public void setMaxResourceFailures( int maxResourceFailures )
+    {
+        this.maxResourceFailures = maxResourceFailures;
+    }
+
+    /**
+     * @return the number of minutes after the last failed attempt until a parked FHIR resource version is replayed
+     * when its remote subscription resource is processed.
+     */
+    public int getParkedResourceReplayMinutes()
+    {
+        return parkedResourceReplayMinutes;
+    }
+
+    public void setParkedResourceReplayMinutes( int parkedResourceReplayMinutes )
+    {
+        this.parkedResourceReplayMinutes = parkedResourceReplayMinutes;
+    }
+
+    /**
+     * @return <code>true</code> if the next page of remote resources is fetched while the current page is being transformed
+     * and if the resources of a page are transformed concurrently by a pool of transformation threads. Resources that reference
+     * the same patient are never transformed concurrently.
+     */
+    public boolean isPipelined()
+    {
+        return pipelined;
+    }
+
+    public void setPipelined( boolean pipelined )
+    {
+        this.pipelined = pipelined;
+    }
+
+    /**
+     * @return the number of threads that transform remote resources concurrently when processing is pipelined.
+     */
+    public int getTransformationPoolSize()
+    {
+        return transformationPoolSize;
+    }
+
+    public void setTransformationPoolSize( int transformationPoolSize )
+    {
+        this.transformationPoolSize = transformationPoolSize;
+    }
+
+    /**
+     * @return the minimum page size to which adaptive paging may shrink the page size of a remote subscription.
+     */
+    public int getAdaptivePagingMinPageSize()
+    {
+        return adaptivePagingMinPageSize;
+    }
+
+    public void setAdaptivePagingMinPageSize( int adaptivePagingMinPageSize )
+    {
+        this.adaptivePagingMinPageSize = adaptivePagingMinPageSize;
+    }
+
+    /**
+     * @return the response latency in milliseconds above which adaptive paging shrinks the page size of a remote subscription.
+     */
+    public int getAdaptivePagingTargetLatencyMillis()
+    {
+        return adaptivePagingTargetLatencyMillis;
+    }
+
+    public void setAdaptivePagingTargetLatencyMillis( int adaptivePagingTargetLatencyMillis )
+    {
+        this.adaptivePagingTargetLatencyMillis = adaptivePagingTargetLatencyMillis;
+    }
+
+    /**
+     * @return the response size in bytes above which adaptive paging shrinks the page size of a remote subscription.
+     */
+    public long getAdaptivePagingMaxBundleBytes()
+    {
+        return adaptivePagingMaxBundleBytes;
+    }
+
+    public void setAdaptivePagingMaxBundleBytes( long adaptivePagingMaxBundleBytes )
+    {
+        this.adaptivePagingMaxBundleBytes = adaptivePagingMaxBundleBytes;
+    }
+
+    /**
+     * @return <code>true</code> if the timers of waiting and processing web hook requests publish a histogram
+     * from which percentiles can be aggregated by the monitoring system.
+     */
+    public boolean isTimerPercentileHistogram()
+    {
+        return timerPercentileHistogram;
+    }
+
+    public void setTimerPercentileHistogram( boolean timerPercentileHistogram )
+    {
+        this.timerPercentileHistogram = timerPercentileHistogram;
+    }
+
+    /**
+     * @return the percentiles (between 0 and 1) that are computed by the timers of waiting and processing web hook requests.
+     */
+    public List<Double> getTimerPercentiles()
+    {
+        return timerPercentiles;
+    }
+
+    public void setTimerPercentiles( List<Double> timerPercentiles )
+    {
+        this.timerPercentiles = timerPercentiles;
+    }
+
+    /**
+     * @return the service level boundaries in seconds for which the timers of waiting and processing web hook requests
+     * count the requests that have been completed within these boundaries.
+     */
+    public List<Long> getTimerSlaSeconds()
+    {
+        return timerSlaSeconds;
+    }
+
+    public void setTimerSlaSeconds( List<Long> timerSlaSeconds )
+    {
+        this.timerSlaSeconds = timerSlaSeconds;
+    }
+}
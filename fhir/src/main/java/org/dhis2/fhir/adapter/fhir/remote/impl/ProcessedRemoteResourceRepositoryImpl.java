@@ -0,0 +1,169 @@
+package org.dhis2.fhir.adapter.fhir.remote.impl;
+
+/*
+ * Copyright (c) 2004-2018, University of Oslo
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * Redistributions of source code must retain the above copyright notice, this
+ * list of conditions and the following disclaimer.
+ *
+ * Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation
+ * and/or other materials provided with the distribution.
+ * Neither the name of the HISP project nor the names of its contributors may
+ * be used to endorse or promote products derived from this software without
+ * specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+import org.dhis2.fhir.adapter.fhir.remote.ProcessedRemoteResource;
+import org.dhis2.fhir.adapter.fhir.remote.ProcessedRemoteResourceRepository;
+import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
+
+import javax.annotation.Nonnull;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.UUID;
+import java.util.stream.Collectors;
+
+/**
+ * Implementation of {@link ProcessedRemoteResourceRepository} that stores the
+ * ledger and the failed attempts in dedicated tables.
+ *
+ * @author volsch
+ */
+@Repository
+public class ProcessedRemoteResourceRepositoryImpl implements ProcessedRemoteResourceRepository
+{
+    protected static final String FIND_PROCESSED_SQL = "SELECT fhir_resource_id_hash, version_key FROM fhir_processed_remote_resource " +
+        "WHERE remote_subscription_resource_id=:subscriptionResourceId AND fhir_resource_id_hash IN (:idHashes)";
+
+    protected static final String SAVE_SQL = "INSERT INTO fhir_processed_remote_resource AS p (remote_subscription_resource_id, fhir_resource_id_hash, version_key) " +
+        "VALUES (:subscriptionResourceId, :idHash, :versionKey) ON CONFLICT (remote_subscription_resource_id, fhir_resource_id_hash) " +
+        "DO UPDATE SET version_key=EXCLUDED.version_key, processed_at=CURRENT_TIMESTAMP";
+
+    protected static final String DELETE_FAILED_SQL = "DELETE FROM fhir_failed_remote_resource " +
+        "WHERE remote_subscription_resource_id=:subscriptionResourceId AND fhir_resource_id_hash IN (:idHashes)";
+
+    protected static final String RECORD_FAILURE_SQL = "INSERT INTO fhir_failed_remote_resource AS f (remote_subscription_resource_id, fhir_resource_id_hash, version_key, fhir_resource_id) " +
+        "VALUES (:subscriptionResourceId, :idHash, :versionKey, :resourceId) ON CONFLICT (remote_subscription_resource_id, fhir_resource_id_hash) " +
+        "DO UPDATE SET failed_count=CASE WHEN f.version_key=EXCLUDED.version_key THEN f.failed_count+1 ELSE 1 END, " +
+        "parked_at=CASE WHEN f.version_key=EXCLUDED.version_key THEN f.parked_at ELSE NULL END, " +
+        "version_key=EXCLUDED.version_key, fhir_resource_id=EXCLUDED.fhir_resource_id, failed_at=CURRENT_TIMESTAMP RETURNING f.failed_count";
+
+    protected static final String PARK_SQL = "UPDATE fhir_failed_remote_resource SET parked_at=CURRENT_TIMESTAMP " +
+        "WHERE remote_subscription_resource_id=:subscriptionResourceId AND fhir_resource_id_hash=:idHash AND version_key=:versionKey";
+
+    protected static final String FIND_PARKED_SQL = "SELECT fhir_resource_id FROM fhir_failed_remote_resource " +
+        "WHERE remote_subscription_resource_id=:subscriptionResourceId AND parked_at IS NOT NULL " +
+        "AND failed_at<CURRENT_TIMESTAMP-:replayMinutes*INTERVAL '1 minute' ORDER BY parked_at";
+
+    protected static final String DELETE_PARKED_SQL = "DELETE FROM fhir_failed_remote_resource " +
+        "WHERE remote_subscription_resource_id=:subscriptionResourceId AND fhir_resource_id=:resourceId AND parked_at IS NOT NULL";
+
+    protected static final String DELETE_EXPIRED_SQL = "DELETE FROM fhir_processed_remote_resource WHERE remote_subscription_resource_id=:subscriptionResourceId " +
+        "AND processed_at<CURRENT_TIMESTAMP-:retentionMinutes*INTERVAL '1 minute'";
+
+    protected static final String DELETE_EXPIRED_FAILED_SQL = "DELETE FROM fhir_failed_remote_resource WHERE remote_subscription_resource_id=:subscriptionResourceId " +
+        "AND failed_at<CURRENT_TIMESTAMP-:retentionMinutes*INTERVAL '1 minute' AND parked_at IS NULL";
+
+    private final NamedParameterJdbcTemplate jdbcTemplate;
+
+    public ProcessedRemoteResourceRepositoryImpl( @Nonnull NamedParameterJdbcTemplate jdbcTemplate )
+    {
+        this.jdbcTemplate = jdbcTemplate;
+    }
+
+    @Nonnull
+    @Override
+    @Transactional( readOnly = true )
+    public Set<ProcessedRemoteResource> findProcessed( @Nonnull UUID subscriptionResourceId, @Nonnull Collection<ProcessedRemoteResource> processedResources )
+    {
+        if ( processedResources.isEmpty() )
+        {
+            return Collections.emptySet();
+        }
+        final Set<ProcessedRemoteResource> result = new HashSet<>( jdbcTemplate.query( FIND_PROCESSED_SQL,
+            new MapSqlParameterSource( "subscriptionResourceId", subscriptionResourceId )
+                .addValue( "idHashes", processedResources.stream().map( ProcessedRemoteResource::getIdHash ).collect( Collectors.toSet() ) ),
+            ( rs, rowNum ) -> new ProcessedRemoteResource( rs.getLong( "fhir_resource_id_hash" ), rs.getString( "version_key" ) ) ) );
+        result.retainAll( processedResources );
+        return result;
+    }
+
+    @Override
+    @Transactional
+    public void saveAll( @Nonnull UUID subscriptionResourceId, @Nonnull Collection<ProcessedRemoteResource> processedResources )
+    {
+        if ( !processedResources.isEmpty() )
+        {
+            jdbcTemplate.batchUpdate( SAVE_SQL, processedResources.stream().map( pr -> new MapSqlParameterSource( "subscriptionResourceId", subscriptionResourceId )
+                .addValue( "idHash", pr.getIdHash() ).addValue( "versionKey", pr.getVersionKey() ) ).toArray( MapSqlParameterSource[]::new ) );
+            jdbcTemplate.update( DELETE_FAILED_SQL, new MapSqlParameterSource( "subscriptionResourceId", subscriptionResourceId )
+                .addValue( "idHashes", processedResources.stream().map( ProcessedRemoteResource::getIdHash ).collect( Collectors.toSet() ) ) );
+        }
+    }
+
+    @Override
+    @Transactional
+    public int recordFailure( @Nonnull UUID subscriptionResourceId, @Nonnull ProcessedRemoteResource failedResource, @Nonnull String resourceId )
+    {
+        final Integer failedCount = jdbcTemplate.queryForObject( RECORD_FAILURE_SQL, new MapSqlParameterSource( "subscriptionResourceId", subscriptionResourceId )
+            .addValue( "idHash", failedResource.getIdHash() ).addValue( "versionKey", failedResource.getVersionKey() )
+            .addValue( "resourceId", resourceId ), Integer.class );
+        return (failedCount == null) ? 1 : failedCount;
+    }
+
+    @Override
+    @Transactional
+    public void park( @Nonnull UUID subscriptionResourceId, @Nonnull ProcessedRemoteResource failedResource )
+    {
+        jdbcTemplate.update( PARK_SQL, new MapSqlParameterSource( "subscriptionResourceId", subscriptionResourceId )
+            .addValue( "idHash", failedResource.getIdHash() ).addValue( "versionKey", failedResource.getVersionKey() ) );
+    }
+
+    @Nonnull
+    @Override
+    @Transactional( readOnly = true )
+    public List<String> findParked( @Nonnull UUID subscriptionResourceId, int replayMinutes )
+    {
+        return jdbcTemplate.queryForList( FIND_PARKED_SQL, new MapSqlParameterSource( "subscriptionResourceId", subscriptionResourceId )
+            .addValue( "replayMinutes", replayMinutes ), String.class );
+    }
+
+    @Override
+    @Transactional
+    public void deleteParked( @Nonnull UUID subscriptionResourceId, @Nonnull String resourceId )
+    {
+        jdbcTemplate.update( DELETE_PARKED_SQL, new MapSqlParameterSource( "subscriptionResourceId", subscriptionResourceId )
+            .addValue( "resourceId", resourceId ) );
+    }
+
+    @Override
+    @Transactional
+    public int deleteExpired( @Nonnull UUID subscriptionResourceId, int retentionMinutes )
+    {
+        final MapSqlParameterSource parameters = new MapSqlParameterSource( "subscriptionResourceId", subscriptionResourceId )
+            .addValue( "retentionMinutes", retentionMinutes );
+        jdbcTemplate.update( DELETE_EXPIRED_FAILED_SQL, parameters );
+        return jdbcTemplate.update( DELETE_EXPIRED_SQL, parameters );
+    }
+}
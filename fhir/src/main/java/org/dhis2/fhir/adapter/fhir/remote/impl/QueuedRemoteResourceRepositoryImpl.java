@@ -0,0 +1,141 @@
+package org.dhis2.fhir.adapter.fhir.remote.impl;
+
+/*
+ * Copyright (c) 2004-2018, University of Oslo
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * Redistributions of source code must retain the above copyright notice, this
+ * list of conditions and the following disclaimer.
+ *
+ * Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation
+ * and/or other materials provided with the distribution.
+ * Neither the name of the HISP project nor the names of its contributors may
+ * be used to endorse or promote products derived from this software without
+ * specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+import org.dhis2.fhir.adapter.fhir.metadata.model.FhirResourceType;
+import org.dhis2.fhir.adapter.fhir.remote.QueuedRemoteResource;
+import org.dhis2.fhir.adapter.fhir.remote.QueuedRemoteResourceRepository;
+import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
+
+import javax.annotation.Nonnull;
+import java.util.List;
+import java.util.UUID;
+import java.util.stream.Collectors;
+
+/**
+ * Implementation of {@link QueuedRemoteResourceRepository} that uses the locking
+ * clause <code>FOR UPDATE SKIP LOCKED</code> of PostgreSQL in order to claim
+ * requests without blocking concurrent claims.
+ *
+ * @author volsch
+ */
+@Repository
+public class QueuedRemoteResourceRepositoryImpl implements QueuedRemoteResourceRepository
+{
+    protected static final String ENQUEUE_SQL = "INSERT INTO fhir_queued_remote_resource AS q (remote_subscription_resource_id) VALUES (:resourceId) " +
+        "ON CONFLICT (remote_subscription_resource_id) DO UPDATE SET requested_at=CURRENT_TIMESTAMP, coalesced_count=q.coalesced_count+1 " +
+        "RETURNING (q.coalesced_count>0 AND q.claimed_at IS NULL)";
+
+    protected static final String CLAIM_SELECT_SQL = "SELECT q.remote_subscription_resource_id, q.coalesced_count, " +
+        "CAST(EXTRACT(EPOCH FROM (CURRENT_TIMESTAMP-q.queued_at))*1000 AS BIGINT) queued_millis, r.fhir_resource_type, s.id subscription_id, s.code subscription_code " +
+        "FROM fhir_queued_remote_resource q " +
+        "JOIN fhir_remote_subscription_resource r ON r.id=q.remote_subscription_resource_id " +
+        "JOIN fhir_remote_subscription s ON s.id=r.remote_subscription_id " +
+        "WHERE (q.lease_expires_at IS NULL OR q.lease_expires_at<CURRENT_TIMESTAMP) AND (r.fhir_resource_type='PATIENT' OR NOT EXISTS (" +
+        "SELECT 1 FROM fhir_queued_remote_resource pq JOIN fhir_remote_subscription_resource pr ON pr.id=pq.remote_subscription_resource_id " +
+        "WHERE pr.remote_subscription_id=r.remote_subscription_id AND pr.fhir_resource_type='PATIENT' AND pq.queued_at<q.queued_at " +
+        "AND (pq.claimed_by IS NULL OR pq.claimed_by<>:nodeId OR pq.lease_expires_at<CURRENT_TIMESTAMP))) " +
+        "ORDER BY q.queued_at LIMIT :maxCount FOR UPDATE OF q SKIP LOCKED";
+
+    protected static final String CLAIM_UPDATE_SQL = "UPDATE fhir_queued_remote_resource SET claimed_at=CURRENT_TIMESTAMP, claimed_by=:nodeId, " +
+        "lease_expires_at=CURRENT_TIMESTAMP+:leaseDurationSeconds*INTERVAL '1 second' WHERE remote_subscription_resource_id IN (:resourceIds)";
+
+    protected static final String RENEW_LEASES_SQL = "UPDATE fhir_queued_remote_resource SET lease_expires_at=CURRENT_TIMESTAMP+:leaseDurationSeconds*INTERVAL '1 second' " +
+        "WHERE claimed_by=:nodeId";
+
+    protected static final String RELEASE_ALL_SQL = "UPDATE fhir_queued_remote_resource SET claimed_at=NULL, claimed_by=NULL, lease_expires_at=NULL WHERE claimed_by=:nodeId";
+
+    protected static final String COMPLETE_DELETE_SQL = "DELETE FROM fhir_queued_remote_resource WHERE remote_subscription_resource_id=:resourceId " +
+        "AND coalesced_count=:coalescedCount AND claimed_by=:nodeId";
+
+    protected static final String COMPLETE_RELEASE_SQL = "UPDATE fhir_queued_remote_resource SET claimed_at=NULL, claimed_by=NULL, lease_expires_at=NULL, " +
+        "coalesced_count=0, queued_at=CURRENT_TIMESTAMP WHERE remote_subscription_resource_id=:resourceId AND claimed_by=:nodeId";
+
+    private final NamedParameterJdbcTemplate jdbcTemplate;
+
+    public QueuedRemoteResourceRepositoryImpl( @Nonnull NamedParameterJdbcTemplate jdbcTemplate )
+    {
+        this.jdbcTemplate = jdbcTemplate;
+    }
+
+    @Override
+    @Transactional
+    public boolean enqueue( @Nonnull UUID resourceId )
+    {
+        return Boolean.TRUE.equals( jdbcTemplate.queryForObject( ENQUEUE_SQL, new MapSqlParameterSource( "resourceId", resourceId ), Boolean.class ) );
+    }
+
+    @Nonnull
+    @Override
+    @Transactional
+    public List<QueuedRemoteResource> claim( @Nonnull String nodeId, int maxCount, int leaseDurationSeconds )
+    {
+        final List<QueuedRemoteResource> queuedRemoteResources = jdbcTemplate.query( CLAIM_SELECT_SQL,
+            new MapSqlParameterSource( "nodeId", nodeId ).addValue( "maxCount", maxCount ),
+            ( rs, rowNum ) -> new QueuedRemoteResource( rs.getObject( "remote_subscription_resource_id", UUID.class ),
+                FhirResourceType.valueOf( rs.getString( "fhir_resource_type" ) ), rs.getObject( "subscription_id", UUID.class ),
+                rs.getString( "subscription_code" ), rs.getInt( "coalesced_count" ), rs.getLong( "queued_millis" ) ) );
+        if ( !queuedRemoteResources.isEmpty() )
+        {
+            jdbcTemplate.update( CLAIM_UPDATE_SQL, new MapSqlParameterSource( "nodeId", nodeId ).addValue( "leaseDurationSeconds", leaseDurationSeconds )
+                .addValue( "resourceIds", queuedRemoteResources.stream().map( QueuedRemoteResource::getResourceId ).collect( Collectors.toList() ) ) );
+        }
+        return queuedRemoteResources;
+    }
+
+    @Override
+    @Transactional
+    public int renewLeases( @Nonnull String nodeId, int leaseDurationSeconds )
+    {
+        return jdbcTemplate.update( RENEW_LEASES_SQL, new MapSqlParameterSource( "nodeId", nodeId ).addValue( "leaseDurationSeconds", leaseDurationSeconds ) );
+    }
+
+    @Override
+    @Transactional
+    public int releaseAll( @Nonnull String nodeId )
+    {
+        return jdbcTemplate.update( RELEASE_ALL_SQL, new MapSqlParameterSource( "nodeId", nodeId ) );
+    }
+
+    @Override
+    @Transactional
+    public boolean complete( @Nonnull String nodeId, @Nonnull QueuedRemoteResource queuedRemoteResource )
+    {
+        final MapSqlParameterSource parameters = new MapSqlParameterSource( "nodeId", nodeId ).addValue( "resourceId", queuedRemoteResource.getResourceId() )
+            .addValue( "coalescedCount", queuedRemoteResource.getCoalescedCount() );
+        if ( jdbcTemplate.update( COMPLETE_DELETE_SQL, parameters ) > 0 )
+        {
+            return false;
+        }
+        return jdbcTemplate.update( COMPLETE_RELEASE_SQL, parameters ) > 0;
+    }
+}
@@ -0,0 +1,74 @@
+package org.dhis2.fhir.adapter.fhir.repository;
+
+/*
+ * Copyright (c) 2004-2018, University of Oslo
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * Redistributions of source code must retain the above copyright notice, this
+ * list of conditions and the following disclaimer.
+ *
+ * Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation
+ * and/or other materials provided with the distribution.
+ * Neither the name of the HISP project nor the names of its contributors may
+ * be used to endorse or promote products derived from this software without
+ * specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+import ca.uhn.fhir.context.FhirContext;
+import ca.uhn.fhir.rest.client.api.IGenericClient;
+import org.dhis2.fhir.adapter.fhir.metadata.model.RemoteSubscription;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.util.UUID;
+
+/**
+ * Registry of FHIR clients that access remote FHIR services. There is one shared
+ * FHIR client for each remote subscription. When a newer version of the remote
+ * subscription is used, a new FHIR client is created for the newer version. Older
+ * versions never replace the FHIR client of a newer version.
+ *
+ * @author volsch
+ */
+public interface FhirClientRegistry
+{
+    /**
+     * @param fhirContext        the FHIR context of the FHIR client.
+     * @param remoteSubscription the remote subscription for which the FHIR client should be returned.
+     * @return the shared FHIR client for the version of the remote subscription.
+     */
+    @Nonnull
+    IGenericClient getClient( @Nonnull FhirContext fhirContext, @Nonnull RemoteSubscription remoteSubscription );
+
+    /**
+     * Returns the remote subscription of the specified remote subscription resource.
+     * The result may be cached for a short period of time.
+     *
+     * @param subscriptionResourceId the ID of the remote subscription resource.
+     * @return the remote subscription or <code>null</code> if the remote subscription resource does not exist.
+     */
+    @Nullable
+    RemoteSubscription findRemoteSubscription( @Nonnull UUID subscriptionResourceId );
+
+    /**
+     * Removes the FHIR client and cached data of the specified remote subscription.
+     * This must be invoked when the remote subscription has been saved or deleted.
+     *
+     * @param remoteSubscriptionId the ID of the remote subscription.
+     */
+    void invalidate( @Nonnull UUID remoteSubscriptionId );
+}
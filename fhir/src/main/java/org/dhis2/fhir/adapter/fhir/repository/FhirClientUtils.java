@@ -50,6 +50,7 @@ public abstract class FhirClientUtils
         final AdditionalRequestHeadersInterceptor requestHeadersInterceptor = new AdditionalRequestHeadersInterceptor();
         remoteSubscription.getRemoteHeaders().forEach( h -> requestHeadersInterceptor.addHeaderValue( h.getName(), h.getValue() ) );
         client.registerInterceptor( requestHeadersInterceptor );
+        client.registerInterceptor( new ResponseSizeInterceptor() );
 
         return client;
     }
@@ -36,4 +36,11 @@ import javax.annotation.Nonnull;
 public interface FhirRepository
 {
     void save( @Nonnull RemoteSubscriptionResource subscriptionResource, @Nonnull IBaseResource resource );
+
+    /**
+     * @param subscriptionResource the remote subscription resource of the FHIR resources that will be saved.
+     * @return a new batch that writes the DHIS2 resources of the saved FHIR resources with bulk imports.
+     */
+    @Nonnull
+    FhirRepositoryBatch createBatch( @Nonnull RemoteSubscriptionResource subscriptionResource );
 }
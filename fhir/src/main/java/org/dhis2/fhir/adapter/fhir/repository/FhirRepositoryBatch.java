@@ -0,0 +1,69 @@
+package org.dhis2.fhir.adapter.fhir.repository;
+
+/*
+ * Copyright (c) 2004-2018, University of Oslo
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * Redistributions of source code must retain the above copyright notice, this
+ * list of conditions and the following disclaimer.
+ *
+ * Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation
+ * and/or other materials provided with the distribution.
+ * Neither the name of the HISP project nor the names of its contributors may
+ * be used to endorse or promote products derived from this software without
+ * specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+import org.hl7.fhir.instance.model.api.IBaseResource;
+
+import javax.annotation.Nonnull;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Batch of FHIR resources of one remote subscription resource that are transformed
+ * immediately but whose resulting DHIS2 resources are written later with bulk imports.
+ * Writes are flushed when the batch is full, when the maximum delay has elapsed, when
+ * a further resource of an already pending partition is saved or when the batch is
+ * flushed explicitly.
+ *
+ * @author volsch
+ */
+public interface FhirRepositoryBatch
+{
+    /**
+     * Transforms the specified FHIR resource and queues the writes of the resulting
+     * DHIS2 resources. Resources of the same partition (e.g. resources that reference
+     * the same patient) are never written with the same bulk import, since the
+     * transformation of a resource may depend on the written DHIS2 resources of a
+     * previous resource.
+     *
+     * @param resource  the FHIR resource that should be saved.
+     * @param partition the partition to which the resource belongs.
+     * @return the completion of the write that returns <code>true</code> if the resulting
+     * DHIS2 resources have been written successfully. The completion is completed exceptionally
+     * with the cause if the resulting DHIS2 resources could not be written. If the outcome of
+     * the write is unknown, the cause is a {@link org.dhis2.fhir.adapter.dhis.DhisImportTimeoutException}.
+     */
+    @Nonnull
+    CompletableFuture<Boolean> save( @Nonnull IBaseResource resource, @Nonnull String partition );
+
+    /**
+     * Initiates the writes of all pending DHIS2 resources. The corresponding completions
+     * are completed when the writes have been completed, which may happen asynchronously.
+     */
+    void flush();
+}
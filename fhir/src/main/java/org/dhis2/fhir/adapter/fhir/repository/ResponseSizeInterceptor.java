@@ -0,0 +1,73 @@
+package org.dhis2.fhir.adapter.fhir.repository;
+
+/*
+ * Copyright (c) 2004-2018, University of Oslo
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * Redistributions of source code must retain the above copyright notice, this
+ * list of conditions and the following disclaimer.
+ *
+ * Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation
+ * and/or other materials provided with the distribution.
+ * Neither the name of the HISP project nor the names of its contributors may
+ * be used to endorse or promote products derived from this software without
+ * specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+import ca.uhn.fhir.rest.client.api.IClientInterceptor;
+import ca.uhn.fhir.rest.client.api.IHttpRequest;
+import ca.uhn.fhir.rest.client.api.IHttpResponse;
+import org.apache.commons.lang3.math.NumberUtils;
+
+import java.util.List;
+
+/**
+ * Client interceptor that remembers the content length of the last response that
+ * has been received by the current thread.
+ *
+ * @author volsch
+ */
+public class ResponseSizeInterceptor implements IClientInterceptor
+{
+    private static final ThreadLocal<Long> lastContentLength = new ThreadLocal<>();
+
+    /**
+     * @return the content length of the last response that has been received by the
+     * current thread or <code>-1</code> if the content length is not known.
+     */
+    public static long getLastContentLength()
+    {
+        final Long contentLength = lastContentLength.get();
+        return (contentLength == null) ? -1 : contentLength;
+    }
+
+    @Override
+    public void interceptRequest( IHttpRequest theRequest )
+    {
+        lastContentLength.remove();
+    }
+
+    @Override
+    public void interceptResponse( IHttpResponse theResponse )
+    {
+        final List<String> values = theResponse.getHeaders( "Content-Length" );
+        if ( (values != null) && !values.isEmpty() )
+        {
+            lastContentLength.set( NumberUtils.toLong( values.get( 0 ), -1 ) );
+        }
+    }
+}
@@ -0,0 +1,135 @@
+package org.dhis2.fhir.adapter.fhir.repository.config;
+
+/*
+ * Copyright (c) 2004-2018, University of Oslo
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * Redistributions of source code must retain the above copyright notice, this
+ * list of conditions and the following disclaimer.
+ *
+ * Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation
+ * and/or other materials provided with the distribution.
+ * Neither the name of the HISP project nor the names of its contributors may
+ * be used to endorse or promote products derived from this software without
+ * specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.validation.annotation.Validated;
+
+import javax.validation.constraints.Min;
+import java.io.Serializable;
+
+/**
+ * Contains the configuration of batched DHIS2 writes. The DHIS2 resources that result
+ * from the transformation of remote resources are written with bulk imports of DHIS2
+ * instead of one request per resource. Bulk imports may be executed as asynchronous
+ * import jobs of DHIS2.
+ *
+ * @author volsch
+ */
+@Configuration
+@ConfigurationProperties( "dhis2.fhir-adapter.dhis-write-batch" )
+@Validated
+public class DhisWriteBatchConfig implements Serializable
+{
+    private static final long serialVersionUID = -2407538173945236582L;
+
+    private boolean enabled;
+
+    private boolean asyncImports;
+
+    @Min( 1 )
+    private int poolSize = 2;
+
+    @Min( 1 )
+    private int maxSize = 100;
+
+    @Min( 1 )
+    private int maxDelayMillis = 5000;
+
+    /**
+     * @return <code>true</code> if the DHIS2 resources that result from the transformation of a page of remote resources
+     * are written with bulk imports of DHIS2 instead of one request per resource.
+     */
+    public boolean isEnabled()
+    {
+        return enabled;
+    }
+
+    public void setEnabled( boolean enabled )
+    {
+        this.enabled = enabled;
+    }
+
+    /**
+     * @return <code>true</code> if the bulk imports of batched DHIS2 writes are executed as asynchronous import jobs of DHIS2,
+     * so that the threads that write the DHIS2 resources are not blocked while DHIS2 imports the resources.
+     */
+    public boolean isAsyncImports()
+    {
+        return asyncImports;
+    }
+
+    public void setAsyncImports( boolean asyncImports )
+    {
+        this.asyncImports = asyncImports;
+    }
+
+    /**
+     * @return the number of threads that execute the bulk imports of batched DHIS2 writes, that flush batched DHIS2 writes
+     * when their maximum delay has elapsed and that continue batched DHIS2 writes when asynchronous import jobs of DHIS2
+     * have been completed.
+     */
+    public int getPoolSize()
+    {
+        return poolSize;
+    }
+
+    public void setPoolSize( int poolSize )
+    {
+        this.poolSize = poolSize;
+    }
+
+    /**
+     * @return the maximum number of transformed remote resources whose DHIS2 resources are written with one bulk import.
+     */
+    public int getMaxSize()
+    {
+        return maxSize;
+    }
+
+    public void setMaxSize( int maxSize )
+    {
+        this.maxSize = maxSize;
+    }
+
+    /**
+     * @return the maximum time in milliseconds the DHIS2 resources of a transformed remote resource may be kept before they are written,
+     * even if no further remote resource is transformed.
+     */
+    public int getMaxDelayMillis()
+    {
+        return maxDelayMillis;
+    }
+
+    public void setMaxDelayMillis( int maxDelayMillis )
+    {
+        this.maxDelayMillis = maxDelayMillis;
+    }
+}
@@ -0,0 +1,183 @@
+package org.dhis2.fhir.adapter.fhir.repository.config;
+
+/*
+ * Copyright (c) 2004-2018, University of Oslo
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * Redistributions of source code must retain the above copyright notice, this
+ * list of conditions and the following disclaimer.
+ *
+ * Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation
+ * and/or other materials provided with the distribution.
+ * Neither the name of the HISP project nor the names of its contributors may
+ * be used to endorse or promote products derived from this software without
+ * specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+import org.apache.http.client.config.RequestConfig;
+import org.apache.http.impl.client.CloseableHttpClient;
+import org.apache.http.impl.client.DefaultConnectionKeepAliveStrategy;
+import org.apache.http.impl.client.HttpClientBuilder;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.validation.annotation.Validated;
+
+import javax.validation.constraints.Min;
+import java.io.Serializable;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Contains the configuration of the HTTP client that is shared by all FHIR clients
+ * that access remote FHIR services. Connections are pooled and kept alive, so that
+ * subsequent requests to the same remote FHIR service do not require a new TCP and
+ * TLS handshake.
+ *
+ * @author volsch
+ */
+@Configuration
+@ConfigurationProperties( "dhis2.fhir-adapter.remote-fhir-client" )
+@Validated
+public class RemoteFhirClientConfig implements Serializable
+{
+    private static final long serialVersionUID = 6385291738920470614L;
+
+    @Min( 1 )
+    private int maxPoolSize = 40;
+
+    @Min( 1 )
+    private int maxPoolSizePerRoute = 20;
+
+    @Min( 0 )
+    private int connectTimeoutMillis = 10000;
+
+    @Min( 0 )
+    private int socketTimeoutMillis = 10000;
+
+    @Min( 1 )
+    private int keepAliveSeconds = 60;
+
+    @Min( 1 )
+    private int maxIdleSeconds = 30;
+
+    @Min( 1 )
+    private int subscriptionCacheSeconds = 60;
+
+    /**
+     * @return the maximum number of pooled connections to all remote FHIR services.
+     */
+    public int getMaxPoolSize()
+    {
+        return maxPoolSize;
+    }
+
+    public void setMaxPoolSize( int maxPoolSize )
+    {
+        this.maxPoolSize = maxPoolSize;
+    }
+
+    /**
+     * @return the maximum number of pooled connections to a single remote FHIR service.
+     */
+    public int getMaxPoolSizePerRoute()
+    {
+        return maxPoolSizePerRoute;
+    }
+
+    public void setMaxPoolSizePerRoute( int maxPoolSizePerRoute )
+    {
+        this.maxPoolSizePerRoute = maxPoolSizePerRoute;
+    }
+
+    /**
+     * @return the timeout in milliseconds for establishing a connection to a remote FHIR service.
+     */
+    public int getConnectTimeoutMillis()
+    {
+        return connectTimeoutMillis;
+    }
+
+    public void setConnectTimeoutMillis( int connectTimeoutMillis )
+    {
+        this.connectTimeoutMillis = connectTimeoutMillis;
+    }
+
+    /**
+     * @return the timeout in milliseconds for waiting for data from a remote FHIR service.
+     */
+    public int getSocketTimeoutMillis()
+    {
+        return socketTimeoutMillis;
+    }
+
+    public void setSocketTimeoutMillis( int socketTimeoutMillis )
+    {
+        this.socketTimeoutMillis = socketTimeoutMillis;
+    }
+
+    /**
+     * @return the number of seconds a connection is kept alive if the remote FHIR service does not specify a keep-alive timeout.
+     */
+    public int getKeepAliveSeconds()
+    {
+        return keepAliveSeconds;
+    }
+
+    public void setKeepAliveSeconds( int keepAliveSeconds )
+    {
+        this.keepAliveSeconds = keepAliveSeconds;
+    }
+
+    /**
+     * @return the number of seconds after which idle connections are evicted from the pool.
+     */
+    public int getMaxIdleSeconds()
+    {
+        return maxIdleSeconds;
+    }
+
+    public void setMaxIdleSeconds( int maxIdleSeconds )
+    {
+        this.maxIdleSeconds = maxIdleSeconds;
+    }
+
+    /**
+     * @return the number of seconds the remote subscription of a remote subscription resource is cached when resolving FHIR clients.
+     */
+    public int getSubscriptionCacheSeconds()
+    {
+        return subscriptionCacheSeconds;
+    }
+
+    public void setSubscriptionCacheSeconds( int subscriptionCacheSeconds )
+    {
+        this.subscriptionCacheSeconds = subscriptionCacheSeconds;
+    }
+
+    @Bean( destroyMethod = "close" )
+    protected CloseableHttpClient remoteFhirHttpClient()
+    {
+        return HttpClientBuilder.create().useSystemProperties()
+            .setMaxConnTotal( getMaxPoolSize() ).setMaxConnPerRoute( getMaxPoolSizePerRoute() )
+            .setDefaultRequestConfig( RequestConfig.custom().setConnectTimeout( getConnectTimeoutMillis() ).setSocketTimeout( getSocketTimeoutMillis() ).build() )
+            .setKeepAliveStrategy( ( response, context ) -> {
+                final long duration = DefaultConnectionKeepAliveStrategy.INSTANCE.getKeepAliveDuration( response, context );
+                return (duration > 0) ? duration : TimeUnit.SECONDS.toMillis( getKeepAliveSeconds() );
+            } )
+            .evictExpiredConnections().evictIdleConnections( getMaxIdleSeconds(), TimeUnit.SECONDS ).build();
+    }
+}
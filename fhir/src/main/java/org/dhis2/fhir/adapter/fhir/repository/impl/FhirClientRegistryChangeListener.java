@@ -0,0 +1,72 @@
+package org.dhis2.fhir.adapter.fhir.repository.impl;
+
+/*
+ * Copyright (c) 2004-2018, University of Oslo
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * Redistributions of source code must retain the above copyright notice, this
+ * list of conditions and the following disclaimer.
+ *
+ * Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation
+ * and/or other materials provided with the distribution.
+ * Neither the name of the HISP project nor the names of its contributors may
+ * be used to endorse or promote products derived from this software without
+ * specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+import org.dhis2.fhir.adapter.fhir.metadata.model.RemoteSubscription;
+import org.dhis2.fhir.adapter.fhir.metadata.repository.listener.AbstractMetadataChangeListener;
+import org.dhis2.fhir.adapter.fhir.repository.FhirClientRegistry;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.Nonnull;
+import javax.persistence.EntityManagerFactory;
+import java.util.Collection;
+import java.util.Collections;
+
+/**
+ * Invalidates the FHIR client and the cached data of a remote subscription in the
+ * {@link FhirClientRegistry} when the remote subscription has been saved or deleted.
+ *
+ * @author volsch
+ */
+@Component
+public class FhirClientRegistryChangeListener extends AbstractMetadataChangeListener
+{
+    private static final long serialVersionUID = -3102587376426010876L;
+
+    private final transient FhirClientRegistry fhirClientRegistry;
+
+    public FhirClientRegistryChangeListener( @Nonnull EntityManagerFactory entityManagerFactory, @Nonnull FhirClientRegistry fhirClientRegistry )
+    {
+        super( entityManagerFactory );
+        this.fhirClientRegistry = fhirClientRegistry;
+    }
+
+    @Nonnull
+    @Override
+    protected Collection<Class<?>> getEntityClasses()
+    {
+        return Collections.singleton( RemoteSubscription.class );
+    }
+
+    @Override
+    protected void onChange( @Nonnull Object entity )
+    {
+        fhirClientRegistry.invalidate( ((RemoteSubscription) entity).getId() );
+    }
+}
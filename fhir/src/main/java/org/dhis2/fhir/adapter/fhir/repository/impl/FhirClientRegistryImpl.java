@@ -0,0 +1,134 @@
+package org.dhis2.fhir.adapter.fhir.repository.impl;
+
+/*
+ * Copyright (c) 2004-2018, University of Oslo
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * Redistributions of source code must retain the above copyright notice, this
+ * list of conditions and the following disclaimer.
+ *
+ * Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation
+ * and/or other materials provided with the distribution.
+ * Neither the name of the HISP project nor the names of its contributors may
+ * be used to endorse or promote products derived from this software without
+ * specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+import ca.uhn.fhir.context.FhirContext;
+import ca.uhn.fhir.rest.client.api.IGenericClient;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import org.dhis2.fhir.adapter.fhir.metadata.model.RemoteSubscription;
+import org.dhis2.fhir.adapter.fhir.metadata.model.RemoteSubscriptionResource;
+import org.dhis2.fhir.adapter.fhir.metadata.repository.RemoteSubscriptionResourceRepository;
+import org.dhis2.fhir.adapter.fhir.repository.FhirClientRegistry;
+import org.dhis2.fhir.adapter.fhir.repository.FhirClientUtils;
+import org.dhis2.fhir.adapter.fhir.repository.config.RemoteFhirClientConfig;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Implementation of {@link FhirClientRegistry}. The FHIR clients use the HTTP client
+ * of the FHIR context, which must be configured to use a pooled HTTP client.
+ *
+ * @author volsch
+ */
+@Component
+public class FhirClientRegistryImpl implements FhirClientRegistry
+{
+    private final RemoteSubscriptionResourceRepository subscriptionResourceRepository;
+
+    private final Map<UUID, ClientEntry> clientsBySubscriptionId = new ConcurrentHashMap<>();
+
+    private final Cache<UUID, RemoteSubscription> subscriptionsByResourceId;
+
+    public FhirClientRegistryImpl( @Nonnull RemoteSubscriptionResourceRepository subscriptionResourceRepository, @Nonnull RemoteFhirClientConfig config )
+    {
+        this.subscriptionResourceRepository = subscriptionResourceRepository;
+        this.subscriptionsByResourceId = Caffeine.newBuilder().expireAfterWrite( config.getSubscriptionCacheSeconds(), TimeUnit.SECONDS ).maximumSize( 1000 ).build();
+    }
+
+    @Nonnull
+    @Override
+    public IGenericClient getClient( @Nonnull FhirContext fhirContext, @Nonnull RemoteSubscription remoteSubscription )
+    {
+        // a remote subscription that has been read before the client has been created may be outdated and must not replace the client
+        return clientsBySubscriptionId.compute( remoteSubscription.getId(), ( id, entry ) ->
+            ((entry == null) || (entry.getFhirContext() != fhirContext) || isNewer( remoteSubscription.getVersion(), entry.getVersion() )) ?
+                new ClientEntry( fhirContext, remoteSubscription.getVersion(), FhirClientUtils.createClient( fhirContext, remoteSubscription ) ) : entry ).getClient();
+    }
+
+    protected static boolean isNewer( @Nullable Long version, @Nullable Long existingVersion )
+    {
+        return (version != null) && ((existingVersion == null) || (version > existingVersion));
+    }
+
+    @Nullable
+    @Override
+    public RemoteSubscription findRemoteSubscription( @Nonnull UUID subscriptionResourceId )
+    {
+        return subscriptionsByResourceId.get( subscriptionResourceId, id ->
+            subscriptionResourceRepository.findById( id ).map( RemoteSubscriptionResource::getRemoteSubscription ).orElse( null ) );
+    }
+
+    @Override
+    public void invalidate( @Nonnull UUID remoteSubscriptionId )
+    {
+        clientsBySubscriptionId.remove( remoteSubscriptionId );
+        subscriptionsByResourceId.asMap().values().removeIf( s -> remoteSubscriptionId.equals( s.getId() ) );
+    }
+
+    protected static class ClientEntry
+    {
+        private final FhirContext fhirContext;
+
+        private final Long version;
+
+        private final IGenericClient client;
+
+        public ClientEntry( @Nonnull FhirContext fhirContext, @Nullable Long version, @Nonnull IGenericClient client )
+        {
+            this.fhirContext = fhirContext;
+            this.version = version;
+            this.client = client;
+        }
+
+        @Nonnull
+        public FhirContext getFhirContext()
+        {
+            return fhirContext;
+        }
+
+        @Nullable
+        public Long getVersion()
+        {
+            return version;
+        }
+
+        @Nonnull
+        public IGenericClient getClient()
+        {
+            return client;
+        }
+    }
+}
@@ -0,0 +1,648 @@
+package org.dhis2.fhir.adapter.fhir.repository.impl;
+
+/*
+ * Copyright (c) 2004-2018, University of Oslo
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * Redistributions of source code must retain the above copyright notice, this
+ * list of conditions and the following disclaimer.
+ *
+ * Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation
+ * and/or other materials provided with the distribution.
+ * Neither the name of the HISP project nor the names of its contributors may
+ * be used to endorse or promote products derived from this software without
+ * specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+import org.dhis2.fhir.adapter.dhis.DhisImportTimeoutException;
+import org.dhis2.fhir.adapter.dhis.model.DataValue;
+import org.dhis2.fhir.adapter.dhis.model.DhisResource;
+import org.dhis2.fhir.adapter.dhis.model.ImportConflict;
+import org.dhis2.fhir.adapter.dhis.model.ImportStatus;
+import org.dhis2.fhir.adapter.dhis.model.ImportSummary;
+import org.dhis2.fhir.adapter.dhis.tracker.program.Enrollment;
+import org.dhis2.fhir.adapter.dhis.tracker.program.EnrollmentService;
+import org.dhis2.fhir.adapter.dhis.tracker.program.Event;
+import org.dhis2.fhir.adapter.dhis.tracker.program.EventService;
+import org.dhis2.fhir.adapter.dhis.tracker.trackedentity.TrackedEntityInstance;
+import org.dhis2.fhir.adapter.dhis.tracker.trackedentity.TrackedEntityService;
+import org.dhis2.fhir.adapter.dhis.util.BulkImportUtils;
+import org.dhis2.fhir.adapter.dhis.util.CodeGenerator;
+import org.dhis2.fhir.adapter.fhir.metadata.model.RemoteSubscriptionResource;
+import org.dhis2.fhir.adapter.fhir.repository.FhirRepositoryBatch;
+import org.dhis2.fhir.adapter.fhir.transform.FhirToDhisTransformOutcome;
+import org.hl7.fhir.instance.model.api.IBaseResource;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+/**
+ * Implementation of {@link FhirRepositoryBatch} that writes the DHIS2 resources of the
+ * transformation outcomes with the bulk imports of DHIS2. Tracked entity instances are
+ * imported before enrollments and enrollments before events. IDs of new DHIS2 resources
+ * are assigned before the import, so that dependent resources can reference them. The
+ * import summaries are mapped back to the originating FHIR resources. If any DHIS2
+ * resource of a FHIR resource could not be imported (or any resource on which it depends),
+ * the FHIR resource is saved individually afterwards, which includes the regular handling
+ * of conflicts. If an import job has not been completed within its timeout, its outcome
+ * is unknown and DHIS2 may still create the resources with the assigned IDs. The FHIR
+ * resources of such an import are not saved individually but left incomplete, so that
+ * they are processed again with the final state of DHIS2.
+ * <p>
+ * Pending writes are flushed when the maximum batch size has been reached, when a
+ * resource of a partition with pending writes is saved, or at the latest when the
+ * maximum delay of the first pending write has elapsed. The latter is triggered by
+ * the specified scheduler, even if no further resource is saved.
+ * <p>
+ * Flushes are executed one after the other on the threads of the specified executor.
+ * The pending writes are taken while holding the monitor of the batch, but the imports
+ * are started only after it has been released, so that saving further resources is
+ * never blocked by an import. If asynchronous imports are used, a flush continues on
+ * the threads of the specified executor when DHIS2 has completed an import, so that
+ * the threads that poll the import jobs of DHIS2 are not blocked by the subsequent
+ * writes. Only a resource of a partition whose flush has not yet been completed waits
+ * for that flush.
+ *
+ * @author volsch
+ */
+class FhirRepositoryBatchImpl implements FhirRepositoryBatch
+{
+    private final Logger logger = LoggerFactory.getLogger( getClass() );
+
+    private final FhirRepositoryImpl repository;
+
+    private final RemoteSubscriptionResource subscriptionResource;
+
+    private final TrackedEntityService trackedEntityService;
+
+    private final EnrollmentService enrollmentService;
+
+    private final EventService eventService;
+
+    private final boolean asyncImports;
+
+    private final Executor executor;
+
+    private final ScheduledExecutorService scheduler;
+
+    private final int maxSize;
+
+    private final long maxDelayNanos;
+
+    private final List<PendingWrite> pendingWrites = new ArrayList<>();
+
+    private final Set<String> pendingPartitions = new HashSet<>();
+
+    private final Map<String, CompletableFuture<Void>> flushesByPartition = new HashMap<>();
+
+    private CompletableFuture<Void> lastFlush = CompletableFuture.completedFuture( null );
+
+    private long firstPendingNanos;
+
+    private long flushCount;
+
+    FhirRepositoryBatchImpl( @Nonnull FhirRepositoryImpl repository, @Nonnull RemoteSubscriptionResource subscriptionResource,
+        @Nonnull TrackedEntityService trackedEntityService, @Nonnull EnrollmentService enrollmentService, @Nonnull EventService eventService,
+        boolean asyncImports, @Nonnull Executor executor, @Nullable ScheduledExecutorService scheduler, int maxSize, int maxDelayMillis )
+    {
+        this.repository = repository;
+        this.subscriptionResource = subscriptionResource;
+        this.trackedEntityService = trackedEntityService;
+        this.enrollmentService = enrollmentService;
+        this.eventService = eventService;
+        this.asyncImports = asyncImports;
+        this.executor = executor;
+        this.scheduler = scheduler;
+        this.maxSize = maxSize;
+        this.maxDelayNanos = TimeUnit.MILLISECONDS.toNanos( maxDelayMillis );
+    }
+
+    @Nonnull
+    @Override
+    public CompletableFuture<Boolean> save( @Nonnull IBaseResource resource, @Nonnull String partition )
+    {
+        Runnable flush = null;
+        final CompletableFuture<Void> partitionFlush;
+        synchronized ( this )
+        {
+            // transformation must see the written DHIS2 resources of a previous resource of the same partition
+            if ( pendingPartitions.contains( partition ) ||
+                (!pendingWrites.isEmpty() && (System.nanoTime() - firstPendingNanos >= maxDelayNanos)) )
+            {
+                flush = swapPendingWrites();
+            }
+            partitionFlush = flushesByPartition.get( partition );
+        }
+        startFlush( flush );
+        if ( partitionFlush != null )
+        {
+            partitionFlush.join();
+        }
+
+        final FhirToDhisTransformOutcome<? extends DhisResource> outcome =
+            repository.executeAuthorized( subscriptionResource, () -> repository.transform( subscriptionResource, resource ) );
+        if ( outcome == null )
+        {
+            return CompletableFuture.completedFuture( true );
+        }
+
+        final PendingWrite pendingWrite = createPendingWrite( resource, outcome );
+        flush = null;
+        synchronized ( this )
+        {
+            if ( pendingWrites.isEmpty() )
+            {
+                firstPendingNanos = System.nanoTime();
+                scheduleDelayedFlush();
+            }
+            pendingWrites.add( pendingWrite );
+            pendingPartitions.add( partition );
+            if ( pendingWrites.size() >= maxSize )
+            {
+                flush = swapPendingWrites();
+            }
+        }
+        startFlush( flush );
+        return pendingWrite.getCompletion();
+    }
+
+    @Override
+    public void flush()
+    {
+        final Runnable flush;
+        synchronized ( this )
+        {
+            flush = swapPendingWrites();
+        }
+        startFlush( flush );
+    }
+
+    private void scheduleDelayedFlush()
+    {
+        if ( scheduler == null )
+        {
+            return;
+        }
+        final long scheduledFlushCount = flushCount;
+        try
+        {
+            scheduler.schedule( () -> flushDelayed( scheduledFlushCount ), maxDelayNanos, TimeUnit.NANOSECONDS );
+        }
+        catch ( RejectedExecutionException e )
+        {
+            logger.debug( "Delayed flush of remote subscription resource {} could not be scheduled.", subscriptionResource.getId(), e );
+        }
+    }
+
+    private void flushDelayed( long scheduledFlushCount )
+    {
+        Runnable flush = null;
+        synchronized ( this )
+        {
+            // pending writes for which the flush has been scheduled may already have been flushed
+            if ( scheduledFlushCount == flushCount )
+            {
+                flush = swapPendingWrites();
+            }
+        }
+        startFlush( flush );
+    }
+
+    private void startFlush( @Nullable Runnable flush )
+    {
+        if ( flush != null )
+        {
+            flush.run();
+        }
+    }
+
+    /**
+     * Takes the pending writes and registers their flush as last flush. Must be
+     * invoked while holding the monitor of this batch.
+     *
+     * @return the runnable that starts the imports of the taken writes and that must be
+     * run after the monitor has been released, or <code>null</code> if there are no pending writes.
+     */
+    @Nullable
+    protected Runnable swapPendingWrites()
+    {
+        if ( pendingWrites.isEmpty() )
+        {
+            return null;
+        }
+        flushCount++;
+        final List<PendingWrite> writes = new ArrayList<>( pendingWrites );
+        final Set<String> partitions = new HashSet<>( pendingPartitions );
+        pendingWrites.clear();
+        pendingPartitions.clear();
+
+        final CompletableFuture<Void> previousFlush = lastFlush;
+        final CompletableFuture<Void> flush = new CompletableFuture<>();
+        lastFlush = flush;
+        partitions.forEach( p -> flushesByPartition.put( p, flush ) );
+        flush.thenRun( () -> {
+            synchronized ( this )
+            {
+                flushesByPartition.values().removeIf( f -> (f == flush) );
+            }
+        } );
+        return () -> importWrites( writes, previousFlush ).thenRun( () -> flush.complete( null ) );
+    }
+
+    @Nonnull
+    private CompletableFuture<Object> importWrites( @Nonnull List<PendingWrite> writes, @Nonnull CompletableFuture<Void> previousFlush )
+    {
+        return previousFlush.thenComposeAsync( v -> {
+            logger.info( "Importing DHIS2 resources of {} FHIR resources of remote subscription resource {}.", writes.size(), subscriptionResource.getId() );
+            return importAll( writes, PendingWrite::getTrackedEntityInstances,
+                importer( trackedEntityService::createOrUpdateAll, trackedEntityService::createOrUpdateAllAsync ), "tracked entity instances" );
+        }, executor )
+            .thenComposeAsync( v -> importAll( writes, PendingWrite::getEnrollments, this::importEnrollments, "enrollments" ), executor )
+            .thenComposeAsync( v -> importAll( writes, PendingWrite::getEvents,
+                importer( eventService::createOrUpdateAll, eventService::createOrUpdateAllAsync ), "events" ), executor )
+            .thenRunAsync( () -> completeAll( writes ), executor )
+            .handleAsync( ( v, e ) -> {
+                if ( e != null )
+                {
+                    logger.error( "Completing bulk import of remote subscription resource " + subscriptionResource.getId() + " failed.", e );
+                    writes.forEach( w -> w.getCompletion().completeExceptionally( e ) );
+                }
+                return null;
+            }, executor );
+    }
+
+    private void completeAll( @Nonnull List<PendingWrite> writes )
+    {
+        repository.executeAuthorized( subscriptionResource, () -> {
+            writes.stream().filter( w -> !w.isFailed() ).forEach( this::updateEventsMinimally );
+            return null;
+        } );
+
+        final long failedCount = writes.stream().filter( PendingWrite::isFailed ).count();
+        logger.info( "Imported DHIS2 resources of {} FHIR resources of remote subscription resource {} ({} failed).",
+            writes.size(), subscriptionResource.getId(), failedCount );
+        for ( final PendingWrite write : writes )
+        {
+            if ( write.isIncomplete() )
+            {
+                // DHIS2 may still complete the import with the already assigned IDs, an individual save could create duplicates
+                logger.warn( "Leaving FHIR resource {} incomplete since the outcome of its bulk import is unknown: {}",
+                    write.getResource().getIdElement().toUnqualifiedVersionless(), write.getFailure() );
+                write.getCompletion().completeExceptionally( new DhisImportTimeoutException( write.getFailure() ) );
+            }
+            else if ( write.isFailed() )
+            {
+                saveIndividually( write );
+            }
+            else
+            {
+                write.getResource().setId( write.getResult().getId() );
+                write.getCompletion().complete( true );
+            }
+        }
+    }
+
+    @Nonnull
+    private <R extends DhisResource> Function<List<R>, CompletableFuture<List<ImportSummary>>> importer(
+        @Nonnull Function<List<R>, List<ImportSummary>> syncImporter, @Nonnull Function<List<R>, CompletableFuture<List<ImportSummary>>> asyncImporter )
+    {
+        return asyncImports ? asyncImporter : resources -> CompletableFuture.completedFuture( syncImporter.apply( resources ) );
+    }
+
+    @Nonnull
+    private <R extends DhisResource> CompletableFuture<Void> importAll( @Nonnull List<PendingWrite> writes, @Nonnull Function<PendingWrite, List<R>> resourcesFunction,
+        @Nonnull Function<List<R>, CompletableFuture<List<ImportSummary>>> importFunction, @Nonnull String resourceName )
+    {
+        final List<R> resources = new ArrayList<>();
+        final List<PendingWrite> owners = new ArrayList<>();
+        writes.stream().filter( w -> !w.isFailed() ).forEach( w -> resourcesFunction.apply( w ).forEach( r -> {
+            resources.add( r );
+            owners.add( w );
+        } ) );
+        if ( resources.isEmpty() )
+        {
+            return CompletableFuture.completedFuture( null );
+        }
+
+        CompletableFuture<List<ImportSummary>> importCompletion;
+        try
+        {
+            importCompletion = repository.executeAuthorized( subscriptionResource, () -> importFunction.apply( resources ) );
+        }
+        catch ( RuntimeException e )
+        {
+            importCompletion = new CompletableFuture<>();
+            importCompletion.completeExceptionally( e );
+        }
+        return importCompletion.handleAsync( ( importSummaries, e ) -> {
+            if ( e != null )
+            {
+                final Throwable cause = ((e instanceof CompletionException) && (e.getCause() != null)) ? e.getCause() : e;
+                logger.warn( "Bulk import of " + resources.size() + " " + resourceName + " failed.", cause );
+                if ( cause instanceof DhisImportTimeoutException )
+                {
+                    owners.forEach( w -> w.setIncomplete( "Bulk import timed out: " + cause.getMessage() ) );
+                }
+                else
+                {
+                    owners.forEach( w -> w.setFailed( "Bulk import failed: " + cause.getMessage() ) );
+                }
+                return null;
+            }
+            for ( int i = 0; i < importSummaries.size(); i++ )
+            {
+                final ImportSummary importSummary = importSummaries.get( i );
+                if ( importSummary.getStatus() != ImportStatus.SUCCESS )
+                {
+                    owners.get( i ).setFailed( getFailureMessage( resources.get( i ), importSummary ) );
+                }
+            }
+            return null;
+        }, executor );
+    }
+
+    @Nonnull
+    private CompletableFuture<List<ImportSummary>> importEnrollments( @Nonnull List<Enrollment> enrollments )
+    {
+        final List<List<Event>> includedEvents = enrollments.stream().map( e -> (e.getEvents() == null) ?
+            Collections.<Event>emptyList() : e.getEvents() ).collect( Collectors.toList() );
+        return importer( enrollmentService::createOrUpdateAll, enrollmentService::createOrUpdateAllAsync ).apply( enrollments ).thenApplyAsync( importSummaries -> {
+            for ( int i = 0; i < importSummaries.size(); i++ )
+            {
+                final ImportSummary importSummary = importSummaries.get( i );
+                if ( (importSummary.getStatus() == ImportStatus.SUCCESS) && enrollments.get( i ).isNewResource() && !includedEvents.get( i ).isEmpty() )
+                {
+                    // events that are included in new enrollments have their own import summaries
+                    final ImportSummary failedEventImportSummary = BulkImportUtils.getImportSummaries( importSummary.getEvents(), includedEvents.get( i ) )
+                        .stream().filter( is -> is.getStatus() != ImportStatus.SUCCESS ).findFirst().orElse( null );
+                    if ( failedEventImportSummary != null )
+                    {
+                        importSummaries.set( i, failedEventImportSummary );
+                    }
+                }
+            }
+            return importSummaries;
+        }, executor );
+    }
+
+    private void updateEventsMinimally( @Nonnull PendingWrite write )
+    {
+        try
+        {
+            write.getMinimallyUpdatedEvents().forEach( eventService::createOrMinimalUpdate );
+        }
+        catch ( RuntimeException e )
+        {
+            logger.warn( "Minimal update of events failed.", e );
+            write.setFailed( "Minimal update of events failed: " + e.getMessage() );
+        }
+    }
+
+    private void saveIndividually( @Nonnull PendingWrite write )
+    {
+        logger.info( "Saving FHIR resource {} individually since its bulk import failed: {}",
+            write.getResource().getIdElement().toUnqualifiedVersionless(), write.getFailure() );
+        try
+        {
+            repository.save( subscriptionResource, write.getResource() );
+            write.getCompletion().complete( true );
+        }
+        catch ( Throwable e )
+        {
+            logger.error( "Could not save FHIR resource " + write.getResource().getIdElement().toUnqualifiedVersionless() + ".", e );
+            write.getCompletion().completeExceptionally( e );
+        }
+    }
+
+    @Nonnull
+    @SuppressWarnings( "unchecked" )
+    protected PendingWrite createPendingWrite( @Nonnull IBaseResource resource, @Nonnull FhirToDhisTransformOutcome<? extends DhisResource> outcome )
+    {
+        switch ( outcome.getResource().getResourceType() )
+        {
+            case TRACKED_ENTITY:
+                return createTrackedEntityPendingWrite( resource, (FhirToDhisTransformOutcome<TrackedEntityInstance>) outcome );
+            case PROGRAM_STAGE_EVENT:
+                return createProgramStageEventPendingWrite( resource, (FhirToDhisTransformOutcome<Event>) outcome );
+            default:
+                throw new AssertionError( "Unhandled DHIS resource type: " + outcome.getResource().getResourceType() );
+        }
+    }
+
+    @Nonnull
+    private PendingWrite createTrackedEntityPendingWrite( @Nonnull IBaseResource resource, @Nonnull FhirToDhisTransformOutcome<TrackedEntityInstance> outcome )
+    {
+        final TrackedEntityInstance trackedEntityInstance = outcome.getResource();
+        final PendingWrite write = new PendingWrite( resource, trackedEntityInstance );
+        addTrackedEntityInstance( write, trackedEntityInstance );
+        return write;
+    }
+
+    @Nonnull
+    private PendingWrite createProgramStageEventPendingWrite( @Nonnull IBaseResource resource, @Nonnull FhirToDhisTransformOutcome<Event> outcome )
+    {
+        final Event event = outcome.getResource();
+        final PendingWrite write = new PendingWrite( resource, event );
+        if ( (event.getTrackedEntityInstance() != null) && event.getTrackedEntityInstance().isModified() )
+        {
+            addTrackedEntityInstance( write, event.getTrackedEntityInstance() );
+        }
+
+        final Enrollment enrollment = event.getEnrollment();
+        if ( enrollment.isNewResource() )
+        {
+            if ( enrollment.getId() == null )
+            {
+                enrollment.setId( CodeGenerator.generateId() );
+            }
+            assignId( event );
+            event.setEnrollment( enrollment );
+            enrollment.setEvents( Collections.singletonList( event ) );
+            write.getEnrollments().add( enrollment );
+        }
+        else
+        {
+            if ( enrollment.isModified() )
+            {
+                write.getEnrollments().add( enrollment );
+            }
+            assignId( event );
+            if ( event.isNewResource() || event.isModified() || event.getDataValues().stream().anyMatch( DataValue::isNewResource ) )
+            {
+                write.getEvents().add( event );
+            }
+            else
+            {
+                // updates of single data values are not supported by bulk imports
+                write.getMinimallyUpdatedEvents().add( event );
+            }
+        }
+        return write;
+    }
+
+    private void addTrackedEntityInstance( @Nonnull PendingWrite write, @Nonnull TrackedEntityInstance trackedEntityInstance )
+    {
+        if ( trackedEntityInstance.getId() == null )
+        {
+            trackedEntityInstance.setId( CodeGenerator.generateId() );
+        }
+        write.getTrackedEntityInstances().add( trackedEntityInstance );
+    }
+
+    private void assignId( @Nonnull Event event )
+    {
+        if ( event.getId() == null )
+        {
+            event.setId( CodeGenerator.generateId() );
+        }
+    }
+
+    @Nonnull
+    private String getFailureMessage( @Nonnull DhisResource resource, @Nonnull ImportSummary importSummary )
+    {
+        final StringBuilder message = new StringBuilder( "Import of " ).append( resource.getResourceType() ).append( ' ' ).append( resource.getId() )
+            .append( " resulted in status " ).append( importSummary.getStatus() );
+        if ( importSummary.getDescription() != null )
+        {
+            message.append( ": " ).append( importSummary.getDescription() );
+        }
+        if ( (importSummary.getConflicts() != null) && !importSummary.getConflicts().isEmpty() )
+        {
+            message.append( " " ).append( importSummary.getConflicts().stream().map( ImportConflict::toString ).collect( Collectors.joining( ", ", "[", "]" ) ) );
+        }
+        return message.toString();
+    }
+
+    /**
+     * The pending writes of the DHIS2 resources that result from one FHIR resource.
+     */
+    protected static class PendingWrite
+    {
+        private final IBaseResource resource;
+
+        private final DhisResource result;
+
+        private final List<TrackedEntityInstance> trackedEntityInstances = new ArrayList<>();
+
+        private final List<Enrollment> enrollments = new ArrayList<>();
+
+        private final List<Event> events = new ArrayList<>();
+
+        private final List<Event> minimallyUpdatedEvents = new ArrayList<>();
+
+        private final CompletableFuture<Boolean> completion = new CompletableFuture<>();
+
+        private String failure;
+
+        private boolean incomplete;
+
+        public PendingWrite( @Nonnull IBaseResource resource, @Nonnull DhisResource result )
+        {
+            this.resource = resource;
+            this.result = result;
+        }
+
+        @Nonnull
+        public IBaseResource getResource()
+        {
+            return resource;
+        }
+
+        @Nonnull
+        public DhisResource getResult()
+        {
+            return result;
+        }
+
+        @Nonnull
+        public List<TrackedEntityInstance> getTrackedEntityInstances()
+        {
+            return trackedEntityInstances;
+        }
+
+        @Nonnull
+        public List<Enrollment> getEnrollments()
+        {
+            return enrollments;
+        }
+
+        @Nonnull
+        public List<Event> getEvents()
+        {
+            return events;
+        }
+
+        @Nonnull
+        public List<Event> getMinimallyUpdatedEvents()
+        {
+            return minimallyUpdatedEvents;
+        }
+
+        @Nonnull
+        public CompletableFuture<Boolean> getCompletion()
+        {
+            return completion;
+        }
+
+        public boolean isFailed()
+        {
+            return (failure != null);
+        }
+
+        @Nullable
+        public String getFailure()
+        {
+            return failure;
+        }
+
+        public void setFailed( @Nonnull String failure )
+        {
+            if ( this.failure == null )
+            {
+                this.failure = failure;
+            }
+        }
+
+        public boolean isIncomplete()
+        {
+            return incomplete;
+        }
+
+        public void setIncomplete( @Nonnull String failure )
+        {
+            setFailed( failure );
+            this.incomplete = true;
+        }
+    }
+}
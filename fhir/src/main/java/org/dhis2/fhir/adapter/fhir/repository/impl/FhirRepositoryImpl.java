@@ -42,7 +42,10 @@ import org.dhis2.fhir.adapter.fhir.metadata.model.FhirResourceType;
 import org.dhis2.fhir.adapter.fhir.metadata.model.RemoteSubscriptionResource;
 import org.dhis2.fhir.adapter.fhir.metadata.model.RemoteSubscriptionSystem;
 import org.dhis2.fhir.adapter.fhir.metadata.repository.RemoteSubscriptionSystemRepository;
+import org.dhis2.fhir.adapter.fhir.remote.RemoteWebHookWorkerPool;
 import org.dhis2.fhir.adapter.fhir.repository.FhirRepository;
+import org.dhis2.fhir.adapter.fhir.repository.FhirRepositoryBatch;
+import org.dhis2.fhir.adapter.fhir.repository.config.DhisWriteBatchConfig;
 import org.dhis2.fhir.adapter.fhir.transform.FhirToDhisTransformOutcome;
 import org.dhis2.fhir.adapter.fhir.transform.FhirToDhisTransformerService;
 import org.dhis2.fhir.adapter.fhir.transform.model.FhirRequestMethod;
@@ -58,12 +61,18 @@ import org.springframework.web.client.HttpClientErrorException;
 
 import javax.annotation.Nonnull;
 import javax.annotation.Nullable;
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
 import java.time.ZoneId;
 import java.time.ZonedDateTime;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.Date;
 import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
 import java.util.stream.Collectors;
 
 @Component
@@ -85,11 +94,15 @@ public class FhirRepositoryImpl implements FhirRepository
 
     private final EventService eventService;
 
+    private final DhisWriteBatchConfig dhisWriteBatchConfig;
+
     private final ZoneId zoneId = ZoneId.systemDefault();
 
+    private ScheduledExecutorService batchExecutor;
+
     public FhirRepositoryImpl( @Nonnull AuthorizationContext authorizationContext, @Nonnull RemoteSubscriptionSystemRepository remoteSubscriptionSystemRepository,
         @Nonnull FhirToDhisTransformerService fhirToDhisTransformerService, @Nonnull TrackedEntityService trackedEntityService,
-        @Nonnull EnrollmentService enrollmentService, @Nonnull EventService eventService )
+        @Nonnull EnrollmentService enrollmentService, @Nonnull EventService eventService, @Nonnull DhisWriteBatchConfig dhisWriteBatchConfig )
     {
         this.authorizationContext = authorizationContext;
         this.remoteSubscriptionSystemRepository = remoteSubscriptionSystemRepository;
@@ -97,6 +110,32 @@ public class FhirRepositoryImpl implements FhirRepository
         this.trackedEntityService = trackedEntityService;
         this.enrollmentService = enrollmentService;
         this.eventService = eventService;
+        this.dhisWriteBatchConfig = dhisWriteBatchConfig;
+    }
+
+    @PostConstruct
+    public void postConstruct()
+    {
+        if ( dhisWriteBatchConfig.isEnabled() )
+        {
+            batchExecutor = Executors.newScheduledThreadPool( dhisWriteBatchConfig.getPoolSize(),
+                new RemoteWebHookWorkerPool.WorkerThreadFactory( "DHIS2 Batch Write Thread " ) );
+        }
+    }
+
+    @PreDestroy
+    public void preDestroy() throws InterruptedException
+    {
+        if ( batchExecutor != null )
+        {
+            // pending writes are still flushed by their scheduled delayed flushes
+            batchExecutor.shutdown();
+            if ( !batchExecutor.awaitTermination( 30, TimeUnit.SECONDS ) )
+            {
+                logger.warn( "DHIS2 batch write threads did not terminate in time." );
+                batchExecutor.shutdownNow();
+            }
+        }
     }
 
     @Override
@@ -113,6 +152,33 @@ public class FhirRepositoryImpl implements FhirRepository
         }
     }
 
+    @Nonnull
+    @Override
+    public FhirRepositoryBatch createBatch( @Nonnull RemoteSubscriptionResource subscriptionResource )
+    {
+        if ( batchExecutor == null )
+        {
+            throw new IllegalStateException( "Batched DHIS2 writes have not been enabled." );
+        }
+        // imports are never executed by the threads that save the resources or that poll the import jobs
+        return new FhirRepositoryBatchImpl( this, subscriptionResource, trackedEntityService, enrollmentService, eventService,
+            dhisWriteBatchConfig.isAsyncImports(), batchExecutor, batchExecutor,
+            dhisWriteBatchConfig.getMaxSize(), dhisWriteBatchConfig.getMaxDelayMillis() );
+    }
+
+    protected <T> T executeAuthorized( @Nonnull RemoteSubscriptionResource subscriptionResource, @Nonnull Supplier<T> supplier )
+    {
+        authorizationContext.setAuthorization( new Authorization( subscriptionResource.getRemoteSubscription().getDhisAuthorizationHeader() ) );
+        try
+        {
+            return supplier.get();
+        }
+        finally
+        {
+            authorizationContext.resetAuthorization();
+        }
+    }
+
     protected void saveRetried( @Nonnull RemoteSubscriptionResource subscriptionResource, @Nonnull IBaseResource resource )
     {
         RuntimeException lastException = null;
@@ -140,6 +206,28 @@ public class FhirRepositoryImpl implements FhirRepository
 
     @SuppressWarnings( "unchecked" )
     protected void saveInternally( @Nonnull RemoteSubscriptionResource subscriptionResource, @Nonnull IBaseResource resource )
+    {
+        final FhirToDhisTransformOutcome<? extends DhisResource> outcome = transform( subscriptionResource, resource );
+        if ( outcome != null )
+        {
+            final DhisResource dhisResource;
+            switch ( outcome.getResource().getResourceType() )
+            {
+                case TRACKED_ENTITY:
+                    dhisResource = persistTrackedEntityOutcome( (FhirToDhisTransformOutcome<TrackedEntityInstance>) outcome );
+                    break;
+                case PROGRAM_STAGE_EVENT:
+                    dhisResource = persistProgramStageEventOutcome( (FhirToDhisTransformOutcome<Event>) outcome );
+                    break;
+                default:
+                    throw new AssertionError( "Unhandled DHIS resource type: " + outcome.getResource().getResourceType() );
+            }
+            resource.setId( dhisResource.getId() );
+        }
+    }
+
+    @Nullable
+    protected FhirToDhisTransformOutcome<? extends DhisResource> transform( @Nonnull RemoteSubscriptionResource subscriptionResource, @Nonnull IBaseResource resource )
     {
         final Collection<RemoteSubscriptionSystem> systems = remoteSubscriptionSystemRepository.findByRemoteSubscription( subscriptionResource.getRemoteSubscription() );
 
@@ -166,23 +254,7 @@ public class FhirRepositoryImpl implements FhirRepository
         {
             context.shutdown();
         }
-
-        if ( outcome != null )
-        {
-            final DhisResource dhisResource;
-            switch ( outcome.getResource().getResourceType() )
-            {
-                case TRACKED_ENTITY:
-                    dhisResource = persistTrackedEntityOutcome( (FhirToDhisTransformOutcome<TrackedEntityInstance>) outcome );
-                    break;
-                case PROGRAM_STAGE_EVENT:
-                    dhisResource = persistProgramStageEventOutcome( (FhirToDhisTransformOutcome<Event>) outcome );
-                    break;
-                default:
-                    throw new AssertionError( "Unhandled DHIS resource type: " + outcome.getResource().getResourceType() );
-            }
-            resource.setId( dhisResource.getId() );
-        }
+        return outcome;
     }
 
     @Nonnull
@@ -0,0 +1,64 @@
+package org.dhis2.fhir.adapter.fhir.script;
+
+/*
+ * Copyright (c) 2004-2018, University of Oslo
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * Redistributions of source code must retain the above copyright notice, this
+ * list of conditions and the following disclaimer.
+ *
+ * Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation
+ * and/or other materials provided with the distribution.
+ * Neither the name of the HISP project nor the names of its contributors may
+ * be used to endorse or promote products derived from this software without
+ * specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+import org.dhis2.fhir.adapter.fhir.metadata.model.ScriptSource;
+
+import javax.annotation.Nonnull;
+import javax.script.CompiledScript;
+import java.util.UUID;
+
+/**
+ * Cache of compiled scripts. Scripts are cached by the ID and the version of their
+ * script source. A changed script source results in a new version and therefore in a
+ * new compilation of the script. The previous versions of a changed script source are
+ * removed from the cache.
+ *
+ * @author volsch
+ */
+public interface CompiledScriptCache
+{
+    /**
+     * Returns the compiled script of the specified script source. If the script source
+     * has not yet been compiled, it is compiled and added to the cache.
+     *
+     * @param scriptSource the script source for which the compiled script should be returned.
+     * @return the compiled script of the specified script source.
+     * @throws ScriptPreparationException thrown if the script source cannot be compiled.
+     */
+    @Nonnull
+    CompiledScript get( @Nonnull ScriptSource scriptSource ) throws ScriptPreparationException;
+
+    /**
+     * Removes all compiled versions of the specified script source from the cache.
+     *
+     * @param scriptSourceId the ID of the script source that should be removed.
+     */
+    void invalidate( @Nonnull UUID scriptSourceId );
+}
@@ -0,0 +1,243 @@
+package org.dhis2.fhir.adapter.fhir.script;
+
+/*
+ * Copyright (c) 2004-2018, University of Oslo
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * Redistributions of source code must retain the above copyright notice, this
+ * list of conditions and the following disclaimer.
+ *
+ * Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation
+ * and/or other materials provided with the distribution.
+ * Neither the name of the HISP project nor the names of its contributors may
+ * be used to endorse or promote products derived from this software without
+ * specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+import javax.annotation.Nonnull;
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.function.Supplier;
+
+/**
+ * Script variables that extend the variables of a parent scope without copying them.
+ * Variables that are expensive to create can be added with a supplier and are
+ * materialized when they are accessed the first time. Iterating over the entries
+ * does not materialize them, only accessing the value of an entry does. Variables
+ * of this scope override the variables of the parent scope, which is never modified.
+ * Variables of the parent scope that are removed are hidden by this scope.
+ *
+ * @author volsch
+ */
+public class LazyScriptVariables extends AbstractMap<String, Object>
+{
+    private final Map<String, ?> parent;
+
+    private final Map<String, Object> values = new HashMap<>();
+
+    private final Map<String, Supplier<?>> suppliers = new HashMap<>();
+
+    private final Set<Object> removedNames = new HashSet<>();
+
+    public LazyScriptVariables( @Nonnull Map<String, ?> parent )
+    {
+        this.parent = parent;
+    }
+
+    /**
+     * Adds a variable whose value is created by the specified supplier when the
+     * variable is accessed the first time.
+     *
+     * @param name     the name of the variable.
+     * @param supplier the supplier that creates the value of the variable.
+     */
+    public void putLazy( @Nonnull String name, @Nonnull Supplier<?> supplier )
+    {
+        values.remove( name );
+        removedNames.remove( name );
+        suppliers.put( name, supplier );
+    }
+
+    @Override
+    public boolean containsKey( Object key )
+    {
+        return values.containsKey( key ) || suppliers.containsKey( key ) || (!removedNames.contains( key ) && parent.containsKey( key ));
+    }
+
+    @Override
+    public Object get( Object key )
+    {
+        if ( values.containsKey( key ) )
+        {
+            return values.get( key );
+        }
+        final Supplier<?> supplier = suppliers.remove( key );
+        if ( supplier != null )
+        {
+            final Object value = supplier.get();
+            values.put( (String) key, value );
+            return value;
+        }
+        return removedNames.contains( key ) ? null : parent.get( key );
+    }
+
+    /**
+     * Puts the variable into this scope. The value of an overridden variable of the
+     * parent scope is not returned in order to avoid its materialization.
+     */
+    @Override
+    public Object put( String key, Object value )
+    {
+        suppliers.remove( key );
+        removedNames.remove( key );
+        return values.put( key, value );
+    }
+
+    /**
+     * Removes the variable from this scope and hides the variable of the parent scope.
+     * The value of a variable that has not yet been materialized or that belongs to the
+     * parent scope is not returned in order to avoid its materialization.
+     */
+    @Override
+    public Object remove( Object key )
+    {
+        suppliers.remove( key );
+        if ( parent.containsKey( key ) )
+        {
+            removedNames.add( key );
+        }
+        return values.remove( key );
+    }
+
+    @Nonnull
+    @Override
+    public Set<Entry<String, Object>> entrySet()
+    {
+        return new AbstractSet<Entry<String, Object>>()
+        {
+            @Nonnull
+            @Override
+            public Iterator<Entry<String, Object>> iterator()
+            {
+                final Iterator<String> names = getNames().iterator();
+                return new Iterator<Entry<String, Object>>()
+                {
+                    private String name;
+
+                    @Override
+                    public boolean hasNext()
+                    {
+                        return names.hasNext();
+                    }
+
+                    @Override
+                    public Entry<String, Object> next()
+                    {
+                        name = names.next();
+                        return new LazyEntry( name );
+                    }
+
+                    @Override
+                    public void remove()
+                    {
+                        LazyScriptVariables.this.remove( name );
+                    }
+                };
+            }
+
+            @Override
+            public int size()
+            {
+                return getNames().size();
+            }
+        };
+    }
+
+    @Nonnull
+    private Set<String> getNames()
+    {
+        final Set<String> names = new LinkedHashSet<>();
+        parent.keySet().forEach( name -> {
+            if ( !removedNames.contains( name ) )
+            {
+                names.add( name );
+            }
+        } );
+        names.addAll( values.keySet() );
+        names.addAll( suppliers.keySet() );
+        return names;
+    }
+
+    /**
+     * Entry whose value is materialized when it is accessed.
+     */
+    private class LazyEntry implements Entry<String, Object>
+    {
+        private final String name;
+
+        private LazyEntry( @Nonnull String name )
+        {
+            this.name = name;
+        }
+
+        @Override
+        public String getKey()
+        {
+            return name;
+        }
+
+        @Override
+        public Object getValue()
+        {
+            return get( name );
+        }
+
+        @Override
+        public Object setValue( Object value )
+        {
+            return put( name, value );
+        }
+
+        @Override
+        public boolean equals( Object o )
+        {
+            if ( this == o )
+            {
+                return true;
+            }
+            if ( !(o instanceof Entry) )
+            {
+                return false;
+            }
+            final Entry<?, ?> e = (Entry<?, ?>) o;
+            return name.equals( e.getKey() ) && Objects.equals( getValue(), e.getValue() );
+        }
+
+        @Override
+        public int hashCode()
+        {
+            return name.hashCode() ^ Objects.hashCode( getValue() );
+        }
+    }
+}
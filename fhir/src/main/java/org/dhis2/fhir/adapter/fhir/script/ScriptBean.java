@@ -0,0 +1,56 @@
+package org.dhis2.fhir.adapter.fhir.script;
+
+/*
+ * Copyright (c) 2004-2018, University of Oslo
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * Redistributions of source code must retain the above copyright notice, this
+ * list of conditions and the following disclaimer.
+ *
+ * Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation
+ * and/or other materials provided with the distribution.
+ * Neither the name of the HISP project nor the names of its contributors may
+ * be used to endorse or promote products derived from this software without
+ * specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.util.Map;
+
+/**
+ * Native Java implementation of a script. The implementation must be registered as
+ * Spring bean. The name of the bean is used as source text of a script source with
+ * source type {@link org.dhis2.fhir.adapter.fhir.metadata.model.ScriptSourceType#JAVA_BEAN}.
+ * The script bean gets the same variables and arguments that a script of the
+ * script engine gets and must return a value of the return type of the script.
+ *
+ * @author volsch
+ */
+public interface ScriptBean
+{
+    /**
+     * Executes the script.
+     *
+     * @param variables the variables of the script (including the arguments as variable <code>args</code>).
+     * @param arguments the arguments of the script.
+     * @return the result of the script.
+     * @throws ScriptExecutionException thrown if the script cannot be executed.
+     */
+    @Nullable
+    Object execute( @Nonnull Map<String, Object> variables, @Nonnull Map<String, Object> arguments ) throws ScriptExecutionException;
+}
@@ -0,0 +1,180 @@
+package org.dhis2.fhir.adapter.fhir.script.impl;
+
+/*
+ * Copyright (c) 2004-2018, University of Oslo
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * Redistributions of source code must retain the above copyright notice, this
+ * list of conditions and the following disclaimer.
+ *
+ * Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation
+ * and/or other materials provided with the distribution.
+ * Neither the name of the HISP project nor the names of its contributors may
+ * be used to endorse or promote products derived from this software without
+ * specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import org.dhis2.fhir.adapter.fhir.metadata.model.ScriptSource;
+import org.dhis2.fhir.adapter.fhir.script.CompiledScriptCache;
+import org.dhis2.fhir.adapter.fhir.script.ScriptPreparationException;
+import org.dhis2.fhir.adapter.fhir.transform.config.TransformationConfig;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.Nonnull;
+import javax.script.Bindings;
+import javax.script.Compilable;
+import javax.script.CompiledScript;
+import javax.script.ScriptContext;
+import javax.script.ScriptEngine;
+import javax.script.ScriptException;
+import java.util.Objects;
+import java.util.UUID;
+
+/**
+ * Implementation of {@link CompiledScriptCache} that compiles the scripts with the
+ * configured script engine. If the script engine does not support compilation, the
+ * script source text is evaluated on every execution. The number of cached scripts
+ * is bounded and cache hits and misses are exposed as metrics.
+ *
+ * @author volsch
+ */
+@Component
+public class CompiledScriptCacheImpl implements CompiledScriptCache
+{
+    public static final String CACHE_NAME = "compiledScript";
+
+    private final ScriptEngine scriptEngine;
+
+    private final Cache<CacheKey, CompiledScript> compiledScripts;
+
+    public CompiledScriptCacheImpl( @Nonnull ScriptEngine scriptEngine, @Nonnull TransformationConfig config, @Nonnull MeterRegistry meterRegistry )
+    {
+        this.scriptEngine = scriptEngine;
+        this.compiledScripts = Caffeine.newBuilder().maximumSize( config.getCompiledScriptCacheMaxSize() ).recordStats().build();
+        CaffeineCacheMetrics.monitor( meterRegistry, compiledScripts, CACHE_NAME );
+    }
+
+    @Nonnull
+    @Override
+    public CompiledScript get( @Nonnull ScriptSource scriptSource ) throws ScriptPreparationException
+    {
+        return compiledScripts.get( new CacheKey( scriptSource.getId(), scriptSource.getVersion() ), k -> compile( scriptSource ) );
+    }
+
+    @Override
+    public void invalidate( @Nonnull UUID scriptSourceId )
+    {
+        compiledScripts.asMap().keySet().removeIf( k -> scriptSourceId.equals( k.getScriptSourceId() ) );
+    }
+
+    @Nonnull
+    protected CompiledScript compile( @Nonnull ScriptSource scriptSource ) throws ScriptPreparationException
+    {
+        if ( !(scriptEngine instanceof Compilable) )
+        {
+            return new SourceCompiledScript( scriptEngine, scriptSource.getSourceText() );
+        }
+        try
+        {
+            // compilation of script engines is not required to be thread-safe
+            synchronized ( scriptEngine )
+            {
+                return ((Compilable) scriptEngine).compile( scriptSource.getSourceText() );
+            }
+        }
+        catch ( ScriptException e )
+        {
+            throw new ScriptPreparationException( "Could not compile script source " + scriptSource.getId() + ": " + e.getMessage(), e );
+        }
+    }
+
+    /**
+     * Key of a compiled script that consists of the ID and the version of the script source.
+     */
+    protected static final class CacheKey
+    {
+        private final UUID scriptSourceId;
+
+        private final Long version;
+
+        public CacheKey( @Nonnull UUID scriptSourceId, Long version )
+        {
+            this.scriptSourceId = scriptSourceId;
+            this.version = version;
+        }
+
+        @Nonnull
+        public UUID getScriptSourceId()
+        {
+            return scriptSourceId;
+        }
+
+        @Override
+        public boolean equals( Object o )
+        {
+            if ( this == o ) return true;
+            if ( o == null || getClass() != o.getClass() ) return false;
+            final CacheKey cacheKey = (CacheKey) o;
+            return scriptSourceId.equals( cacheKey.scriptSourceId ) && Objects.equals( version, cacheKey.version );
+        }
+
+        @Override
+        public int hashCode()
+        {
+            return Objects.hash( scriptSourceId, version );
+        }
+    }
+
+    /**
+     * Compiled script of a script engine that does not support compilation. The source
+     * text of the script is evaluated on every execution.
+     */
+    protected static class SourceCompiledScript extends CompiledScript
+    {
+        private final ScriptEngine scriptEngine;
+
+        private final String sourceText;
+
+        public SourceCompiledScript( @Nonnull ScriptEngine scriptEngine, @Nonnull String sourceText )
+        {
+            this.scriptEngine = scriptEngine;
+            this.sourceText = sourceText;
+        }
+
+        @Override
+        public Object eval( ScriptContext context ) throws ScriptException
+        {
+            return scriptEngine.eval( sourceText, context );
+        }
+
+        @Override
+        public Object eval( Bindings bindings ) throws ScriptException
+        {
+            return scriptEngine.eval( sourceText, bindings );
+        }
+
+        @Override
+        public ScriptEngine getEngine()
+        {
+            return scriptEngine;
+        }
+    }
+}
@@ -0,0 +1,62 @@
+package org.dhis2.fhir.adapter.fhir.script.impl;
+
+/*
+ * Copyright (c) 2004-2018, University of Oslo
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * Redistributions of source code must retain the above copyright notice, this
+ * list of conditions and the following disclaimer.
+ *
+ * Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation
+ * and/or other materials provided with the distribution.
+ * Neither the name of the HISP project nor the names of its contributors may
+ * be used to endorse or promote products derived from this software without
+ * specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.util.Map;
+
+/**
+ * Native Java implementation of a trivial script that has been detected by
+ * {@link StaticScriptAnalyzer}. The script engine is not used for such scripts.
+ *
+ * @author volsch
+ */
+public interface NativeScript
+{
+    /**
+     * @return <code>true</code> if the result of the script does neither depend on
+     * variables nor on arguments, <code>false</code> otherwise.
+     */
+    boolean isConstant();
+
+    /**
+     * @param variables the variables of the execution including the arguments.
+     * @return <code>true</code> if the script can be executed natively with the
+     * specified variables, <code>false</code> if the script engine must be used.
+     */
+    boolean isApplicable( @Nonnull Map<String, Object> variables );
+
+    /**
+     * @param variables the variables of the execution including the arguments.
+     * @return the result of the script.
+     */
+    @Nullable
+    Object execute( @Nonnull Map<String, Object> variables );
+}
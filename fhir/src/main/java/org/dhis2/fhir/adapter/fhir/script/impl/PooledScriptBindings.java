@@ -0,0 +1,173 @@
+package org.dhis2.fhir.adapter.fhir.script.impl;
+
+/*
+ * Copyright (c) 2004-2018, University of Oslo
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * Redistributions of source code must retain the above copyright notice, this
+ * list of conditions and the following disclaimer.
+ *
+ * Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation
+ * and/or other materials provided with the distribution.
+ * Neither the name of the HISP project nor the names of its contributors may
+ * be used to endorse or promote products derived from this software without
+ * specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+import com.oracle.truffle.js.scriptengine.GraalJSScriptEngine;
+import org.graalvm.polyglot.Context;
+import org.graalvm.polyglot.proxy.ProxyObject;
+
+import javax.annotation.Nonnull;
+import javax.script.Bindings;
+import javax.script.ScriptEngine;
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Global scope of a script engine that is leased from {@link ScriptBindingsPool}. The
+ * global variables (e.g. the transformer utils) are installed once when the scope is
+ * created. Only the variables of a single execution are bound and reset afterwards.
+ * An instance is confined to a single thread while it is leased.
+ * <br>
+ * GraalJS does not support the member access of Java maps (e.g. <code>args['age']</code>)
+ * that is supported by Nashorn. Maps are therefore bound as polyglot proxy objects when
+ * GraalJS is used.
+ *
+ * @author volsch
+ */
+public class PooledScriptBindings
+{
+    private final Bindings bindings;
+
+    private final Map<String, Object> globalVariables;
+
+    private final boolean mapProxies;
+
+    private final Set<String> globalNames;
+
+    public PooledScriptBindings( @Nonnull ScriptEngine scriptEngine, @Nonnull Map<String, Object> globalVariables )
+    {
+        this.bindings = scriptEngine.createBindings();
+        this.globalVariables = globalVariables;
+        this.mapProxies = (scriptEngine instanceof GraalJSScriptEngine);
+        this.bindings.putAll( globalVariables );
+        this.globalNames = new HashSet<>( bindings.keySet() );
+    }
+
+    @Nonnull
+    public Bindings getBindings()
+    {
+        return bindings;
+    }
+
+    /**
+     * Binds the variables of a single execution that may be referenced by the script.
+     * Variables that have already been installed as global variables with the same value
+     * are not bound again. The values of variables that are not referenced by the script
+     * are not accessed, so that lazy variables are not materialized.
+     *
+     * @param variables       the variables of a single execution.
+     * @param referencedNames the names that may be referenced by the script.
+     */
+    public void bind( @Nonnull Map<String, Object> variables, @Nonnull Set<String> referencedNames )
+    {
+        for ( final String name : referencedNames )
+        {
+            if ( variables.containsKey( name ) )
+            {
+                final Object value = variables.get( name );
+                if ( !globalVariables.containsKey( name ) || (globalVariables.get( name ) != value) )
+                {
+                    bindings.put( name, convertValue( value ) );
+                }
+            }
+        }
+    }
+
+    /**
+     * Removes all names that have been added to the global scope since it has been
+     * created. These are the variables of the last execution and the global variables
+     * that have been declared by the executed scripts (e.g. <code>var x</code>). Global
+     * variables that have been overridden are restored. Variables that have been declared
+     * by a script cannot be deleted from the global scope of Nashorn. Their values are
+     * cleared instead, so that no value of the last execution is retained.
+     */
+    public void reset()
+    {
+        for ( final String name : new ArrayList<>( bindings.keySet() ) )
+        {
+            if ( globalNames.contains( name ) )
+            {
+                final Object value = globalVariables.get( name );
+                if ( (value != null) && (bindings.get( name ) != value) )
+                {
+                    bindings.put( name, value );
+                }
+            }
+            else
+            {
+                bindings.remove( name );
+                if ( bindings.containsKey( name ) )
+                {
+                    bindings.put( name, null );
+                }
+            }
+        }
+    }
+
+    /**
+     * Cancels a script execution that is still running with this global scope. The
+     * global scope must not be used anymore afterwards. Only GraalJS supports the
+     * cancellation of a running script. The polyglot context of the GraalJS bindings
+     * is not exposed by a public type and is therefore accessed reflectively.
+     *
+     * @return <code>true</code> if the script execution has been cancelled,
+     * <code>false</code> if it will continue until it has been completed.
+     */
+    public boolean cancel()
+    {
+        if ( !mapProxies )
+        {
+            return false;
+        }
+        try
+        {
+            final Method method = bindings.getClass().getMethod( "getContext" );
+            method.setAccessible( true );
+            ((Context) method.invoke( bindings )).close( true );
+            return true;
+        }
+        catch ( Exception e )
+        {
+            return false;
+        }
+    }
+
+    @SuppressWarnings( "unchecked" )
+    protected Object convertValue( Object value )
+    {
+        if ( mapProxies && (value instanceof Map) )
+        {
+            return ProxyObject.fromMap( (Map<String, Object>) value );
+        }
+        return value;
+    }
+}
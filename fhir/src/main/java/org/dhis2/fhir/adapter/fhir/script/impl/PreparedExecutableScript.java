@@ -0,0 +1,200 @@
+package org.dhis2.fhir.adapter.fhir.script.impl;
+
+/*
+ * Copyright (c) 2004-2018, University of Oslo
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * Redistributions of source code must retain the above copyright notice, this
+ * list of conditions and the following disclaimer.
+ *
+ * Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation
+ * and/or other materials provided with the distribution.
+ * Neither the name of the HISP project nor the names of its contributors may
+ * be used to endorse or promote products derived from this software without
+ * specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+import org.dhis2.fhir.adapter.fhir.metadata.model.DataType;
+import org.dhis2.fhir.adapter.fhir.metadata.model.ScriptSource;
+import org.dhis2.fhir.adapter.fhir.metadata.model.ScriptSourceType;
+import org.dhis2.fhir.adapter.fhir.script.ScriptBean;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+
+/**
+ * Immutable snapshot of an executable script that contains everything that is required
+ * to execute the script for a specific FHIR version. The script source has already been
+ * resolved and the default and override arguments have already been converted, so that
+ * no metadata must be read when the script is executed.
+ *
+ * @author volsch
+ */
+public class PreparedExecutableScript
+{
+    private final UUID executableScriptId;
+
+    private final Long scriptVersion;
+
+    private final String scriptName;
+
+    private final DataType returnType;
+
+    private final ScriptSource scriptSource;
+
+    private final Set<String> variableNames;
+
+    private final Map<String, Object> arguments;
+
+    private final Set<String> mandatoryArgumentNames;
+
+    private final Set<String> missingMandatoryArgumentNames;
+
+    private final NativeScript nativeScript;
+
+    private final Set<String> referencedNames;
+
+    private final ScriptBean scriptBean;
+
+    private final int timeoutMillis;
+
+    public PreparedExecutableScript( @Nonnull UUID executableScriptId, Long scriptVersion, @Nonnull String scriptName, @Nonnull DataType returnType,
+        @Nonnull ScriptSource scriptSource, @Nonnull Set<String> variableNames, @Nonnull Map<String, Object> arguments, @Nonnull Set<String> mandatoryArgumentNames,
+        @Nullable ScriptBean scriptBean, int timeoutMillis )
+    {
+        this.executableScriptId = executableScriptId;
+        this.scriptVersion = scriptVersion;
+        this.scriptName = scriptName;
+        this.returnType = returnType;
+        this.scriptSource = scriptSource;
+        this.variableNames = Collections.unmodifiableSet( new HashSet<>( variableNames ) );
+        this.arguments = Collections.unmodifiableMap( new HashMap<>( arguments ) );
+        this.mandatoryArgumentNames = Collections.unmodifiableSet( new HashSet<>( mandatoryArgumentNames ) );
+
+        final Set<String> missingMandatoryArgumentNames = new HashSet<>();
+        mandatoryArgumentNames.stream().filter( n -> arguments.get( n ) == null ).forEach( missingMandatoryArgumentNames::add );
+        this.missingMandatoryArgumentNames = Collections.unmodifiableSet( missingMandatoryArgumentNames );
+        this.scriptBean = scriptBean;
+        this.timeoutMillis = timeoutMillis;
+        this.nativeScript = (scriptSource.getSourceType() == ScriptSourceType.JAVASCRIPT) ? StaticScriptAnalyzer.analyze( scriptSource.getSourceText() ) : null;
+        this.referencedNames = (scriptSource.getSourceType() == ScriptSourceType.JAVASCRIPT) ?
+            StaticScriptAnalyzer.getReferencedNames( scriptSource.getSourceText() ) : Collections.emptySet();
+    }
+
+    @Nonnull
+    public UUID getExecutableScriptId()
+    {
+        return executableScriptId;
+    }
+
+    public Long getScriptVersion()
+    {
+        return scriptVersion;
+    }
+
+    @Nonnull
+    public String getScriptName()
+    {
+        return scriptName;
+    }
+
+    @Nonnull
+    public DataType getReturnType()
+    {
+        return returnType;
+    }
+
+    @Nonnull
+    public ScriptSource getScriptSource()
+    {
+        return scriptSource;
+    }
+
+    /**
+     * @return the names of the variables that must be provided when executing the script.
+     */
+    @Nonnull
+    public Set<String> getVariableNames()
+    {
+        return variableNames;
+    }
+
+    /**
+     * @return the converted default arguments of the script that have been overridden by the arguments of the executable script.
+     */
+    @Nonnull
+    public Map<String, Object> getArguments()
+    {
+        return arguments;
+    }
+
+    @Nonnull
+    public Set<String> getMandatoryArgumentNames()
+    {
+        return mandatoryArgumentNames;
+    }
+
+    /**
+     * @return the names of the mandatory arguments that have no value and must be provided when executing the script.
+     */
+    @Nonnull
+    public Set<String> getMissingMandatoryArgumentNames()
+    {
+        return missingMandatoryArgumentNames;
+    }
+
+    /**
+     * @return the native implementation of the script if the script is trivial, <code>null</code> otherwise.
+     */
+    @Nullable
+    public NativeScript getNativeScript()
+    {
+        return nativeScript;
+    }
+
+    /**
+     * @return the names that may be referenced by the script source. Only variables with these names are bound to the script engine.
+     */
+    @Nonnull
+    public Set<String> getReferencedNames()
+    {
+        return referencedNames;
+    }
+
+    /**
+     * @return the Spring bean that implements the script if the script source is a Java bean, <code>null</code> otherwise.
+     */
+    @Nullable
+    public ScriptBean getScriptBean()
+    {
+        return scriptBean;
+    }
+
+    /**
+     * @return the maximum wall-clock time in milliseconds of an execution of the script or <code>0</code> if the time is not limited.
+     */
+    public int getTimeoutMillis()
+    {
+        return timeoutMillis;
+    }
+}
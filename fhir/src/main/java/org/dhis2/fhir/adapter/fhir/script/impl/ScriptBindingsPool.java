@@ -0,0 +1,162 @@
+package org.dhis2.fhir.adapter.fhir.script.impl;
+
+/*
+ * Copyright (c) 2004-2018, University of Oslo
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * Redistributions of source code must retain the above copyright notice, this
+ * list of conditions and the following disclaimer.
+ *
+ * Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation
+ * and/or other materials provided with the distribution.
+ * Neither the name of the HISP project nor the names of its contributors may
+ * be used to endorse or promote products derived from this software without
+ * specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+import com.oracle.truffle.js.scriptengine.GraalJSScriptEngine;
+import org.dhis2.fhir.adapter.fhir.model.FhirVersion;
+import org.dhis2.fhir.adapter.fhir.transform.config.TransformationConfig;
+import org.dhis2.fhir.adapter.fhir.transform.scripted.util.FhirToDhisTransformerUtils;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.Nonnull;
+import javax.annotation.PostConstruct;
+import javax.script.ScriptEngine;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Pool of pre-warmed global scopes of the script engine. The transformer utils of the
+ * FHIR version are installed into each global scope once when it is created. A scope
+ * is leased for a single script execution and must be released afterwards. If no
+ * scope is available, a new scope is created, so that nested and concurrent script
+ * executions never wait for each other. At most the configured number of scopes is
+ * kept in the pool for each FHIR version.
+ *
+ * @author volsch
+ */
+@Component
+public class ScriptBindingsPool
+{
+    private final ScriptEngine scriptEngine;
+
+    private final int poolSize;
+
+    private final Map<FhirVersion, Map<String, Object>> globalVariables = new EnumMap<>( FhirVersion.class );
+
+    private final Map<FhirVersion, Queue<PooledScriptBindings>> idleBindings = new EnumMap<>( FhirVersion.class );
+
+    private final Map<FhirVersion, AtomicInteger> idleCounts = new EnumMap<>( FhirVersion.class );
+
+    public ScriptBindingsPool( @Nonnull ScriptEngine scriptEngine, @Nonnull TransformationConfig config,
+        @Nonnull ObjectProvider<List<FhirToDhisTransformerUtils>> transformUtilsProvider )
+    {
+        this.scriptEngine = scriptEngine;
+        this.poolSize = config.getScriptBindingsPoolSize();
+
+        final List<FhirToDhisTransformerUtils> fhirToDhisTransformerUtils = transformUtilsProvider.getIfAvailable();
+        if ( fhirToDhisTransformerUtils != null )
+        {
+            for ( final FhirToDhisTransformerUtils tu : fhirToDhisTransformerUtils )
+            {
+                for ( final FhirVersion fhirVersion : tu.getFhirVersions() )
+                {
+                    globalVariables.computeIfAbsent( fhirVersion, key -> new HashMap<>() ).put( tu.getScriptAttrName(), tu );
+                }
+            }
+        }
+        for ( final FhirVersion fhirVersion : FhirVersion.values() )
+        {
+            idleBindings.put( fhirVersion, new ConcurrentLinkedQueue<>() );
+            idleCounts.put( fhirVersion, new AtomicInteger() );
+        }
+    }
+
+    @PostConstruct
+    protected void init()
+    {
+        for ( final FhirVersion fhirVersion : globalVariables.keySet() )
+        {
+            for ( int i = 0; i < poolSize; i++ )
+            {
+                release( fhirVersion, create( fhirVersion ) );
+            }
+        }
+    }
+
+    /**
+     * @return <code>true</code> if the script engine can cancel running scripts (only GraalJS), <code>false</code> otherwise.
+     */
+    public boolean isCancellationSupported()
+    {
+        return scriptEngine instanceof GraalJSScriptEngine;
+    }
+
+    /**
+     * @param fhirVersion the FHIR version for which the global scope should be leased.
+     * @return the leased global scope that must be released after the execution.
+     */
+    @Nonnull
+    public PooledScriptBindings lease( @Nonnull FhirVersion fhirVersion )
+    {
+        final PooledScriptBindings bindings = idleBindings.get( fhirVersion ).poll();
+        if ( bindings == null )
+        {
+            return create( fhirVersion );
+        }
+        idleCounts.get( fhirVersion ).decrementAndGet();
+        return bindings;
+    }
+
+    /**
+     * Resets the variables of the last execution of the specified global scope and
+     * returns it to the pool.
+     *
+     * @param fhirVersion the FHIR version for which the global scope has been leased.
+     * @param bindings    the global scope that has been leased.
+     */
+    public void release( @Nonnull FhirVersion fhirVersion, @Nonnull PooledScriptBindings bindings )
+    {
+        bindings.reset();
+        if ( idleCounts.get( fhirVersion ).incrementAndGet() <= poolSize )
+        {
+            idleBindings.get( fhirVersion ).offer( bindings );
+        }
+        else
+        {
+            idleCounts.get( fhirVersion ).decrementAndGet();
+        }
+    }
+
+    @Nonnull
+    protected PooledScriptBindings create( @Nonnull FhirVersion fhirVersion )
+    {
+        synchronized ( scriptEngine )
+        {
+            return new PooledScriptBindings( scriptEngine,
+                globalVariables.getOrDefault( fhirVersion, Collections.emptyMap() ) );
+        }
+    }
+}
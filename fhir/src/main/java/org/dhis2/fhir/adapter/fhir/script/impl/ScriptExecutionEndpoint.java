@@ -0,0 +1,198 @@
+package org.dhis2.fhir.adapter.fhir.script.impl;
+
+/*
+ * Copyright (c) 2004-2018, University of Oslo
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * Redistributions of source code must retain the above copyright notice, this
+ * list of conditions and the following disclaimer.
+ *
+ * Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation
+ * and/or other materials provided with the distribution.
+ * Neither the name of the HISP project nor the names of its contributors may
+ * be used to endorse or promote products derived from this software without
+ * specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.distribution.ValueAtPercentile;
+import org.springframework.boot.actuate.endpoint.annotation.Endpoint;
+import org.springframework.boot.actuate.endpoint.annotation.ReadOperation;
+import org.springframework.lang.Nullable;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.Nonnull;
+import java.io.Serializable;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+/**
+ * Actuator endpoint that lists the executable scripts with the highest mean execution
+ * time together with the configured percentiles of their execution times and the
+ * sampled slow executions of these scripts.
+ *
+ * @author volsch
+ */
+@Component
+@Endpoint( id = "scripts" )
+public class ScriptExecutionEndpoint
+{
+    public static final int DEFAULT_LIMIT = 10;
+
+    private final MeterRegistry meterRegistry;
+
+    private final ScriptExecutionProfiler profiler;
+
+    public ScriptExecutionEndpoint( @Nonnull MeterRegistry meterRegistry, @Nonnull ScriptExecutionProfiler profiler )
+    {
+        this.meterRegistry = meterRegistry;
+        this.profiler = profiler;
+    }
+
+    @ReadOperation
+    @Nonnull
+    public List<ScriptExecutionStatistics> slowest( @Nullable Integer limit )
+    {
+        return meterRegistry.find( ScriptExecutionProfiler.TIMER_NAME ).timers().stream()
+            .filter( t -> t.count() > 0 )
+            .sorted( Comparator.comparingDouble( (Timer t) -> t.mean( TimeUnit.MILLISECONDS ) ).reversed() )
+            .limit( (limit == null) ? DEFAULT_LIMIT : limit )
+            .map( this::createStatistics )
+            .collect( Collectors.toList() );
+    }
+
+    @Nonnull
+    protected ScriptExecutionStatistics createStatistics( @Nonnull Timer timer )
+    {
+        final String executableScriptId = timer.getId().getTag( ScriptExecutionProfiler.EXECUTABLE_SCRIPT_TAG );
+        return new ScriptExecutionStatistics( timer.getId().getTag( ScriptExecutionProfiler.SCRIPT_TAG ), executableScriptId,
+            timer.getId().getTag( ScriptExecutionProfiler.RESULT_TYPE_TAG ), timer.count(), timer.mean( TimeUnit.MILLISECONDS ),
+            timer.max( TimeUnit.MILLISECONDS ), timer.totalTime( TimeUnit.MILLISECONDS ), getPercentiles( timer ),
+            profiler.getSlowExecutions( UUID.fromString( executableScriptId ) ) );
+    }
+
+    /**
+     * @return the execution times in milliseconds by the percentiles that have been configured for the timer.
+     */
+    @Nonnull
+    protected Map<String, Double> getPercentiles( @Nonnull Timer timer )
+    {
+        final Map<String, Double> percentiles = new LinkedHashMap<>();
+        for ( final ValueAtPercentile value : timer.takeSnapshot( false ).percentileValues() )
+        {
+            percentiles.put( String.valueOf( value.percentile() ), value.value( TimeUnit.MILLISECONDS ) );
+        }
+        return percentiles;
+    }
+
+    /**
+     * Execution statistics of an executable script with a specific result type.
+     */
+    public static class ScriptExecutionStatistics implements Serializable
+    {
+        private static final long serialVersionUID = 5212580218406046658L;
+
+        private final String script;
+
+        private final String executableScriptId;
+
+        private final String resultType;
+
+        private final long count;
+
+        private final double meanMillis;
+
+        private final double maxMillis;
+
+        private final double totalMillis;
+
+        private final Map<String, Double> percentileMillis;
+
+        private final List<ScriptExecutionProfiler.SlowExecution> slowExecutions;
+
+        public ScriptExecutionStatistics( String script, String executableScriptId, String resultType, long count,
+            double meanMillis, double maxMillis, double totalMillis, @Nonnull Map<String, Double> percentileMillis,
+            @Nonnull List<ScriptExecutionProfiler.SlowExecution> slowExecutions )
+        {
+            this.script = script;
+            this.executableScriptId = executableScriptId;
+            this.resultType = resultType;
+            this.count = count;
+            this.meanMillis = meanMillis;
+            this.maxMillis = maxMillis;
+            this.totalMillis = totalMillis;
+            this.percentileMillis = percentileMillis;
+            this.slowExecutions = slowExecutions;
+        }
+
+        public String getScript()
+        {
+            return script;
+        }
+
+        public String getExecutableScriptId()
+        {
+            return executableScriptId;
+        }
+
+        public String getResultType()
+        {
+            return resultType;
+        }
+
+        public long getCount()
+        {
+            return count;
+        }
+
+        public double getMeanMillis()
+        {
+            return meanMillis;
+        }
+
+        public double getMaxMillis()
+        {
+            return maxMillis;
+        }
+
+        public double getTotalMillis()
+        {
+            return totalMillis;
+        }
+
+        /**
+         * @return the execution times in milliseconds by the configured percentiles (e.g. 0.95).
+         */
+        @Nonnull
+        public Map<String, Double> getPercentileMillis()
+        {
+            return percentileMillis;
+        }
+
+        @Nonnull
+        public List<ScriptExecutionProfiler.SlowExecution> getSlowExecutions()
+        {
+            return slowExecutions;
+        }
+    }
+}
@@ -0,0 +1,234 @@
+package org.dhis2.fhir.adapter.fhir.script.impl;
+
+/*
+ * Copyright (c) 2004-2018, University of Oslo
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * Redistributions of source code must retain the above copyright notice, this
+ * list of conditions and the following disclaimer.
+ *
+ * Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation
+ * and/or other materials provided with the distribution.
+ * Neither the name of the HISP project nor the names of its contributors may
+ * be used to endorse or promote products derived from this software without
+ * specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.dhis2.fhir.adapter.fhir.transform.config.TransformationConfig;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.io.Serializable;
+import java.time.Duration;
+import java.time.ZonedDateTime;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Records the execution times of scripts as Micrometer timers that are tagged by the
+ * code of the script, the ID of the executable script and the result type. If sampling
+ * of slow executions has been enabled, executions that exceed the configured threshold
+ * are kept with the type of the input resource (the most recent ones per executable
+ * script). The timers publish the configured percentiles, service level boundaries and
+ * optionally a percentile histogram.
+ *
+ * @author volsch
+ */
+@Component
+public class ScriptExecutionProfiler
+{
+    public static final String TIMER_NAME = "dhis2.fhir.script.execution";
+
+    public static final String SCRIPT_TAG = "script";
+
+    public static final String EXECUTABLE_SCRIPT_TAG = "executableScript";
+
+    public static final String RESULT_TYPE_TAG = "resultType";
+
+    public static final String TIMEOUT_COUNTER_NAME = "dhis2.fhir.script.timeout";
+
+    public static final String ABORTED_TAG = "aborted";
+
+    private final MeterRegistry meterRegistry;
+
+    private final boolean slowExecutionSampling;
+
+    private final long slowExecutionThresholdNanos;
+
+    private final int slowExecutionSampleCount;
+
+    private final boolean percentileHistogram;
+
+    private final double[] percentiles;
+
+    private final Duration[] sla;
+
+    private final Map<TimerKey, Timer> timers = new ConcurrentHashMap<>();
+
+    private final Map<UUID, Deque<SlowExecution>> slowExecutions = new ConcurrentHashMap<>();
+
+    public ScriptExecutionProfiler( @Nonnull MeterRegistry meterRegistry, @Nonnull TransformationConfig config )
+    {
+        this.meterRegistry = meterRegistry;
+        this.slowExecutionSampling = config.isSlowScriptExecutionSampling();
+        this.slowExecutionThresholdNanos = TimeUnit.MILLISECONDS.toNanos( config.getSlowScriptExecutionThresholdMillis() );
+        this.slowExecutionSampleCount = config.getSlowScriptExecutionSampleCount();
+        this.percentileHistogram = config.isScriptExecutionPercentileHistogram();
+        this.percentiles = config.getScriptExecutionPercentiles().stream().mapToDouble( Double::doubleValue ).toArray();
+        this.sla = config.getScriptExecutionSlaMillis().stream().map( Duration::ofMillis ).toArray( Duration[]::new );
+    }
+
+    /**
+     * Records the execution of an executable script.
+     *
+     * @param scriptCode         the code of the executed script.
+     * @param executableScriptId the ID of the executed executable script.
+     * @param resultClass        the requested result type of the script.
+     * @param inputResource      the input resource of the execution or <code>null</code> if there is no input resource.
+     * @param durationNanos      the duration of the execution in nanoseconds.
+     */
+    public void record( @Nonnull String scriptCode, @Nonnull UUID executableScriptId, @Nonnull Class<?> resultClass,
+        @Nullable Object inputResource, long durationNanos )
+    {
+        timers.computeIfAbsent( new TimerKey( executableScriptId, resultClass ), k -> Timer.builder( TIMER_NAME )
+            .tag( SCRIPT_TAG, scriptCode ).tag( EXECUTABLE_SCRIPT_TAG, executableScriptId.toString() )
+            .tag( RESULT_TYPE_TAG, resultClass.getSimpleName() ).publishPercentileHistogram( percentileHistogram )
+            .publishPercentiles( percentiles ).sla( sla ).register( meterRegistry ) )
+            .record( durationNanos, TimeUnit.NANOSECONDS );
+
+        if ( slowExecutionSampling && (durationNanos >= slowExecutionThresholdNanos) )
+        {
+            final Deque<SlowExecution> executions = slowExecutions.computeIfAbsent( executableScriptId, k -> new LinkedList<>() );
+            synchronized ( executions )
+            {
+                executions.addFirst( new SlowExecution( ZonedDateTime.now(), TimeUnit.NANOSECONDS.toMillis( durationNanos ),
+                    (inputResource == null) ? null : inputResource.getClass().getSimpleName() ) );
+                while ( executions.size() > slowExecutionSampleCount )
+                {
+                    executions.removeLast();
+                }
+            }
+        }
+    }
+
+    /**
+     * Records an execution of an executable script that exceeded its time budget.
+     *
+     * @param scriptCode         the code of the executed script.
+     * @param executableScriptId the ID of the executed executable script.
+     * @param aborted            <code>true</code> if the execution has been aborted, <code>false</code> if it has been completed.
+     */
+    public void recordTimeout( @Nonnull String scriptCode, @Nonnull UUID executableScriptId, boolean aborted )
+    {
+        meterRegistry.counter( TIMEOUT_COUNTER_NAME, SCRIPT_TAG, scriptCode, EXECUTABLE_SCRIPT_TAG, executableScriptId.toString(),
+            ABORTED_TAG, String.valueOf( aborted ) ).increment();
+    }
+
+    /**
+     * @param executableScriptId the ID of the executable script for which the slow executions should be returned.
+     * @return the sampled slow executions of the specified executable script, the most recent one first.
+     */
+    @Nonnull
+    public List<SlowExecution> getSlowExecutions( @Nonnull UUID executableScriptId )
+    {
+        final Deque<SlowExecution> executions = slowExecutions.get( executableScriptId );
+        if ( executions == null )
+        {
+            return Collections.emptyList();
+        }
+        synchronized ( executions )
+        {
+            return new ArrayList<>( executions );
+        }
+    }
+
+    /**
+     * A sampled execution of a script that exceeded the configured threshold.
+     */
+    public static class SlowExecution implements Serializable
+    {
+        private static final long serialVersionUID = -3394612434367585217L;
+
+        private final ZonedDateTime executedAt;
+
+        private final long durationMillis;
+
+        private final String inputResourceType;
+
+        public SlowExecution( @Nonnull ZonedDateTime executedAt, long durationMillis, @Nullable String inputResourceType )
+        {
+            this.executedAt = executedAt;
+            this.durationMillis = durationMillis;
+            this.inputResourceType = inputResourceType;
+        }
+
+        @Nonnull
+        public ZonedDateTime getExecutedAt()
+        {
+            return executedAt;
+        }
+
+        public long getDurationMillis()
+        {
+            return durationMillis;
+        }
+
+        @Nullable
+        public String getInputResourceType()
+        {
+            return inputResourceType;
+        }
+    }
+
+    protected static final class TimerKey
+    {
+        private final UUID executableScriptId;
+
+        private final Class<?> resultClass;
+
+        public TimerKey( @Nonnull UUID executableScriptId, @Nonnull Class<?> resultClass )
+        {
+            this.executableScriptId = executableScriptId;
+            this.resultClass = resultClass;
+        }
+
+        @Override
+        public boolean equals( Object o )
+        {
+            if ( this == o ) return true;
+            if ( o == null || getClass() != o.getClass() ) return false;
+            final TimerKey timerKey = (TimerKey) o;
+            return executableScriptId.equals( timerKey.executableScriptId ) && resultClass.equals( timerKey.resultClass );
+        }
+
+        @Override
+        public int hashCode()
+        {
+            return 31 * executableScriptId.hashCode() + resultClass.hashCode();
+        }
+    }
+}
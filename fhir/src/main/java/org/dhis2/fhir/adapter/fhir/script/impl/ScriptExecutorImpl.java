@@ -28,33 +28,59 @@ package org.dhis2.fhir.adapter.fhir.script.impl;
  * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
  */
 
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
 import org.dhis2.fhir.adapter.converter.ConversionException;
 import org.dhis2.fhir.adapter.fhir.metadata.model.ExecutableScript;
 import org.dhis2.fhir.adapter.fhir.metadata.model.ExecutableScriptArg;
 import org.dhis2.fhir.adapter.fhir.metadata.model.ScriptArg;
 import org.dhis2.fhir.adapter.fhir.metadata.model.ScriptSource;
+import org.dhis2.fhir.adapter.fhir.metadata.model.ScriptSourceType;
+import org.dhis2.fhir.adapter.fhir.metadata.model.ScriptVariable;
 import org.dhis2.fhir.adapter.fhir.metadata.repository.ExecutableScriptArgRepository;
 import org.dhis2.fhir.adapter.fhir.metadata.repository.ScriptArgRepository;
 import org.dhis2.fhir.adapter.fhir.metadata.repository.ScriptSourceRepository;
 import org.dhis2.fhir.adapter.fhir.model.FhirVersion;
+import org.dhis2.fhir.adapter.fhir.model.FhirVersionedValue;
+import org.dhis2.fhir.adapter.fhir.script.CompiledScriptCache;
+import org.dhis2.fhir.adapter.fhir.script.LazyScriptVariables;
+import org.dhis2.fhir.adapter.fhir.script.ScriptBean;
+import org.dhis2.fhir.adapter.fhir.script.ScriptExecution;
 import org.dhis2.fhir.adapter.fhir.script.ScriptExecutionContext;
 import org.dhis2.fhir.adapter.fhir.script.ScriptExecutionException;
 import org.dhis2.fhir.adapter.fhir.script.ScriptExecutor;
 import org.dhis2.fhir.adapter.fhir.script.ScriptPreparationException;
+import org.dhis2.fhir.adapter.fhir.transform.config.TransformationConfig;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.BeansException;
+import org.springframework.beans.factory.BeanFactory;
 import org.springframework.core.convert.converter.Converter;
-import org.springframework.scripting.ScriptEvaluator;
-import org.springframework.scripting.support.StaticScriptSource;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
 import org.springframework.stereotype.Component;
 
 import javax.annotation.Nonnull;
 import javax.annotation.Nullable;
+import javax.annotation.PreDestroy;
+import javax.script.CompiledScript;
+import javax.script.ScriptException;
 import java.time.ZoneId;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.Date;
 import java.util.HashMap;
 import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 import java.util.regex.Pattern;
+import java.util.stream.Collectors;
 
 @Component
 public class ScriptExecutorImpl implements ScriptExecutor
@@ -65,7 +91,15 @@ public class ScriptExecutorImpl implements ScriptExecutor
 
     protected static final String ARRAY_SEPARATOR_REGEXP = Pattern.quote( ARRAY_SEPARATOR );
 
-    private final ScriptEvaluator scriptEvaluator;
+    private final Logger logger = LoggerFactory.getLogger( getClass() );
+
+    private final CompiledScriptCache compiledScriptCache;
+
+    private final ScriptBindingsPool scriptBindingsPool;
+
+    private final ScriptExecutionProfiler profiler;
+
+    private final BeanFactory beanFactory;
 
     private final ScriptExecutionContext scriptExecutionContext;
 
@@ -77,15 +111,61 @@ public class ScriptExecutorImpl implements ScriptExecutor
 
     private final ZoneId zoneId = ZoneId.systemDefault();
 
-    public ScriptExecutorImpl( @Nonnull ScriptEvaluator scriptEvaluator, @Nonnull ScriptExecutionContext scriptExecutionContext,
+    private final Cache<FhirVersionedValue<UUID>, PreparedExecutableScript> preparedScripts;
+
+    private final int scriptTimeoutMillis;
+
+    private final ExecutorService interruptibleExecutor;
+
+    /**
+     * Set while a script is evaluated by the interruptible executor. Nested script
+     * executions are evaluated directly in order to avoid waiting for the executor.
+     */
+    private final ThreadLocal<Boolean> interruptibleExecution = new ThreadLocal<>();
+
+    public ScriptExecutorImpl( @Nonnull CompiledScriptCache compiledScriptCache, @Nonnull ScriptBindingsPool scriptBindingsPool,
+        @Nonnull ScriptExecutionProfiler profiler, @Nonnull ScriptExecutionContext scriptExecutionContext,
         @Nonnull ExecutableScriptArgRepository executableScriptArgRepository, @Nonnull ScriptArgRepository scriptArgRepository,
-        @Nonnull ScriptSourceRepository scriptSourceRepository )
+        @Nonnull ScriptSourceRepository scriptSourceRepository, @Nonnull TransformationConfig config,
+        @Nonnull BeanFactory beanFactory )
     {
-        this.scriptEvaluator = scriptEvaluator;
+        this.compiledScriptCache = compiledScriptCache;
+        this.scriptBindingsPool = scriptBindingsPool;
+        this.profiler = profiler;
+        this.beanFactory = beanFactory;
         this.scriptExecutionContext = scriptExecutionContext;
         this.executableScriptArgRepository = executableScriptArgRepository;
         this.scriptArgRepository = scriptArgRepository;
         this.scriptSourceRepository = scriptSourceRepository;
+        // changes of other adapter nodes are not notified and expire after the configured duration
+        this.preparedScripts = Caffeine.newBuilder().expireAfterWrite( config.getPreparedScriptCacheSeconds(), TimeUnit.SECONDS )
+            .maximumSize( config.getPreparedScriptCacheMaxSize() ).build();
+        this.scriptTimeoutMillis = config.getScriptTimeoutMillis();
+        if ( config.isInterruptibleScriptExecution() )
+        {
+            // a script that cannot be cancelled would block its thread of the executor forever
+            if ( !scriptBindingsPool.isCancellationSupported() )
+            {
+                throw new IllegalStateException( "Interruptible script execution is not supported by script engine " +
+                    config.getScriptEngineName() + " since it cannot cancel running scripts." );
+            }
+            final CustomizableThreadFactory threadFactory = new CustomizableThreadFactory( "Interruptible Script Execution Thread " );
+            threadFactory.setDaemon( true );
+            this.interruptibleExecutor = Executors.newFixedThreadPool( config.getInterruptibleScriptExecutionPoolSize(), threadFactory );
+        }
+        else
+        {
+            this.interruptibleExecutor = null;
+        }
+    }
+
+    @PreDestroy
+    protected void preDestroy()
+    {
+        if ( interruptibleExecutor != null )
+        {
+            interruptibleExecutor.shutdownNow();
+        }
     }
 
     @Nullable
@@ -106,54 +186,210 @@ public class ScriptExecutorImpl implements ScriptExecutor
             return null;
         }
 
+        validateResultClass( executableScript, resultClass );
+        final PreparedExecutableScript preparedScript = getPreparedScript( executableScript, fhirVersion );
+        final NativeScript nativeScript = preparedScript.getNativeScript();
+        // performance optimization in case script is just a constant value
+        if ( (nativeScript != null) && nativeScript.isConstant() )
+        {
+            return castResult( executableScript, nativeScript.execute( Collections.emptyMap() ), resultClass );
+        }
+
+        return execute( executableScript, preparedScript, fhirVersion, variables, createArgs( preparedScript, arguments ), resultClass );
+    }
+
+    protected void validateResultClass( @Nonnull ExecutableScript executableScript, @Nonnull Class<?> resultClass ) throws ScriptPreparationException
+    {
         if ( !resultClass.isAssignableFrom( executableScript.getScript().getReturnType().getJavaType() ) )
         {
             throw new ScriptPreparationException(
                 "Script \"" + executableScript.getScript().getName() + "\" returns " + executableScript.getScript().getReturnType() +
                     " and not requested " + resultClass.getSimpleName() + "." );
         }
+    }
 
-        final ScriptSource scriptSource = scriptSourceRepository.findByScriptAndFhirVersion( executableScript.getScript(), fhirVersion ).orElseThrow( () ->
-            new ScriptPreparationException( "Script \"" + executableScript.getScript().getName() + "\" does not include a source for FHIR version " + fhirVersion + "." ) );
-        // performance optimization in case script is just a boolean value
-        if ( Boolean.class.equals( resultClass ) )
-        {
-            @SuppressWarnings( "unchecked" ) final T booleanScriptValue = (T) convertToBoolean( scriptSource.getSourceText() );
-            if ( booleanScriptValue != null )
-            {
-                return booleanScriptValue;
-            }
-        }
+    /**
+     * Executes the prepared script with the specified variables and prepared arguments.
+     */
+    @Nullable
+    protected <T> T execute( @Nonnull ExecutableScript executableScript, @Nonnull PreparedExecutableScript preparedScript, @Nonnull FhirVersion fhirVersion,
+        @Nonnull Map<String, Object> variables, @Nonnull Map<String, Object> args, @Nonnull Class<T> resultClass ) throws ScriptExecutionException
+    {
+        final NativeScript nativeScript = preparedScript.getNativeScript();
 
         // validate that all required script variables have been provided
-        executableScript.getScript().getVariables().forEach( v -> {
-            if ( !variables.containsKey( v.getVariableName() ) )
+        preparedScript.getVariableNames().forEach( v -> {
+            if ( !variables.containsKey( v ) )
             {
                 throw new ScriptPreparationException(
-                    "Script \"" + executableScript.getScript().getName() + "\" requires variable " + v.getVariableName() + " that has not been provided." );
+                    "Script \"" + preparedScript.getScriptName() + "\" requires variable " + v + " that has not been provided." );
             }
         } );
 
-        final Map<String, Object> args = createArgs( executableScript, arguments );
-
-        final Map<String, Object> scriptVariables = new HashMap<>( variables );
+        final Map<String, Object> scriptVariables = new LazyScriptVariables( variables );
         scriptVariables.put( ARGUMENTS_VARIABLE_NAME, args );
+        if ( (nativeScript != null) && nativeScript.isApplicable( scriptVariables ) )
+        {
+            return castResult( executableScript, nativeScript.execute( scriptVariables ), resultClass );
+        }
 
         final Object result;
-        scriptExecutionContext.setScriptExecution( new ScriptExecutionImpl( scriptVariables ) );
+        final ScriptExecution scriptExecution = new ScriptExecutionImpl( scriptVariables );
+        final boolean interruptible = (interruptibleExecutor != null) && (preparedScript.getTimeoutMillis() > 0) &&
+            (interruptibleExecution.get() == null);
+        scriptExecutionContext.setScriptExecution( scriptExecution );
+        final long startNanos = System.nanoTime();
         try
         {
-            result = convertSimpleReturnValue( scriptEvaluator.evaluate( new StaticScriptSource( scriptSource.getSourceText() ), scriptVariables ) );
+            if ( interruptible && (preparedScript.getScriptBean() == null) )
+            {
+                // lazy variables that are referenced by the script must be materialized by the current thread
+                result = convertSimpleReturnValue( evaluateInterruptible( executableScript, preparedScript, fhirVersion,
+                    getReferencedVariables( preparedScript, scriptVariables ), scriptExecution ) );
+            }
+            else if ( preparedScript.getScriptBean() == null )
+            {
+                result = convertSimpleReturnValue( evaluate( preparedScript, fhirVersion, scriptVariables ) );
+            }
+            else
+            {
+                // script has been implemented in Java and the script engine is not required at all
+                result = convertSimpleReturnValue( preparedScript.getScriptBean().execute( scriptVariables, args ) );
+            }
         }
-        catch ( ScriptExecutionException e )
+        catch ( ScriptExecutionException | ScriptException e )
         {
             throw new ScriptExecutionException( "Error while executing script \"" + executableScript.getScript().getName() +
                 "\" (" + executableScript.getId() + "): " + e.getMessage(), e );
         }
         finally
         {
+            final long durationNanos = System.nanoTime() - startNanos;
+            profiler.record( executableScript.getScript().getCode(), executableScript.getId(), resultClass,
+                variables.get( ScriptVariable.INPUT.getVariableName() ), durationNanos );
+            if ( !interruptible && (preparedScript.getTimeoutMillis() > 0) && (durationNanos > TimeUnit.MILLISECONDS.toNanos( preparedScript.getTimeoutMillis() )) )
+            {
+                logger.warn( "Script \"{}\" ({}) exceeded its time budget of {} ms.", executableScript.getScript().getName(),
+                    executableScript.getId(), preparedScript.getTimeoutMillis() );
+                profiler.recordTimeout( executableScript.getScript().getCode(), executableScript.getId(), false );
+            }
             scriptExecutionContext.resetScriptExecutionContext();
         }
+        return castResult( executableScript, result, resultClass );
+    }
+
+    /**
+     * Evaluates the script on a separate thread and waits at most for the time budget of
+     * the script. If the time budget is exceeded, the script execution is cancelled and
+     * the global scope that is used by the script is discarded.
+     */
+    @Nullable
+    protected Object evaluateInterruptible( @Nonnull ExecutableScript executableScript, @Nonnull PreparedExecutableScript preparedScript, @Nonnull FhirVersion fhirVersion,
+        @Nonnull Map<String, Object> scriptVariables, @Nonnull ScriptExecution scriptExecution ) throws ScriptException
+    {
+        final CompiledScript compiledScript = compiledScriptCache.get( preparedScript.getScriptSource() );
+        final PooledScriptBindings bindings = scriptBindingsPool.lease( fhirVersion );
+        final Future<Object> future = interruptibleExecutor.submit( () -> {
+            interruptibleExecution.set( Boolean.TRUE );
+            scriptExecutionContext.setScriptExecution( scriptExecution );
+            try
+            {
+                bindings.bind( scriptVariables, scriptVariables.keySet() );
+                return compiledScript.eval( bindings.getBindings() );
+            }
+            finally
+            {
+                scriptExecutionContext.resetScriptExecutionContext();
+                interruptibleExecution.remove();
+            }
+        } );
+
+        final Object result;
+        try
+        {
+            result = future.get( preparedScript.getTimeoutMillis(), TimeUnit.MILLISECONDS );
+        }
+        catch ( TimeoutException e )
+        {
+            future.cancel( true );
+            cancel( executableScript, bindings );
+            profiler.recordTimeout( executableScript.getScript().getCode(), executableScript.getId(), true );
+            throw new ScriptExecutionException( "Script execution has been aborted after " + preparedScript.getTimeoutMillis() + " ms." );
+        }
+        catch ( InterruptedException e )
+        {
+            future.cancel( true );
+            cancel( executableScript, bindings );
+            Thread.currentThread().interrupt();
+            throw new ScriptExecutionException( "Script execution has been interrupted.", e );
+        }
+        catch ( ExecutionException e )
+        {
+            scriptBindingsPool.release( fhirVersion, bindings );
+            if ( e.getCause() instanceof ScriptException )
+            {
+                throw (ScriptException) e.getCause();
+            }
+            if ( e.getCause() instanceof RuntimeException )
+            {
+                throw (RuntimeException) e.getCause();
+            }
+            if ( e.getCause() instanceof Error )
+            {
+                throw (Error) e.getCause();
+            }
+            throw new ScriptExecutionException( "Unexpected checked exception: " + e.getCause().getMessage(), e.getCause() );
+        }
+        scriptBindingsPool.release( fhirVersion, bindings );
+        return result;
+    }
+
+    private void cancel( @Nonnull ExecutableScript executableScript, @Nonnull PooledScriptBindings bindings )
+    {
+        if ( !bindings.cancel() )
+        {
+            logger.error( "Running script \"{}\" ({}) could not be cancelled and blocks a thread of the interruptible script execution.",
+                executableScript.getScript().getName(), executableScript.getId() );
+        }
+    }
+
+    /**
+     * Returns the variables that may be referenced by the script. The values of these
+     * variables are materialized.
+     */
+    @Nonnull
+    protected Map<String, Object> getReferencedVariables( @Nonnull PreparedExecutableScript preparedScript, @Nonnull Map<String, Object> scriptVariables )
+    {
+        final Map<String, Object> referencedVariables = new HashMap<>();
+        preparedScript.getReferencedNames().forEach( name -> {
+            if ( scriptVariables.containsKey( name ) )
+            {
+                referencedVariables.put( name, scriptVariables.get( name ) );
+            }
+        } );
+        return referencedVariables;
+    }
+
+    @Nullable
+    protected Object evaluate( @Nonnull PreparedExecutableScript preparedScript, @Nonnull FhirVersion fhirVersion, @Nonnull Map<String, Object> scriptVariables ) throws ScriptException
+    {
+        final CompiledScript compiledScript = compiledScriptCache.get( preparedScript.getScriptSource() );
+        // the leased global scope is confined to this execution while the compiled script is shared between threads
+        final PooledScriptBindings bindings = scriptBindingsPool.lease( fhirVersion );
+        try
+        {
+            bindings.bind( scriptVariables, preparedScript.getReferencedNames() );
+            return compiledScript.eval( bindings.getBindings() );
+        }
+        finally
+        {
+            scriptBindingsPool.release( fhirVersion, bindings );
+        }
+    }
+
+    @Nullable
+    protected <T> T castResult( @Nonnull ExecutableScript executableScript, @Nullable Object result, @Nonnull Class<T> resultClass ) throws ScriptExecutionException
+    {
         if ( (result != null) && !executableScript.getScript().getReturnType().getJavaType().isInstance( result ) )
         {
             throw new ScriptExecutionException( "Script \"" + executableScript.getScript().getName() + "\" (" + executableScript.getId() + ") is expected to return " + executableScript.getScript().getReturnType() + ", but returned " + result.getClass().getSimpleName() + "." );
@@ -171,9 +407,97 @@ public class ScriptExecutorImpl implements ScriptExecutor
         return value;
     }
 
-    private Map<String, Object> createArgs( @Nonnull ExecutableScript executableScript, @Nonnull Map<String, Object> arguments )
+    /**
+     * Returns the prepared snapshot of the specified executable script. The snapshot is
+     * prepared again if the script has been changed or if the snapshot has expired.
+     *
+     * @param executableScript the executable script for which the snapshot should be returned.
+     * @param fhirVersion      the FHIR version for which the script will be executed.
+     * @return the prepared snapshot of the executable script.
+     * @throws ScriptPreparationException thrown if the executable script cannot be prepared.
+     */
+    @Nonnull
+    protected PreparedExecutableScript getPreparedScript( @Nonnull ExecutableScript executableScript, @Nonnull FhirVersion fhirVersion ) throws ScriptPreparationException
+    {
+        final FhirVersionedValue<UUID> key = new FhirVersionedValue<>( fhirVersion, executableScript.getId() );
+        PreparedExecutableScript preparedScript = preparedScripts.get( key, k -> prepare( executableScript, fhirVersion ) );
+        if ( !Objects.equals( preparedScript.getScriptVersion(), executableScript.getScript().getVersion() ) )
+        {
+            preparedScript = prepare( executableScript, fhirVersion );
+            preparedScripts.put( key, preparedScript );
+        }
+        return preparedScript;
+    }
+
+    /**
+     * Removes all prepared executable scripts. Metadata of scripts and their arguments
+     * may be changed without changing the version of the script.
+     */
+    public void invalidatePreparedScripts()
+    {
+        preparedScripts.invalidateAll();
+    }
+
+    @Nonnull
+    protected PreparedExecutableScript prepare( @Nonnull ExecutableScript executableScript, @Nonnull FhirVersion fhirVersion ) throws ScriptPreparationException
     {
+        final ScriptSource scriptSource = scriptSourceRepository.findByScriptAndFhirVersion( executableScript.getScript(), fhirVersion ).orElseThrow( () ->
+            new ScriptPreparationException( "Script \"" + executableScript.getScript().getName() + "\" does not include a source for FHIR version " + fhirVersion + "." ) );
         final Collection<ScriptArg> scriptArgs = scriptArgRepository.findAllByScript( executableScript.getScript() );
+        final Set<String> variableNames = executableScript.getScript().getVariables().stream().map( ScriptVariable::getVariableName ).collect( Collectors.toSet() );
+        final Set<String> mandatoryArgumentNames = scriptArgs.stream().filter( ScriptArg::isMandatory ).map( ScriptArg::getName ).collect( Collectors.toSet() );
+        return new PreparedExecutableScript( executableScript.getId(), executableScript.getScript().getVersion(), executableScript.getScript().getName(),
+            executableScript.getScript().getReturnType(), scriptSource, variableNames, createDefaultArgs( executableScript, scriptArgs ), mandatoryArgumentNames,
+            getScriptBean( executableScript, scriptSource ),
+            (executableScript.getScript().getTimeoutMillis() == null) ? scriptTimeoutMillis : executableScript.getScript().getTimeoutMillis() );
+    }
+
+    @Nullable
+    protected ScriptBean getScriptBean( @Nonnull ExecutableScript executableScript, @Nonnull ScriptSource scriptSource ) throws ScriptPreparationException
+    {
+        if ( scriptSource.getSourceType() != ScriptSourceType.JAVA_BEAN )
+        {
+            return null;
+        }
+        final String beanName = scriptSource.getSourceText().trim();
+        try
+        {
+            return beanFactory.getBean( beanName, ScriptBean.class );
+        }
+        catch ( BeansException e )
+        {
+            throw new ScriptPreparationException( "Script \"" + executableScript.getScript().getName() + "\" refers to script bean \"" +
+                beanName + "\" that is not available: " + e.getMessage(), e );
+        }
+    }
+
+    @Nonnull
+    private Map<String, Object> createArgs( @Nonnull PreparedExecutableScript preparedScript, @Nonnull Map<String, Object> arguments )
+    {
+        if ( arguments.isEmpty() )
+        {
+            preparedScript.getMissingMandatoryArgumentNames().stream().findFirst().ifPresent( n -> {
+                throw new ScriptPreparationException( "Script variables \"" + n + "\" is mandatory and has not been specified." );
+            } );
+            return new HashMap<>( preparedScript.getArguments() );
+        }
+
+        final Map<String, Object> args = new HashMap<>( preparedScript.getArguments() );
+        // specified arguments may override everything
+        args.putAll( arguments );
+        // validate final arguments
+        preparedScript.getMandatoryArgumentNames().forEach( n -> {
+            if ( args.get( n ) == null )
+            {
+                throw new ScriptPreparationException( "Script variables \"" + n + "\" is mandatory and has not been specified." );
+            }
+        } );
+        return args;
+    }
+
+    @Nonnull
+    private Map<String, Object> createDefaultArgs( @Nonnull ExecutableScript executableScript, @Nonnull Collection<ScriptArg> scriptArgs )
+    {
         final Collection<ExecutableScriptArg> executableScriptArgs = executableScriptArgRepository.findAllEnabledByScript( executableScript );
 
         final Map<String, Object> args = new HashMap<>();
@@ -199,15 +523,6 @@ public class ScriptExecutorImpl implements ScriptExecutor
                 throw new ScriptPreparationException( "Could not convert override value of argument \"" + sa.getArgument().getName() + "\": " + e.getMessage() );
             }
         } );
-        // specified arguments may override everything
-        args.putAll( arguments );
-        // validate final arguments
-        scriptArgs.stream().filter( ScriptArg::isMandatory ).forEach( sa -> {
-            if ( args.get( sa.getName() ) == null )
-            {
-                throw new ScriptPreparationException( "Script variables \"" + sa.getName() + "\" is mandatory and has not been specified." );
-            }
-        } );
         return args;
     }
 
@@ -245,23 +560,4 @@ public class ScriptExecutorImpl implements ScriptExecutor
         }
         return convertedValue;
     }
-
-    @Nullable
-    private Boolean convertToBoolean( @Nonnull String script )
-    {
-        if ( script.length() > 20 )
-        {
-            return null;
-        }
-        final String preparedScript = script.replace( ";", "" ).trim();
-        if ( preparedScript.equals( "true" ) )
-        {
-            return Boolean.TRUE;
-        }
-        if ( preparedScript.equals( "false" ) )
-        {
-            return Boolean.FALSE;
-        }
-        return null;
-    }
 }
@@ -0,0 +1,91 @@
+package org.dhis2.fhir.adapter.fhir.script.impl;
+
+/*
+ * Copyright (c) 2004-2018, University of Oslo
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * Redistributions of source code must retain the above copyright notice, this
+ * list of conditions and the following disclaimer.
+ *
+ * Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation
+ * and/or other materials provided with the distribution.
+ * Neither the name of the HISP project nor the names of its contributors may
+ * be used to endorse or promote products derived from this software without
+ * specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+import org.dhis2.fhir.adapter.fhir.metadata.model.ExecutableScript;
+import org.dhis2.fhir.adapter.fhir.metadata.model.ExecutableScriptArg;
+import org.dhis2.fhir.adapter.fhir.metadata.model.Script;
+import org.dhis2.fhir.adapter.fhir.metadata.model.ScriptArg;
+import org.dhis2.fhir.adapter.fhir.metadata.model.ScriptSource;
+import org.dhis2.fhir.adapter.fhir.metadata.repository.listener.AbstractMetadataChangeListener;
+import org.dhis2.fhir.adapter.fhir.script.CompiledScriptCache;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.Nonnull;
+import javax.persistence.EntityManagerFactory;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+
+/**
+ * Evicts the prepared executable scripts of {@link ScriptExecutorImpl} when a script,
+ * its source, its arguments or an executable script has been saved or deleted. The
+ * compiled scripts of a changed script source are removed from the
+ * {@link CompiledScriptCache}.
+ *
+ * @author volsch
+ */
+@Component
+public class ScriptMetadataChangeListener extends AbstractMetadataChangeListener
+{
+    private static final long serialVersionUID = 7218804383513532480L;
+
+    private static final Collection<Class<?>> ENTITY_CLASSES = Collections.unmodifiableList( Arrays.asList(
+        Script.class, ScriptSource.class, ScriptArg.class, ExecutableScript.class, ExecutableScriptArg.class ) );
+
+    private final transient ScriptExecutorImpl scriptExecutor;
+
+    private final transient CompiledScriptCache compiledScriptCache;
+
+    public ScriptMetadataChangeListener( @Nonnull EntityManagerFactory entityManagerFactory, @Nonnull ScriptExecutorImpl scriptExecutor,
+        @Nonnull CompiledScriptCache compiledScriptCache )
+    {
+        super( entityManagerFactory );
+        this.scriptExecutor = scriptExecutor;
+        this.compiledScriptCache = compiledScriptCache;
+    }
+
+    @Nonnull
+    @Override
+    protected Collection<Class<?>> getEntityClasses()
+    {
+        return ENTITY_CLASSES;
+    }
+
+    @Override
+    protected void onChange( @Nonnull Object entity )
+    {
+        // prepared scripts reference the script source of which the compiled scripts are removed
+        scriptExecutor.invalidatePreparedScripts();
+        if ( entity instanceof ScriptSource )
+        {
+            compiledScriptCache.invalidate( ((ScriptSource) entity).getId() );
+        }
+    }
+}
@@ -0,0 +1,252 @@
+package org.dhis2.fhir.adapter.fhir.script.impl;
+
+/*
+ * Copyright (c) 2004-2018, University of Oslo
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * Redistributions of source code must retain the above copyright notice, this
+ * list of conditions and the following disclaimer.
+ *
+ * Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation
+ * and/or other materials provided with the distribution.
+ * Neither the name of the HISP project nor the names of its contributors may
+ * be used to endorse or promote products derived from this software without
+ * specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+import org.dhis2.fhir.adapter.fhir.metadata.model.ScriptVariable;
+import org.dhis2.fhir.adapter.fhir.transform.FhirToDhisTransformerContext;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Function;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Analyzes the source text of a script when it is prepared and detects trivial scripts
+ * that can be executed natively. The following scripts are detected (optionally
+ * terminated by a semicolon):
+ * <ul>
+ * <li>boolean literals, <code>null</code>, integer literals and string literals without escape sequences,</li>
+ * <li>pass-throughs of arguments (e.g. <code>args['dataElement']</code>),</li>
+ * <li>references that are created from a literal or an argument (e.g. <code>context.createReference('X', 'CODE')</code>).</li>
+ * </ul>
+ *
+ * @author volsch
+ */
+public abstract class StaticScriptAnalyzer
+{
+    protected static final String STRING_LITERAL = "(?:'([^'\\\\]*)'|\"([^\"\\\\]*)\")";
+
+    protected static final String ARGUMENT = "args\\s*(?:\\[\\s*" + STRING_LITERAL + "\\s*]|\\.([A-Za-z_$][\\w$]*))";
+
+    protected static final String END = "\\s*;?\\s*";
+
+    protected static final Pattern KEYWORD_PATTERN = Pattern.compile( "\\s*(true|false|null)" + END );
+
+    protected static final Pattern INTEGER_PATTERN = Pattern.compile( "\\s*(-?\\d{1,9})" + END );
+
+    protected static final Pattern STRING_PATTERN = Pattern.compile( "\\s*" + STRING_LITERAL + END );
+
+    protected static final Pattern ARGUMENT_PATTERN = Pattern.compile( "\\s*" + ARGUMENT + END );
+
+    protected static final Pattern REFERENCE_PATTERN = Pattern.compile( "\\s*context\\s*\\.\\s*createReference\\s*\\(\\s*(?:" +
+        STRING_LITERAL + "|" + ARGUMENT + ")\\s*,\\s*" + STRING_LITERAL + "\\s*\\)" + END );
+
+    protected static final Pattern IDENTIFIER_PATTERN = Pattern.compile( "[A-Za-z_$][\\w$]*" );
+
+    /**
+     * @param sourceText the source text of the script that should be analyzed.
+     * @return the native implementation of the script or <code>null</code> if the script is not trivial.
+     */
+    @Nullable
+    public static NativeScript analyze( @Nonnull String sourceText )
+    {
+        Matcher matcher = KEYWORD_PATTERN.matcher( sourceText );
+        if ( matcher.matches() )
+        {
+            return new ConstantNativeScript( "null".equals( matcher.group( 1 ) ) ? null : Boolean.valueOf( matcher.group( 1 ) ) );
+        }
+        matcher = INTEGER_PATTERN.matcher( sourceText );
+        if ( matcher.matches() )
+        {
+            return new ConstantNativeScript( Integer.valueOf( matcher.group( 1 ) ) );
+        }
+        matcher = STRING_PATTERN.matcher( sourceText );
+        if ( matcher.matches() )
+        {
+            return new ConstantNativeScript( getString( matcher, 1 ) );
+        }
+        matcher = ARGUMENT_PATTERN.matcher( sourceText );
+        if ( matcher.matches() )
+        {
+            return new ArgumentNativeScript( getArgumentName( matcher, 1 ) );
+        }
+        matcher = REFERENCE_PATTERN.matcher( sourceText );
+        if ( matcher.matches() )
+        {
+            final String referenceType = getString( matcher, 6 );
+            final String value = getString( matcher, 1 );
+            if ( value == null )
+            {
+                final String argumentName = getArgumentName( matcher, 3 );
+                return new ReferenceNativeScript( v -> getArgument( v, argumentName ), referenceType );
+            }
+            return new ReferenceNativeScript( v -> value, referenceType );
+        }
+        return null;
+    }
+
+    /**
+     * Returns all names that may be referenced by the script. Every identifier of the
+     * source text is included, even if it is contained in a string literal or in a
+     * comment (e.g. <code>this['enrollment']</code>). Variables whose names are not
+     * included cannot be accessed by the script directly and need not be bound.
+     *
+     * @param sourceText the source text of the script that should be analyzed.
+     * @return the names that may be referenced by the script.
+     */
+    @Nonnull
+    public static Set<String> getReferencedNames( @Nonnull String sourceText )
+    {
+        final Set<String> names = new HashSet<>();
+        final Matcher matcher = IDENTIFIER_PATTERN.matcher( sourceText );
+        while ( matcher.find() )
+        {
+            names.add( matcher.group() );
+        }
+        return Collections.unmodifiableSet( names );
+    }
+
+    @Nullable
+    private static String getString( @Nonnull Matcher matcher, int group )
+    {
+        return (matcher.group( group ) == null) ? matcher.group( group + 1 ) : matcher.group( group );
+    }
+
+    @Nonnull
+    private static String getArgumentName( @Nonnull Matcher matcher, int group )
+    {
+        final String name = getString( matcher, group );
+        return (name == null) ? matcher.group( group + 2 ) : name;
+    }
+
+    @Nullable
+    private static Object getArgument( @Nonnull Map<String, Object> variables, @Nonnull String name )
+    {
+        final Object args = variables.get( ScriptExecutorImpl.ARGUMENTS_VARIABLE_NAME );
+        return (args instanceof Map) ? ((Map<?, ?>) args).get( name ) : null;
+    }
+
+    protected static class ConstantNativeScript implements NativeScript
+    {
+        private final Object value;
+
+        public ConstantNativeScript( @Nullable Object value )
+        {
+            this.value = value;
+        }
+
+        @Override
+        public boolean isConstant()
+        {
+            return true;
+        }
+
+        @Override
+        public boolean isApplicable( @Nonnull Map<String, Object> variables )
+        {
+            return true;
+        }
+
+        @Nullable
+        @Override
+        public Object execute( @Nonnull Map<String, Object> variables )
+        {
+            return value;
+        }
+    }
+
+    protected static class ArgumentNativeScript implements NativeScript
+    {
+        private final String argumentName;
+
+        public ArgumentNativeScript( @Nonnull String argumentName )
+        {
+            this.argumentName = argumentName;
+        }
+
+        @Override
+        public boolean isConstant()
+        {
+            return false;
+        }
+
+        @Override
+        public boolean isApplicable( @Nonnull Map<String, Object> variables )
+        {
+            return true;
+        }
+
+        @Nullable
+        @Override
+        public Object execute( @Nonnull Map<String, Object> variables )
+        {
+            return getArgument( variables, argumentName );
+        }
+    }
+
+    protected static class ReferenceNativeScript implements NativeScript
+    {
+        private final Function<Map<String, Object>, Object> valueFunction;
+
+        private final String referenceType;
+
+        public ReferenceNativeScript( @Nonnull Function<Map<String, Object>, Object> valueFunction, @Nonnull String referenceType )
+        {
+            this.valueFunction = valueFunction;
+            this.referenceType = referenceType;
+        }
+
+        @Override
+        public boolean isConstant()
+        {
+            return false;
+        }
+
+        @Override
+        public boolean isApplicable( @Nonnull Map<String, Object> variables )
+        {
+            final Object value = valueFunction.apply( variables );
+            return (variables.get( ScriptVariable.CONTEXT.getVariableName() ) instanceof FhirToDhisTransformerContext) &&
+                ((value == null) || (value instanceof String));
+        }
+
+        @Nullable
+        @Override
+        public Object execute( @Nonnull Map<String, Object> variables )
+        {
+            final FhirToDhisTransformerContext context = (FhirToDhisTransformerContext) variables.get( ScriptVariable.CONTEXT.getVariableName() );
+            return context.createReference( (String) valueFunction.apply( variables ), referenceType );
+        }
+    }
+}
@@ -28,17 +28,26 @@ package org.dhis2.fhir.adapter.fhir.transform.config;
  * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
  */
 
+import com.oracle.truffle.js.scriptengine.GraalJSScriptEngine;
 import org.dhis2.fhir.adapter.fhir.script.ScriptExecutionContext;
 import org.dhis2.fhir.adapter.fhir.script.impl.ThreadLocalScriptExecutionContext;
+import org.graalvm.polyglot.Context;
+import org.graalvm.polyglot.Engine;
+import org.graalvm.polyglot.HostAccess;
 import org.springframework.boot.context.properties.ConfigurationProperties;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
-import org.springframework.scripting.ScriptEvaluator;
-import org.springframework.scripting.support.StandardScriptEvaluator;
 import org.springframework.validation.annotation.Validated;
 
+import javax.script.ScriptEngine;
+import javax.script.ScriptEngineManager;
+import javax.validation.constraints.Min;
 import javax.validation.constraints.NotBlank;
+import javax.validation.constraints.NotNull;
 import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
 
 @Configuration
 @ConfigurationProperties( "dhis2.fhir-adapter.transformation" )
@@ -47,9 +56,51 @@ public class TransformationConfig implements Serializable
 {
     private static final long serialVersionUID = 8855767131640620761L;
 
+    /**
+     * The name of the script engine that uses GraalJS. All contexts of the engine share
+     * the same polyglot engine, so that a compiled source is shared across contexts.
+     */
+    public static final String GRAAL_JS_SCRIPT_ENGINE_NAME = "graal.js";
+
     @NotBlank
     private String scriptEngineName;
 
+    @Min( 1 )
+    private int compiledScriptCacheMaxSize = 1000;
+
+    @Min( 0 )
+    private int scriptBindingsPoolSize = 8;
+
+    @Min( 0 )
+    private int preparedScriptCacheSeconds = 60;
+
+    @Min( 1 )
+    private int preparedScriptCacheMaxSize = 1000;
+
+    private boolean slowScriptExecutionSampling;
+
+    @Min( 0 )
+    private long slowScriptExecutionThresholdMillis = 500;
+
+    @Min( 1 )
+    private int slowScriptExecutionSampleCount = 10;
+
+    @Min( 0 )
+    private int scriptTimeoutMillis = 30000;
+
+    private boolean interruptibleScriptExecution;
+
+    @Min( 1 )
+    private int interruptibleScriptExecutionPoolSize = 8;
+
+    private boolean scriptExecutionPercentileHistogram = true;
+
+    @NotNull
+    private List<Double> scriptExecutionPercentiles = new ArrayList<>( Arrays.asList( 0.5, 0.95, 0.99 ) );
+
+    @NotNull
+    private List<Long> scriptExecutionSlaMillis = new ArrayList<>( Arrays.asList( 1L, 5L, 10L, 50L, 100L, 500L, 1000L ) );
+
     public String getScriptEngineName()
     {
         return scriptEngineName;
@@ -60,6 +111,136 @@ public class TransformationConfig implements Serializable
         this.scriptEngineName = scriptEngineName;
     }
 
+    public int getCompiledScriptCacheMaxSize()
+    {
+        return compiledScriptCacheMaxSize;
+    }
+
+    public void setCompiledScriptCacheMaxSize( int compiledScriptCacheMaxSize )
+    {
+        this.compiledScriptCacheMaxSize = compiledScriptCacheMaxSize;
+    }
+
+    public int getScriptBindingsPoolSize()
+    {
+        return scriptBindingsPoolSize;
+    }
+
+    public void setScriptBindingsPoolSize( int scriptBindingsPoolSize )
+    {
+        this.scriptBindingsPoolSize = scriptBindingsPoolSize;
+    }
+
+    public int getPreparedScriptCacheSeconds()
+    {
+        return preparedScriptCacheSeconds;
+    }
+
+    public void setPreparedScriptCacheSeconds( int preparedScriptCacheSeconds )
+    {
+        this.preparedScriptCacheSeconds = preparedScriptCacheSeconds;
+    }
+
+    public int getPreparedScriptCacheMaxSize()
+    {
+        return preparedScriptCacheMaxSize;
+    }
+
+    public void setPreparedScriptCacheMaxSize( int preparedScriptCacheMaxSize )
+    {
+        this.preparedScriptCacheMaxSize = preparedScriptCacheMaxSize;
+    }
+
+    public boolean isSlowScriptExecutionSampling()
+    {
+        return slowScriptExecutionSampling;
+    }
+
+    public void setSlowScriptExecutionSampling( boolean slowScriptExecutionSampling )
+    {
+        this.slowScriptExecutionSampling = slowScriptExecutionSampling;
+    }
+
+    public long getSlowScriptExecutionThresholdMillis()
+    {
+        return slowScriptExecutionThresholdMillis;
+    }
+
+    public void setSlowScriptExecutionThresholdMillis( long slowScriptExecutionThresholdMillis )
+    {
+        this.slowScriptExecutionThresholdMillis = slowScriptExecutionThresholdMillis;
+    }
+
+    public int getSlowScriptExecutionSampleCount()
+    {
+        return slowScriptExecutionSampleCount;
+    }
+
+    public void setSlowScriptExecutionSampleCount( int slowScriptExecutionSampleCount )
+    {
+        this.slowScriptExecutionSampleCount = slowScriptExecutionSampleCount;
+    }
+
+    public int getScriptTimeoutMillis()
+    {
+        return scriptTimeoutMillis;
+    }
+
+    public void setScriptTimeoutMillis( int scriptTimeoutMillis )
+    {
+        this.scriptTimeoutMillis = scriptTimeoutMillis;
+    }
+
+    public boolean isInterruptibleScriptExecution()
+    {
+        return interruptibleScriptExecution;
+    }
+
+    public void setInterruptibleScriptExecution( boolean interruptibleScriptExecution )
+    {
+        this.interruptibleScriptExecution = interruptibleScriptExecution;
+    }
+
+    public int getInterruptibleScriptExecutionPoolSize()
+    {
+        return interruptibleScriptExecutionPoolSize;
+    }
+
+    public void setInterruptibleScriptExecutionPoolSize( int interruptibleScriptExecutionPoolSize )
+    {
+        this.interruptibleScriptExecutionPoolSize = interruptibleScriptExecutionPoolSize;
+    }
+
+    public boolean isScriptExecutionPercentileHistogram()
+    {
+        return scriptExecutionPercentileHistogram;
+    }
+
+    public void setScriptExecutionPercentileHistogram( boolean scriptExecutionPercentileHistogram )
+    {
+        this.scriptExecutionPercentileHistogram = scriptExecutionPercentileHistogram;
+    }
+
+    public List<Double> getScriptExecutionPercentiles()
+    {
+        return scriptExecutionPercentiles;
+    }
+
+    public void setScriptExecutionPercentiles( List<Double> scriptExecutionPercentiles )
+    {
+        this.scriptExecutionPercentiles = scriptExecutionPercentiles;
+    }
+
+    public List<Long> getScriptExecutionSlaMillis()
+    {
+        return scriptExecutionSlaMillis;
+    }
+
+    public void setScriptExecutionSlaMillis( List<Long> scriptExecutionSlaMillis )
+    {
+        this.scriptExecutionSlaMillis = scriptExecutionSlaMillis;
+    }
+
     @Bean
     protected ScriptExecutionContext scriptExecutionContext()
     {
@@ -67,10 +248,19 @@ public class TransformationConfig implements Serializable
     }
 
     @Bean
-    protected ScriptEvaluator scriptEvaluator()
+    public ScriptEngine scriptEngine()
     {
-        final StandardScriptEvaluator scriptEvaluator = new StandardScriptEvaluator();
-        scriptEvaluator.setEngineName( getScriptEngineName() );
-        return scriptEvaluator;
+        if ( GRAAL_JS_SCRIPT_ENGINE_NAME.equals( getScriptEngineName() ) )
+        {
+            // scripts access the transformer utils and the transformed resources, which are Java objects
+            return GraalJSScriptEngine.create( Engine.newBuilder().build(), Context.newBuilder( "js" )
+                .allowHostAccess( HostAccess.ALL ).allowExperimentalOptions( true ).option( "js.nashorn-compat", "true" ) );
+        }
+        final ScriptEngine scriptEngine = new ScriptEngineManager().getEngineByName( getScriptEngineName() );
+        if ( scriptEngine == null )
+        {
+            throw new IllegalStateException( "Script engine with name " + getScriptEngineName() + " is not available." );
+        }
+        return scriptEngine;
     }
 }
@@ -35,6 +35,7 @@ import org.dhis2.fhir.adapter.fhir.metadata.model.ScriptVariable;
 import org.dhis2.fhir.adapter.fhir.metadata.repository.RuleRepository;
 import org.dhis2.fhir.adapter.fhir.model.FhirVersion;
 import org.dhis2.fhir.adapter.fhir.model.FhirVersionedValue;
+import org.dhis2.fhir.adapter.fhir.script.LazyScriptVariables;
 import org.dhis2.fhir.adapter.fhir.script.ScriptExecutor;
 import org.dhis2.fhir.adapter.fhir.transform.FhirToDhisTransformOutcome;
 import org.dhis2.fhir.adapter.fhir.transform.FhirToDhisTransformerContext;
@@ -132,7 +133,8 @@ public class FhirToDhisTransformerServiceImpl implements FhirToDhisTransformerSe
                 throw new TransformerMappingException( "No transformer can be found for FHIR version " + context.getFhirRequest().getVersion() + " mapping of DHIS resource type " + rule.getDhisResourceType() );
             }
 
-            final Map<String, Object> scriptVariables = new HashMap<>( transformerUtils );
+            // transformer utils are global script variables and need not to be copied for every rule
+            final Map<String, Object> scriptVariables = new LazyScriptVariables( transformerUtils );
             scriptVariables.put( ScriptVariable.CONTEXT.getVariableName(), context );
             scriptVariables.put( ScriptVariable.INPUT.getVariableName(), input );
             if ( isApplicable( context, input, rule, scriptVariables ) )
@@ -38,7 +38,6 @@ import org.dhis2.fhir.adapter.dhis.tracker.program.Enrollment;
 import org.dhis2.fhir.adapter.dhis.tracker.program.EnrollmentService;
 import org.dhis2.fhir.adapter.dhis.tracker.program.EnrollmentStatus;
 import org.dhis2.fhir.adapter.dhis.tracker.program.Event;
-import org.dhis2.fhir.adapter.dhis.tracker.program.EventService;
 import org.dhis2.fhir.adapter.dhis.tracker.program.EventStatus;
 import org.dhis2.fhir.adapter.dhis.tracker.program.ImmutableProgram;
 import org.dhis2.fhir.adapter.dhis.tracker.program.Program;
@@ -56,6 +55,7 @@ import org.dhis2.fhir.adapter.fhir.metadata.model.ProgramStageRule;
 import org.dhis2.fhir.adapter.fhir.metadata.model.ScriptVariable;
 import org.dhis2.fhir.adapter.fhir.metadata.repository.FhirResourceMappingRepository;
 import org.dhis2.fhir.adapter.fhir.model.EventDecisionType;
+import org.dhis2.fhir.adapter.fhir.script.LazyScriptVariables;
 import org.dhis2.fhir.adapter.fhir.script.ScriptExecutor;
 import org.dhis2.fhir.adapter.fhir.transform.FatalTransformerException;
 import org.dhis2.fhir.adapter.fhir.transform.FhirToDhisTransformOutcome;
@@ -83,7 +83,6 @@ import java.time.temporal.Temporal;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.Comparator;
-import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Objects;
@@ -100,8 +99,6 @@ public class FhirToProgramStageTransformer extends AbstractFhirToDhisTransformer
 
     private final EnrollmentService enrollmentService;
 
-    private final EventService eventService;
-
     private final FhirResourceMappingRepository resourceMappingRepository;
 
     private final ValueConverter valueConverter;
@@ -110,14 +107,13 @@ public class FhirToProgramStageTransformer extends AbstractFhirToDhisTransformer
 
     public FhirToProgramStageTransformer( @Nonnull ScriptExecutor scriptExecutor, @Nonnull OrganisationUnitService organisationUnitService,
         @Nonnull TrackedEntityMetadataService trackedEntityMetadataService, @Nonnull TrackedEntityService trackedEntityService,
-        @Nonnull ProgramMetadataService programMetadataService, @Nonnull EnrollmentService enrollmentService, @Nonnull EventService eventService,
+        @Nonnull ProgramMetadataService programMetadataService, @Nonnull EnrollmentService enrollmentService,
         @Nonnull FhirResourceMappingRepository resourceMappingRepository, @Nonnull ValueConverter valueConverter )
     {
         super( scriptExecutor, organisationUnitService, new StaticObjectProvider<>( trackedEntityService ) );
         this.programMetadataService = programMetadataService;
         this.trackedEntityMetadataService = trackedEntityMetadataService;
         this.enrollmentService = enrollmentService;
-        this.eventService = eventService;
         this.resourceMappingRepository = resourceMappingRepository;
         this.valueConverter = valueConverter;
     }
@@ -155,7 +151,7 @@ public class FhirToProgramStageTransformer extends AbstractFhirToDhisTransformer
             return null;
         }
 
-        final Map<String, Object> variables = new HashMap<>( scriptVariables );
+        final LazyScriptVariables variables = new LazyScriptVariables( scriptVariables );
         addBasicScriptVariables( variables, rule );
         final FhirResourceMapping resourceMapping = getResourceMapping( rule );
         final TrackedEntityInstance trackedEntityInstance = getTrackedEntityInstance( context,
@@ -173,13 +169,14 @@ public class FhirToProgramStageTransformer extends AbstractFhirToDhisTransformer
         }
         rule.getEventStatusUpdate().update( event );
 
+        // scripted events and enrollment are created only if they are used (not required if event is rejected)
         final ProgramStage programStage = getScriptVariable( variables, ScriptVariable.PROGRAM_STAGE, ProgramStage.class );
-        final List<WritableScriptedEvent> scriptedProgramStageEvents = createScriptedProgramStageEvents( context, programStage, event.getEnrollment().getEvents() );
-        variables.put( ScriptVariable.PROGRAM_STAGE_EVENTS.getVariableName(), scriptedProgramStageEvents );
+        variables.putLazy( ScriptVariable.PROGRAM_STAGE_EVENTS.getVariableName(),
+            () -> createScriptedProgramStageEvents( context, programStage, event.getEnrollment().getEvents() ) );
 
         final Program program = getScriptVariable( variables, ScriptVariable.PROGRAM, Program.class );
-        final WritableScriptedEnrollment scriptedEnrollment = new WritableScriptedEnrollment( program, event.getEnrollment(), valueConverter );
-        variables.put( ScriptVariable.ENROLLMENT.getVariableName(), scriptedEnrollment );
+        variables.putLazy( ScriptVariable.ENROLLMENT.getVariableName(),
+            () -> new WritableScriptedEnrollment( program, event.getEnrollment(), valueConverter ) );
         if ( !event.isNewResource() && !beforeEnrollmentEvent( context, rule, programStage, event.getEnrollment(), scriptVariables ) )
         {
             return null;
@@ -202,6 +199,7 @@ public class FhirToProgramStageTransformer extends AbstractFhirToDhisTransformer
         {
             return null;
         }
+        final WritableScriptedEnrollment scriptedEnrollment = getScriptVariable( variables, ScriptVariable.ENROLLMENT, WritableScriptedEnrollment.class );
         updateCoordinates( context, resourceMapping, program, scriptedEnrollment, programStage, scriptedEvent, variables );
 
         if ( !afterEvent( context, rule, programStage, scriptVariables ) ||
@@ -220,7 +218,7 @@ public class FhirToProgramStageTransformer extends AbstractFhirToDhisTransformer
             scriptedEnrollment.validate();
         }
         event.setTrackedEntityInstance( trackedEntityInstance );
-        scriptedProgramStageEvents.stream().filter( se -> se.isNewResource() || se.isModified() || se.isAnyDataValueModified() ).forEach( WritableScriptedEvent::validate );
+        getScriptedProgramStageEvents( variables ).stream().filter( se -> se.isNewResource() || se.isModified() || se.isAnyDataValueModified() ).forEach( WritableScriptedEvent::validate );
 
         return new FhirToDhisTransformOutcome<>( event.getId(), event );
     }
@@ -304,13 +302,11 @@ public class FhirToProgramStageTransformer extends AbstractFhirToDhisTransformer
             final Enrollment enrollment = eventInfo.getEnrollment().orElseThrow(
                 () -> new TransformerMappingException( "Enrolled events do not have an enrollment." ) );
 
-            final Map<String, Object> variables = new HashMap<>( scriptVariables );
+            final LazyScriptVariables variables = new LazyScriptVariables( scriptVariables );
             final Program program = eventInfo.getProgram();
             final ProgramStage programStage = eventInfo.getProgramStage();
-            final WritableScriptedEnrollment scriptedEnrollment = new WritableScriptedEnrollment( program, enrollment, valueConverter );
-            final List<WritableScriptedEvent> scriptedProgramStageEvents = createScriptedProgramStageEvents( context, programStage, enrollment.getEvents() );
-            variables.put( ScriptVariable.ENROLLMENT.getVariableName(), scriptedEnrollment );
-            variables.put( ScriptVariable.PROGRAM_STAGE_EVENTS.getVariableName(), scriptedProgramStageEvents );
+            variables.putLazy( ScriptVariable.ENROLLMENT.getVariableName(), () -> new WritableScriptedEnrollment( program, enrollment, valueConverter ) );
+            variables.putLazy( ScriptVariable.PROGRAM_STAGE_EVENTS.getVariableName(), () -> createScriptedProgramStageEvents( context, programStage, enrollment.getEvents() ) );
 
             final FhirResourceMapping resourceMapping = getResourceMapping( rule );
             final Optional<OrganisationUnit> orgUnit = getEventOrgUnit( context, resourceMapping, enrollment, variables );
@@ -330,7 +326,7 @@ public class FhirToProgramStageTransformer extends AbstractFhirToDhisTransformer
 
             if ( enrollment.isModified() )
             {
-                scriptedEnrollment.validate();
+                getScriptVariable( variables, ScriptVariable.ENROLLMENT, WritableScriptedEnrollment.class ).validate();
             }
         }
         return Optional.of( event );
@@ -374,13 +370,11 @@ public class FhirToProgramStageTransformer extends AbstractFhirToDhisTransformer
             return null;
         }
 
-        final Map<String, Object> variables = new HashMap<>( scriptVariables );
+        final LazyScriptVariables variables = new LazyScriptVariables( scriptVariables );
         final Program program = eventInfo.getProgram();
         final ProgramStage programStage = eventInfo.getProgramStage();
-        final WritableScriptedEnrollment scriptedEnrollment = new WritableScriptedEnrollment( program, enrollment, valueConverter );
-        final List<WritableScriptedEvent> scriptedProgramStageEvents = createScriptedProgramStageEvents( context, programStage, enrollment.getEvents() );
-        variables.put( ScriptVariable.ENROLLMENT.getVariableName(), scriptedEnrollment );
-        variables.put( ScriptVariable.PROGRAM_STAGE_EVENTS.getVariableName(), scriptedProgramStageEvents );
+        variables.putLazy( ScriptVariable.ENROLLMENT.getVariableName(), () -> new WritableScriptedEnrollment( program, enrollment, valueConverter ) );
+        variables.putLazy( ScriptVariable.PROGRAM_STAGE_EVENTS.getVariableName(), () -> createScriptedProgramStageEvents( context, programStage, enrollment.getEvents() ) );
         if ( !beforeEnrollmentEvent( context, rule, programStage, enrollment, scriptVariables ) )
         {
             return null;
@@ -432,7 +426,7 @@ public class FhirToProgramStageTransformer extends AbstractFhirToDhisTransformer
 
         if ( enrollment.isModified() )
         {
-            scriptedEnrollment.validate();
+            getScriptVariable( variables, ScriptVariable.ENROLLMENT, WritableScriptedEnrollment.class ).validate();
         }
         scriptedEvent.validate();
         return event;
@@ -515,7 +509,7 @@ public class FhirToProgramStageTransformer extends AbstractFhirToDhisTransformer
         }
 
         // creation of event may not be applicable
-        final Map<String, Object> variables = new HashMap<>( scriptVariables );
+        final Map<String, Object> variables = new LazyScriptVariables( scriptVariables );
         variables.put( ScriptVariable.DATE_TIME.getVariableName(), enrollmentDate );
         if ( (mappedProgram.getCreationApplicableScript() != null) && !Boolean.TRUE.equals( getScriptExecutor().execute(
             mappedProgram.getCreationApplicableScript(), context.getFhirRequest().getVersion(), variables, Boolean.class ) ) )
@@ -606,6 +600,13 @@ public class FhirToProgramStageTransformer extends AbstractFhirToDhisTransformer
         return true;
     }
 
+    @Nonnull
+    @SuppressWarnings( "unchecked" )
+    protected List<WritableScriptedEvent> getScriptedProgramStageEvents( @Nonnull Map<String, Object> scriptVariables )
+    {
+        return getScriptVariable( scriptVariables, ScriptVariable.PROGRAM_STAGE_EVENTS, List.class );
+    }
+
     @Nonnull
     protected List<WritableScriptedEvent> createScriptedProgramStageEvents( @Nonnull FhirToDhisTransformerContext transformerContext, @Nonnull ProgramStage programStage, @Nonnull List<Event> events )
     {
@@ -697,9 +698,9 @@ public class FhirToProgramStageTransformer extends AbstractFhirToDhisTransformer
         @Nonnull Enrollment enrollment, @Nonnull Map<String, Object> scriptVariables ) throws TransformerException
     {
         final Program program = getScriptVariable( scriptVariables, ScriptVariable.PROGRAM, Program.class );
-        final Map<String, Object> variables = new HashMap<>( scriptVariables );
-        variables.put( ScriptVariable.ENROLLMENT.getVariableName(),
-            new ImmutableScriptedEnrollment( new WritableScriptedEnrollment( program, enrollment, valueConverter ) ) );
+        final LazyScriptVariables variables = new LazyScriptVariables( scriptVariables );
+        variables.putLazy( ScriptVariable.ENROLLMENT.getVariableName(),
+            () -> new ImmutableScriptedEnrollment( new WritableScriptedEnrollment( program, enrollment, valueConverter ) ) );
         return getOrgUnit( context, resourceMapping.getEventOrgLookupScript(), variables );
     }
 
@@ -711,13 +712,12 @@ public class FhirToProgramStageTransformer extends AbstractFhirToDhisTransformer
         final TrackedEntityType trackedEntityType = getScriptVariable( scriptVariables, ScriptVariable.TRACKED_ENTITY_TYPE, TrackedEntityType.class );
         final ScriptedTrackedEntityInstance trackedEntityInstance = getScriptVariable( scriptVariables, ScriptVariable.TRACKED_ENTITY_INSTANCE, ScriptedTrackedEntityInstance.class );
 
-        final Enrollment enrollment = enrollmentService.getLatestActive( program.getId(),
+        final Enrollment enrollment = enrollmentService.getLatestActiveWithEvents( program.getId(), programStage.getId(),
             Objects.requireNonNull( trackedEntityInstance.getId() ) ).orElse( null );
         List<Event> events = Collections.emptyList();
         if ( enrollment != null )
         {
-            final List<Event> foundEvents = eventService.find( program.getId(), programStage.getId(), enrollment.getId(), trackedEntityInstance.getId() );
-            events = foundEvents.stream().peek( e -> e.setEnrollment( enrollment ) ).sorted( Collections.reverseOrder( new EventComparator() ) ).collect( Collectors.toList() );
+            events = enrollment.getEvents().stream().peek( e -> e.setEnrollment( enrollment ) ).sorted( Collections.reverseOrder( new EventComparator() ) ).collect( Collectors.toList() );
             enrollment.setEvents( events );
         }
         return new EventInfo( program, programStage, trackedEntityType, trackedEntityInstance, enrollment, events );
@@ -32,13 +32,12 @@ import ca.uhn.fhir.context.FhirContext;
 import ca.uhn.fhir.rest.api.CacheControlDirective;
 import ca.uhn.fhir.rest.client.api.IGenericClient;
 import org.dhis2.fhir.adapter.Scriptable;
-import org.dhis2.fhir.adapter.fhir.metadata.model.RemoteSubscriptionResource;
+import org.dhis2.fhir.adapter.fhir.metadata.model.RemoteSubscription;
 import org.dhis2.fhir.adapter.fhir.metadata.model.ScriptVariable;
 import org.dhis2.fhir.adapter.fhir.metadata.model.SystemCode;
-import org.dhis2.fhir.adapter.fhir.metadata.repository.RemoteSubscriptionResourceRepository;
 import org.dhis2.fhir.adapter.fhir.metadata.repository.SystemCodeRepository;
 import org.dhis2.fhir.adapter.fhir.model.SystemCodeValue;
-import org.dhis2.fhir.adapter.fhir.repository.FhirClientUtils;
+import org.dhis2.fhir.adapter.fhir.repository.FhirClientRegistry;
 import org.dhis2.fhir.adapter.fhir.script.ScriptArgUtils;
 import org.dhis2.fhir.adapter.fhir.script.ScriptExecutionContext;
 import org.dhis2.fhir.adapter.fhir.script.ScriptExecutionException;
@@ -67,16 +66,16 @@ public abstract class AbstractFhirClientTransformUtils extends AbstractFhirToDhi
 
     private final FhirContext fhirContext;
 
-    private final RemoteSubscriptionResourceRepository subscriptionResourceRepository;
+    private final FhirClientRegistry fhirClientRegistry;
 
     private final SystemCodeRepository systemCodeRepository;
 
     protected AbstractFhirClientTransformUtils( @Nonnull ScriptExecutionContext scriptExecutionContext, @Nonnull FhirContext fhirContext,
-        @Nonnull RemoteSubscriptionResourceRepository subscriptionResourceRepository, @Nonnull SystemCodeRepository systemCodeRepository )
+        @Nonnull FhirClientRegistry fhirClientRegistry, @Nonnull SystemCodeRepository systemCodeRepository )
     {
         super( scriptExecutionContext );
         this.fhirContext = fhirContext;
-        this.subscriptionResourceRepository = subscriptionResourceRepository;
+        this.fhirClientRegistry = fhirClientRegistry;
         this.systemCodeRepository = systemCodeRepository;
     }
 
@@ -132,9 +131,10 @@ public abstract class AbstractFhirClientTransformUtils extends AbstractFhirToDhi
         int processedResources = 0;
         int foundMinIndex = Integer.MAX_VALUE;
         IBaseResource foundResource = null;
-        final IGenericClient client = createFhirClient();
+        final RemoteSubscription remoteSubscription = getRemoteSubscription();
+        final IGenericClient client = fhirClientRegistry.getClient( fhirContext, remoteSubscription );
         IBaseBundle bundle = client.search().forResource( resourceName ).cacheControl( new CacheControlDirective().setNoCache( true ) )
-            .count( resultingMaxCount ).whereMap( filterMap ).sort().descending( "_lastUpdated" ).returnBundle( getBundleClass() ).execute();
+            .count( Math.min( resultingMaxCount, remoteSubscription.getPageSize() ) ).whereMap( filterMap ).sort().descending( "_lastUpdated" ).returnBundle( getBundleClass() ).execute();
         do
         {
             final List<? extends IBaseResource> resources = getEntries( bundle );
@@ -200,6 +200,12 @@ public abstract class AbstractFhirClientTransformUtils extends AbstractFhirToDhi
 
     @Nonnull
     protected IGenericClient createFhirClient()
+    {
+        return fhirClientRegistry.getClient( fhirContext, getRemoteSubscription() );
+    }
+
+    @Nonnull
+    protected RemoteSubscription getRemoteSubscription()
     {
         final FhirToDhisTransformerContext context = getScriptVariable( ScriptVariable.CONTEXT.getVariableName(), FhirToDhisTransformerContext.class );
         final UUID resourceId = context.getFhirRequest().getRemoteSubscriptionResourceId();
@@ -207,8 +213,11 @@ public abstract class AbstractFhirClientTransformUtils extends AbstractFhirToDhi
         {
             throw new TransformerMappingException( "FHIR client cannot be created without having a remote request." );
         }
-        final RemoteSubscriptionResource subscriptionResource = subscriptionResourceRepository.findById( resourceId )
-            .orElseThrow( () -> new TransformerMappingException( "Could not find remote subscription resource with ID " + resourceId ) );
-        return FhirClientUtils.createClient( fhirContext, subscriptionResource.getRemoteSubscription() );
+        final RemoteSubscription remoteSubscription = fhirClientRegistry.findRemoteSubscription( resourceId );
+        if ( remoteSubscription == null )
+        {
+            throw new TransformerMappingException( "Could not find remote subscription resource with ID " + resourceId );
+        }
+        return remoteSubscription;
     }
 }
@@ -0,0 +1,45 @@
+/*
+ *  Copyright (c) 2004-2018, University of Oslo
+ *  All rights reserved.
+ *
+ *  Redistribution and use in source and binary forms, with or without
+ *  modification, are permitted provided that the following conditions are met:
+ *  Redistributions of source code must retain the above copyright notice, this
+ *  list of conditions and the following disclaimer.
+ *
+ *  Redistributions in binary form must reproduce the above copyright notice,
+ *  this list of conditions and the following disclaimer in the documentation
+ *  and/or other materials provided with the distribution.
+ *  Neither the name of the HISP project nor the names of its contributors may
+ *  be used to endorse or promote products derived from this software without
+ *  specific prior written permission.
+ *
+ *  THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ *  ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ *  WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ *  DISCLAIMED. IN NO PROGRAM_STAGE_EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ *  ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ *  (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ *  LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ *  ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ *  (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ *  SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+CREATE TABLE fhir_queued_remote_resource (
+  remote_subscription_resource_id UUID                           NOT NULL,
+  queued_at                       TIMESTAMP(3) WITHOUT TIME ZONE NOT NULL DEFAULT CURRENT_TIMESTAMP,
+  requested_at                    TIMESTAMP(3) WITHOUT TIME ZONE NOT NULL DEFAULT CURRENT_TIMESTAMP,
+  coalesced_count                 INTEGER                        NOT NULL DEFAULT 0,
+  claimed_at                      TIMESTAMP(3) WITHOUT TIME ZONE,
+  CONSTRAINT fhir_queued_remote_resource_pk PRIMARY KEY (remote_subscription_resource_id),
+  CONSTRAINT fhir_queued_remote_resource_fk1 FOREIGN KEY (remote_subscription_resource_id) REFERENCES fhir_remote_subscription_resource (id) ON DELETE CASCADE
+);
+CREATE INDEX fhir_queued_remote_resource_i1
+  ON fhir_queued_remote_resource (queued_at);
+COMMENT ON TABLE fhir_queued_remote_resource IS 'Contains the web hook requests of remote subscription resources that wait for processing or that are being processed.';
+COMMENT ON COLUMN fhir_queued_remote_resource.remote_subscription_resource_id IS 'References the remote subscription resource that should be processed.';
+COMMENT ON COLUMN fhir_queued_remote_resource.queued_at IS 'The timestamp when the first web hook request for the remote subscription resource has been queued.';
+COMMENT ON COLUMN fhir_queued_remote_resource.requested_at IS 'The timestamp of the last web hook request for the remote subscription resource.';
+COMMENT ON COLUMN fhir_queued_remote_resource.coalesced_count IS 'The number of further web hook requests that have been coalesced into this queued request.';
+COMMENT ON COLUMN fhir_queued_remote_resource.claimed_at IS 'The timestamp when processing of the queued request has been started or NULL if the request waits for processing.';
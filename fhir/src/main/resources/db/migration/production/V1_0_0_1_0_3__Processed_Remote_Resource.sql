@@ -0,0 +1,43 @@
+/*
+ *  Copyright (c) 2004-2018, University of Oslo
+ *  All rights reserved.
+ *
+ *  Redistribution and use in source and binary forms, with or without
+ *  modification, are permitted provided that the following conditions are met:
+ *  Redistributions of source code must retain the above copyright notice, this
+ *  list of conditions and the following disclaimer.
+ *
+ *  Redistributions in binary form must reproduce the above copyright notice,
+ *  this list of conditions and the following disclaimer in the documentation
+ *  and/or other materials provided with the distribution.
+ *  Neither the name of the HISP project nor the names of its contributors may
+ *  be used to endorse or promote products derived from this software without
+ *  specific prior written permission.
+ *
+ *  THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ *  ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ *  WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ *  DISCLAIMED. IN NO PROGRAM_STAGE_EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ *  ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ *  (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ *  LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ *  ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ *  (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ *  SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+CREATE TABLE fhir_processed_remote_resource (
+  remote_subscription_resource_id UUID                           NOT NULL,
+  fhir_resource_id_hash           BIGINT                         NOT NULL,
+  version_key                     VARCHAR(70)                    NOT NULL,
+  processed_at                    TIMESTAMP(3) WITHOUT TIME ZONE NOT NULL DEFAULT CURRENT_TIMESTAMP,
+  CONSTRAINT fhir_processed_remote_resource_pk PRIMARY KEY (remote_subscription_resource_id, fhir_resource_id_hash),
+  CONSTRAINT fhir_processed_remote_resource_fk1 FOREIGN KEY (remote_subscription_resource_id) REFERENCES fhir_remote_subscription_resource (id) ON DELETE CASCADE
+);
+CREATE INDEX fhir_processed_remote_resource_i1
+  ON fhir_processed_remote_resource (remote_subscription_resource_id, processed_at);
+COMMENT ON TABLE fhir_processed_remote_resource IS 'Contains the versions of the FHIR resources that have been processed for a remote subscription resource. The entries are used to avoid processing the same version of a FHIR resource again when subsequent queries overlap. Entries are removed after a configurable retention period.';
+COMMENT ON COLUMN fhir_processed_remote_resource.remote_subscription_resource_id IS 'References the remote subscription resource for which the FHIR resource has been processed.';
+COMMENT ON COLUMN fhir_processed_remote_resource.fhir_resource_id_hash IS 'The 64 bit hash of the unqualified versionless ID of the FHIR resource.';
+COMMENT ON COLUMN fhir_processed_remote_resource.version_key IS 'The version ID (prefixed by v) or the last updated timestamp in milliseconds (prefixed by t) of the FHIR resource that has been processed.';
+COMMENT ON COLUMN fhir_processed_remote_resource.processed_at IS 'The timestamp when the FHIR resource has been processed.';
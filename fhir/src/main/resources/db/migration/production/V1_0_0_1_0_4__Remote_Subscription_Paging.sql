@@ -0,0 +1,36 @@
+/*
+ *  Copyright (c) 2004-2018, University of Oslo
+ *  All rights reserved.
+ *
+ *  Redistribution and use in source and binary forms, with or without
+ *  modification, are permitted provided that the following conditions are met:
+ *  Redistributions of source code must retain the above copyright notice, this
+ *  list of conditions and the following disclaimer.
+ *
+ *  Redistributions in binary form must reproduce the above copyright notice,
+ *  this list of conditions and the following disclaimer in the documentation
+ *  and/or other materials provided with the distribution.
+ *  Neither the name of the HISP project nor the names of its contributors may
+ *  be used to endorse or promote products derived from this software without
+ *  specific prior written permission.
+ *
+ *  THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ *  ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ *  WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ *  DISCLAIMED. IN NO PROGRAM_STAGE_EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ *  ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ *  (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ *  LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ *  ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ *  (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ *  SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+ALTER TABLE fhir_remote_subscription
+  ADD COLUMN page_size       INTEGER NOT NULL DEFAULT 1000,
+  ADD COLUMN max_page_size   INTEGER NOT NULL DEFAULT 5000,
+  ADD COLUMN adaptive_paging BOOLEAN NOT NULL DEFAULT FALSE,
+  ADD CONSTRAINT fhir_remote_subscription_ck1 CHECK (page_size > 0 AND max_page_size >= page_size);
+COMMENT ON COLUMN fhir_remote_subscription.page_size IS 'The number of resources that are requested per page when searching for resources on the remote FHIR Service. When adaptive paging is enabled this is the initial page size.';
+COMMENT ON COLUMN fhir_remote_subscription.max_page_size IS 'The maximum number of resources that are requested per page when adaptive paging is enabled.';
+COMMENT ON COLUMN fhir_remote_subscription.adaptive_paging IS 'Specifies if the page size is adjusted according to the observed response latency and size of the remote FHIR Service.';
@@ -0,0 +1,37 @@
+/*
+ *  Copyright (c) 2004-2018, University of Oslo
+ *  All rights reserved.
+ *
+ *  Redistribution and use in source and binary forms, with or without
+ *  modification, are permitted provided that the following conditions are met:
+ *  Redistributions of source code must retain the above copyright notice, this
+ *  list of conditions and the following disclaimer.
+ *
+ *  Redistributions in binary form must reproduce the above copyright notice,
+ *  this list of conditions and the following disclaimer in the documentation
+ *  and/or other materials provided with the distribution.
+ *  Neither the name of the HISP project nor the names of its contributors may
+ *  be used to endorse or promote products derived from this software without
+ *  specific prior written permission.
+ *
+ *  THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ *  ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ *  WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ *  DISCLAIMED. IN NO PROGRAM_STAGE_EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ *  ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ *  (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ *  LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ *  ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ *  (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ *  SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+ALTER TABLE fhir_failed_remote_resource
+  ADD COLUMN fhir_resource_id VARCHAR(200),
+  ADD COLUMN parked_at        TIMESTAMP(3) WITHOUT TIME ZONE;
+CREATE INDEX fhir_failed_remote_resource_i2
+  ON fhir_failed_remote_resource (remote_subscription_resource_id, parked_at);
+COMMENT ON COLUMN fhir_failed_remote_resource.version_key IS 'The version ID (prefixed by v) or the last updated timestamp in milliseconds (prefixed by t) of the FHIR resource that could not be processed, or u if the version of the FHIR resource cannot be identified.';
+COMMENT ON COLUMN fhir_failed_remote_resource.failed_count IS 'The number of failed attempts to process the version of the FHIR resource that will also fail when they are retried (e.g. conflicts and transformation errors).';
+COMMENT ON COLUMN fhir_failed_remote_resource.fhir_resource_id IS 'The unqualified versionless ID of the FHIR resource that could not be processed.';
+COMMENT ON COLUMN fhir_failed_remote_resource.parked_at IS 'The timestamp when the version of the FHIR resource has been parked after it failed too often or NULL if the version has not been parked. Parked versions are replayed periodically and are not removed after the retention period.';
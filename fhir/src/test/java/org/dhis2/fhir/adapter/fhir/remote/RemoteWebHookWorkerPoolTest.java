@@ -0,0 +1,250 @@
+package org.dhis2.fhir.adapter.fhir.remote;
+
+/*
+ * Copyright (c) 2004-2018, University of Oslo
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * Redistributions of source code must retain the above copyright notice, this
+ * list of conditions and the following disclaimer.
+ *
+ * Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation
+ * and/or other materials provided with the distribution.
+ * Neither the name of the HISP project nor the names of its contributors may
+ * be used to endorse or promote products derived from this software without
+ * specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.dhis2.fhir.adapter.fhir.metadata.model.FhirResourceType;
+import org.dhis2.fhir.adapter.fhir.metadata.model.RemoteSubscription;
+import org.dhis2.fhir.adapter.fhir.metadata.model.RemoteSubscriptionResource;
+import org.dhis2.fhir.adapter.fhir.metadata.repository.RemoteSubscriptionResourceRepository;
+import org.dhis2.fhir.adapter.fhir.remote.config.RemoteWebHookConfig;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.mockito.Mock;
+import org.mockito.Mockito;
+import org.mockito.junit.MockitoJUnit;
+import org.mockito.junit.MockitoRule;
+
+import javax.annotation.Nonnull;
+import java.time.LocalDateTime;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Unit tests of {@link RemoteWebHookWorkerPool}.
+ *
+ * @author volsch
+ */
+public class RemoteWebHookWorkerPoolTest
+{
+    @Mock
+    private RemoteSubscriptionResourceRepository resourceRepository;
+
+    @Mock
+    private QueuedRemoteResourceRepository queuedRemoteResourceRepository;
+
+    @Mock
+    private RemoteWebHookProcessor processor;
+
+    @Rule
+    public MockitoRule mockitoRule = MockitoJUnit.rule();
+
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+
+    private final Map<UUID, RemoteSubscriptionResource> subscriptionResources = new ConcurrentHashMap<>();
+
+    private final List<UUID> processedResourceIds = new CopyOnWriteArrayList<>();
+
+    private RemoteWebHookWorkerPool workerPool;
+
+    @Before
+    public void setUp()
+    {
+        final RemoteWebHookConfig config = new RemoteWebHookConfig();
+        config.setPoolSize( 4 );
+        config.setMaxSubscriptionConcurrency( 4 );
+        config.setPollIntervalSeconds( 3600 );
+        config.setLeaseDurationSeconds( 3 );
+
+        Mockito.when( queuedRemoteResourceRepository.claim( Mockito.anyString(), Mockito.anyInt(), Mockito.anyInt() ) )
+            .thenReturn( Collections.emptyList() );
+        Mockito.when( resourceRepository.findOneForSubscriptionProcessing( Mockito.any() ) )
+            .thenAnswer( invocation -> Optional.ofNullable( subscriptionResources.get( invocation.<UUID>getArgument( 0 ) ) ) );
+        Mockito.when( processor.processPatients( Mockito.any() ) ).thenAnswer( invocation -> {
+            processedResourceIds.add( invocation.<RemoteSubscriptionResource>getArgument( 0 ).getId() );
+            return null;
+        } );
+        Mockito.when( processor.processObservations( Mockito.any() ) ).thenAnswer( invocation -> {
+            processedResourceIds.add( invocation.<RemoteSubscriptionResource>getArgument( 0 ).getId() );
+            return null;
+        } );
+        workerPool = new RemoteWebHookWorkerPool( config, resourceRepository, queuedRemoteResourceRepository, processor, meterRegistry );
+    }
+
+    @After
+    public void tearDown() throws Exception
+    {
+        workerPool.preDestroy();
+    }
+
+    @Test
+    public void patientProcessedBeforeOtherResourcesOfSubscription() throws Exception
+    {
+        final UUID subscriptionId = UUID.randomUUID();
+        final QueuedRemoteResource patient = createQueuedRemoteResource( subscriptionId, FhirResourceType.PATIENT, 0 );
+        final QueuedRemoteResource observation = createQueuedRemoteResource( subscriptionId, FhirResourceType.OBSERVATION, 0 );
+        final QueuedRemoteResource otherPatient = createQueuedRemoteResource( UUID.randomUUID(), FhirResourceType.PATIENT, 0 );
+        Mockito.when( queuedRemoteResourceRepository.claim( Mockito.anyString(), Mockito.anyInt(), Mockito.anyInt() ) )
+            .thenReturn( Arrays.asList( patient, observation, otherPatient ), Collections.emptyList() );
+
+        final CountDownLatch patientStarted = new CountDownLatch( 1 );
+        final CountDownLatch patientContinued = new CountDownLatch( 1 );
+        Mockito.when( processor.processPatients( Mockito.same( subscriptionResources.get( patient.getResourceId() ) ) ) ).thenAnswer( invocation -> {
+            patientStarted.countDown();
+            patientContinued.await( 10, TimeUnit.SECONDS );
+            processedResourceIds.add( patient.getResourceId() );
+            return null;
+        } );
+        workerPool.postConstruct();
+
+        Assert.assertTrue( patientStarted.await( 10, TimeUnit.SECONDS ) );
+        // patients of other subscriptions are processed concurrently
+        Mockito.verify( processor, Mockito.timeout( 10000 ) ).processPatients( Mockito.same( subscriptionResources.get( otherPatient.getResourceId() ) ) );
+        Assert.assertFalse( processedResourceIds.contains( observation.getResourceId() ) );
+
+        patientContinued.countDown();
+        Mockito.verify( processor, Mockito.timeout( 10000 ) ).processObservations( Mockito.same( subscriptionResources.get( observation.getResourceId() ) ) );
+        Assert.assertTrue( processedResourceIds.indexOf( patient.getResourceId() ) < processedResourceIds.indexOf( observation.getResourceId() ) );
+    }
+
+    @Test
+    public void offerCoalescedIntoWaitingRequest()
+    {
+        final QueuedRemoteResource patient = createQueuedRemoteResource( UUID.randomUUID(), FhirResourceType.PATIENT, 0 );
+        Mockito.when( queuedRemoteResourceRepository.enqueue( patient.getResourceId() ) ).thenReturn( true );
+        workerPool.postConstruct();
+
+        Assert.assertEquals( RemoteWebHookOfferResult.COALESCED, workerPool.offer( subscriptionResources.get( patient.getResourceId() ) ) );
+        Assert.assertEquals( 1.0, meterRegistry.get( RemoteWebHookWorkerPool.COALESCED_METER_NAME ).counter().count(), 0.0 );
+    }
+
+    @Test
+    public void offeredRequestClaimed()
+    {
+        final QueuedRemoteResource patient = createQueuedRemoteResource( UUID.randomUUID(), FhirResourceType.PATIENT, 2 );
+        Mockito.when( queuedRemoteResourceRepository.claim( Mockito.anyString(), Mockito.anyInt(), Mockito.anyInt() ) )
+            .thenReturn( Collections.emptyList(), Collections.singletonList( patient ), Collections.emptyList() );
+        workerPool.postConstruct();
+
+        Assert.assertEquals( RemoteWebHookOfferResult.QUEUED, workerPool.offer( subscriptionResources.get( patient.getResourceId() ) ) );
+        // coalesced requests are processed once
+        Mockito.verify( queuedRemoteResourceRepository, Mockito.timeout( 10000 ) ).complete( workerPool.getNodeId(), patient );
+        Mockito.verify( processor, Mockito.times( 1 ) ).processPatients( Mockito.same( subscriptionResources.get( patient.getResourceId() ) ) );
+    }
+
+    @Test
+    public void medicationRequestProcessed()
+    {
+        final QueuedRemoteResource medicationRequest = createQueuedRemoteResource( UUID.randomUUID(), FhirResourceType.MEDICATION_REQUEST, 0 );
+        final RemoteSubscriptionResource subscriptionResource = subscriptionResources.get( medicationRequest.getResourceId() );
+        final LocalDateTime remoteLastUpdate = LocalDateTime.now();
+        Mockito.when( queuedRemoteResourceRepository.claim( Mockito.anyString(), Mockito.anyInt(), Mockito.anyInt() ) )
+            .thenReturn( Collections.singletonList( medicationRequest ), Collections.emptyList() );
+        Mockito.when( processor.processMedicationRequests( Mockito.same( subscriptionResource ) ) ).thenAnswer( invocation -> {
+            subscriptionResource.setCursorResourceIds( "MedicationRequest/1" );
+            return remoteLastUpdate;
+        } );
+        workerPool.postConstruct();
+
+        Mockito.verify( queuedRemoteResourceRepository, Mockito.timeout( 10000 ) ).complete( workerPool.getNodeId(), medicationRequest );
+        Mockito.verify( processor, Mockito.never() ).processObservations( Mockito.any() );
+        // only the processing state of the read version is updated
+        Mockito.verify( resourceRepository ).updateProcessed( subscriptionResource.getId(), 3L, remoteLastUpdate, null, "MedicationRequest/1" );
+        Mockito.verify( resourceRepository, Mockito.never() ).saveAndFlush( Mockito.any() );
+    }
+
+    @Test
+    public void releasedRequestClaimedAgain()
+    {
+        final QueuedRemoteResource patient = createQueuedRemoteResource( UUID.randomUUID(), FhirResourceType.PATIENT, 0 );
+        Mockito.when( queuedRemoteResourceRepository.claim( Mockito.anyString(), Mockito.anyInt(), Mockito.anyInt() ) )
+            .thenReturn( Collections.singletonList( patient ), Collections.singletonList( patient ), Collections.emptyList() );
+        // further requests have been received while the request has been processed the first time
+        Mockito.when( queuedRemoteResourceRepository.complete( Mockito.anyString(), Mockito.same( patient ) ) ).thenReturn( true, false );
+        workerPool.postConstruct();
+
+        Mockito.verify( queuedRemoteResourceRepository, Mockito.timeout( 10000 ).times( 2 ) ).complete( workerPool.getNodeId(), patient );
+        Assert.assertEquals( Arrays.asList( patient.getResourceId(), patient.getResourceId() ), processedResourceIds );
+    }
+
+    @Test
+    public void leasesRenewedWhileClaimBlocks() throws Exception
+    {
+        final CountDownLatch claimContinued = new CountDownLatch( 1 );
+        Mockito.when( queuedRemoteResourceRepository.claim( Mockito.anyString(), Mockito.anyInt(), Mockito.anyInt() ) ).thenAnswer( invocation -> {
+            claimContinued.await( 10, TimeUnit.SECONDS );
+            return Collections.emptyList();
+        } );
+        workerPool.postConstruct();
+        try
+        {
+            Mockito.verify( queuedRemoteResourceRepository, Mockito.timeout( 5000 ) ).renewLeases( workerPool.getNodeId(), 3 );
+        }
+        finally
+        {
+            claimContinued.countDown();
+        }
+    }
+
+    @Test
+    public void requestsReleasedOnShutdown() throws Exception
+    {
+        workerPool.postConstruct();
+        workerPool.preDestroy();
+        Mockito.verify( queuedRemoteResourceRepository ).releaseAll( workerPool.getNodeId() );
+    }
+
+    @Nonnull
+    private QueuedRemoteResource createQueuedRemoteResource( @Nonnull UUID subscriptionId, @Nonnull FhirResourceType fhirResourceType, int coalescedCount )
+    {
+        final RemoteSubscription subscription = new RemoteSubscription();
+        subscription.setId( subscriptionId );
+        subscription.setCode( "TEST_" + subscriptionId );
+
+        final RemoteSubscriptionResource subscriptionResource = new RemoteSubscriptionResource();
+        subscriptionResource.setId( UUID.randomUUID() );
+        subscriptionResource.setVersion( 3L );
+        subscriptionResource.setFhirResourceType( fhirResourceType );
+        subscriptionResource.setRemoteSubscription( subscription );
+        subscriptionResources.put( subscriptionResource.getId(), subscriptionResource );
+
+        return new QueuedRemoteResource( subscriptionResource.getId(), fhirResourceType, subscriptionId, subscription.getCode(), coalescedCount, 0 );
+    }
+}
@@ -0,0 +1,114 @@
+package org.dhis2.fhir.adapter.fhir.remote.impl;
+
+/*
+ * Copyright (c) 2004-2018, University of Oslo
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * Redistributions of source code must retain the above copyright notice, this
+ * list of conditions and the following disclaimer.
+ *
+ * Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation
+ * and/or other materials provided with the distribution.
+ * Neither the name of the HISP project nor the names of its contributors may
+ * be used to endorse or promote products derived from this software without
+ * specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+import org.dhis2.fhir.adapter.fhir.metadata.model.FhirResourceType;
+import org.dhis2.fhir.adapter.fhir.remote.QueuedRemoteResource;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.Mockito;
+import org.mockito.junit.MockitoJUnit;
+import org.mockito.junit.MockitoRule;
+import org.springframework.jdbc.core.RowMapper;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.jdbc.core.namedparam.SqlParameterSource;
+
+import java.util.Collections;
+import java.util.UUID;
+
+/**
+ * Unit tests of {@link QueuedRemoteResourceRepositoryImpl}.
+ *
+ * @author volsch
+ */
+public class QueuedRemoteResourceRepositoryImplTest
+{
+    @Mock
+    private NamedParameterJdbcTemplate jdbcTemplate;
+
+    @Rule
+    public MockitoRule mockitoRule = MockitoJUnit.rule();
+
+    private QueuedRemoteResourceRepositoryImpl repository;
+
+    private QueuedRemoteResource queuedRemoteResource;
+
+    @Before
+    public void setUp()
+    {
+        repository = new QueuedRemoteResourceRepositoryImpl( jdbcTemplate );
+        queuedRemoteResource = new QueuedRemoteResource( UUID.randomUUID(), FhirResourceType.PATIENT, UUID.randomUUID(), "TEST", 3, 1000 );
+    }
+
+    @Test
+    public void completeRemovesRequestWithoutFurtherRequests()
+    {
+        Mockito.when( jdbcTemplate.update( Mockito.eq( QueuedRemoteResourceRepositoryImpl.COMPLETE_DELETE_SQL ), Mockito.any( SqlParameterSource.class ) ) ).thenReturn( 1 );
+
+        Assert.assertFalse( repository.complete( "node1", queuedRemoteResource ) );
+        final ArgumentCaptor<SqlParameterSource> parameters = ArgumentCaptor.forClass( SqlParameterSource.class );
+        Mockito.verify( jdbcTemplate ).update( Mockito.eq( QueuedRemoteResourceRepositoryImpl.COMPLETE_DELETE_SQL ), parameters.capture() );
+        // the request is removed only if no further request has been coalesced into it since it has been claimed
+        Assert.assertEquals( 3, parameters.getValue().getValue( "coalescedCount" ) );
+        Assert.assertEquals( "node1", parameters.getValue().getValue( "nodeId" ) );
+        Mockito.verify( jdbcTemplate, Mockito.never() ).update( Mockito.eq( QueuedRemoteResourceRepositoryImpl.COMPLETE_RELEASE_SQL ), Mockito.any( SqlParameterSource.class ) );
+    }
+
+    @Test
+    public void completeReleasesRequestWithFurtherRequests()
+    {
+        Mockito.when( jdbcTemplate.update( Mockito.eq( QueuedRemoteResourceRepositoryImpl.COMPLETE_DELETE_SQL ), Mockito.any( SqlParameterSource.class ) ) ).thenReturn( 0 );
+        Mockito.when( jdbcTemplate.update( Mockito.eq( QueuedRemoteResourceRepositoryImpl.COMPLETE_RELEASE_SQL ), Mockito.any( SqlParameterSource.class ) ) ).thenReturn( 1 );
+
+        Assert.assertTrue( repository.complete( "node1", queuedRemoteResource ) );
+    }
+
+    @Test
+    public void completeAfterLeaseExpired()
+    {
+        // the lease has expired and the request has been claimed by another node in the meantime
+        Assert.assertFalse( repository.complete( "node1", queuedRemoteResource ) );
+        Mockito.verify( jdbcTemplate ).update( Mockito.eq( QueuedRemoteResourceRepositoryImpl.COMPLETE_RELEASE_SQL ), Mockito.any( SqlParameterSource.class ) );
+    }
+
+    @Test
+    @SuppressWarnings( "unchecked" )
+    public void claimWithoutQueuedRequests()
+    {
+        Mockito.when( jdbcTemplate.query( Mockito.eq( QueuedRemoteResourceRepositoryImpl.CLAIM_SELECT_SQL ), Mockito.any( SqlParameterSource.class ), Mockito.any( RowMapper.class ) ) )
+            .thenReturn( Collections.emptyList() );
+
+        Assert.assertTrue( repository.claim( "node1", 10, 60 ).isEmpty() );
+        Mockito.verify( jdbcTemplate, Mockito.never() ).update( Mockito.eq( QueuedRemoteResourceRepositoryImpl.CLAIM_UPDATE_SQL ), Mockito.any( SqlParameterSource.class ) );
+    }
+}
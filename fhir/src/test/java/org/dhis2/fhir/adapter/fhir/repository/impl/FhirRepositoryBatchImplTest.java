@@ -0,0 +1,618 @@
+package org.dhis2.fhir.adapter.fhir.repository.impl;
+
+/*
+ * Copyright (c) 2004-2018, University of Oslo
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * Redistributions of source code must retain the above copyright notice, this
+ * list of conditions and the following disclaimer.
+ *
+ * Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation
+ * and/or other materials provided with the distribution.
+ * Neither the name of the HISP project nor the names of its contributors may
+ * be used to endorse or promote products derived from this software without
+ * specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+import org.dhis2.fhir.adapter.dhis.DhisImportTimeoutException;
+import org.dhis2.fhir.adapter.dhis.model.DhisResource;
+import org.dhis2.fhir.adapter.dhis.model.ImportStatus;
+import org.dhis2.fhir.adapter.dhis.model.ImportSummaries;
+import org.dhis2.fhir.adapter.dhis.model.ImportSummary;
+import org.dhis2.fhir.adapter.dhis.tracker.program.Enrollment;
+import org.dhis2.fhir.adapter.dhis.tracker.program.EnrollmentService;
+import org.dhis2.fhir.adapter.dhis.tracker.program.Event;
+import org.dhis2.fhir.adapter.dhis.tracker.program.EventService;
+import org.dhis2.fhir.adapter.dhis.tracker.trackedentity.RequiredValueType;
+import org.dhis2.fhir.adapter.dhis.tracker.trackedentity.TrackedEntityInstance;
+import org.dhis2.fhir.adapter.dhis.tracker.trackedentity.TrackedEntityService;
+import org.dhis2.fhir.adapter.dhis.tracker.trackedentity.TrackedEntityType;
+import org.dhis2.fhir.adapter.fhir.metadata.model.RemoteSubscriptionResource;
+import org.dhis2.fhir.adapter.fhir.repository.config.DhisWriteBatchConfig;
+import org.dhis2.fhir.adapter.fhir.transform.FhirToDhisTransformOutcome;
+import org.hl7.fhir.dstu3.model.Observation;
+import org.hl7.fhir.dstu3.model.Patient;
+import org.hl7.fhir.instance.model.api.IBaseResource;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+import java.util.function.Supplier;
+import java.util.stream.Collectors;
+
+/**
+ * Unit tests of {@link FhirRepositoryBatchImpl}.
+ *
+ * @author volsch
+ */
+public class FhirRepositoryBatchImplTest
+{
+    private TestFhirRepository repository;
+
+    private TestTrackedEntityService trackedEntityService;
+
+    private TestEnrollmentService enrollmentService;
+
+    private TestEventService eventService;
+
+    private RemoteSubscriptionResource subscriptionResource;
+
+    private ExecutorService pollerExecutor;
+
+    private ExecutorService batchExecutor;
+
+    private ScheduledExecutorService scheduler;
+
+    @Before
+    public void setUp()
+    {
+        pollerExecutor = Executors.newSingleThreadExecutor( r -> new Thread( r, "Test Poller Thread" ) );
+        batchExecutor = Executors.newSingleThreadExecutor( r -> new Thread( r, "Test Batch Thread" ) );
+        scheduler = Executors.newSingleThreadScheduledExecutor();
+
+        repository = new TestFhirRepository();
+        trackedEntityService = new TestTrackedEntityService( pollerExecutor );
+        repository.trackedEntityService = trackedEntityService;
+        enrollmentService = new TestEnrollmentService( pollerExecutor );
+        eventService = new TestEventService( pollerExecutor );
+        subscriptionResource = new RemoteSubscriptionResource();
+        subscriptionResource.setId( UUID.randomUUID() );
+    }
+
+    @After
+    public void tearDown()
+    {
+        pollerExecutor.shutdownNow();
+        batchExecutor.shutdownNow();
+        scheduler.shutdownNow();
+    }
+
+    @Test
+    public void samePartitionFlushedBeforeTransformation() throws Exception
+    {
+        final FhirRepositoryBatchImpl batch = createBatch( false, 10, 60000 );
+        final Patient patient1 = createPatient( "1" );
+        final Patient patient2 = createPatient( "2" );
+        final Patient patient3 = createPatient( "3" );
+        repository.outcomes.put( patient1, createTrackedEntityInstance() );
+        repository.outcomes.put( patient2, createTrackedEntityInstance() );
+        repository.outcomes.put( patient3, createTrackedEntityInstance() );
+
+        final CompletableFuture<Boolean> completion1 = batch.save( patient1, "Patient/1" );
+        final CompletableFuture<Boolean> completion2 = batch.save( patient2, "Patient/2" );
+        Assert.assertEquals( 0, trackedEntityService.imports.size() );
+        Assert.assertFalse( completion1.isDone() );
+
+        final CompletableFuture<Boolean> completion3 = batch.save( patient3, "Patient/1" );
+        Assert.assertEquals( 1, trackedEntityService.imports.size() );
+        Assert.assertEquals( 2, trackedEntityService.imports.get( 0 ).size() );
+        Assert.assertEquals( Integer.valueOf( 1 ), repository.importsBeforeTransformation.get( patient3 ) );
+        Assert.assertTrue( completion1.get( 10, TimeUnit.SECONDS ) );
+        Assert.assertTrue( completion2.get( 10, TimeUnit.SECONDS ) );
+        Assert.assertFalse( completion3.isDone() );
+
+        batch.flush();
+        Assert.assertTrue( completion3.get( 10, TimeUnit.SECONDS ) );
+        Assert.assertEquals( 2, trackedEntityService.imports.size() );
+        Assert.assertEquals( 1, trackedEntityService.imports.get( 1 ).size() );
+        Assert.assertEquals( patient3.getIdElement().getIdPart(), trackedEntityService.imports.get( 1 ).get( 0 ).getId() );
+        Assert.assertTrue( repository.individuallySaved.isEmpty() );
+    }
+
+    @Test
+    public void trackedEntityFailureCascades() throws Exception
+    {
+        final FhirRepositoryBatchImpl batch = createBatch( false, 10, 60000 );
+        final Patient patient = createPatient( "1" );
+        final Observation observation = createObservation( "2" );
+        final TrackedEntityInstance failedTrackedEntityInstance = createTrackedEntityInstance();
+        failedTrackedEntityInstance.setId( "jhd83hdGd9s" );
+        trackedEntityService.failedIds.add( "jhd83hdGd9s" );
+        final TrackedEntityInstance trackedEntityInstance = createTrackedEntityInstance();
+        repository.outcomes.put( patient, trackedEntityInstance );
+        repository.outcomes.put( observation, createEvent( failedTrackedEntityInstance, new Enrollment( true ) ) );
+
+        final CompletableFuture<Boolean> patientCompletion = batch.save( patient, "Patient/1" );
+        final CompletableFuture<Boolean> observationCompletion = batch.save( observation, "Patient/2" );
+        batch.flush();
+
+        Assert.assertTrue( patientCompletion.get( 10, TimeUnit.SECONDS ) );
+        Assert.assertTrue( observationCompletion.get( 10, TimeUnit.SECONDS ) );
+        Assert.assertEquals( 1, trackedEntityService.imports.size() );
+        Assert.assertEquals( 2, trackedEntityService.imports.get( 0 ).size() );
+        // enrollment and event of the failed tracked entity instance must not be imported
+        Assert.assertTrue( enrollmentService.imports.isEmpty() );
+        Assert.assertTrue( eventService.imports.isEmpty() );
+        Assert.assertEquals( Collections.singletonList( observation ), repository.individuallySaved );
+        Assert.assertEquals( trackedEntityInstance.getId(), patient.getIdElement().getIdPart() );
+    }
+
+    @Test
+    public void failedEventOfNewEnrollmentSavedIndividually() throws Exception
+    {
+        final FhirRepositoryBatchImpl batch = createBatch( false, 10, 60000 );
+        final Observation observation1 = createObservation( "1" );
+        final Observation observation2 = createObservation( "2" );
+        final Event failedEvent = createEvent( null, new Enrollment( true ) );
+        failedEvent.setId( "kdu38dUdk3d" );
+        enrollmentService.failedEventIds.add( "kdu38dUdk3d" );
+        final Event event = createEvent( null, new Enrollment( true ) );
+        repository.outcomes.put( observation1, failedEvent );
+        repository.outcomes.put( observation2, event );
+
+        final CompletableFuture<Boolean> completion1 = batch.save( observation1, "Patient/1" );
+        final CompletableFuture<Boolean> completion2 = batch.save( observation2, "Patient/2" );
+        batch.flush();
+
+        Assert.assertTrue( completion1.get( 10, TimeUnit.SECONDS ) );
+        Assert.assertTrue( completion2.get( 10, TimeUnit.SECONDS ) );
+        Assert.assertEquals( 1, enrollmentService.imports.size() );
+        Assert.assertEquals( 2, enrollmentService.imports.get( 0 ).size() );
+        Assert.assertTrue( eventService.imports.isEmpty() );
+        Assert.assertEquals( Collections.singletonList( observation1 ), repository.individuallySaved );
+        Assert.assertEquals( event.getId(), observation2.getIdElement().getIdPart() );
+    }
+
+    @Test
+    public void individualSaveFailure() throws Exception
+    {
+        final FhirRepositoryBatchImpl batch = createBatch( false, 10, 60000 );
+        final Patient patient = createPatient( "1" );
+        final TrackedEntityInstance trackedEntityInstance = createTrackedEntityInstance();
+        trackedEntityInstance.setId( "jhd83hdGd9s" );
+        trackedEntityService.failedIds.add( "jhd83hdGd9s" );
+        repository.outcomes.put( patient, trackedEntityInstance );
+        repository.failingSave = true;
+
+        final CompletableFuture<Boolean> completion = batch.save( patient, "Patient/1" );
+        batch.flush();
+
+        Assert.assertTrue( getFailure( completion ) instanceof IllegalStateException );
+    }
+
+    @Test
+    public void maxSizeFlush() throws Exception
+    {
+        final FhirRepositoryBatchImpl batch = createBatch( false, 2, 60000 );
+        final Patient patient1 = createPatient( "1" );
+        final Patient patient2 = createPatient( "2" );
+        repository.outcomes.put( patient1, createTrackedEntityInstance() );
+        repository.outcomes.put( patient2, createTrackedEntityInstance() );
+
+        final CompletableFuture<Boolean> completion1 = batch.save( patient1, "Patient/1" );
+        final CompletableFuture<Boolean> completion2 = batch.save( patient2, "Patient/2" );
+
+        Assert.assertTrue( completion1.get( 10, TimeUnit.SECONDS ) );
+        Assert.assertTrue( completion2.get( 10, TimeUnit.SECONDS ) );
+        Assert.assertEquals( 1, trackedEntityService.imports.size() );
+    }
+
+    @Test
+    public void saveNotBlockedByRunningImport() throws Exception
+    {
+        final FhirRepositoryBatchImpl batch = createBatch( false, 1, 60000 );
+        final Patient patient1 = createPatient( "1" );
+        final Patient patient2 = createPatient( "2" );
+        repository.outcomes.put( patient1, createTrackedEntityInstance() );
+        repository.outcomes.put( patient2, createTrackedEntityInstance() );
+        trackedEntityService.importContinued = new CountDownLatch( 1 );
+
+        final CompletableFuture<Boolean> completion1 = batch.save( patient1, "Patient/1" );
+        // the import of the first resource blocks, but only on the batch executor
+        final CompletableFuture<Boolean> completion2 = batch.save( patient2, "Patient/2" );
+        Assert.assertFalse( completion1.isDone() );
+        Assert.assertFalse( completion2.isDone() );
+
+        trackedEntityService.importContinued.countDown();
+        Assert.assertTrue( completion1.get( 10, TimeUnit.SECONDS ) );
+        Assert.assertTrue( completion2.get( 10, TimeUnit.SECONDS ) );
+        Assert.assertEquals( 2, trackedEntityService.imports.size() );
+        Assert.assertEquals( Collections.nCopies( 2, "Test Batch Thread" ), trackedEntityService.importThreadNames );
+    }
+
+    @Test
+    public void delayedFlushWithoutFurtherSave() throws Exception
+    {
+        final FhirRepositoryBatchImpl batch = createBatch( false, 10, 50 );
+        final Patient patient = createPatient( "1" );
+        repository.outcomes.put( patient, createTrackedEntityInstance() );
+
+        final CompletableFuture<Boolean> completion = batch.save( patient, "Patient/1" );
+
+        Assert.assertTrue( completion.get( 10, TimeUnit.SECONDS ) );
+        Assert.assertEquals( 1, trackedEntityService.imports.size() );
+    }
+
+    @Test
+    public void asyncImportsContinuedOnBatchExecutor() throws Exception
+    {
+        final FhirRepositoryBatchImpl batch = createBatch( true, 10, 60000 );
+        final Observation observation = createObservation( "1" );
+        final TrackedEntityInstance trackedEntityInstance = createTrackedEntityInstance();
+        repository.outcomes.put( observation, createEvent( trackedEntityInstance, new Enrollment( true ) ) );
+
+        final CompletableFuture<Boolean> completion = batch.save( observation, "Patient/1" );
+        batch.flush();
+
+        Assert.assertTrue( completion.get( 10, TimeUnit.SECONDS ) );
+        Assert.assertEquals( Collections.singletonList( "Test Batch Thread" ), trackedEntityService.importThreadNames );
+        Assert.assertEquals( Collections.singletonList( "Test Batch Thread" ), enrollmentService.importThreadNames );
+        Assert.assertTrue( eventService.imports.isEmpty() );
+        Assert.assertTrue( repository.individuallySaved.isEmpty() );
+    }
+
+    @Test
+    public void timedOutImportLeftIncomplete() throws Exception
+    {
+        final FhirRepositoryBatchImpl batch = createBatch( true, 10, 60000 );
+        final Patient patient = createPatient( "1" );
+        final Observation observation = createObservation( "2" );
+        repository.outcomes.put( patient, createTrackedEntityInstance() );
+        repository.outcomes.put( observation, createEvent( createTrackedEntityInstance(), new Enrollment( true ) ) );
+        trackedEntityService.timedOut = true;
+
+        final CompletableFuture<Boolean> patientCompletion = batch.save( patient, "Patient/1" );
+        final CompletableFuture<Boolean> observationCompletion = batch.save( observation, "Patient/2" );
+        batch.flush();
+
+        Assert.assertTrue( getFailure( patientCompletion ) instanceof DhisImportTimeoutException );
+        Assert.assertTrue( getFailure( observationCompletion ) instanceof DhisImportTimeoutException );
+        Assert.assertEquals( 1, trackedEntityService.imports.size() );
+        // DHIS2 may still create the resources with the assigned IDs
+        Assert.assertTrue( enrollmentService.imports.isEmpty() );
+        Assert.assertTrue( repository.individuallySaved.isEmpty() );
+    }
+
+    @Nullable
+    protected static Throwable getFailure( @Nonnull CompletableFuture<Boolean> completion ) throws Exception
+    {
+        try
+        {
+            completion.get( 10, TimeUnit.SECONDS );
+            Assert.fail( "Completion has not been completed exceptionally." );
+            return null;
+        }
+        catch ( ExecutionException e )
+        {
+            return e.getCause();
+        }
+    }
+
+    @Nonnull
+    protected FhirRepositoryBatchImpl createBatch( boolean asyncImports, int maxSize, int maxDelayMillis )
+    {
+        return new FhirRepositoryBatchImpl( repository, subscriptionResource, trackedEntityService, enrollmentService, eventService,
+            asyncImports, batchExecutor, scheduler, maxSize, maxDelayMillis );
+    }
+
+    @Nonnull
+    private static Patient createPatient( @Nonnull String id )
+    {
+        final Patient patient = new Patient();
+        patient.setId( "Patient/" + id );
+        return patient;
+    }
+
+    @Nonnull
+    private static Observation createObservation( @Nonnull String id )
+    {
+        final Observation observation = new Observation();
+        observation.setId( "Observation/" + id );
+        return observation;
+    }
+
+    @Nonnull
+    private static TrackedEntityInstance createTrackedEntityInstance()
+    {
+        final TrackedEntityInstance trackedEntityInstance = new TrackedEntityInstance();
+        trackedEntityInstance.setNewResource( true );
+        return trackedEntityInstance;
+    }
+
+    @Nonnull
+    private static Event createEvent( @Nullable TrackedEntityInstance trackedEntityInstance, @Nonnull Enrollment enrollment )
+    {
+        final Event event = new Event( true );
+        event.setProgramStageId( "hdS6Gd8sm4f" );
+        event.setTrackedEntityInstance( trackedEntityInstance );
+        event.setEnrollment( enrollment );
+        return event;
+    }
+
+    @Nonnull
+    private static List<ImportSummary> createImportSummaries( @Nonnull List<? extends DhisResource> resources, @Nonnull Set<String> failedIds )
+    {
+        return resources.stream().map( r -> createImportSummary( r, failedIds ) ).collect( Collectors.toList() );
+    }
+
+    @Nonnull
+    private static ImportSummary createImportSummary( @Nonnull DhisResource resource, @Nonnull Set<String> failedIds )
+    {
+        final ImportSummary importSummary = new ImportSummary();
+        importSummary.setReference( resource.getId() );
+        importSummary.setStatus( failedIds.contains( resource.getId() ) ? ImportStatus.ERROR : ImportStatus.SUCCESS );
+        return importSummary;
+    }
+
+    protected static class TestFhirRepository extends FhirRepositoryImpl
+    {
+        private final Map<IBaseResource, DhisResource> outcomes = new HashMap<>();
+
+        private final Map<IBaseResource, Integer> importsBeforeTransformation = new HashMap<>();
+
+        private final List<IBaseResource> individuallySaved = new CopyOnWriteArrayList<>();
+
+        private volatile boolean failingSave;
+
+        private TestTrackedEntityService trackedEntityService;
+
+        public TestFhirRepository()
+        {
+            super( null, null, null, null, null, null, new DhisWriteBatchConfig() );
+        }
+
+        @Override
+        public void save( @Nonnull RemoteSubscriptionResource subscriptionResource, @Nonnull IBaseResource resource )
+        {
+            if ( failingSave )
+            {
+                throw new IllegalStateException( "Saving failed." );
+            }
+            individuallySaved.add( resource );
+        }
+
+        @Override
+        protected <T> T executeAuthorized( @Nonnull RemoteSubscriptionResource subscriptionResource, @Nonnull Supplier<T> supplier )
+        {
+            return supplier.get();
+        }
+
+        @Nullable
+        @Override
+        protected FhirToDhisTransformOutcome<? extends DhisResource> transform( @Nonnull RemoteSubscriptionResource subscriptionResource, @Nonnull IBaseResource resource )
+        {
+            importsBeforeTransformation.put( resource, (trackedEntityService == null) ? 0 : trackedEntityService.imports.size() );
+            final DhisResource outcome = outcomes.get( resource );
+            return (outcome == null) ? null : new FhirToDhisTransformOutcome<>( outcome );
+        }
+    }
+
+    protected abstract static class AbstractTestService<R extends DhisResource>
+    {
+        protected final List<List<R>> imports = new CopyOnWriteArrayList<>();
+
+        protected final List<String> importThreadNames = new CopyOnWriteArrayList<>();
+
+        protected final Set<String> failedIds = new HashSet<>();
+
+        protected volatile boolean timedOut;
+
+        protected volatile CountDownLatch importContinued;
+
+        private final ExecutorService pollerExecutor;
+
+        protected AbstractTestService( @Nonnull ExecutorService pollerExecutor )
+        {
+            this.pollerExecutor = pollerExecutor;
+        }
+
+        @Nonnull
+        protected List<ImportSummary> importAll( @Nonnull List<R> resources )
+        {
+            if ( importContinued != null )
+            {
+                try
+                {
+                    importContinued.await( 10, TimeUnit.SECONDS );
+                }
+                catch ( InterruptedException e )
+                {
+                    Thread.currentThread().interrupt();
+                }
+            }
+            imports.add( new ArrayList<>( resources ) );
+            importThreadNames.add( Thread.currentThread().getName() );
+            return createImportSummaries( resources, failedIds );
+        }
+
+        @Nonnull
+        protected CompletableFuture<List<ImportSummary>> importAllAsync( @Nonnull List<R> resources, @Nonnull Function<List<R>, List<ImportSummary>> importer )
+        {
+            final List<ImportSummary> importSummaries = importer.apply( resources );
+            // completion of the import job is detected by the poller
+            return CompletableFuture.supplyAsync( () -> {
+                if ( timedOut )
+                {
+                    throw new DhisImportTimeoutException( "Import job has not been completed." );
+                }
+                return importSummaries;
+            }, pollerExecutor );
+        }
+    }
+
+    protected static class TestTrackedEntityService extends AbstractTestService<TrackedEntityInstance> implements TrackedEntityService
+    {
+        public TestTrackedEntityService( @Nonnull ExecutorService pollerExecutor )
+        {
+            super( pollerExecutor );
+        }
+
+        @Override
+        public void updateGeneratedValues( @Nonnull TrackedEntityInstance trackedEntityInstance, @Nonnull TrackedEntityType type, @Nonnull Map<RequiredValueType, String> requiredValues )
+        {
+            throw new UnsupportedOperationException();
+        }
+
+        @Nonnull
+        @Override
+        public Optional<TrackedEntityInstance> getById( @Nonnull String id )
+        {
+            throw new UnsupportedOperationException();
+        }
+
+        @Nonnull
+        @Override
+        public Collection<TrackedEntityInstance> findByAttrValue( @Nonnull String typeId, @Nonnull String attributeId, @Nonnull String value, int maxResult )
+        {
+            throw new UnsupportedOperationException();
+        }
+
+        @Nonnull
+        @Override
+        public TrackedEntityInstance createOrUpdate( @Nonnull TrackedEntityInstance trackedEntityInstance )
+        {
+            throw new UnsupportedOperationException();
+        }
+
+        @Nonnull
+        @Override
+        public List<ImportSummary> createOrUpdateAll( @Nonnull List<TrackedEntityInstance> trackedEntityInstances )
+        {
+            return importAll( trackedEntityInstances );
+        }
+
+        @Nonnull
+        @Override
+        public CompletableFuture<List<ImportSummary>> createOrUpdateAllAsync( @Nonnull List<TrackedEntityInstance> trackedEntityInstances )
+        {
+            return importAllAsync( trackedEntityInstances, this::importAll );
+        }
+    }
+
+    protected static class TestEnrollmentService extends AbstractTestService<Enrollment> implements EnrollmentService
+    {
+        private final Set<String> failedEventIds = new HashSet<>();
+
+        public TestEnrollmentService( @Nonnull ExecutorService pollerExecutor )
+        {
+            super( pollerExecutor );
+        }
+
+        @Nonnull
+        @Override
+        public Optional<Enrollment> getLatestActiveWithEvents( @Nonnull String programId, @Nonnull String programStageId, @Nonnull String trackedEntityInstanceId )
+        {
+            throw new UnsupportedOperationException();
+        }
+
+        @Nonnull
+        @Override
+        public Enrollment create( @Nonnull Enrollment enrollment )
+        {
+            throw new UnsupportedOperationException();
+        }
+
+        @Nonnull
+        @Override
+        public Enrollment update( @Nonnull Enrollment enrollment )
+        {
+            throw new UnsupportedOperationException();
+        }
+
+        @Nonnull
+        @Override
+        public List<ImportSummary> createOrUpdateAll( @Nonnull List<Enrollment> enrollments )
+        {
+            final List<ImportSummary> importSummaries = importAll( enrollments );
+            for ( int i = 0; i < enrollments.size(); i++ )
+            {
+                final ImportSummaries eventImportSummaries = new ImportSummaries();
+                eventImportSummaries.setImportSummaries( createImportSummaries( enrollments.get( i ).getEvents(), failedEventIds ) );
+                importSummaries.get( i ).setEvents( eventImportSummaries );
+            }
+            return importSummaries;
+        }
+
+        @Nonnull
+        @Override
+        public CompletableFuture<List<ImportSummary>> createOrUpdateAllAsync( @Nonnull List<Enrollment> enrollments )
+        {
+            return importAllAsync( enrollments, this::createOrUpdateAll );
+        }
+    }
+
+    protected static class TestEventService extends AbstractTestService<Event> implements EventService
+    {
+        public TestEventService( @Nonnull ExecutorService pollerExecutor )
+        {
+            super( pollerExecutor );
+        }
+
+        @Nonnull
+        @Override
+        public Event createOrMinimalUpdate( @Nonnull Event event )
+        {
+            throw new UnsupportedOperationException();
+        }
+
+        @Nonnull
+        @Override
+        public List<ImportSummary> createOrUpdateAll( @Nonnull List<Event> events )
+        {
+            return importAll( events );
+        }
+
+        @Nonnull
+        @Override
+        public CompletableFuture<List<ImportSummary>> createOrUpdateAllAsync( @Nonnull List<Event> events )
+        {
+            return importAllAsync( events, this::importAll );
+        }
+    }
+}
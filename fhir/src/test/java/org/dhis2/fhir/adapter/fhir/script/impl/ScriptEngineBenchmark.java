@@ -0,0 +1,189 @@
+package org.dhis2.fhir.adapter.fhir.script.impl;
+
+/*
+ * Copyright (c) 2004-2018, University of Oslo
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * Redistributions of source code must retain the above copyright notice, this
+ * list of conditions and the following disclaimer.
+ *
+ * Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation
+ * and/or other materials provided with the distribution.
+ * Neither the name of the HISP project nor the names of its contributors may
+ * be used to endorse or promote products derived from this software without
+ * specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+import org.dhis2.fhir.adapter.fhir.transform.config.TransformationConfig;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import javax.script.Compilable;
+import javax.script.CompiledScript;
+import javax.script.ScriptEngine;
+import javax.script.ScriptException;
+import java.time.LocalDate;
+import java.time.temporal.ChronoUnit;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares the script engines that can be selected with the configured script engine
+ * name by executing the scripts of the child programme. The scripts are compiled once
+ * and executed with a pooled global scope like it is done by {@link ScriptExecutorImpl}.
+ * The objects that are accessed by the scripts are replaced by simple Java objects,
+ * so that only the script engine and its Java interoperability are measured.
+ * <br>
+ * The benchmark can be run with <code>mvn test-compile exec:java -Dexec.classpathScope=test
+ * -Dexec.mainClass=org.dhis2.fhir.adapter.fhir.script.impl.ScriptEngineBenchmark</code>
+ * on a JDK that contains Nashorn.
+ *
+ * @author volsch
+ */
+@State( Scope.Thread )
+@BenchmarkMode( Mode.Throughput )
+@OutputTimeUnit( TimeUnit.MILLISECONDS )
+@Warmup( iterations = 5, time = 2 )
+@Measurement( iterations = 5, time = 2 )
+@Fork( 1 )
+public class ScriptEngineBenchmark
+{
+    /**
+     * Applicable script of the child programme that checks the age of the patient.
+     */
+    public static final String AGE_SCRIPT =
+        "dateTimeUtils.isYoungerThan(dateTime, trackedEntityInstance.getValue(args['birthDateAttribute']), args['age'], args['ageUnit'])";
+
+    /**
+     * Enrollment script of the child programme that sets the incident date.
+     */
+    public static final String INCIDENT_DATE_SCRIPT =
+        "enrollment.setIncidentDate(trackedEntityInstance.getValue(args['birthDateAttribute']))";
+
+    @Param( { "nashorn", TransformationConfig.GRAAL_JS_SCRIPT_ENGINE_NAME } )
+    public String scriptEngineName;
+
+    private ScriptEngine scriptEngine;
+
+    private CompiledScript ageScript;
+
+    private CompiledScript incidentDateScript;
+
+    private PooledScriptBindings bindings;
+
+    private final Enrollment enrollment = new Enrollment();
+
+    @Setup( Level.Trial )
+    public void setup() throws ScriptException
+    {
+        final TransformationConfig config = new TransformationConfig();
+        config.setScriptEngineName( scriptEngineName );
+        scriptEngine = config.scriptEngine();
+        ageScript = ((Compilable) scriptEngine).compile( AGE_SCRIPT );
+        incidentDateScript = ((Compilable) scriptEngine).compile( INCIDENT_DATE_SCRIPT );
+
+        final Map<String, Object> args = new HashMap<>();
+        args.put( "birthDateAttribute", "birthDate" );
+        args.put( "age", 1 );
+        args.put( "ageUnit", ChronoUnit.YEARS );
+
+        final Map<String, Object> variables = new HashMap<>();
+        variables.put( "trackedEntityInstance", new TrackedEntityInstance() );
+        variables.put( "enrollment", enrollment );
+        variables.put( "dateTime", LocalDate.now() );
+        variables.put( "args", args );
+
+        bindings = new PooledScriptBindings( scriptEngine, Collections.singletonMap( "dateTimeUtils", new DateTimeUtils() ) );
+        bindings.bind( variables, variables.keySet() );
+    }
+
+    @TearDown( Level.Trial )
+    public void tearDown() throws Exception
+    {
+        if ( scriptEngine instanceof AutoCloseable )
+        {
+            ((AutoCloseable) scriptEngine).close();
+        }
+    }
+
+    @Benchmark
+    public Object age() throws ScriptException
+    {
+        return ageScript.eval( bindings.getBindings() );
+    }
+
+    @Benchmark
+    public Object incidentDate() throws ScriptException
+    {
+        incidentDateScript.eval( bindings.getBindings() );
+        return enrollment.getIncidentDate();
+    }
+
+    public static void main( String[] args ) throws RunnerException
+    {
+        new Runner( new OptionsBuilder().include( ScriptEngineBenchmark.class.getSimpleName() ).build() ).run();
+    }
+
+    public static class DateTimeUtils
+    {
+        public boolean isYoungerThan( Object dateTime, Object birthDate, int age, Object ageUnit )
+        {
+            return ((LocalDate) birthDate).plus( age, (ChronoUnit) ageUnit ).isAfter( (LocalDate) dateTime );
+        }
+    }
+
+    public static class TrackedEntityInstance
+    {
+        private final LocalDate birthDate = LocalDate.now().minusMonths( 6 );
+
+        public Object getValue( String attributeName )
+        {
+            return "birthDate".equals( attributeName ) ? birthDate : null;
+        }
+    }
+
+    public static class Enrollment
+    {
+        private Object incidentDate;
+
+        public Object getIncidentDate()
+        {
+            return incidentDate;
+        }
+
+        public void setIncidentDate( Object incidentDate )
+        {
+            this.incidentDate = incidentDate;
+        }
+    }
+}
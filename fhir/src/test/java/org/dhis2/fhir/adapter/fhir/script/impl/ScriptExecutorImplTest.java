@@ -0,0 +1,200 @@
+package org.dhis2.fhir.adapter.fhir.script.impl;
+
+/*
+ * Copyright (c) 2004-2018, University of Oslo
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * Redistributions of source code must retain the above copyright notice, this
+ * list of conditions and the following disclaimer.
+ *
+ * Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation
+ * and/or other materials provided with the distribution.
+ * Neither the name of the HISP project nor the names of its contributors may
+ * be used to endorse or promote products derived from this software without
+ * specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.dhis2.fhir.adapter.fhir.metadata.model.DataType;
+import org.dhis2.fhir.adapter.fhir.metadata.model.ExecutableScript;
+import org.dhis2.fhir.adapter.fhir.metadata.model.Script;
+import org.dhis2.fhir.adapter.fhir.metadata.model.ScriptSource;
+import org.dhis2.fhir.adapter.fhir.metadata.model.ScriptSourceType;
+import org.dhis2.fhir.adapter.fhir.metadata.model.ScriptVariable;
+import org.dhis2.fhir.adapter.fhir.metadata.repository.ExecutableScriptArgRepository;
+import org.dhis2.fhir.adapter.fhir.metadata.repository.ScriptArgRepository;
+import org.dhis2.fhir.adapter.fhir.metadata.repository.ScriptSourceRepository;
+import org.dhis2.fhir.adapter.fhir.model.FhirVersion;
+import org.dhis2.fhir.adapter.fhir.script.LazyScriptVariables;
+import org.dhis2.fhir.adapter.fhir.transform.config.TransformationConfig;
+import org.dhis2.fhir.adapter.fhir.transform.scripted.util.FhirToDhisTransformerUtils;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.mockito.Mock;
+import org.mockito.Mockito;
+import org.mockito.junit.MockitoJUnit;
+import org.mockito.junit.MockitoRule;
+import org.springframework.beans.factory.BeanFactory;
+import org.springframework.beans.factory.ObjectProvider;
+
+import javax.annotation.Nonnull;
+import javax.script.ScriptEngine;
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Unit tests of {@link ScriptExecutorImpl}.
+ *
+ * @author volsch
+ */
+public class ScriptExecutorImplTest
+{
+    @Mock
+    private ExecutableScriptArgRepository executableScriptArgRepository;
+
+    @Mock
+    private ScriptArgRepository scriptArgRepository;
+
+    @Mock
+    private ScriptSourceRepository scriptSourceRepository;
+
+    @Mock
+    private BeanFactory beanFactory;
+
+    @Mock
+    private ObjectProvider<List<FhirToDhisTransformerUtils>> transformUtilsProvider;
+
+    @Rule
+    public MockitoRule mockitoRule = MockitoJUnit.rule();
+
+    private ScriptExecutorImpl scriptExecutor;
+
+    private final AtomicInteger enrollmentSupplierCalls = new AtomicInteger();
+
+    private final AtomicInteger eventsSupplierCalls = new AtomicInteger();
+
+    @Before
+    public void setUp()
+    {
+        final TransformationConfig config = new TransformationConfig();
+        config.setScriptEngineName( "nashorn" );
+        config.setScriptBindingsPoolSize( 1 );
+        final ScriptEngine scriptEngine = config.scriptEngine();
+        scriptExecutor = new ScriptExecutorImpl( new CompiledScriptCacheImpl( scriptEngine, config, new SimpleMeterRegistry() ),
+            new ScriptBindingsPool( scriptEngine, config, transformUtilsProvider ), new ScriptExecutionProfiler( new SimpleMeterRegistry(), config ),
+            new ThreadLocalScriptExecutionContext(), executableScriptArgRepository, scriptArgRepository, scriptSourceRepository, config, beanFactory );
+    }
+
+    @Test
+    public void rejectingScriptDoesNotMaterializeLazyVariables()
+    {
+        final ExecutableScript executableScript = createExecutableScript( "input === 'accepted'" );
+
+        final Boolean result = scriptExecutor.execute( executableScript, FhirVersion.DSTU3, createVariables( "rejected" ), Boolean.class );
+        Assert.assertEquals( Boolean.FALSE, result );
+        Assert.assertEquals( 0, enrollmentSupplierCalls.get() );
+        Assert.assertEquals( 0, eventsSupplierCalls.get() );
+    }
+
+    @Test
+    public void referencedLazyVariablesMaterialized()
+    {
+        final ExecutableScript executableScript = createExecutableScript( "input === 'accepted' && enrollment.status === 'ACTIVE'" );
+
+        final Boolean result = scriptExecutor.execute( executableScript, FhirVersion.DSTU3, createVariables( "accepted" ), Boolean.class );
+        Assert.assertEquals( Boolean.TRUE, result );
+        Assert.assertEquals( 1, enrollmentSupplierCalls.get() );
+        Assert.assertEquals( 0, eventsSupplierCalls.get() );
+    }
+
+    @Test
+    public void scriptGlobalsNotRetained()
+    {
+        final ExecutableScript declaringScript = createExecutableScript( "var declared = input; assigned = input; true" );
+        final ExecutableScript readingScript = createExecutableScript(
+            "typeof assigned === 'undefined' && (typeof declared === 'undefined' || declared === null)" );
+
+        Assert.assertEquals( Boolean.TRUE, scriptExecutor.execute( declaringScript, FhirVersion.DSTU3, createVariables( "accepted" ), Boolean.class ) );
+        // the same global scope is leased again since the pool contains a single scope
+        Assert.assertEquals( Boolean.TRUE, scriptExecutor.execute( readingScript, FhirVersion.DSTU3, createVariables( "accepted" ), Boolean.class ) );
+    }
+
+    @Test
+    public void invalidatedPreparedScriptsPreparedAgain()
+    {
+        final ExecutableScript executableScript = createExecutableScript( "input === 'accepted'" );
+        Assert.assertEquals( Boolean.TRUE, scriptExecutor.execute( executableScript, FhirVersion.DSTU3, createVariables( "accepted" ), Boolean.class ) );
+
+        scriptExecutor.invalidatePreparedScripts();
+        Assert.assertEquals( Boolean.TRUE, scriptExecutor.execute( executableScript, FhirVersion.DSTU3, createVariables( "accepted" ), Boolean.class ) );
+        Mockito.verify( scriptSourceRepository, Mockito.times( 2 ) ).findByScriptAndFhirVersion( Mockito.same( executableScript.getScript() ), Mockito.eq( FhirVersion.DSTU3 ) );
+    }
+
+    @Nonnull
+    private Map<String, Object> createVariables( @Nonnull String input )
+    {
+        final Map<String, Object> baseVariables = new HashMap<>();
+        baseVariables.put( ScriptVariable.INPUT.getVariableName(), input );
+
+        // variables are nested like the variables of the transformer service and the transformers
+        final LazyScriptVariables transformerVariables = new LazyScriptVariables( baseVariables );
+        transformerVariables.putLazy( ScriptVariable.ENROLLMENT.getVariableName(), () -> {
+            enrollmentSupplierCalls.incrementAndGet();
+            return Collections.singletonMap( "status", "ACTIVE" );
+        } );
+        final LazyScriptVariables variables = new LazyScriptVariables( transformerVariables );
+        variables.putLazy( ScriptVariable.PROGRAM_STAGE_EVENTS.getVariableName(), () -> {
+            eventsSupplierCalls.incrementAndGet();
+            return Collections.emptyList();
+        } );
+        return variables;
+    }
+
+    @Nonnull
+    private ExecutableScript createExecutableScript( @Nonnull String sourceText )
+    {
+        final Script script = new Script();
+        script.setId( UUID.randomUUID() );
+        script.setVersion( 1L );
+        script.setName( "Test Script" );
+        script.setCode( "TEST" );
+        script.setReturnType( DataType.BOOLEAN );
+        script.setVariables( EnumSet.of( ScriptVariable.INPUT, ScriptVariable.ENROLLMENT, ScriptVariable.PROGRAM_STAGE_EVENTS ) );
+
+        final ScriptSource scriptSource = new ScriptSource();
+        scriptSource.setId( UUID.randomUUID() );
+        scriptSource.setVersion( 1L );
+        scriptSource.setSourceType( ScriptSourceType.JAVASCRIPT );
+        scriptSource.setSourceText( sourceText );
+        scriptSource.setScript( script );
+        Mockito.when( scriptSourceRepository.findByScriptAndFhirVersion( Mockito.same( script ), Mockito.eq( FhirVersion.DSTU3 ) ) )
+            .thenReturn( Optional.of( scriptSource ) );
+
+        final ExecutableScript executableScript = new ExecutableScript();
+        executableScript.setId( UUID.randomUUID() );
+        executableScript.setScript( script );
+        return executableScript;
+    }
+}